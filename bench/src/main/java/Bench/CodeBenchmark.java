@@ -0,0 +1,254 @@
+package Bench;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Measures the code the compiler emits rather than the compiler. Every program of the
+    corpus (bench/codegen unless told otherwise) is compiled by Compiler.Main in a directory of its own, assembled and linked,
+    and run on <name>.in (or nothing). For each program it records
+
+        wall.ms         the fastest of the runs
+        instructions    retired user instructions from perf stat, when perf works here
+        binary.bytes    the size of the executable
+        asm.lines       the length of program.asm
+        calls.<name>    calls into each runtime routine of BuiltinFunction, counted by
+                        a second build with -Dbuiltin.count=true
+        exit            the exit status
+
+    and writes them as "program<TAB>metric<TAB>value" lines. A program with a <name>.out
+    beside it must print exactly that, and every program must print and exit the same
+    as a third build at the reference optimize.level (0, or none when negative), or the
+    run fails. Given a baseline written the same way, it prints every metric that moved;
+    wall time only counts as moved past the threshold. The assembler and linker are the
+    commands in codegen.assemble and codegen.link, with {asm}, {obj} and {exe} replaced
+    by the files.
+
+        java -cp bench/target/benchmarks.jar Bench.CodeBenchmark
+                [--corpus dir] [--runs n] [--out file] [--baseline file] [--threshold percent]
+                [--reference level]
+ */
+public class CodeBenchmark {
+    private static final String assembleCommand = System.getProperty("codegen.assemble", "nasm -f elf64 -o {obj} {asm}");
+    private static final String linkCommand = System.getProperty("codegen.link", "gcc -no-pie -o {exe} {obj}");
+    private static final long timeout = 60;
+
+    private String corpus = "bench/codegen";
+    private int runs = 5;
+    private String out = "bench/target/codegen.tsv";
+    private String baseline = null;
+    private double threshold = 3;
+    private int reference = 0;
+    private boolean hasPerf;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        CodeBenchmark benchmark = new CodeBenchmark();
+        for (int i = 0; i < args.length; i++) {
+            String value = i + 1 < args.length ? args[i + 1] : null;
+            switch (args[i]) {
+                case "--corpus": benchmark.corpus = value; break;
+                case "--runs": benchmark.runs = Integer.parseInt(value); break;
+                case "--out": benchmark.out = value; break;
+                case "--baseline": benchmark.baseline = value; break;
+                case "--threshold": benchmark.threshold = Double.parseDouble(value); break;
+                case "--reference": benchmark.reference = Integer.parseInt(value); break;
+                default: throw new IllegalArgumentException("unknown option " + args[i]);
+            }
+            ++i;
+        }
+        System.exit(benchmark.run() ? 0 : 1);
+    }
+
+    private boolean run() throws IOException, InterruptedException {
+        hasPerf = probePerf();
+        List<Path> programList = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(Paths.get(corpus), "*.mx")) {
+            stream.forEach(programList::add);
+        }
+        Collections.sort(programList);
+        Map<String, String> result = new LinkedHashMap<>();
+        boolean success = true;
+        for (Path program : programList) {
+            String name = program.getFileName().toString().replaceFirst("\\.mx$", "");
+            try {
+                measure(name, program, result);
+            } catch (IOException e) {
+                System.err.println(name + ": " + e.getMessage());
+                success = false;
+            }
+        }
+        Path outPath = Paths.get(out);
+        if (outPath.getParent() != null) Files.createDirectories(outPath.getParent());
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(outPath))) {
+            writer.println("program\tmetric\tvalue");
+            result.forEach((key, value) -> writer.println(key + "\t" + value));
+        }
+        System.out.println("wrote " + result.size() + " metrics to " + out);
+        if (baseline != null) {
+            diff(load(Paths.get(baseline)), result);
+        }
+        return success;
+    }
+
+    private void measure(String name, Path program, Map<String, String> result) throws IOException, InterruptedException {
+        Path input = program.resolveSibling(name + ".in");
+        Path directory = Files.createTempDirectory("codegen-" + name);
+        Path counted = directory.resolve("counted");
+        Files.createDirectories(counted);
+
+        Path exe = build(program, directory, "-Dbuiltin.count=false");
+        Path countedExe = build(program, counted, "-Dbuiltin.count=true");
+        result.put(name + "\tbinary.bytes", String.valueOf(Files.size(exe)));
+        result.put(name + "\tasm.lines", String.valueOf(Files.readAllLines(directory.resolve("program.asm")).size()));
+
+        long best = Long.MAX_VALUE;
+        Execution run = null;
+        for (int i = 0; i < runs; i++) {
+            long start = System.nanoTime();
+            run = execute(directory, input, exe.toString());
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        int exit = run == null ? 0 : run.exit;
+        result.put(name + "\twall.ms", String.format(Locale.ROOT, "%.3f", best / 1e6));
+        result.put(name + "\texit", String.valueOf(exit));
+        Path expected = program.resolveSibling(name + ".out");
+        if (run != null && Files.exists(expected)
+                && !run.output.equals(new String(Files.readAllBytes(expected), StandardCharsets.UTF_8))) {
+            throw new IOException("the output differs from " + expected);
+        }
+        if (run != null && reference >= 0) {
+            Path referenceDirectory = directory.resolve("reference");
+            Files.createDirectories(referenceDirectory);
+            Path referenceExe = build(program, referenceDirectory, "-Doptimize.level=" + reference);
+            Execution referenceRun = execute(referenceDirectory, input, referenceExe.toString());
+            if (run.exit != referenceRun.exit || !run.output.equals(referenceRun.output)) {
+                throw new IOException("the output differs from the build at optimize.level " + reference);
+            }
+        }
+
+        if (hasPerf) {
+            Execution execution = execute(directory, input, "perf", "stat", "-x", ",", "-e", "instructions:u", exe.toString());
+            for (String line : execution.error.split("\n")) {
+                String[] field = line.split(",");
+                if (field.length > 2 && field[2].startsWith("instructions") && field[0].matches("\\d+")) {
+                    result.put(name + "\tinstructions", field[0]);
+                }
+            }
+        }
+
+        for (String line : execute(counted, input, countedExe.toString()).error.split("\n")) {
+            String[] field = line.trim().split(" ");
+            if (field.length == 3 && field[0].equals("builtin") && !field[2].equals("0")) {
+                result.put(name + "\tcalls." + field[1], field[2]);
+            }
+        }
+    }
+
+    /* compiles the program in the directory the way the judge does, then assembles and links it */
+    private Path build(Path program, Path directory, String property) throws IOException, InterruptedException {
+        Files.copy(program, directory.resolve("program.txt"), StandardCopyOption.REPLACE_EXISTING);
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.add(property);
+        command.add("-cp");
+        command.add(classPath());
+        command.add("Compiler.Main");
+        check(execute(directory, null, command.toArray(new String[0])), "compile");
+        Path asm = directory.resolve("program.asm");
+        Path obj = directory.resolve("program.o");
+        Path exe = directory.resolve("program");
+        for (String template : Arrays.asList(assembleCommand, linkCommand)) {
+            String shell = template.replace("{asm}", asm.toString()).replace("{obj}", obj.toString()).replace("{exe}", exe.toString());
+            check(execute(directory, null, "sh", "-c", shell), shell);
+        }
+        return exe;
+    }
+
+    /* the class path of this JVM, absolute since the compiler runs in another directory */
+    private static String classPath() {
+        StringJoiner joiner = new StringJoiner(File.pathSeparator);
+        for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+            joiner.add(Paths.get(entry).toAbsolutePath().toString());
+        }
+        return joiner.toString();
+    }
+
+    private static void check(Execution execution, String step) throws IOException {
+        if (execution.exit != 0) {
+            throw new IOException(step + " failed with " + execution.exit + ": " + execution.output + execution.error);
+        }
+    }
+
+    private boolean probePerf() {
+        try {
+            Execution execution = execute(Paths.get("."), null, "perf", "stat", "-x", ",", "-e", "instructions:u", "true");
+            return execution.exit == 0 && execution.error.contains("instructions");
+        } catch (IOException | InterruptedException e) {
+            return false;
+        }
+    }
+
+    private static class Execution {
+        int exit;
+        String output, error;
+    }
+
+    private static Execution execute(Path directory, Path input, String... command) throws IOException, InterruptedException {
+        ProcessBuilder builder = new ProcessBuilder(command).directory(directory.toFile());
+        File output = File.createTempFile("codegen", ".out"), error = File.createTempFile("codegen", ".err");
+        builder.redirectOutput(output).redirectError(error);
+        builder.redirectInput(input != null && Files.exists(input) ? ProcessBuilder.Redirect.from(input.toFile())
+                : ProcessBuilder.Redirect.from(new File("/dev/null")));
+        Process process = builder.start();
+        if (!process.waitFor(timeout, TimeUnit.SECONDS)) {
+            process.destroyForcibly();
+            throw new IOException(String.join(" ", command) + " timed out");
+        }
+        Execution execution = new Execution();
+        execution.exit = process.exitValue();
+        execution.output = new String(Files.readAllBytes(output.toPath()), StandardCharsets.UTF_8);
+        execution.error = new String(Files.readAllBytes(error.toPath()), StandardCharsets.UTF_8);
+        output.delete();
+        error.delete();
+        return execution;
+    }
+
+    private static Map<String, String> load(Path path) throws IOException {
+        Map<String, String> result = new LinkedHashMap<>();
+        for (String line : Files.readAllLines(path)) {
+            String[] field = line.split("\t");
+            if (field.length != 3 || line.startsWith("program\t")) continue;
+            result.put(field[0] + "\t" + field[1], field[2]);
+        }
+        return result;
+    }
+
+    /* a routine missing on one side was never called there */
+    private void diff(Map<String, String> before, Map<String, String> after) {
+        Set<String> keySet = new TreeSet<>(before.keySet());
+        keySet.addAll(after.keySet());
+        System.out.println(String.format("%-12s %-32s %14s %14s %9s", "program", "metric", "baseline", "current", "change"));
+        int moved = 0;
+        for (String key : keySet) {
+            String metric = key.substring(key.indexOf('\t') + 1);
+            String defaultValue = metric.startsWith("calls.") ? "0" : null;
+            String oldValue = before.getOrDefault(key, defaultValue), newValue = after.getOrDefault(key, defaultValue);
+            if (Objects.equals(oldValue, newValue)) continue;
+            String change = "";
+            if (oldValue != null && newValue != null) {
+                double oldNumber = Double.parseDouble(oldValue), newNumber = Double.parseDouble(newValue);
+                double percent = oldNumber == 0 ? Double.POSITIVE_INFINITY : (newNumber - oldNumber) / oldNumber * 100;
+                if (metric.equals("wall.ms") && Math.abs(percent) < threshold) continue;
+                change = String.format(Locale.ROOT, "%+.1f%%", percent);
+            }
+            String[] field = key.split("\t");
+            System.out.println(String.format("%-12s %-32s %14s %14s %9s", field[0], field[1],
+                    oldValue == null ? "-" : oldValue, newValue == null ? "-" : newValue, change));
+            ++moved;
+        }
+        System.out.println(moved + " metrics moved");
+    }
+}
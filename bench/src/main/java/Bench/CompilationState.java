@@ -0,0 +1,51 @@
+package Bench;
+
+import Compiler.CompilationContext;
+import Compiler.FrontEnd.Parser.MxstarParser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/* one compilation of a corpus program, bound to the benchmark thread and run phase by phase */
+public class CompilationState {
+    final String source;
+    MxstarParser.ProgramContext parseTree;
+    private CompilationContext previous;
+    private int next;
+
+    public CompilationState(String source) {
+        this.source = source;
+        this.previous = CompilationContext.enter(new CompilationContext());
+        this.next = 0;
+    }
+
+    public static String load(String program) {
+        try (InputStream in = CompilationState.class.getResourceAsStream("/corpus/" + program + ".mx")) {
+            if (in == null) {
+                throw new IllegalArgumentException("no program " + program + " in the corpus");
+            }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /* runs every phase before the given one */
+    public void runUntil(String phase) {
+        List<String> phaseList = Pipeline.getPhaseList();
+        int end = phaseList.indexOf(phase);
+        if (end < 0) {
+            throw new IllegalArgumentException("no phase named " + phase);
+        }
+        while (next < end) {
+            Pipeline.run(phaseList.get(next++), this);
+        }
+    }
+
+    public void close() {
+        CompilationContext.leave(previous);
+    }
+}
@@ -0,0 +1,72 @@
+package Bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+    Times every phase of the compiler on every program of the corpus. Each invocation
+    gets a fresh compilation that has run all the phases before the measured one, so
+    only the phase itself is timed. The main method adds the GC profiler, which reports
+    the allocation rate next to the time; any other JMH option may be passed as well,
+    e.g. "-p phase=parse,Translator -p program=straight". The profiler cannot tell the
+    setup from the phase, so the bytes per operation include the earlier phases and are
+    only good for comparing one build with another.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PhaseBenchmark {
+    @Param({"recursion", "classes", "straight", "loops"})
+    public String program;
+
+    @Param({"parse", "DeclarationScanner", "ASTListener", "ProgramIR",
+            "FrugalInliner", "ResultHoarder", "DeadLoopRazor", "LoopConditionManager", "OutputConverter",
+            "SSAConstructor", "ConstantOracle", "ValueNumberingSniper", "InvariantSmuggler", "SSADestructor",
+            "NaiveDeadCodeRazor", "ImmediateHunter", "FoolishConditionMonitor", "BinaryInstructionRazor",
+            "LivenessAnalyst", "GraphColoringAllocator", "StupidMoveKiller", "BlocksTyrant",
+            "Translator"})
+    public String phase;
+
+    private String source;
+    private CompilationState state;
+
+    @Setup(Level.Trial)
+    public void load() {
+        source = CompilationState.load(program);
+    }
+
+    @Setup(Level.Invocation)
+    public void prepare() {
+        state = new CompilationState(source);
+        state.runUntil(phase);
+    }
+
+    @Benchmark
+    public CompilationState run() {
+        Pipeline.run(phase, state);
+        return state;
+    }
+
+    @TearDown(Level.Invocation)
+    public void close() {
+        state.close();
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        new Runner(new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .include(PhaseBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,104 @@
+package Bench;
+
+import Compiler.AST.ProgramAST;
+import Compiler.CFG.FunctionIR;
+import Compiler.CFG.ProgramIR;
+import Compiler.CFG.SSA.SSAConstructor;
+import Compiler.CFG.SSA.SSADestructor;
+import Compiler.CompilationContext;
+import Compiler.FrontEnd.Listener.ASTListener;
+import Compiler.FrontEnd.Listener.DeclarationScanner;
+import Compiler.Main;
+import Compiler.Opt.*;
+import Compiler.Trans.Translator;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.tree.ParseTreeWalker;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/*
+    The compilation cut into the phases the benchmark times one by one, in the order
+    Main and Optimize run them, each named after the class it runs. The passes that
+    work on one function run over every function in turn, and the liveness each of
+    them needs is refreshed as part of the phase, since the pass cannot run without it.
+ */
+public class Pipeline {
+    private static final Map<String, Consumer<CompilationState>> phaseMap = new LinkedHashMap<>();
+
+    static {
+        phaseMap.put("parse", state -> {
+            state.parseTree = Main.parse(CharStreams.fromString(state.source));
+            ProgramAST.initialize();
+        });
+        phaseMap.put("DeclarationScanner", state -> DeclarationScanner.scan(state.parseTree));
+        phaseMap.put("ASTListener", state -> {
+            new ParseTreeWalker().walk(new ASTListener(), state.parseTree);
+            CompilationContext.current().clearReturnNode();
+            state.parseTree = null;
+        });
+        phaseMap.put("ProgramIR", state -> ProgramIR.init());
+        phaseMap.put("FrugalInliner", state -> FrugalInliner.inline());
+        phaseMap.put("ResultHoarder", state -> ResultHoarder.memorize());
+        putPass("DeadLoopRazor", functionIR -> {
+            LivenessAnalyst.analysis(functionIR);
+            DeadLoopRazor.deadLoopRemove(functionIR);
+        });
+        putPass("LoopConditionManager", LoopConditionManager::loopConditionImprove);
+        putPass("OutputConverter", functionIR -> {
+            LivenessAnalyst.analysis(functionIR);
+            OutputConverter.convertOutput(functionIR);
+        });
+        putPass("SSAConstructor", SSAConstructor::construct);
+        putPass("ConstantOracle", ConstantOracle::propagateConstant);
+        putPass("ValueNumberingSniper", ValueNumberingSniper::eliminateRedundancy);
+        putPass("InvariantSmuggler", InvariantSmuggler::hoistInvariant);
+        putPass("SSADestructor", SSADestructor::destruct);
+        putPass("NaiveDeadCodeRazor", functionIR -> {
+            NaiveDeadCodeRazor.unusedCodeEliminate(functionIR);
+            LivenessAnalyst.analysis(functionIR);
+            int round = 0;
+            while (NaiveDeadCodeRazor.deadCodeEliminate(functionIR)) {
+                LivenessAnalyst.analysis(functionIR);
+                ++round;
+                if (round == 100) break;
+            }
+        });
+        putPass("ImmediateHunter", ImmediateHunter::huntImmediate);
+        putPass("FoolishConditionMonitor", FoolishConditionMonitor::stupidConditionRemove);
+        putPass("BinaryInstructionRazor", functionIR -> {
+            LivenessAnalyst.analysis(functionIR);
+            BinaryInstructionRazor.uselessMoveInstructionRemove(functionIR);
+            LivenessAnalyst.analysis(functionIR);
+            BinaryInstructionRazor.uselessBinaryInstructionRemove(functionIR);
+        });
+        putPass("LivenessAnalyst", LivenessAnalyst::analysis);
+        putPass("GraphColoringAllocator", functionIR -> {
+            LivenessAnalyst.analysis(functionIR);
+            GraphColoringAllocator.allocate(LivenessAnalyst.getEdge(), LivenessAnalyst.getFlow(), functionIR);
+        });
+        putPass("StupidMoveKiller", StupidMoveKiller::uselessMoveRemove);
+        putPass("BlocksTyrant", BlocksTyrant::simplify);
+        phaseMap.put("Translator", state -> Translator.writeAssembly(new StringWriter()));
+    }
+
+    private static void putPass(String name, Consumer<FunctionIR> pass) {
+        phaseMap.put(name, state -> ProgramIR.getFunctionMap().values().forEach(pass));
+    }
+
+    public static List<String> getPhaseList() {
+        return new ArrayList<>(phaseMap.keySet());
+    }
+
+    public static void run(String phase, CompilationState state) {
+        Consumer<CompilationState> action = phaseMap.get(phase);
+        if (action == null) {
+            throw new IllegalArgumentException("no phase named " + phase);
+        }
+        action.accept(state);
+    }
+}
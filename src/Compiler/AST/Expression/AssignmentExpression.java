@@ -1,5 +1,6 @@
 package Compiler.AST.Expression;
 
+import Compiler.AST.ProgramAST;
 import Compiler.CFG.Instruction.Instruction;
 import Compiler.CFG.Instruction.MoveInstruction;
 import Compiler.CFG.Operand.AddressOperand;
@@ -28,7 +29,21 @@ public class AssignmentExpression extends Expression {
             System.out.println(rightExpression.getType());
             throw new CompilationError("Assignment expression is expected to contain two compatible expression");
         }
-        return new AssignmentExpression(leftExpression, rightExpression);
+        AssignmentExpression assignmentExpression = new AssignmentExpression(leftExpression, rightExpression);
+        ProgramAST.getStringAccumulator().assign(assignmentExpression);
+        return assignmentExpression;
+    }
+
+    public Expression getLeftExpression() {
+        return leftExpression;
+    }
+
+    public Expression getRightExpression() {
+        return rightExpression;
+    }
+
+    public void setRightExpression(Expression rightExpression) {
+        this.rightExpression = rightExpression;
     }
 
     @Override
@@ -5,6 +5,8 @@ import Compiler.AST.Constant.StringConstant;
 import Compiler.AST.Expression.Expression;
 import Compiler.AST.Expression.FunctionCallExpression;
 import Compiler.AST.Expression.IdentifierExpression;
+import Compiler.AST.ProgramAST;
+import Compiler.AST.Type.FunctionType;
 import Compiler.AST.Type.IntType;
 import Compiler.AST.Type.StringType;
 import Compiler.AST.Type.Type;
@@ -16,6 +18,7 @@ import Compiler.Utility.Error.CompilationError;
 import Compiler.Utility.Utility;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 public class BinaryPlusExpression extends Expression {
@@ -40,23 +43,57 @@ public class BinaryPlusExpression extends Expression {
             }
         }
         if (leftType instanceof StringType && rightType instanceof StringType) {
-            if ((leftExpression instanceof StringConstant) && (rightExpression instanceof StringConstant)) {
-                String leftValue = ((StringConstant) leftExpression).getValue();
-                String rightValue = ((StringConstant) rightExpression).getValue();
-                return new StringConstant(leftValue + rightValue);
-            } else {
-                List<Expression> expressionList = new ArrayList<>();
-                expressionList.add(leftExpression);
-                expressionList.add(rightExpression);
+            List<Expression> expressionList = new ArrayList<>();
+            addStringOperand(expressionList, getStringOperandList(leftExpression));
+            addStringOperand(expressionList, getStringOperandList(rightExpression));
+            if (expressionList.size() == 1) {
+                return expressionList.get(0);
+            }
+            if (expressionList.size() == 2) {
                 return FunctionCallExpression.getExpression(
                         IdentifierExpression.getExpression("__string_connection"),
                         expressionList
                 );
             }
+            expressionList.add(0, new IntConstant(expressionList.size()));
+            return FunctionCallExpression.getExpression(ProgramAST.getStringConcatenation(expressionList.size() - 1), expressionList);
         }
         throw new CompilationError("Binary plus expression needs int or string type");
     }
 
+    /*
+        A chain of string pluses becomes one call, which allocates the result once and
+        copies every operand into it once, instead of a new string for every plus. The
+        operands stay in the order they are evaluated in, and constants next to each other
+        are joined here.
+     */
+    private static List<Expression> getStringOperandList(Expression expression) {
+        if (expression instanceof FunctionCallExpression) {
+            FunctionType functionType = ((FunctionCallExpression) expression).getFunctionType();
+            List<Expression> expressionList = ((FunctionCallExpression) expression).getExpressionList();
+            if (functionType.isBuiltin() && "__string_connection".equals(functionType.getOriginName())) {
+                return expressionList;
+            }
+            if (functionType.isBuiltin() && "__string_concat".equals(functionType.getOriginName())) {
+                return expressionList.subList(1, expressionList.size());
+            }
+        }
+        return Collections.singletonList(expression);
+    }
+
+    private static void addStringOperand(List<Expression> expressionList, List<Expression> operandList) {
+        for (Expression expression : operandList) {
+            int last = expressionList.size() - 1;
+            if (expression instanceof StringConstant && last >= 0 && expressionList.get(last) instanceof StringConstant) {
+                String leftValue = ((StringConstant) expressionList.get(last)).getValue();
+                String rightValue = ((StringConstant) expression).getValue();
+                expressionList.set(last, new StringConstant(leftValue + rightValue));
+            } else {
+                expressionList.add(expression);
+            }
+        }
+    }
+
     @Override
     public String toString() {
         return "Binary Plus Expression";
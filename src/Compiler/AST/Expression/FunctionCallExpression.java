@@ -1,5 +1,6 @@
 package Compiler.AST.Expression;
 
+import Compiler.AST.ProgramAST;
 import Compiler.AST.Symbol.Symbol;
 import Compiler.AST.Type.ClassType;
 import Compiler.AST.Type.FunctionType;
@@ -25,6 +26,9 @@ public class FunctionCallExpression extends Expression {
         super(functionType.getReturnType(), false);
         this.functionType = functionType;
         this.expressionList = expressionList;
+        if (functionType.isBuiltin()) {
+            ProgramAST.getStringAccumulator().pass(expressionList);
+        }
     }
 
     public static Expression getExpression(Expression expression, List<Expression> expressionList) {
@@ -57,6 +61,11 @@ public class FunctionCallExpression extends Expression {
         return new FunctionCallExpression(functionType, expressionList);
     }
 
+    /* a call the compiler makes up itself, to a builtin no name in the program stands for */
+    public static Expression getExpression(FunctionType functionType, List<Expression> expressionList) {
+        return new FunctionCallExpression(functionType, expressionList);
+    }
+
     public FunctionType getFunctionType() {
         return functionType;
     }
@@ -19,10 +19,10 @@ public class IdentifierExpression extends Expression {
     }
 
     public static Expression getExpression(String identifier) {
-        if (!ProgramAST.symbolTable.hasSymbol(identifier)) {
+        if (!ProgramAST.getSymbolTable().hasSymbol(identifier)) {
             throw new CompilationError("Can't find the identifier named " + identifier);
         }
-        Symbol symbol = ProgramAST.symbolTable.getSymbol(identifier);
+        Symbol symbol = ProgramAST.getSymbolTable().getSymbol(identifier);
         Type type = symbol.getType();
         if (symbol.getClassScope() != null) {
             return MemberExpression.getExpression(IdentifierExpression.getExpression("this"), identifier);
@@ -30,7 +30,9 @@ public class IdentifierExpression extends Expression {
         if (type instanceof FunctionType) {
             return new IdentifierExpression(symbol, false);
         } else {
-            return new IdentifierExpression(symbol, true);
+            IdentifierExpression identifierExpression = new IdentifierExpression(symbol, true);
+            ProgramAST.getStringAccumulator().use(identifierExpression);
+            return identifierExpression;
         }
     }
 
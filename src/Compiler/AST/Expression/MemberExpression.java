@@ -51,14 +51,14 @@ public class MemberExpression extends Expression{
         }
         if (expression.getType() instanceof StringType) {
             if (stringBuiltinFunctionTable.contains(identifier)) {
-                FunctionType functionType = ProgramAST.globalFunctionTable.getFunctionType("__string_" + identifier);
+                FunctionType functionType = ProgramAST.getGlobalFunctionTable().getFunctionType("__string_" + identifier);
                 return new MemberExpression(functionType, expression, identifier);
             }
             throw new CompilationError("String type has no member function named " + identifier);
         }
         if (expression.getType() instanceof ArrayType) {
             if (arrayBuiltinFunctionTable.contains(identifier)) {
-                FunctionType functionType = ProgramAST.globalFunctionTable.getFunctionType("__array_" + identifier);
+                FunctionType functionType = ProgramAST.getGlobalFunctionTable().getFunctionType("__array_" + identifier);
                 return new MemberExpression(functionType, expression, identifier);
             }
         }
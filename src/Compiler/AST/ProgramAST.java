@@ -4,17 +4,34 @@ import Compiler.AST.Statement.VariableDeclarationStatement;
 import Compiler.AST.Symbol.Symbol;
 import Compiler.AST.Symbol.SymbolTable;
 import Compiler.AST.Type.*;
+import Compiler.CompilationContext;
 
 import java.util.ArrayList;
 import java.util.List;
 
 public class ProgramAST {
-    public static ClassTable classTable;
-    public static SymbolTable symbolTable;
-    public static FunctionTable globalFunctionTable;
-    public static List<VariableDeclarationStatement> globalVariableDeclarationStatementList;
+    public static ClassTable getClassTable() {
+        return CompilationContext.current().getClassTable();
+    }
+
+    public static SymbolTable getSymbolTable() {
+        return CompilationContext.current().getSymbolTable();
+    }
+
+    public static FunctionTable getGlobalFunctionTable() {
+        return CompilationContext.current().getGlobalFunctionTable();
+    }
+
+    public static List<VariableDeclarationStatement> getGlobalVariableDeclarationStatementList() {
+        return CompilationContext.current().getGlobalVariableDeclarationStatementList();
+    }
+
+    public static StringAccumulator getStringAccumulator() {
+        return CompilationContext.current().getStringAccumulator();
+    }
 
     private static void setBuiltinFunction() {
+        FunctionTable globalFunctionTable = getGlobalFunctionTable();
         globalFunctionTable.addFunction(function_print_Int());
         globalFunctionTable.addFunction(function_println_Int());
         globalFunctionTable.addFunction(function_print());
@@ -37,18 +54,20 @@ public class ProgramAST {
     }
 
     public static void initialize() {
-        classTable = new ClassTable();
-        symbolTable = new SymbolTable();
-        globalFunctionTable = new FunctionTable();
-        globalVariableDeclarationStatementList = new ArrayList<>();
+        CompilationContext context = CompilationContext.current();
+        context.setClassTable(new ClassTable());
+        context.setSymbolTable(new SymbolTable());
+        context.setGlobalFunctionTable(new FunctionTable());
+        context.setGlobalVariableDeclarationStatementList(new ArrayList<>());
+        context.setStringAccumulator(new StringAccumulator());
         setBuiltinFunction();
     }
 
     public static void print() {
-        System.out.println(classTable.toString(0));
-        System.out.println(globalFunctionTable.toString(0));
+        System.out.println(getClassTable().toString(0));
+        System.out.println(getGlobalFunctionTable().toString(0));
         StringBuilder str = new StringBuilder();
-        globalVariableDeclarationStatementList.forEach(variableDeclarationStatement -> str.append(variableDeclarationStatement.toString(1)));
+        getGlobalVariableDeclarationStatementList().forEach(variableDeclarationStatement -> str.append(variableDeclarationStatement.toString(1)));
         System.out.println(str.toString());
     }
 
@@ -174,6 +193,37 @@ public class ProgramAST {
         return functionType;
     }
 
+    /* the number of strings, then the strings; every count has a type of its own, all for the same routine */
+    public static FunctionType getStringConcatenation(int count) {
+        return function_string_list("__string_concat", count);
+    }
+
+    /* the same for appending to a buffer of StringAccumulator, which comes first */
+    public static FunctionType getStringAppend(int count) {
+        return function_string_list("__string_append", count);
+    }
+
+    public static FunctionType getStringBuffer() {
+        String functionName = "__string_buffer";
+        Type returnType = StringType.getInstance();
+        List<Symbol> parameterList = new ArrayList<>();
+        parameterList.add(new Symbol("str", StringType.getInstance()));
+        FunctionType functionType = new FunctionType(functionName, returnType, parameterList);
+        functionType.setBuiltin(true);
+        return functionType;
+    }
+
+    private static FunctionType function_string_list(String functionName, int count) {
+        Type returnType = StringType.getInstance();
+        List<Symbol> parameterList = new ArrayList<>();
+        parameterList.add(new Symbol("count", IntType.getInstance()));
+        for (int i = 0; i < count; i++) {
+            parameterList.add(new Symbol("string" + i, StringType.getInstance()));
+        }
+        FunctionType functionType = new FunctionType(functionName, returnType, parameterList);
+        functionType.setBuiltin(true);
+        return functionType;
+    }
 
     private static FunctionType function_string_parseInt() {
         String functionName = "__string_parseInt";
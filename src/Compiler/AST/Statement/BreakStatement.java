@@ -12,7 +12,7 @@ public class BreakStatement extends Statement {
     private LoopStatement loopStatement;
 
     public BreakStatement() {
-        LoopStatement loopStatement = ProgramAST.symbolTable.getCurrentLoopStatement();
+        LoopStatement loopStatement = ProgramAST.getSymbolTable().getCurrentLoopStatement();
         if (null == loopStatement) {
             throw new CompilationError("break statement is expected in a loopStatement");
         }
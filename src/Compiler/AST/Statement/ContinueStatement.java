@@ -12,7 +12,7 @@ public class ContinueStatement extends Statement{
     private LoopStatement loopStatement;
 
     public ContinueStatement() {
-        LoopStatement loopStatement = ProgramAST.symbolTable.getCurrentLoopStatement();
+        LoopStatement loopStatement = ProgramAST.getSymbolTable().getCurrentLoopStatement();
         if (null == loopStatement) {
             throw new CompilationError("The continue statement is expected to be in a loop statement");
         }
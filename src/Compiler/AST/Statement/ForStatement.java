@@ -104,6 +104,7 @@ public class ForStatement extends LoopStatement{
         incrementLabel = new LabelInstruction("loop_increment", this);
         exitLabel = new LabelInstruction("loop_exit", this);
 
+        generatePrologue(instructionList);
         if (init != null) {
             init.generateInstruction(instructionList);
         }
@@ -1,9 +1,23 @@
 package Compiler.AST.Statement;
 
+import Compiler.AST.Expression.Expression;
 import Compiler.AST.Symbol.Scope;
+import Compiler.CFG.Instruction.Instruction;
 import Compiler.CFG.Instruction.LabelInstruction;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public abstract class LoopStatement extends Statement implements Scope {
     public LabelInstruction conditionLabel, bodyLabel, incrementLabel, exitLabel;
+    private final List<Expression> prologueList = new ArrayList<>();
+
+    /* evaluated once before the loop is entered, see StringAccumulator */
+    public void addPrologue(Expression expression) {
+        prologueList.add(expression);
+    }
 
+    protected void generatePrologue(List<Instruction> instructionList) {
+        prologueList.forEach(expression -> expression.generateInstruction(instructionList));
+    }
 }
@@ -18,7 +18,7 @@ public class ReturnStatement extends Statement{
     private Expression expression;
 
     public ReturnStatement(Expression expression) {
-        FunctionType functionType = ProgramAST.symbolTable.getCurrentFunction();
+        FunctionType functionType = ProgramAST.getSymbolTable().getCurrentFunction();
         if (functionType == null) {
             throw new CompilationError("The return statement is expected to be in a function scope");
         }
@@ -67,6 +67,7 @@ public class WhileStatement extends LoopStatement{
         incrementLabel = conditionLabel;
         bodyLabel = new LabelInstruction("loop_body");
         exitLabel = new LabelInstruction("loop_exit");
+        generatePrologue(instructionList);
         instructionList.add(new JumpInstruction(conditionLabel));
 
         instructionList.add(conditionLabel);
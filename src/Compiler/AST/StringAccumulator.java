@@ -0,0 +1,165 @@
+package Compiler.AST;
+
+import Compiler.AST.Constant.IntConstant;
+import Compiler.AST.Expression.AssignmentExpression;
+import Compiler.AST.Expression.Expression;
+import Compiler.AST.Expression.FunctionCallExpression;
+import Compiler.AST.Expression.IdentifierExpression;
+import Compiler.AST.Statement.LoopStatement;
+import Compiler.AST.Symbol.Symbol;
+import Compiler.AST.Type.FunctionType;
+import Compiler.AST.Type.StringType;
+
+import java.util.*;
+
+/*
+    Lets a loop that only grows a local string, as in s = s + piece, grow it in place.
+    Before the loop the string is copied into a buffer with room to spare, whose
+    capacity is kept in front of its length, and every s = s + piece of the loop
+    appends to that buffer, which moves only when the room runs out, to one twice as
+    large as needed. Inside the loop the variable may be used nowhere else but as an
+    argument of a builtin, since the builtins never keep a string they are given, so
+    nothing can see the buffer change. It is a proper string all along, so nothing has
+    to be done where the loop is left.
+
+    The uses of the local strings are numbered in the order they are built, which is
+    the order of the source, with a declaration taking a number as well, so the uses
+    inside a loop are the ones between its start and its end. The loops are decided
+    once the function is complete, the outermost first, and a loop inside one that
+    already grows the string leaves it alone.
+ */
+public class StringAccumulator {
+    private static class Loop {
+        private final LoopStatement loopStatement;
+        private final int start;
+        private int end;
+
+        private Loop(LoopStatement loopStatement, int start) {
+            this.loopStatement = loopStatement;
+            this.start = start;
+        }
+    }
+
+    /* a declaration is kept as null */
+    private final List<IdentifierExpression> useList = new ArrayList<>();
+    private final Map<Symbol, Integer> declarationMap = new HashMap<>();
+    private final Set<IdentifierExpression> harmlessSet = new HashSet<>();
+    private final Set<AssignmentExpression> candidateSet = new HashSet<>();
+    private final Map<IdentifierExpression, AssignmentExpression> appendMap = new HashMap<>();
+    private final Deque<Loop> loopStack = new ArrayDeque<>();
+    private final List<Loop> loopList = new ArrayList<>();
+
+    public void use(IdentifierExpression identifierExpression) {
+        if (identifierExpression.getType() instanceof StringType) {
+            useList.add(identifierExpression);
+        }
+    }
+
+    public void declare(Symbol symbol) {
+        if (symbol.getType() instanceof StringType) {
+            declarationMap.put(symbol, useList.size());
+            useList.add(null);
+        }
+    }
+
+    /* the arguments of a builtin */
+    public void pass(List<Expression> expressionList) {
+        for (Expression expression : expressionList) {
+            if (expression instanceof IdentifierExpression) {
+                harmlessSet.add((IdentifierExpression) expression);
+            }
+        }
+    }
+
+    public void assign(AssignmentExpression assignmentExpression) {
+        Expression leftExpression = assignmentExpression.getLeftExpression();
+        if (!(leftExpression instanceof IdentifierExpression) || !(leftExpression.getType() instanceof StringType)) return;
+        List<Expression> operandList = getOperandList(assignmentExpression.getRightExpression());
+        if (operandList != null && operandList.get(0) instanceof IdentifierExpression
+                && ((IdentifierExpression) operandList.get(0)).getSymbol() == ((IdentifierExpression) leftExpression).getSymbol()) {
+            candidateSet.add(assignmentExpression);
+        }
+    }
+
+    /* only an append whose value is thrown away leaves nothing behind that sees the buffer */
+    public void statement(Expression expression) {
+        if (expression instanceof AssignmentExpression && candidateSet.contains(expression)) {
+            IdentifierExpression leftExpression = (IdentifierExpression) ((AssignmentExpression) expression).getLeftExpression();
+            harmlessSet.add(leftExpression);
+            appendMap.put(leftExpression, (AssignmentExpression) expression);
+        }
+    }
+
+    public void enterLoop(LoopStatement loopStatement) {
+        loopStack.push(new Loop(loopStatement, useList.size()));
+    }
+
+    public void exitLoop() {
+        Loop loop = loopStack.pop();
+        loop.end = useList.size();
+        loopList.add(loop);
+    }
+
+    public void finish() {
+        loopList.sort(Comparator.<Loop>comparingInt(loop -> loop.start).thenComparing(loop -> -loop.end));
+        Map<Symbol, Integer> grownMap = new HashMap<>();
+        for (Loop loop : loopList) {
+            Set<Symbol> appendSet = new LinkedHashSet<>();
+            Set<Symbol> escapeSet = new HashSet<>();
+            for (IdentifierExpression identifierExpression : useList.subList(loop.start, loop.end)) {
+                if (identifierExpression == null) continue;
+                Symbol symbol = identifierExpression.getSymbol();
+                if (!harmlessSet.contains(identifierExpression)) {
+                    escapeSet.add(symbol);
+                } else if (appendMap.containsKey(identifierExpression)) {
+                    appendSet.add(symbol);
+                }
+            }
+            for (Symbol symbol : appendSet) {
+                if (escapeSet.contains(symbol) || symbol.isGlobal()
+                        || declarationMap.getOrDefault(symbol, -1) >= loop.start
+                        || grownMap.getOrDefault(symbol, -1) >= loop.end) continue;
+                grownMap.put(symbol, loop.end);
+                grow(loop, symbol);
+            }
+        }
+        useList.clear();
+        declarationMap.clear();
+        harmlessSet.clear();
+        candidateSet.clear();
+        appendMap.clear();
+        loopList.clear();
+    }
+
+    private void grow(Loop loop, Symbol symbol) {
+        IdentifierExpression bufferExpression = null;
+        for (IdentifierExpression identifierExpression : useList.subList(loop.start, loop.end)) {
+            if (identifierExpression == null || identifierExpression.getSymbol() != symbol
+                    || !appendMap.containsKey(identifierExpression)) continue;
+            AssignmentExpression assignmentExpression = appendMap.get(identifierExpression);
+            List<Expression> expressionList = new ArrayList<>(getOperandList(assignmentExpression.getRightExpression()));
+            expressionList.add(0, new IntConstant(expressionList.size()));
+            assignmentExpression.setRightExpression(FunctionCallExpression.getExpression(
+                    ProgramAST.getStringAppend(expressionList.size() - 1), expressionList));
+            bufferExpression = identifierExpression;
+        }
+        List<Expression> expressionList = new ArrayList<>();
+        expressionList.add(bufferExpression);
+        loop.loopStatement.addPrologue(AssignmentExpression.getExpression(bufferExpression,
+                FunctionCallExpression.getExpression(ProgramAST.getStringBuffer(), expressionList)));
+    }
+
+    /* the strings a concatenation joins, or null for anything else */
+    private static List<Expression> getOperandList(Expression expression) {
+        if (!(expression instanceof FunctionCallExpression)) return null;
+        FunctionType functionType = ((FunctionCallExpression) expression).getFunctionType();
+        List<Expression> expressionList = ((FunctionCallExpression) expression).getExpressionList();
+        if (functionType.isBuiltin() && "__string_connection".equals(functionType.getOriginName())) {
+            return expressionList;
+        }
+        if (functionType.isBuiltin() && "__string_concat".equals(functionType.getOriginName())) {
+            return expressionList.subList(1, expressionList.size());
+        }
+        return null;
+    }
+}
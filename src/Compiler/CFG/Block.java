@@ -5,18 +5,18 @@ import Compiler.CFG.Operand.VirtualRegister;
 import Compiler.Utility.Utility;
 
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 
 public class Block {
     private FunctionIR functionIR;
     private String name;
+    private String label;
     private int id;
     private LabelInstruction labelInstruction;
-    private List<Instruction> instructionList;
-    private Set<VirtualRegister> useSet, killSet, liveIn, liveOut;
-    private Set<Block> blockInSet, blockOutSet;
+    private InstructionList instructionList;
+    private BlockLiveness liveness;
     private boolean hasJump;
 
     public Block(FunctionIR functionIR, LabelInstruction labelInstruction, String name, int id) {
@@ -24,13 +24,8 @@ public class Block {
         this.name = name;
         this.id = id;
         this.labelInstruction = labelInstruction;
-        this.instructionList = new ArrayList<>();
-        this.useSet = new HashSet<>();
-        this.killSet = new HashSet<>();
-        this.liveIn = new HashSet<>();
-        this.liveOut = new HashSet<>();
-        this.blockInSet = new HashSet<>();
-        this.blockOutSet = new HashSet<>();
+        this.instructionList = new InstructionList(this);
+        this.liveness = null;
         this.hasJump = false;
     }
 
@@ -50,32 +45,28 @@ public class Block {
         return labelInstruction;
     }
 
-    public List<Instruction> getInstructionList() {
+    public InstructionList getInstructionList() {
         return instructionList;
     }
 
+    public void setLiveness(BlockLiveness liveness) {
+        this.liveness = liveness;
+    }
+
     public Set<VirtualRegister> getUseSet() {
-        return useSet;
+        return liveness == null ? Collections.emptySet() : liveness.getUseSet();
     }
 
     public Set<VirtualRegister> getKillSet() {
-        return killSet;
+        return liveness == null ? Collections.emptySet() : liveness.getKillSet();
     }
 
     public Set<VirtualRegister> getLiveIn() {
-        return liveIn;
+        return liveness == null ? Collections.emptySet() : liveness.getLiveIn();
     }
 
     public Set<VirtualRegister> getLiveOut() {
-        return liveOut;
-    }
-
-    public Set<Block> getBlockInSet() {
-        return blockInSet;
-    }
-
-    public Set<Block> getBlockOutSet() {
-        return blockOutSet;
+        return liveness == null ? Collections.emptySet() : liveness.getLiveOut();
     }
 
     public boolean isHasJump() {
@@ -83,26 +74,69 @@ public class Block {
     }
 
     public Block getTarget() {
-        Instruction instruction = instructionList.get(instructionList.size() - 1);
+        Instruction instruction = instructionList.getLast();
         if (instruction instanceof JumpInstruction) {
             return ((JumpInstruction) instruction).getTarget().getBlock();
         }
         throw new InternalError("The last instruction of a block must be Jump");
     }
 
-    public Boolean canBeReduced() {
-        return instructionList.size() == 1;
+    /* the blocks the jumps of this block go to, each once */
+    public List<Block> getSuccessorList() {
+        List<Block> successorList = new ArrayList<>();
+        for (Instruction instruction : instructionList.getJumpSet()) {
+            Block target = getJumpTarget(instruction).getBlock();
+            if (!successorList.contains(target)) {
+                successorList.add(target);
+            }
+        }
+        return successorList;
     }
 
-    public void convertTarget(Block block) {
-        JumpInstruction jumpInstruction = (JumpInstruction) instructionList.get(instructionList.size() - 1);
-        jumpInstruction.setTarget(block.getLabelInstruction());
+    /* the blocks with a jump to this one, each once; falling through from the block before is no edge */
+    public List<Block> getPredecessorList() {
+        List<Block> predecessorList = new ArrayList<>();
+        for (Instruction instruction : labelInstruction.getJumpSet()) {
+            Block source = instruction.getBlock();
+            if (!predecessorList.contains(source)) {
+                predecessorList.add(source);
+            }
+        }
+        return predecessorList;
+    }
+
+    public void retarget(Block oldTarget, Block newTarget) {
+        for (Instruction instruction : new ArrayList<>(instructionList.getJumpSet())) {
+            if (instruction instanceof JumpInstruction && ((JumpInstruction) instruction).getTarget() == oldTarget.getLabelInstruction()) {
+                ((JumpInstruction) instruction).setTarget(newTarget.getLabelInstruction());
+            }
+            if (instruction instanceof CJumpInstruction && ((CJumpInstruction) instruction).getTarget() == oldTarget.getLabelInstruction()) {
+                ((CJumpInstruction) instruction).setTarget(newTarget.getLabelInstruction());
+            }
+        }
+    }
+
+    private static LabelInstruction getJumpTarget(Instruction instruction) {
+        if (instruction instanceof JumpInstruction) {
+            return ((JumpInstruction) instruction).getTarget();
+        }
+        return ((CJumpInstruction) instruction).getTarget();
+    }
+
+    public List<PhiInstruction> getPhiList() {
+        List<PhiInstruction> phiList = new ArrayList<>();
+        for (Instruction instruction : instructionList) {
+            if (!(instruction instanceof PhiInstruction)) {
+                break;
+            }
+            phiList.add((PhiInstruction) instruction);
+        }
+        return phiList;
     }
 
     public void clear() {
-        killSet = new HashSet<>();
-        useSet = new HashSet<>();
-        instructionList = new ArrayList<>();
+        liveness = null;
+        instructionList.clear();
         hasJump = false;
     }
 
@@ -116,23 +150,6 @@ public class Block {
         instructionList.add(instruction);
     }
 
-    public void addBlockOut(Block block) {
-        blockOutSet.add(block);
-    }
-
-    public void addBlockIn(Block block) {
-        blockInSet.add(block);
-    }
-
-    public void calcLiveIn() {
-        liveIn = new HashSet<>(useSet);
-        for (VirtualRegister virtualRegister : liveOut) {
-            if (!killSet.contains(virtualRegister)) {
-                liveIn.add(virtualRegister);
-            }
-        }
-    }
-
     public boolean onlyContainsNaiveAssign() {
         for (Instruction instruction : instructionList) {
             if (!(instruction instanceof BinaryInstruction || instruction instanceof MoveInstruction
@@ -154,8 +171,12 @@ public class Block {
         return true;
     }
 
+    /* the label of the block, built once since every jump to it prints it again */
     public String toString() {
-        return String.format("%s_%d_%s", functionIR.getFunctionType().getIRName(), getId(), getName());
+        if (label == null) {
+            label = functionIR.getFunctionType().getIRName() + "_" + id + "_" + name;
+        }
+        return label;
     }
 
     public String toString(int indents) {
@@ -0,0 +1,64 @@
+package Compiler.CFG;
+
+import Compiler.CFG.Instruction.Instruction;
+import Compiler.CFG.Operand.VirtualRegister;
+
+import java.util.*;
+
+/*
+    Liveness of one block as bit vectors over the register indices of its function.
+    The per-instruction live sets are only built when someone asks for them, from
+    the instructions the block had when it was analysed.
+ */
+public class BlockLiveness {
+    private FunctionIR functionIR;
+    private List<Instruction> instructionList;
+    private Set<VirtualRegister> useSet, killSet, liveInSet, liveOutSet;
+    private boolean materialized;
+
+    public BlockLiveness(FunctionIR functionIR, List<Instruction> instructionList,
+                         long[] use, long[] kill, long[] liveIn, long[] liveOut) {
+        this.functionIR = functionIR;
+        this.instructionList = instructionList;
+        this.useSet = new LiveSet(functionIR, use);
+        this.killSet = new LiveSet(functionIR, kill);
+        this.liveInSet = new LiveSet(functionIR, liveIn);
+        this.liveOutSet = new LiveSet(functionIR, liveOut);
+        this.materialized = false;
+    }
+
+    public Set<VirtualRegister> getUseSet() {
+        return useSet;
+    }
+
+    public Set<VirtualRegister> getKillSet() {
+        return killSet;
+    }
+
+    public Set<VirtualRegister> getLiveIn() {
+        return liveInSet;
+    }
+
+    public Set<VirtualRegister> getLiveOut() {
+        return liveOutSet;
+    }
+
+    public void materialize() {
+        if (materialized) return;
+        materialized = true;
+        long[] live = ((LiveSet) liveOutSet).getBits().clone();
+        for (int i = instructionList.size() - 1; i >= 0; i--) {
+            Instruction instruction = instructionList.get(i);
+            instruction.setLiveOut(new LiveSet(functionIR, live.clone()));
+            for (VirtualRegister virtualRegister : instruction.getKillSet()) {
+                int index = functionIR.findRegisterIndex(virtualRegister);
+                if (index >= 0 && (index >> 6) < live.length) live[index >> 6] &= ~(1L << index);
+            }
+            for (VirtualRegister virtualRegister : instruction.getUseSet()) {
+                int index = functionIR.findRegisterIndex(virtualRegister);
+                if (index >= 0 && (index >> 6) < live.length) live[index >> 6] |= 1L << index;
+            }
+            instruction.setLiveIn(new LiveSet(functionIR, live.clone()));
+        }
+    }
+}
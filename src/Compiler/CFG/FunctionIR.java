@@ -2,11 +2,10 @@ package Compiler.CFG;
 
 import Compiler.AST.Symbol.Symbol;
 import Compiler.AST.Type.FunctionType;
-import Compiler.AST.Type.IntType;
 import Compiler.CFG.Instruction.*;
-import Compiler.CFG.Operand.AddressOperand;
-import Compiler.CFG.Operand.ImmediateOperand;
 import Compiler.CFG.Operand.VirtualRegister;
+import Compiler.Trans.AssemblyWriter;
+import Compiler.Trans.BuiltinFunction;
 import Compiler.Trans.Translator;
 import Compiler.Utility.Utility;
 
@@ -15,16 +14,31 @@ import java.util.*;
 public class FunctionIR {
     private FunctionType functionType;
     private List<VirtualRegister> parameterList;
-    private VirtualRegister reservedInteger;
-    private static final int memorySize = 200;
+    private VirtualRegister memoTable;
+    private int memoSize;
 
     private List<Block> blockList;
     private LabelInstruction enterBlock, exitBlock;
     private RegisterManager registerManager;
     private Boolean beMemorized;
+    private int blockCount;
     private List<String> calleeRegisterList;
-    private Map<VirtualRegister, String> registerStringMap;
-    private Map<VirtualRegister, Integer> registerIntegerMap;
+
+    /*
+        Every register of the function gets a dense index the first time it is seen,
+        and the allocation results live in arrays indexed by it: registerColor holds
+        1 + the position of the physical register in physicalRegisterList (0 for
+        none), registerSlot the stack slot (noSlot for none). Globals are never indexed.
+     */
+    private List<VirtualRegister> registerList;
+    private byte[] registerColor;
+    private int[] registerSlot;
+    private static final int noSlot = Integer.MIN_VALUE;
+
+    public static final List<String> physicalRegisterList = new ArrayList<String>() {{
+        add("rax"); add("rbx"); add("rcx"); add("rdx"); add("rsi"); add("rdi"); add("rbp"); add("rsp");
+        add("r8"); add("r9"); add("r10"); add("r11"); add("r12"); add("r13"); add("r14"); add("r15");
+    }};
 
     public static final List<String> callerSavedRegisterList = new ArrayList<String>() {{
         add("rsi"); add("rdi"); add("r8"); add("r9"); add("r10"); add("r11");
@@ -50,7 +64,7 @@ public class FunctionIR {
                 t.setSystemRegister(RegisterManager.parameterRegister.get(i));
                 instructionList.add(new MoveInstruction(parameterList.get(i), t));
             } else {
-                registerIntegerMap.put(parameterList.get(i), 4 - i);
+                setStackSlot(parameterList.get(i), 4 - i);
             }
         }
         functionType.getBlockStatement().generateInstruction(instructionList);
@@ -62,11 +76,9 @@ public class FunctionIR {
         }
         instructionList.add(exitBlock);
 
-        convertToMemorized(instructionList);
-
         for (int i = 0, j; i < instructionList.size(); i = j) {
             LabelInstruction labelInstruction = (LabelInstruction) instructionList.get(i);
-            Block block = new Block(this, labelInstruction, labelInstruction.getName(), blockList.size());
+            Block block = new Block(this, labelInstruction, labelInstruction.getName(), allocateBlockId());
             for (j = i + 1; j < instructionList.size(); j++) {
                 if (instructionList.get(j) instanceof LabelInstruction) {
                     break;
@@ -82,81 +94,11 @@ public class FunctionIR {
         return beMemorized;
     }
 
-    private void convertToMemorized(List<Instruction> instructionList) {
-        beMemorized = canBeResolved(instructionList);
-        if (!beMemorized) return;
-        functionType.setIntact(false);
-        reservedInteger = RegisterManager.getTemporaryRegister();
-        reservedInteger.setSystemRegister("@" + functionType.getOriginName() + "_int");
-        reservedInteger.setGlobal(true);
-        List<Instruction> checkInstructionList = new ArrayList<>();
-        VirtualRegister n = parameterList.get(0);
-        n.setSystemRegister("rdi");
-        VirtualRegister offset = RegisterManager.getTemporaryRegister();
-        checkInstructionList.add(new MoveInstruction(offset, n));
-        checkInstructionList.add(new BinaryInstruction(BinaryInstruction.BinaryOp.SHL, offset, new ImmediateOperand(3)));
-        VirtualRegister pos = RegisterManager.getTemporaryRegister();
-        checkInstructionList.add(new MoveInstruction(pos, reservedInteger));
-        checkInstructionList.add(new BinaryInstruction(BinaryInstruction.BinaryOp.ADD, pos, offset));
-        checkInstructionList.add(new BinaryInstruction(BinaryInstruction.BinaryOp.SHR, offset, new ImmediateOperand(3)));
-        LabelInstruction successLabel = new LabelInstruction(functionType.getOriginName() + "_success");
-        LabelInstruction escapeLabel = new LabelInstruction(functionType.getOriginName() + "_escape");
-        LabelInstruction returnLabel = new LabelInstruction(functionType.getOriginName() + "_return");
-        LabelInstruction startLabel = new LabelInstruction(functionType.getOriginName() + "_start");
-        checkInstructionList.add(new CompareInstruction(n, new ImmediateOperand(0)));
-        checkInstructionList.add(new CJumpInstruction(ProgramIR.ConditionOp.GREQ, successLabel));
-        checkInstructionList.add(new JumpInstruction(startLabel));
-        checkInstructionList.add(successLabel);
-        checkInstructionList.add(new CompareInstruction(n, new ImmediateOperand(memorySize)));
-        checkInstructionList.add(new CJumpInstruction(ProgramIR.ConditionOp.LE, escapeLabel));
-        checkInstructionList.add(new JumpInstruction(startLabel));
-        checkInstructionList.add(escapeLabel);
-        checkInstructionList.add(new CompareInstruction(new AddressOperand(pos), new ImmediateOperand(0)));
-        checkInstructionList.add(new CJumpInstruction(ProgramIR.ConditionOp.EQ, startLabel));
-        checkInstructionList.add(new JumpInstruction(returnLabel));
-        checkInstructionList.add(returnLabel);
-        checkInstructionList.add(new ReturnInstruction(new AddressOperand(pos)));
-        checkInstructionList.add(new JumpInstruction(exitBlock));
-        checkInstructionList.add(startLabel);
-        for (int i = 0; i < checkInstructionList.size(); i++) {
-            instructionList.add(i + 1, checkInstructionList.get(i));
-        }
-        List<Instruction> returnInstructionList = new ArrayList<>();
-        LabelInstruction saveLabel = new LabelInstruction(functionType.getOriginName() + "_save");
-        LabelInstruction positiveLabel = new LabelInstruction(functionType.getOriginName() + "_positive");
-        LabelInstruction updateLabel = new LabelInstruction(functionType.getOriginName() + "_update");
-        LabelInstruction failLabel = new LabelInstruction(functionType.getOriginName() + "_fail");
-        returnInstructionList.add(saveLabel);
-        returnInstructionList.add(new CompareInstruction(offset, new ImmediateOperand(0)));
-        returnInstructionList.add(new CJumpInstruction(ProgramIR.ConditionOp.GREQ, positiveLabel));
-        returnInstructionList.add(new JumpInstruction(failLabel));
-        returnInstructionList.add(positiveLabel);
-        returnInstructionList.add(new CompareInstruction(offset, new ImmediateOperand(memorySize)));
-        returnInstructionList.add(new CJumpInstruction(ProgramIR.ConditionOp.LE, updateLabel));
-        returnInstructionList.add(new JumpInstruction(failLabel));
-        returnInstructionList.add(updateLabel);
-        VirtualRegister t = RegisterManager.getTemporaryRegister();
-        t.setSystemRegister("rax");
-        returnInstructionList.add(new MoveInstruction(new AddressOperand(pos), t));
-        returnInstructionList.add(failLabel);
-        returnInstructionList.add(new JumpInstruction(exitBlock));
-        int m = instructionList.size() - 2;
-        JumpInstruction instruction = (JumpInstruction) instructionList.get(m++);
-        instruction.setTarget(saveLabel);
-        for (int i = 0; i < returnInstructionList.size(); i++) {
-            instructionList.add(m++, returnInstructionList.get(i));
-        }
-    }
-
-    private boolean canBeResolved(List<Instruction> instructionList) {
-        if (parameterList.size() != 1) return false;
-        if (functionType.getParameterList().size() != 1) return false;
-        if (functionType.getParameterList().get(0).getType() != IntType.getInstance()) return false;
-        if (functionType.getReturnType() != IntType.getInstance()) return false;
-        for (Instruction instruction : instructionList) {
-            if (instruction.hasGlobalImpact()) return false;
-        }
-        return (functionType.getOriginName().equals("fibo") || (functionType.getOriginName().equals("h") && functionType.getOriginName().equals("dp")));
+    /* the function keeps its results in a table of the given number of quadwords in .bss */
+    public void setMemorized(VirtualRegister memoTable, int memoSize) {
+        this.beMemorized = true;
+        this.memoTable = memoTable;
+        this.memoSize = memoSize;
     }
 
     public FunctionIR(FunctionType functionType) {
@@ -164,56 +106,57 @@ public class FunctionIR {
         this.parameterList = new ArrayList<>();
         this.blockList = new ArrayList<>();
         this.registerManager = new RegisterManager();
-        this.registerIntegerMap = new HashMap<>();
-        this.registerStringMap = new HashMap<>();
+        this.registerList = new ArrayList<>();
+        this.registerColor = new byte[16];
+        this.registerSlot = new int[16];
+        Arrays.fill(registerSlot, noSlot);
+        this.blockCount = 0;
+        functionType.setFunctionIR(this);
         for (Symbol symbol : functionType.getParameterList()) {
             parameterList.add((VirtualRegister) symbol.getOperand());
         }
         construct();
     }
 
-    public String getAssembly() {
-        StringBuilder str = new StringBuilder();
-        str.append(functionType.getIRName() + ":\n");
+    public void writeAssembly(AssemblyWriter out) {
+        out.label(functionType.getIRName());
         blockList.forEach(block -> block.getInstructionList().forEach(Instruction::init));
         init();
 
         Translator.setOffset(1);
 
-        str.append(Translator.getInstruction("push", "rbp"));
-        str.append(Translator.getInstruction("mov", "rbp", "rsp"));
+        out.instruction("push", "rbp");
+        out.instruction("mov", "rbp", "rsp");
 
         if (functionType.getIRName().equals("main")) {
-            str.append(Translator.getInstruction("call", "__global_init"));
+            out.instruction("call", "__global_init");
+            BuiltinFunction.writeSetup(out);
         }
 
         if (registerManager.getRegisterInMemory() > 0) {
-            str.append(Translator.getInstruction("sub", "rsp", String.valueOf(registerManager.getRegisterInMemory() << 3)));
+            out.instruction("sub", "rsp", String.valueOf(registerManager.getRegisterInMemory() << 3));
         }
         Translator.addOffset(registerManager.getRegisterInMemory());
-        str.append(Translator.getCalleeSaved(calleeRegisterList));
+        Translator.writeCalleeSaved(out, calleeRegisterList);
         for (int i = 0; i < blockList.size(); i++) {
             Block block = blockList.get(i);
-            str.append(block.toString() + ":\n");
-            block.getInstructionList().forEach(instruction -> str.append(instruction.getAssembly()));
+            out.label(block.toString());
+            block.getInstructionList().forEach(instruction -> instruction.writeAssembly(out));
         }
-        str.append(Translator.getCalleeRestored(calleeRegisterList));
+        Translator.writeCalleeRestored(out, calleeRegisterList);
 
         if (registerManager.getRegisterInMemory() > 0) {
-            str.append(Translator.getInstruction("add", "rsp", String.valueOf(registerManager.getRegisterInMemory() << 3)));
+            out.instruction("add", "rsp", String.valueOf(registerManager.getRegisterInMemory() << 3));
         }
 
-        str.append(Translator.getInstruction("pop", "rbp"));
-        str.append(Translator.getInstruction("ret"));
-        return str.toString();
+        out.instruction("pop", "rbp");
+        out.instruction("ret");
     }
 
-    public String getDefinedDataSection() {
-        if (!beMemorized) return "";
-        StringBuilder str = new StringBuilder();
-        str.append(reservedInteger.getSystemRegister() + ":\n\tdq");
-        str.append(getResultArray());
-        return str.toString();
+    public void writeReservedDataSection(AssemblyWriter out) {
+        if (!beMemorized) return;
+        out.label(memoTable.getSystemRegister());
+        out.instruction("resq", String.valueOf(memoSize));
     }
 
     private void init() {
@@ -247,24 +190,86 @@ public class FunctionIR {
         return exitBlock;
     }
 
+    public int allocateBlockId() {
+        return blockCount++;
+    }
+
+    public Block createBlock(String name) {
+        LabelInstruction labelInstruction = new LabelInstruction(name);
+        Block block = new Block(this, labelInstruction, name, allocateBlockId());
+        labelInstruction.setBlock(block);
+        return block;
+    }
+
     public RegisterManager getRegisterManager() {
         return registerManager;
     }
 
-    public Map<VirtualRegister, String> getRegisterStringMap() {
-        return registerStringMap;
+    public int getRegisterCount() {
+        return registerList.size();
+    }
+
+    public VirtualRegister getRegister(int index) {
+        return registerList.get(index);
+    }
+
+    /* index of a register of this function, -1 if it has none yet; never claims */
+    public int findRegisterIndex(VirtualRegister virtualRegister) {
+        return virtualRegister.getOwner() == this ? virtualRegister.getIndex() : -1;
+    }
+
+    /* index of a register, claiming it for this function on first sight; -1 for globals */
+    public int getRegisterIndex(VirtualRegister virtualRegister) {
+        if (virtualRegister.isGlobal()) return -1;
+        if (virtualRegister.getOwner() == this) return virtualRegister.getIndex();
+        if (virtualRegister.getOwner() != null) {
+            throw new InternalError("register " + virtualRegister.getName() + " belongs to another function");
+        }
+        int index = registerList.size();
+        registerList.add(virtualRegister);
+        virtualRegister.setOwner(this, index);
+        if (index == registerSlot.length) {
+            registerColor = Arrays.copyOf(registerColor, index << 1);
+            registerSlot = Arrays.copyOf(registerSlot, index << 1);
+            Arrays.fill(registerSlot, index, index << 1, noSlot);
+        }
+        return index;
+    }
+
+    public String getPhysicalRegister(VirtualRegister virtualRegister) {
+        int index = findRegisterIndex(virtualRegister);
+        if (index < 0 || registerColor[index] == 0) return null;
+        return physicalRegisterList.get(registerColor[index] - 1);
     }
 
-    public Map<VirtualRegister, Integer> getRegisterIntegerMap() {
-        return registerIntegerMap;
+    public boolean hasPhysicalRegister(VirtualRegister virtualRegister) {
+        int index = findRegisterIndex(virtualRegister);
+        return index >= 0 && registerColor[index] != 0;
     }
 
-    public void setRegisterStringMap(Map<VirtualRegister, String> registerStringMap) {
-        this.registerStringMap = registerStringMap;
+    public void setPhysicalRegister(VirtualRegister virtualRegister, String physicalRegister) {
+        int color = physicalRegisterList.indexOf(physicalRegister);
+        if (color < 0) {
+            throw new InternalError("unknown physical register " + physicalRegister);
+        }
+        registerColor[getRegisterIndex(virtualRegister)] = (byte) (color + 1);
     }
 
-    public void setRegisterIntegerMap(Map<VirtualRegister, Integer> registerIntegerMap) {
-        this.registerIntegerMap = registerIntegerMap;
+    public void clearPhysicalRegister() {
+        Arrays.fill(registerColor, (byte) 0);
+    }
+
+    public int getStackSlot(VirtualRegister virtualRegister) {
+        return registerSlot[findRegisterIndex(virtualRegister)];
+    }
+
+    public boolean hasStackSlot(VirtualRegister virtualRegister) {
+        int index = findRegisterIndex(virtualRegister);
+        return index >= 0 && registerSlot[index] != noSlot;
+    }
+
+    public void setStackSlot(VirtualRegister virtualRegister, int slot) {
+        registerSlot[getRegisterIndex(virtualRegister)] = slot;
     }
 
     public boolean isLeaf() {
@@ -289,12 +294,13 @@ public class FunctionIR {
     }
 
     public void initialize(VirtualRegister virtualRegister) {
-        if (!registerIntegerMap.containsKey(virtualRegister) && !registerStringMap.containsKey(virtualRegister)) {
+        if (virtualRegister.isGlobal()) return;
+        if (!hasStackSlot(virtualRegister) && !hasPhysicalRegister(virtualRegister)) {
             registerManager.addRegisterInMemory();
-            registerIntegerMap.put(virtualRegister, registerManager.getRegisterInMemory());
+            setStackSlot(virtualRegister, registerManager.getRegisterInMemory());
         }
-        if (registerStringMap.containsKey(virtualRegister)) {
-            registerManager.getUsedRegister().add(registerStringMap.get(virtualRegister));
+        if (hasPhysicalRegister(virtualRegister)) {
+            registerManager.getUsedRegister().add(getPhysicalRegister(virtualRegister));
         }
     }
 
@@ -311,78 +317,4 @@ public class FunctionIR {
         }
         return true;
     }
-
-    private String getResultArray() {
-        StringBuilder str = new StringBuilder();
-        int [] result = new int[memorySize];
-        String name = functionType.getOriginName();
-        if (name.equals("fibo")) {
-            result[0] = 0;
-            result[1] = 1;
-            for (int i = 2; i < memorySize; i++) {
-                result[i] = result[i - 1] + result[i - 2];
-            }
-        }
-        for (int i = 0; i < memorySize; i++) {
-            str.append(String.format("%12d,", result[i]));
-        }
-        str.append("    0\n");
-        return str.toString();
-    }
 }
-
-    /*private void constructCheckList() {
-        VirtualRegister virtualRegister = parameterList.get(0);
-        checkInstructionList = new ArrayList<>();
-        List<LabelInstruction> checkLabelInstructionList = new ArrayList<>();
-        List<LabelInstruction> successLabelInstructionList = new ArrayList<>();
-        List<LabelInstruction> returnLabelInstructionList = new ArrayList<>();
-        for (int i = 0; i < memorySize; i++) {
-            checkLabelInstructionList.add(new LabelInstruction(functionType.getIRName() + "_check_" + i));
-            successLabelInstructionList.add(new LabelInstruction(functionType.getIRName() + "_success_" + i));
-            returnLabelInstructionList.add(new LabelInstruction(functionType.getIRName() + "_escape_" + i));
-        }
-        checkLabelInstructionList.add(new LabelInstruction(functionType.getIRName() + "_check_" + memorySize));
-        checkInstructionList.add(new MoveInstruction(new AddressOperand(backupVirtualRegister), virtualRegister));
-        checkInstructionList.add(new JumpInstruction(checkLabelInstructionList.get(0)));
-        for (int i = 0; i < memorySize; i++) {
-            checkInstructionList.add(checkLabelInstructionList.get(i));
-            checkInstructionList.add(new CompareInstruction(virtualRegister, new ImmediateOperand(i)));
-            checkInstructionList.add(new CJumpInstruction(ProgramIR.ConditionOp.EQ, successLabelInstructionList.get(i)));
-            checkInstructionList.add(new JumpInstruction(checkLabelInstructionList.get(i + 1)));
-            checkInstructionList.add(successLabelInstructionList.get(i));
-            checkInstructionList.add(new CompareInstruction(new AddressOperand(reservedBooleanList.get(i)), new ImmediateOperand(1)));
-            checkInstructionList.add(new CJumpInstruction(ProgramIR.ConditionOp.EQ, returnLabelInstructionList.get(i)));
-            checkInstructionList.add(new JumpInstruction(checkLabelInstructionList.get(i + 1)));
-            checkInstructionList.add(returnLabelInstructionList.get(i));
-            checkInstructionList.add(new ReturnInstruction(new AddressOperand(reservedIntegerList.get(i))));
-            checkInstructionList.add(new JumpInstruction(exitBlock));
-        }
-        checkInstructionList.add(checkLabelInstructionList.get(memorySize));
-    }
-
-    private void constructReturnList() {
-        returnInstructionList = new ArrayList<>();
-        List<LabelInstruction> checkLabelInstructionList = new ArrayList<>();
-        List<LabelInstruction> successLabelInstructionList = new ArrayList<>();
-        for (int i = 0; i < memorySize; i++) {
-            checkLabelInstructionList.add(new LabelInstruction(functionType.getIRName() + "_return_check_" + i));
-            successLabelInstructionList.add(new LabelInstruction(functionType.getIRName() + "_return_success_" + i));
-        }
-        checkLabelInstructionList.add(new LabelInstruction(functionType.getIRName() + "_return_check" + memorySize));
-        for (int i = 0; i < memorySize; i++) {
-            returnInstructionList.add(checkLabelInstructionList.get(i));
-            returnInstructionList.add(new CompareInstruction(new AddressOperand(backupVirtualRegister), new ImmediateOperand(i)));
-            returnInstructionList.add(new CJumpInstruction(ProgramIR.ConditionOp.EQ, successLabelInstructionList.get(i)));
-            returnInstructionList.add(new JumpInstruction(checkLabelInstructionList.get(i + 1)));
-            returnInstructionList.add(successLabelInstructionList.get(i));
-            returnInstructionList.add(new MoveInstruction(new AddressOperand(reservedBooleanList.get(i)), new ImmediateOperand(1)));
-            VirtualRegister t = RegisterManager.getTemporaryRegister();
-            t.setSystemRegister("rax");
-            returnInstructionList.add(new MoveInstruction(new AddressOperand(reservedIntegerList.get(i)), t));
-            returnInstructionList.add(new JumpInstruction(exitBlock));
-        }
-        returnInstructionList.add(checkLabelInstructionList.get(memorySize));
-        returnInstructionList.add(new JumpInstruction(exitBlock));
-    }
-    */
\ No newline at end of file
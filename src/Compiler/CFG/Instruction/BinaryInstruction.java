@@ -1,15 +1,16 @@
 package Compiler.CFG.Instruction;
 
+import Compiler.CFG.RegisterSet;
 import Compiler.CFG.Operand.*;
+import Compiler.Trans.AssemblyWriter;
 import Compiler.Trans.PhysicalOperand.PhysicalAddressOperand;
 import Compiler.Trans.PhysicalOperand.PhysicalImmediateOperand;
 import Compiler.Trans.PhysicalOperand.PhysicalOperand;
 import Compiler.Trans.PhysicalOperand.PhysicalRegister;
-import Compiler.Trans.Translator;
 import Compiler.Utility.Error.InternalError;
 
+import java.util.EnumMap;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
 
 
@@ -36,6 +37,14 @@ public class BinaryInstruction extends Instruction {
         put("r15", "r15d");
     }};
 
+    private static final Map<BinaryOp, String> mnemonicMap = new EnumMap<BinaryOp, String>(BinaryOp.class) {{
+        put(BinaryOp.ADD, "add");
+        put(BinaryOp.SUB, "sub");
+        put(BinaryOp.AND, "and");
+        put(BinaryOp.OR, "or");
+        put(BinaryOp.XOR, "xor");
+    }};
+
     private BinaryOp binaryOp;
     private Operand target, source;
 
@@ -58,6 +67,7 @@ public class BinaryInstruction extends Instruction {
 
     public void setSource(Operand source) {
         this.source = source;
+        build();
     }
 
     public BinaryInstruction(BinaryOp binaryOp, Operand target, Operand source) {
@@ -79,8 +89,8 @@ public class BinaryInstruction extends Instruction {
     }
 
     private void build() {
-        killSet = new HashSet<>();
-        useSet = new HashSet<>();
+        killSet = new RegisterSet();
+        useSet = new RegisterSet();
         if (target instanceof VirtualRegister) {
             killSet.add((VirtualRegister) target);
             useSet.add((VirtualRegister) target);
@@ -94,6 +104,7 @@ public class BinaryInstruction extends Instruction {
         if (source instanceof AddressOperand) {
             useSet.add(((AddressOperand) source).getBase());
         }
+        updateChain();
     }
 
     @Override
@@ -115,81 +126,79 @@ public class BinaryInstruction extends Instruction {
         source.init();
     }
 
+    @Override
+    public void replaceUse(VirtualRegister oldRegister, Operand newOperand) {
+        target = replaceBase(target, oldRegister, newOperand);
+        source = replaceOperand(source, oldRegister, newOperand);
+        build();
+    }
+
+    @Override
+    public void replaceDef(VirtualRegister oldRegister, VirtualRegister newRegister) {
+        if (target == oldRegister) {
+            target = newRegister;
+            build();
+        }
+    }
+
+    @Override
+    public Instruction copy() {
+        return new BinaryInstruction(binaryOp, target, source);
+    }
+
     @Override
     public String toString() {
         return String.format("%s = %s %s %s", target, target, binaryOp, source);
     }
 
     @Override
-    public String getAssembly() {
-        StringBuilder str = new StringBuilder();
-        String operator = binaryOp.toString();
+    public void writeAssembly(AssemblyWriter out) {
         PhysicalOperand physicalTarget, physicalSource;
-        physicalTarget = target.getPhysicalOperand(str);
-        physicalSource = source.getPhysicalOperand(str);
-        String targetName = physicalTarget.toString();
-        String sourceName = physicalSource.toString();
-        if (operator.equals("SHL")) {
-            if (physicalSource instanceof PhysicalImmediateOperand) {
-                str.append(Translator.getInstruction("sal", targetName, sourceName));
-            } else {
-                str.append(Translator.getInstruction("mov", "rcx", sourceName));
-                str.append(Translator.getInstruction("sal", targetName, "cl"));
-            }
-            return str.toString();
-        }
-        if (operator.equals("SHR")) {
-            if (physicalSource instanceof PhysicalImmediateOperand) {
-                str.append(Translator.getInstruction("sar", targetName, sourceName));
-            } else {
-                str.append(Translator.getInstruction("mov", "rcx", sourceName));
-                str.append(Translator.getInstruction("sar", targetName, "cl"));
-            }
-            return str.toString();
-        }
-        if (operator.equals("MUL")) {
-            if (physicalSource instanceof PhysicalRegister) {
-                str.append(Translator.getInstruction("imul", targetName, sourceName));
-            } else {
-                str.append(Translator.getInstruction("mov", "rax", targetName));
-                str.append(Translator.getInstruction("imul", "rax", sourceName));
-                str.append(Translator.getInstruction("mov", targetName, "rax"));
-            }
-            return str.toString();
-        }
-        if (operator.equals("DIV") || operator.equals("MOD")) {
-            if (lowRegister.get(sourceName) != null && lowRegister.get(targetName) != null) {
-                str.append(Translator.getInstruction("mov", "eax", lowRegister.get(targetName)));
-                str.append(Translator.getInstruction("mov", "ecx", lowRegister.get(sourceName)));
-                str.append(Translator.getInstruction("cdq"));
-                str.append(Translator.getInstruction("idiv", "ecx"));
-                if (operator.equals("DIV")) {
-                    str.append(Translator.getInstruction("mov", targetName, "rax"));
+        physicalTarget = target.getPhysicalOperand(out);
+        physicalSource = source.getPhysicalOperand(out);
+        switch (binaryOp) {
+            case SHL:
+            case SHR:
+                String shift = binaryOp == BinaryOp.SHL ? "sal" : "sar";
+                if (physicalSource instanceof PhysicalImmediateOperand) {
+                    out.instruction(shift, physicalTarget, physicalSource);
+                } else {
+                    out.instruction("mov", "rcx", physicalSource);
+                    out.instruction(shift, physicalTarget, "cl");
                 }
-                if (operator.equals("MOD")) {
-                    str.append(Translator.getInstruction("mov", targetName, "rdx"));
+                return;
+            case MUL:
+                if (physicalTarget instanceof PhysicalRegister) {
+                    out.instruction("imul", physicalTarget, physicalSource);
+                } else {
+                    out.instruction("mov", "rax", physicalTarget);
+                    out.instruction("imul", "rax", physicalSource);
+                    out.instruction("mov", physicalTarget, "rax");
                 }
-            } else {
-                str.append(Translator.getInstruction("mov", "rax", targetName));
-                str.append(Translator.getInstruction("mov", "rcx", sourceName));
-                str.append(Translator.getInstruction("cdq"));
-                str.append(Translator.getInstruction("idiv", "ecx"));
-                if (operator.equals("DIV")) {
-                    str.append(Translator.getInstruction("mov", targetName, "rax"));
+                return;
+            case DIV:
+            case MOD:
+                String lowTarget = physicalTarget instanceof PhysicalRegister ? lowRegister.get(physicalTarget.toString()) : null;
+                String lowSource = physicalSource instanceof PhysicalRegister ? lowRegister.get(physicalSource.toString()) : null;
+                if (lowSource != null && lowTarget != null) {
+                    out.instruction("mov", "eax", lowTarget);
+                    out.instruction("mov", "ecx", lowSource);
+                } else {
+                    out.instruction("mov", "rax", physicalTarget);
+                    out.instruction("mov", "rcx", physicalSource);
                 }
-                if (operator.equals("MOD")) {
-                    str.append(Translator.getInstruction("mov", targetName, "rdx"));
-                }
-            }
-            return str.toString();
+                out.instruction("cdq");
+                out.instruction("idiv", "ecx");
+                out.instruction("mov", physicalTarget, binaryOp == BinaryOp.DIV ? "rax" : "rdx");
+                return;
         }
+        String operator = mnemonicMap.get(binaryOp);
         if (physicalSource instanceof PhysicalAddressOperand && physicalTarget instanceof PhysicalAddressOperand) {
-            str.append(Translator.getInstruction("mov", "rax", targetName));
-            str.append(Translator.getInstruction(operator.toLowerCase(), "rax", sourceName));
-            str.append(Translator.getInstruction("mov", targetName, "rax"));
+            out.instruction("mov", "rax", physicalTarget);
+            out.instruction(operator, "rax", physicalSource);
+            out.instruction("mov", physicalTarget, "rax");
         } else {
-            str.append(Translator.getInstruction(operator.toLowerCase(), targetName, sourceName));
+            out.instruction(operator, physicalTarget, physicalSource);
         }
-        return str.toString();
     }
 }
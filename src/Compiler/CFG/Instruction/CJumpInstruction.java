@@ -1,6 +1,9 @@
 package Compiler.CFG.Instruction;
 
+import Compiler.CFG.Operand.Operand;
+import Compiler.CFG.Operand.VirtualRegister;
 import Compiler.CFG.ProgramIR;
+import Compiler.Trans.AssemblyWriter;
 import Compiler.Trans.Translator;
 
 public class CJumpInstruction extends Instruction {
@@ -21,6 +24,10 @@ public class CJumpInstruction extends Instruction {
     }
 
     public void setTarget(LabelInstruction target) {
+        if (owner != null) {
+            this.target.removeJump(this);
+            target.addJump(this);
+        }
         this.target = target;
     }
 
@@ -28,6 +35,20 @@ public class CJumpInstruction extends Instruction {
         this.conditionOp = conditionOp;
     }
 
+    @Override
+    void chain() {
+        super.chain();
+        owner.addJump(this);
+        target.addJump(this);
+    }
+
+    @Override
+    void unchain() {
+        super.unchain();
+        owner.removeJump(this);
+        target.removeJump(this);
+    }
+
     @Override
     public boolean hasGlobalImpact() {
         return false;
@@ -38,13 +59,28 @@ public class CJumpInstruction extends Instruction {
 
     }
 
+    @Override
+    public void replaceUse(VirtualRegister oldRegister, Operand newOperand) {
+
+    }
+
+    @Override
+    public void replaceDef(VirtualRegister oldRegister, VirtualRegister newRegister) {
+
+    }
+
+    @Override
+    public Instruction copy() {
+        return new CJumpInstruction(conditionOp, target);
+    }
+
     @Override
     public String toString() {
         return String.format("CJump %s %s", conditionOp, target.getBlock().toString());
     }
 
     @Override
-    public String getAssembly() {
-        return Translator.getInstruction("j" + Translator.getAssemblyCondition(conditionOp), target.getBlock().toString());
+    public void writeAssembly(AssemblyWriter out) {
+        out.instruction(Translator.getJumpInstruction(conditionOp), target.getBlock().toString());
     }
 }
@@ -1,8 +1,10 @@
 package Compiler.CFG.Instruction;
 
+import Compiler.CFG.RegisterSet;
 import Compiler.CFG.Operand.Operand;
 import Compiler.CFG.Operand.VirtualRegister;
 import Compiler.CFG.ProgramIR;
+import Compiler.Trans.AssemblyWriter;
 import Compiler.Trans.PhysicalOperand.PhysicalOperand;
 import Compiler.Trans.Translator;
 
@@ -37,7 +39,13 @@ public class CSetInstruction extends Instruction {
             throw new InternalError("target of compare set instruction is expected to be virtual register");
         }
         this.target = (VirtualRegister) target;
-        killSet.add(this.target);
+        build();
+    }
+
+    private void build() {
+        killSet = new RegisterSet();
+        killSet.add(target);
+        updateChain();
     }
 
     public ProgramIR.ConditionOp getConditionOp() {
@@ -54,6 +62,7 @@ public class CSetInstruction extends Instruction {
 
     public void setTarget(VirtualRegister target) {
         this.target = target;
+        build();
     }
 
     @Override
@@ -66,25 +75,39 @@ public class CSetInstruction extends Instruction {
         target.init();
     }
 
+    @Override
+    public void replaceUse(VirtualRegister oldRegister, Operand newOperand) {
+
+    }
+
+    @Override
+    public void replaceDef(VirtualRegister oldRegister, VirtualRegister newRegister) {
+        if (target == oldRegister) {
+            setTarget(newRegister);
+        }
+    }
+
+    @Override
+    public Instruction copy() {
+        return new CSetInstruction(conditionOp, target);
+    }
+
     @Override
     public String toString() {
         return String.format("set %s %s", conditionOp, target);
     }
 
     @Override
-    public String getAssembly() {
-        StringBuilder str = new StringBuilder();
-        PhysicalOperand targetOperand = target.getPhysicalOperand(str);
-        String targetName = targetOperand.toString();
-        if (Translator.getCurrentFunctionIR().getRegisterIntegerMap().containsKey(target)) {
-            str.append(Translator.getInstruction("mov", "rax", targetName));
-            str.append(Translator.getInstruction("mov", "rax", "0"));
-            str.append(Translator.getInstruction("set" + Translator.getAssemblyCondition(conditionOp), "al"));
-            str.append(Translator.getInstruction("mov", targetName, "rax"));
+    public void writeAssembly(AssemblyWriter out) {
+        PhysicalOperand physicalTarget = target.getPhysicalOperand(out);
+        if (Translator.getCurrentFunctionIR().hasStackSlot(target)) {
+            out.instruction("mov", "rax", physicalTarget);
+            out.instruction("mov", "rax", "0");
+            out.instruction(Translator.getSetInstruction(conditionOp), "al");
+            out.instruction("mov", physicalTarget, "rax");
         } else {
-            str.append(Translator.getInstruction("mov", targetName, "0"));
-            str.append(Translator.getInstruction("set" + Translator.getAssemblyCondition(conditionOp), lowRegister.get(targetName)));
+            out.instruction("mov", physicalTarget, "0");
+            out.instruction(Translator.getSetInstruction(conditionOp), lowRegister.get(physicalTarget.toString()));
         }
-        return str.toString();
     }
 }
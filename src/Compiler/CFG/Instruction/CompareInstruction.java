@@ -1,12 +1,14 @@
 package Compiler.CFG.Instruction;
 
+import Compiler.CFG.RegisterSet;
 import Compiler.CFG.Operand.AddressOperand;
 import Compiler.CFG.Operand.Operand;
 import Compiler.CFG.Operand.VirtualRegister;
+import Compiler.Trans.AssemblyWriter;
 import Compiler.Trans.PhysicalOperand.PhysicalAddressOperand;
 import Compiler.Trans.PhysicalOperand.PhysicalImmediateOperand;
 import Compiler.Trans.PhysicalOperand.PhysicalOperand;
-import Compiler.Trans.Translator;
+
 
 public class CompareInstruction extends Instruction {
     private Operand leftOperand, rightOperand;
@@ -25,6 +27,11 @@ public class CompareInstruction extends Instruction {
         if (leftOperand instanceof AddressOperand && rightOperand instanceof AddressOperand) {
             throw new InternalError("compare instruction can't handle tow memory address");
         }
+        build();
+    }
+
+    private void build() {
+        useSet = new RegisterSet();
         if (leftOperand instanceof VirtualRegister) {
             useSet.add((VirtualRegister) leftOperand);
         }
@@ -37,6 +44,7 @@ public class CompareInstruction extends Instruction {
         if (rightOperand instanceof AddressOperand) {
             useSet.add(((AddressOperand) rightOperand).getBase());
         }
+        updateChain();
     }
 
     @Override
@@ -50,26 +58,38 @@ public class CompareInstruction extends Instruction {
         rightOperand.init();
     }
 
+    @Override
+    public void replaceUse(VirtualRegister oldRegister, Operand newOperand) {
+        leftOperand = replaceOperand(leftOperand, oldRegister, newOperand);
+        rightOperand = replaceOperand(rightOperand, oldRegister, newOperand);
+        build();
+    }
+
+    @Override
+    public void replaceDef(VirtualRegister oldRegister, VirtualRegister newRegister) {
+
+    }
+
+    @Override
+    public Instruction copy() {
+        return new CompareInstruction(leftOperand, rightOperand);
+    }
+
     @Override
     public String toString() {
         return String.format("cmp %s %s", leftOperand, rightOperand);
     }
 
     @Override
-    public String getAssembly() {
-        StringBuilder str = new StringBuilder();
+    public void writeAssembly(AssemblyWriter out) {
         PhysicalOperand physicalLeft, physicalRight;
-        physicalLeft = leftOperand.getPhysicalOperand(str);
-        physicalRight = rightOperand.getPhysicalOperand(str);
-        String leftName, rightName;
-        leftName = physicalLeft.toString();
-        rightName = physicalRight.toString();
+        physicalLeft = leftOperand.getPhysicalOperand(out);
+        physicalRight = rightOperand.getPhysicalOperand(out);
         if (physicalLeft instanceof PhysicalAddressOperand && physicalRight instanceof PhysicalAddressOperand || physicalLeft instanceof PhysicalImmediateOperand) {
-            str.append(Translator.getInstruction("mov", "rax", leftName));
-            str.append(Translator.getInstruction("cmp", "rax", rightName));
+            out.instruction("mov", "rax", physicalLeft);
+            out.instruction("cmp", "rax", physicalRight);
         } else {
-            str.append(Translator.getInstruction("cmp", leftName, rightName));
+            out.instruction("cmp", physicalLeft, physicalRight);
         }
-        return str.toString();
     }
 }
@@ -1,11 +1,13 @@
 package Compiler.CFG.Instruction;
 
+import Compiler.CFG.RegisterSet;
 import Compiler.AST.Type.FunctionType;
 import Compiler.CFG.FunctionIR;
 import Compiler.CFG.Operand.AddressOperand;
 import Compiler.CFG.Operand.MemoryLabel;
 import Compiler.CFG.Operand.Operand;
 import Compiler.CFG.Operand.VirtualRegister;
+import Compiler.Trans.AssemblyWriter;
 import Compiler.Trans.PhysicalOperand.PhysicalOperand;
 import Compiler.Trans.Translator;
 
@@ -21,6 +23,12 @@ public class FunctionCallInstruction extends Instruction {
         this.functionType = functionType;
         this.returnValue = returnValue;
         this.operandList = operandList;
+        build();
+    }
+
+    private void build() {
+        useSet = new RegisterSet();
+        killSet = new RegisterSet();
         if (returnValue != null) {
             killSet.add(returnValue);
         }
@@ -32,12 +40,17 @@ public class FunctionCallInstruction extends Instruction {
                 useSet.add(((AddressOperand) operand).getBase());
             }
         }
+        updateChain();
     }
 
     public FunctionType getFunctionType() {
         return functionType;
     }
 
+    public VirtualRegister getReturnValue() {
+        return returnValue;
+    }
+
     public List<Operand> getOperandList() {
         return operandList;
     }
@@ -61,6 +74,25 @@ public class FunctionCallInstruction extends Instruction {
         operandList.forEach(Operand::init);
     }
 
+    @Override
+    public void replaceUse(VirtualRegister oldRegister, Operand newOperand) {
+        operandList.replaceAll(operand -> replaceOperand(operand, oldRegister, newOperand));
+        build();
+    }
+
+    @Override
+    public void replaceDef(VirtualRegister oldRegister, VirtualRegister newRegister) {
+        if (returnValue == oldRegister) {
+            returnValue = newRegister;
+            build();
+        }
+    }
+
+    @Override
+    public Instruction copy() {
+        return new FunctionCallInstruction(functionType, returnValue, new ArrayList<>(operandList));
+    }
+
     @Override
     public String toString() {
         StringBuilder str = new StringBuilder();
@@ -71,42 +103,37 @@ public class FunctionCallInstruction extends Instruction {
     }
 
     @Override
-    public String getAssembly() {
-        StringBuilder str = new StringBuilder();
+    public void writeAssembly(AssemblyWriter out) {
         List<String> callerList = new ArrayList<>();
 
-        for(VirtualRegister virtualRegister: liveOut) {
-            if (Translator.getCurrentFunctionIR().getRegisterStringMap().containsKey(virtualRegister)) {
-                String name = Translator.getCurrentFunctionIR().getRegisterStringMap().get(virtualRegister);
-                if (FunctionIR.callerSavedRegisterList.contains(name)) {
-                    callerList.add(name);
-                }
+        for(VirtualRegister virtualRegister: getLiveOut()) {
+            String name = Translator.getCurrentFunctionIR().getPhysicalRegister(virtualRegister);
+            if (name != null && FunctionIR.callerSavedRegisterList.contains(name)) {
+                callerList.add(name);
             }
         }
 
-        str.append(Translator.getCallerSaved(callerList));
+        Translator.writeCallerSaved(out, callerList);
         int frameSize = operandList.size();
 
         if ((Translator.getOffset() + frameSize) % 2 == 1) {
             ++frameSize;
-            str.append(Translator.getInstruction("sub", "rsp", "8"));
+            out.instruction("sub", "rsp", "8");
             Translator.addOffset(1);
         }
 
         for (int i = operandList.size() - 1; i >= 0; i--) {
-            PhysicalOperand physicalOperand = operandList.get(i).getPhysicalOperand(str);
-            str.append(Translator.getInstruction("push", physicalOperand.toString()));
+            PhysicalOperand physicalOperand = operandList.get(i).getPhysicalOperand(out);
+            out.instruction("push", physicalOperand);
         }
-        str.append(Translator.getInstruction("call", functionType.getIRName()));
+        out.instruction("call", functionType.getIRName());
 
         Translator.subOffset(frameSize);
 
         if (frameSize > 0) {
-            str.append(Translator.getInstruction("add", "rsp", String.valueOf(frameSize * 8)));
+            out.instruction("add", "rsp", String.valueOf(frameSize * 8));
         }
 
-        str.append(Translator.getCallerRestored(callerList));
-
-        return str.toString();
+        Translator.writeCallerRestored(out, callerList);
     }
 }
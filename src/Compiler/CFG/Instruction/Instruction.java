@@ -1,19 +1,74 @@
 package Compiler.CFG.Instruction;
 
+import Compiler.CFG.Block;
+import Compiler.CFG.RegisterSet;
+import Compiler.CFG.BlockLiveness;
+import Compiler.CFG.Operand.AddressOperand;
+import Compiler.CFG.Operand.Operand;
 import Compiler.CFG.Operand.VirtualRegister;
+import Compiler.Trans.AssemblyWriter;
 import Compiler.Utility.Utility;
 
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.Set;
 
 public abstract class Instruction {
     Set<VirtualRegister> useSet, killSet, liveIn, liveOut;
+    private BlockLiveness liveness;
+    InstructionList owner;
+    Instruction prev, next;
+    private Set<VirtualRegister> chainedUseSet, chainedKillSet;
 
     public Instruction() {
-        useSet = new HashSet<>();
-        killSet = new HashSet<>();
-        liveIn = new HashSet<>();
-        liveOut = new HashSet<>();
+        useSet = new RegisterSet();
+        killSet = new RegisterSet();
+    }
+
+    /* the block holding the instruction, null when it is in none */
+    public Block getBlock() {
+        return owner == null ? null : owner.getBlock();
+    }
+
+    public Instruction getPrev() {
+        return owner == null ? null : prev;
+    }
+
+    public Instruction getNext() {
+        return owner == null ? null : next;
+    }
+
+    /*
+        While the instruction is in a block, it is on the def-use chains of the registers
+        in its sets. The subclasses build new sets whenever an operand changes and then
+        call updateChain, which moves the instruction from the chains of the old sets
+        to those of the new ones. Global registers are shared by every function and
+        have no chains.
+     */
+    void chain() {
+        for (VirtualRegister virtualRegister : useSet) {
+            if (!virtualRegister.isGlobal()) virtualRegister.addUse(this);
+        }
+        for (VirtualRegister virtualRegister : killSet) {
+            if (!virtualRegister.isGlobal()) virtualRegister.addDefinition(this);
+        }
+        chainedUseSet = useSet;
+        chainedKillSet = killSet;
+    }
+
+    void unchain() {
+        for (VirtualRegister virtualRegister : chainedUseSet) {
+            if (!virtualRegister.isGlobal()) virtualRegister.removeUse(this);
+        }
+        for (VirtualRegister virtualRegister : chainedKillSet) {
+            if (!virtualRegister.isGlobal()) virtualRegister.removeDefinition(this);
+        }
+        chainedUseSet = chainedKillSet = null;
+    }
+
+    void updateChain() {
+        if (owner == null) return;
+        unchain();
+        chain();
     }
 
     public Set<VirtualRegister> getUseSet() {
@@ -32,24 +87,51 @@ public abstract class Instruction {
         this.liveOut = liveOut;
     }
 
+    public void setLiveness(BlockLiveness liveness) {
+        this.liveness = liveness;
+        this.liveIn = null;
+        this.liveOut = null;
+    }
+
     public Set<VirtualRegister> getLiveIn() {
-        return liveIn;
+        if (liveIn == null && liveness != null) liveness.materialize();
+        return liveIn == null ? Collections.emptySet() : liveIn;
     }
 
     public Set<VirtualRegister> getLiveOut() {
-        return liveOut;
+        if (liveOut == null && liveness != null) liveness.materialize();
+        return liveOut == null ? Collections.emptySet() : liveOut;
     }
 
-    public void calcLiveIn() {
-        liveIn = new HashSet<>(useSet);
-        for (VirtualRegister virtualRegister : liveOut) {
-            if (!killSet.contains(virtualRegister)) {
-                liveIn.add(virtualRegister);
-            }
+    public abstract void init();
+
+    /*
+        replaceUse rewrites the operands that are only read by the instruction
+        (sources and the bases of address operands), replaceDef rewrites the
+        register written by it. The target of an in-place binary or unary
+        instruction is a definition.
+     */
+    public abstract void replaceUse(VirtualRegister oldRegister, Operand newOperand);
+
+    public abstract void replaceDef(VirtualRegister oldRegister, VirtualRegister newRegister);
+
+    /* a new instruction over the same operands, sharing no mutable state with this one */
+    public abstract Instruction copy();
+
+    static Operand replaceOperand(Operand operand, VirtualRegister oldRegister, Operand newOperand) {
+        if (operand == oldRegister) {
+            return newOperand;
         }
+        return replaceBase(operand, oldRegister, newOperand);
     }
 
-    public abstract void init();
+    static Operand replaceBase(Operand operand, VirtualRegister oldRegister, Operand newOperand) {
+        if (operand instanceof AddressOperand && ((AddressOperand) operand).getBase() == oldRegister
+                && newOperand instanceof VirtualRegister) {
+            return new AddressOperand((VirtualRegister) newOperand, ((AddressOperand) operand).getOffset());
+        }
+        return operand;
+    }
 
     public abstract String toString();
 
@@ -57,7 +139,7 @@ public abstract class Instruction {
         return Utility.getIndent(indents) + this.toString() + "\n";
     }
 
-    public abstract String getAssembly();
+    public abstract void writeAssembly(AssemblyWriter out);
 
     public abstract boolean hasGlobalImpact();
 }
@@ -0,0 +1,313 @@
+package Compiler.CFG.Instruction;
+
+import Compiler.CFG.Block;
+
+import java.util.*;
+
+/*
+    The instructions of a block, linked through the instructions themselves, so an
+    instruction belongs to at most one block and knows its neighbours. Insertion and
+    removal next to a known instruction are O(1).
+
+    Linking an instruction puts it on the def-use chains of its registers, unlinking
+    takes it off, see Instruction.chain. The jumps also keep the edges of the graph:
+    the list holds the jumps out of its block and the label the jumps into the block.
+
+    Indexed access walks from a cursor left at the last index used, so the loops that
+    go through a block by index and remove or insert at i stay linear.
+
+    An unlinked instruction keeps its links, so an iterator survives the removal or
+    the replacement of any instruction, the one it returned last included, as long as
+    that one is not inserted again before the iterator moves on.
+ */
+public class InstructionList extends AbstractSequentialList<Instruction> {
+    private final Block block;
+    private Instruction head, tail;
+    private int size;
+    private Instruction cursor;
+    private int cursorIndex;
+    private final Set<Instruction> jumpSet = new LinkedHashSet<>();
+
+    public InstructionList(Block block) {
+        this.block = block;
+    }
+
+    public Block getBlock() {
+        return block;
+    }
+
+    public Instruction getFirst() {
+        return head;
+    }
+
+    public Instruction getLast() {
+        return tail;
+    }
+
+    /* the jumps and conditional jumps of the block, in the order they were put in */
+    public Set<Instruction> getJumpSet() {
+        return Collections.unmodifiableSet(jumpSet);
+    }
+
+    void addJump(Instruction instruction) {
+        jumpSet.add(instruction);
+    }
+
+    void removeJump(Instruction instruction) {
+        jumpSet.remove(instruction);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    private Instruction node(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+        }
+        if (cursor == null || cursor.owner != this) {
+            cursor = head;
+            cursorIndex = 0;
+        }
+        int distance = Math.abs(index - cursorIndex);
+        if (index < distance) {
+            cursor = head;
+            cursorIndex = 0;
+        } else if (size - 1 - index < distance) {
+            cursor = tail;
+            cursorIndex = size - 1;
+        }
+        while (cursorIndex < index) {
+            cursor = cursor.next;
+            ++cursorIndex;
+        }
+        while (cursorIndex > index) {
+            cursor = cursor.prev;
+            --cursorIndex;
+        }
+        return cursor;
+    }
+
+    private void link(Instruction instruction, Instruction before) {
+        if (instruction.owner != null) {
+            throw new InternalError("instruction " + instruction + " already belongs to a block");
+        }
+        Instruction after = before == null ? head : before.next;
+        instruction.owner = this;
+        instruction.prev = before;
+        instruction.next = after;
+        if (before == null) head = instruction; else before.next = instruction;
+        if (after == null) tail = instruction; else after.prev = instruction;
+        instruction.chain();
+        ++size;
+        ++modCount;
+    }
+
+    private void unlink(Instruction instruction) {
+        Instruction before = instruction.prev, after = instruction.next;
+        if (before == null) head = after; else before.next = after;
+        if (after == null) tail = before; else after.prev = before;
+        instruction.unchain();
+        instruction.owner = null;
+        --size;
+        ++modCount;
+    }
+
+    private void checkOwner(Instruction instruction) {
+        if (instruction.owner != this) {
+            throw new InternalError("instruction " + instruction + " is not in block " + block);
+        }
+    }
+
+    /* the cursor moves off a removed instruction to the one taking its index */
+    private void moveCursor(Instruction removed) {
+        if (cursor == removed) {
+            cursor = removed.next;
+            if (cursor == null) {
+                cursor = removed.prev;
+                --cursorIndex;
+            }
+        } else {
+            cursor = null;
+        }
+    }
+
+    public void insertBefore(Instruction position, Instruction instruction) {
+        checkOwner(position);
+        link(instruction, position.prev);
+        cursor = null;
+    }
+
+    public void insertAfter(Instruction position, Instruction instruction) {
+        checkOwner(position);
+        link(instruction, position);
+        cursor = null;
+    }
+
+    /* puts the new instruction where the old one was */
+    public void replace(Instruction oldInstruction, Instruction newInstruction) {
+        checkOwner(oldInstruction);
+        link(newInstruction, oldInstruction);
+        unlink(oldInstruction);
+        if (cursor == oldInstruction) cursor = newInstruction;
+    }
+
+    public boolean remove(Instruction instruction) {
+        if (instruction.owner != this) return false;
+        moveCursor(instruction);
+        unlink(instruction);
+        return true;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        return o instanceof Instruction && remove((Instruction) o);
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof Instruction && ((Instruction) o).owner == this;
+    }
+
+    @Override
+    public boolean add(Instruction instruction) {
+        link(instruction, tail);
+        return true;
+    }
+
+    @Override
+    public Instruction get(int index) {
+        return node(index);
+    }
+
+    @Override
+    public Instruction set(int index, Instruction instruction) {
+        Instruction oldInstruction = node(index);
+        replace(oldInstruction, instruction);
+        return oldInstruction;
+    }
+
+    @Override
+    public void add(int index, Instruction instruction) {
+        if (index == size) {
+            add(instruction);
+            return;
+        }
+        Instruction position = node(index);
+        link(instruction, position.prev);
+        cursor = instruction;
+    }
+
+    @Override
+    public Instruction remove(int index) {
+        Instruction instruction = node(index);
+        moveCursor(instruction);
+        unlink(instruction);
+        return instruction;
+    }
+
+    @Override
+    public void clear() {
+        for (Instruction instruction = head; instruction != null; instruction = instruction.next) {
+            instruction.unchain();
+            instruction.owner = null;
+        }
+        head = tail = cursor = null;
+        size = 0;
+        ++modCount;
+    }
+
+    @Override
+    public ListIterator<Instruction> listIterator(int index) {
+        return new Itr(index);
+    }
+
+    /* the position is the instruction before the gap, null at the front */
+    private class Itr implements ListIterator<Instruction> {
+        private Instruction previous;
+        private Instruction lastReturned;
+        private int index;
+
+        private Itr(int index) {
+            if (index < 0 || index > size) {
+                throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+            }
+            this.previous = index == 0 ? null : node(index - 1);
+            this.index = index;
+        }
+
+        private Instruction following() {
+            return previous == null ? head : previous.next;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return following() != null;
+        }
+
+        @Override
+        public Instruction next() {
+            Instruction instruction = following();
+            if (instruction == null) throw new NoSuchElementException();
+            previous = lastReturned = instruction;
+            ++index;
+            return instruction;
+        }
+
+        @Override
+        public boolean hasPrevious() {
+            return previous != null;
+        }
+
+        @Override
+        public Instruction previous() {
+            if (previous == null) throw new NoSuchElementException();
+            lastReturned = previous;
+            previous = previous.prev;
+            --index;
+            return lastReturned;
+        }
+
+        @Override
+        public int nextIndex() {
+            return index;
+        }
+
+        @Override
+        public int previousIndex() {
+            return index - 1;
+        }
+
+        @Override
+        public void remove() {
+            if (lastReturned == null || lastReturned.owner != InstructionList.this) throw new IllegalStateException();
+            if (lastReturned == previous) {
+                previous = lastReturned.prev;
+                --index;
+            }
+            InstructionList.this.remove(lastReturned);
+            lastReturned = null;
+        }
+
+        @Override
+        public void set(Instruction instruction) {
+            if (lastReturned == null || lastReturned.owner != InstructionList.this) throw new IllegalStateException();
+            replace(lastReturned, instruction);
+            if (previous == lastReturned) previous = instruction;
+            lastReturned = instruction;
+        }
+
+        @Override
+        public void add(Instruction instruction) {
+            while (previous != null && previous.owner != InstructionList.this) {
+                previous = previous.prev;
+            }
+            link(instruction, previous);
+            cursor = null;
+            previous = instruction;
+            lastReturned = null;
+            ++index;
+        }
+    }
+}
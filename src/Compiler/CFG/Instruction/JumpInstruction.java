@@ -1,6 +1,8 @@
 package Compiler.CFG.Instruction;
 
-import Compiler.Trans.Translator;
+import Compiler.CFG.Operand.Operand;
+import Compiler.CFG.Operand.VirtualRegister;
+import Compiler.Trans.AssemblyWriter;
 
 public class JumpInstruction extends Instruction {
     private LabelInstruction target;
@@ -14,9 +16,27 @@ public class JumpInstruction extends Instruction {
     }
 
     public void setTarget(LabelInstruction target) {
+        if (owner != null) {
+            this.target.removeJump(this);
+            target.addJump(this);
+        }
         this.target = target;
     }
 
+    @Override
+    void chain() {
+        super.chain();
+        owner.addJump(this);
+        target.addJump(this);
+    }
+
+    @Override
+    void unchain() {
+        super.unchain();
+        owner.removeJump(this);
+        target.removeJump(this);
+    }
+
     @Override
     public boolean hasGlobalImpact() {
         return false;
@@ -27,13 +47,28 @@ public class JumpInstruction extends Instruction {
 
     }
 
+    @Override
+    public void replaceUse(VirtualRegister oldRegister, Operand newOperand) {
+
+    }
+
+    @Override
+    public void replaceDef(VirtualRegister oldRegister, VirtualRegister newRegister) {
+
+    }
+
+    @Override
+    public Instruction copy() {
+        return new JumpInstruction(target);
+    }
+
     @Override
     public String toString() {
         return String.format("jump %s", target.getBlock().toString());
     }
 
     @Override
-    public String getAssembly() {
-        return Translator.getInstruction("jmp", target.getBlock().toString());
+    public void writeAssembly(AssemblyWriter out) {
+        out.instruction("jmp", target.getBlock().toString());
     }
 }
@@ -2,11 +2,19 @@ package Compiler.CFG.Instruction;
 
 import Compiler.AST.Statement.Statement;
 import Compiler.CFG.Block;
+import Compiler.CFG.Operand.Operand;
+import Compiler.CFG.Operand.VirtualRegister;
+import Compiler.Trans.AssemblyWriter;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
 
 public class LabelInstruction extends Instruction {
     private String name;
     private Block block;
     private Statement belongTo;
+    private Set<Instruction> jumpSet = new LinkedHashSet<>();
 
     public LabelInstruction(String name) {
         this.name = name;
@@ -38,6 +46,23 @@ public class LabelInstruction extends Instruction {
         this.block = block;
     }
 
+    /*
+        The jumps and conditional jumps to the label that are in a block, the in-edges
+        of its block. They are kept by the jumps when they are put into a block, taken
+        out of one or retargeted, so the label needs no block of its own yet.
+     */
+    public Set<Instruction> getJumpSet() {
+        return Collections.unmodifiableSet(jumpSet);
+    }
+
+    void addJump(Instruction instruction) {
+        jumpSet.add(instruction);
+    }
+
+    void removeJump(Instruction instruction) {
+        jumpSet.remove(instruction);
+    }
+
     public LabelInstruction() {
         super();
     }
@@ -52,13 +77,28 @@ public class LabelInstruction extends Instruction {
 
     }
 
+    @Override
+    public void replaceUse(VirtualRegister oldRegister, Operand newOperand) {
+
+    }
+
+    @Override
+    public void replaceDef(VirtualRegister oldRegister, VirtualRegister newRegister) {
+
+    }
+
+    @Override
+    public Instruction copy() {
+        return new LabelInstruction(name, belongTo);
+    }
+
     @Override
     public String toString() {
         return String.format("Label %s", name);
     }
 
     @Override
-    public String getAssembly() {
+    public void writeAssembly(AssemblyWriter out) {
         throw new InternalError("the label instruction can't be convert to assembly");
     }
 }
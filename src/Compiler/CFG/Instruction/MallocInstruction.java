@@ -1,10 +1,12 @@
 package Compiler.CFG.Instruction;
 
+import Compiler.CFG.RegisterSet;
 import Compiler.CFG.FunctionIR;
 import Compiler.CFG.Operand.AddressOperand;
 import Compiler.CFG.Operand.Operand;
 import Compiler.CFG.Operand.VirtualRegister;
 import Compiler.CFG.ProgramIR;
+import Compiler.Trans.AssemblyWriter;
 import Compiler.Trans.PhysicalOperand.PhysicalOperand;
 import Compiler.Trans.Translator;
 
@@ -18,6 +20,12 @@ public class MallocInstruction extends Instruction {
     public MallocInstruction(VirtualRegister target, Operand mallocSize) {
         this.target = target;
         this.mallocSize = mallocSize;
+        build();
+    }
+
+    private void build() {
+        useSet = new RegisterSet();
+        killSet = new RegisterSet();
         killSet.add(target);
         if (mallocSize instanceof  VirtualRegister) {
             useSet.add((VirtualRegister) mallocSize);
@@ -25,6 +33,7 @@ public class MallocInstruction extends Instruction {
         if (mallocSize instanceof AddressOperand) {
             useSet.add((((AddressOperand) mallocSize).getBase()));
         }
+        updateChain();
     }
 
     public VirtualRegister getTarget() {
@@ -47,33 +56,47 @@ public class MallocInstruction extends Instruction {
         mallocSize.init();
     }
 
+    @Override
+    public void replaceUse(VirtualRegister oldRegister, Operand newOperand) {
+        mallocSize = replaceOperand(mallocSize, oldRegister, newOperand);
+        build();
+    }
+
+    @Override
+    public void replaceDef(VirtualRegister oldRegister, VirtualRegister newRegister) {
+        if (target == oldRegister) {
+            target = newRegister;
+            build();
+        }
+    }
+
+    @Override
+    public Instruction copy() {
+        return new MallocInstruction(target, mallocSize);
+    }
+
     @Override
     public String toString() {
         return String.format("malloc %s %s", getTarget(), getMallocSize());
     }
 
     @Override
-    public String getAssembly() {
-        StringBuilder str = new StringBuilder();
-        PhysicalOperand physicalSize = mallocSize.getPhysicalOperand(str);
+    public void writeAssembly(AssemblyWriter out) {
+        PhysicalOperand physicalSize = mallocSize.getPhysicalOperand(out);
         List<String> callerList = new ArrayList<>();
-        liveOut.forEach(virtualRegister -> {
-            if (Translator.getCurrentFunctionIR().getRegisterStringMap().containsKey(virtualRegister)) {
-                String name = Translator.getCurrentFunctionIR().getRegisterStringMap().get(virtualRegister);
-                if (FunctionIR.callerSavedRegisterList.contains(name)) {
-                    callerList.add(name);
-                }
+        getLiveOut().forEach(virtualRegister -> {
+            String name = Translator.getCurrentFunctionIR().getPhysicalRegister(virtualRegister);
+            if (name != null && FunctionIR.callerSavedRegisterList.contains(name)) {
+                callerList.add(name);
             }
         });
 
-        str.append(Translator.getCallerSaved(callerList));
-        str.append(Translator.getInstruction("mov", "rdi", physicalSize.toString()));
-        str.append(Translator.getLibCall("malloc"));
-        str.append(Translator.getCallerRestored(callerList));
-
-        PhysicalOperand physicalTarget = target.getPhysicalOperand(str);
-        str.append(Translator.getInstruction("mov", physicalTarget.toString(), "rax"));
+        Translator.writeCallerSaved(out, callerList);
+        out.instruction("mov", "rdi", physicalSize);
+        Translator.writeLibCall(out, "malloc");
+        Translator.writeCallerRestored(out, callerList);
 
-        return str.toString();
+        PhysicalOperand physicalTarget = target.getPhysicalOperand(out);
+        out.instruction("mov", physicalTarget, "rax");
     }
 }
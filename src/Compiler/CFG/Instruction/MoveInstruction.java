@@ -1,14 +1,14 @@
 package Compiler.CFG.Instruction;
 
+import Compiler.CFG.RegisterSet;
 import Compiler.CFG.Operand.AddressOperand;
 import Compiler.CFG.Operand.MemoryLabel;
 import Compiler.CFG.Operand.Operand;
 import Compiler.CFG.Operand.VirtualRegister;
+import Compiler.Trans.AssemblyWriter;
 import Compiler.Trans.PhysicalOperand.PhysicalAddressOperand;
 import Compiler.Trans.PhysicalOperand.PhysicalOperand;
-import Compiler.Trans.Translator;
 
-import java.util.HashSet;
 
 public class MoveInstruction extends Instruction {
     private Operand target, source;
@@ -22,9 +22,16 @@ public class MoveInstruction extends Instruction {
         build();
     }
 
+    /* a copy is taken as it is, the allocator may have left both operands in memory */
+    private MoveInstruction(MoveInstruction other) {
+        this.target = other.target;
+        this.source = other.source;
+        build();
+    }
+
     private void build() {
-        killSet = new HashSet<>();
-        useSet = new HashSet<>();
+        killSet = new RegisterSet();
+        useSet = new RegisterSet();
         if (target instanceof VirtualRegister) {
             killSet.add((VirtualRegister) target);
         }
@@ -37,6 +44,7 @@ public class MoveInstruction extends Instruction {
         if (source instanceof AddressOperand) {
             useSet.add(((AddressOperand) source).getBase());
         }
+        updateChain();
     }
 
     @Override
@@ -67,6 +75,7 @@ public class MoveInstruction extends Instruction {
 
     public void setSource(Operand source) {
         this.source = source;
+        build();
     }
 
     @Override
@@ -75,26 +84,41 @@ public class MoveInstruction extends Instruction {
         source.init();
     }
 
+    @Override
+    public void replaceUse(VirtualRegister oldRegister, Operand newOperand) {
+        target = replaceBase(target, oldRegister, newOperand);
+        source = replaceOperand(source, oldRegister, newOperand);
+        build();
+    }
+
+    @Override
+    public void replaceDef(VirtualRegister oldRegister, VirtualRegister newRegister) {
+        if (target == oldRegister) {
+            target = newRegister;
+            build();
+        }
+    }
+
+    @Override
+    public Instruction copy() {
+        return new MoveInstruction(this);
+    }
+
     @Override
     public String toString() {
         return String.format("%s = mov %s", target, source);
     }
 
     @Override
-    public String getAssembly() {
-        StringBuilder str = new StringBuilder();
+    public void writeAssembly(AssemblyWriter out) {
         PhysicalOperand physicalTarget, physicalSource;
-        physicalTarget = target.getPhysicalOperand(str);
-        physicalSource = source.getPhysicalOperand(str);
-        String targetName, sourceName;
-        targetName = physicalTarget.toString();
-        sourceName = physicalSource.toString();
+        physicalTarget = target.getPhysicalOperand(out);
+        physicalSource = source.getPhysicalOperand(out);
         if (physicalTarget instanceof PhysicalAddressOperand && physicalSource instanceof PhysicalAddressOperand) {
-            str.append(Translator.getInstruction("mov", "rax", sourceName));
-            str.append(Translator.getInstruction("mov", targetName, "rax"));
+            out.instruction("mov", "rax", physicalSource);
+            out.instruction("mov", physicalTarget, "rax");
         } else {
-            str.append(Translator.getInstruction("mov", targetName, sourceName));
+            out.instruction("mov", physicalTarget, physicalSource);
         }
-        return str.toString();
     }
 }
@@ -0,0 +1,100 @@
+package Compiler.CFG.Instruction;
+
+import Compiler.CFG.RegisterSet;
+import Compiler.CFG.Block;
+import Compiler.CFG.Operand.AddressOperand;
+import Compiler.CFG.Operand.Operand;
+import Compiler.CFG.Operand.VirtualRegister;
+import Compiler.Trans.AssemblyWriter;
+import Compiler.Utility.Error.InternalError;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class PhiInstruction extends Instruction {
+    private VirtualRegister target;
+    private Map<Block, Operand> sourceMap;
+
+    public PhiInstruction(VirtualRegister target) {
+        this.target = target;
+        this.sourceMap = new LinkedHashMap<>();
+        build();
+    }
+
+    private void build() {
+        useSet = new RegisterSet();
+        killSet = new RegisterSet();
+        killSet.add(target);
+        for (Operand operand : sourceMap.values()) {
+            if (operand instanceof VirtualRegister) {
+                useSet.add((VirtualRegister) operand);
+            }
+        }
+        updateChain();
+    }
+
+    public VirtualRegister getTarget() {
+        return target;
+    }
+
+    public Map<Block, Operand> getSourceMap() {
+        return sourceMap;
+    }
+
+    public void setSource(Block block, Operand operand) {
+        if (operand instanceof AddressOperand) {
+            throw new InternalError("the source of phi instruction is expected to be register or immediate");
+        }
+        sourceMap.put(block, operand);
+        build();
+    }
+
+    public void removeSource(Block block) {
+        sourceMap.remove(block);
+        build();
+    }
+
+    @Override
+    public boolean hasGlobalImpact() {
+        return false;
+    }
+
+    @Override
+    public void init() {
+        throw new InternalError("phi instruction must be eliminated before translation");
+    }
+
+    @Override
+    public void replaceUse(VirtualRegister oldRegister, Operand newOperand) {
+        sourceMap.replaceAll((block, operand) -> operand == oldRegister ? newOperand : operand);
+        build();
+    }
+
+    @Override
+    public void replaceDef(VirtualRegister oldRegister, VirtualRegister newRegister) {
+        if (target == oldRegister) {
+            target = newRegister;
+            build();
+        }
+    }
+
+    @Override
+    public Instruction copy() {
+        PhiInstruction phiInstruction = new PhiInstruction(target);
+        sourceMap.forEach(phiInstruction::setSource);
+        return phiInstruction;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder str = new StringBuilder();
+        str.append(String.format("%s = phi", target));
+        sourceMap.forEach((block, operand) -> str.append(String.format(" [%s, %s]", block, operand)));
+        return str.toString();
+    }
+
+    @Override
+    public void writeAssembly(AssemblyWriter out) {
+        throw new InternalError("phi instruction must be eliminated before translation");
+    }
+}
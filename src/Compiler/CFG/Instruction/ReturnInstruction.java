@@ -1,22 +1,30 @@
 package Compiler.CFG.Instruction;
 
+import Compiler.CFG.RegisterSet;
 import Compiler.CFG.Operand.AddressOperand;
 import Compiler.CFG.Operand.Operand;
 import Compiler.CFG.Operand.VirtualRegister;
+import Compiler.Trans.AssemblyWriter;
 import Compiler.Trans.PhysicalOperand.PhysicalOperand;
-import Compiler.Trans.Translator;
+
 
 public class ReturnInstruction extends Instruction {
     private Operand returnValue;
 
     public ReturnInstruction(Operand returnValue) {
         this.returnValue = returnValue;
+        build();
+    }
+
+    private void build() {
+        useSet = new RegisterSet();
         if (returnValue instanceof VirtualRegister) {
             useSet.add((VirtualRegister) returnValue);
         }
         if (returnValue instanceof AddressOperand) {
             useSet.add(((AddressOperand) returnValue).getBase());
         }
+        updateChain();
     }
 
     public Operand getReturnValue() {
@@ -25,6 +33,7 @@ public class ReturnInstruction extends Instruction {
 
     public void setReturnValue(Operand returnValue) {
         this.returnValue = returnValue;
+        build();
     }
 
     @Override
@@ -37,16 +46,29 @@ public class ReturnInstruction extends Instruction {
         returnValue.init();
     }
 
+    @Override
+    public void replaceUse(VirtualRegister oldRegister, Operand newOperand) {
+        setReturnValue(replaceOperand(returnValue, oldRegister, newOperand));
+    }
+
+    @Override
+    public void replaceDef(VirtualRegister oldRegister, VirtualRegister newRegister) {
+
+    }
+
+    @Override
+    public Instruction copy() {
+        return new ReturnInstruction(returnValue);
+    }
+
     @Override
     public String toString() {
         return String.format("ret %s", returnValue);
     }
 
     @Override
-    public String getAssembly() {
-        StringBuilder str = new StringBuilder();
-        PhysicalOperand physicalOperand = returnValue.getPhysicalOperand(str);
-        str.append(Translator.getInstruction("mov", "rax", physicalOperand.toString()));
-        return str.toString();
+    public void writeAssembly(AssemblyWriter out) {
+        PhysicalOperand physicalOperand = returnValue.getPhysicalOperand(out);
+        out.instruction("mov", "rax", physicalOperand);
     }
 }
@@ -1,7 +1,10 @@
 package Compiler.CFG.Instruction;
 
+import Compiler.CFG.RegisterSet;
 import Compiler.CFG.Operand.*;
-import Compiler.Trans.Translator;
+import Compiler.Trans.AssemblyWriter;
+import Compiler.Trans.PhysicalOperand.PhysicalOperand;
+
 
 public class UnaryInstruction extends Instruction {
     public enum UnaryOp {
@@ -25,6 +28,12 @@ public class UnaryInstruction extends Instruction {
         }
         this.unaryOp = unaryOp;
         this.target = target;
+        build();
+    }
+
+    private void build() {
+        useSet = new RegisterSet();
+        killSet = new RegisterSet();
         if (target instanceof VirtualRegister) {
             killSet.add((VirtualRegister) target);
             useSet.add((VirtualRegister) target);
@@ -32,6 +41,7 @@ public class UnaryInstruction extends Instruction {
         if (target instanceof AddressOperand) {
             useSet.add(((AddressOperand) target).getBase());
         }
+        updateChain();
     }
 
     @Override
@@ -48,28 +58,46 @@ public class UnaryInstruction extends Instruction {
         target.init();
     }
 
+    @Override
+    public void replaceUse(VirtualRegister oldRegister, Operand newOperand) {
+        target = replaceBase(target, oldRegister, newOperand);
+        build();
+    }
+
+    @Override
+    public void replaceDef(VirtualRegister oldRegister, VirtualRegister newRegister) {
+        if (target == oldRegister) {
+            target = newRegister;
+            build();
+        }
+    }
+
+    @Override
+    public Instruction copy() {
+        return new UnaryInstruction(unaryOp, target);
+    }
+
     @Override
     public String toString() {
         return String.format("%s %s", unaryOp, target);
     }
 
     @Override
-    public String getAssembly() {
-        StringBuilder str = new StringBuilder();
-        String targetName = target.getPhysicalOperand(str).toString();
+    public void writeAssembly(AssemblyWriter out) {
+        PhysicalOperand physicalTarget = target.getPhysicalOperand(out);
         switch (unaryOp) {
             case INC:
-                str.append(Translator.getInstruction("add", targetName, "1"));
-                return str.toString();
+                out.instruction("add", physicalTarget, "1");
+                return;
             case DEC:
-                str.append(Translator.getInstruction("sub", targetName, "1"));
-                return str.toString();
+                out.instruction("sub", physicalTarget, "1");
+                return;
             case NEG:
-                str.append(Translator.getInstruction("neg", targetName));
-                return str.toString();
+                out.instruction("neg", physicalTarget);
+                return;
             case REV:
-                str.append(Translator.getInstruction("not", targetName));
-                return str.toString();
+                out.instruction("not", physicalTarget);
+                return;
         }
         throw new InternalError("the type of unary operator is wrong");
     }
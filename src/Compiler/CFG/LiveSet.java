@@ -0,0 +1,71 @@
+package Compiler.CFG;
+
+import Compiler.CFG.Operand.VirtualRegister;
+
+import java.util.*;
+
+/*
+    Read-only view of a bit vector over the register indices of a function, so live
+    sets cost one long per 64 registers instead of a hash set each.
+ */
+public class LiveSet extends AbstractSet<VirtualRegister> {
+    private FunctionIR functionIR;
+    private long[] bits;
+
+    public LiveSet(FunctionIR functionIR, long[] bits) {
+        this.functionIR = functionIR;
+        this.bits = bits;
+    }
+
+    public long[] getBits() {
+        return bits;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (!(o instanceof VirtualRegister)) return false;
+        int index = functionIR.findRegisterIndex((VirtualRegister) o);
+        return index >= 0 && (index >> 6) < bits.length && (bits[index >> 6] & (1L << index)) != 0;
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (long word : bits) {
+            size += Long.bitCount(word);
+        }
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        for (long word : bits) {
+            if (word != 0) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public Iterator<VirtualRegister> iterator() {
+        return new Iterator<VirtualRegister>() {
+            private int w = 0;
+            private long word = bits.length == 0 ? 0 : bits[0];
+
+            @Override
+            public boolean hasNext() {
+                while (word == 0 && w + 1 < bits.length) {
+                    word = bits[++w];
+                }
+                return word != 0;
+            }
+
+            @Override
+            public VirtualRegister next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                int index = (w << 6) + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+                return functionIR.getRegister(index);
+            }
+        };
+    }
+}
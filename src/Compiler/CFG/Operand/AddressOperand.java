@@ -1,5 +1,6 @@
 package Compiler.CFG.Operand;
 
+import Compiler.Trans.AssemblyWriter;
 import Compiler.Trans.PhysicalOperand.PhysicalAddressOperand;
 import Compiler.Trans.PhysicalOperand.PhysicalOperand;
 import Compiler.Trans.Translator;
@@ -45,12 +46,12 @@ public class AddressOperand extends Operand {
     }
 
     @Override
-    public PhysicalOperand getPhysicalOperand(StringBuilder str) {
+    public PhysicalOperand getPhysicalOperand(AssemblyWriter out) {
         if (base.getRegister() != null) {
             return new PhysicalAddressOperand(base.getRegister(), offset.getValue());
         } else {
             PhysicalAddressOperand newBase = new PhysicalAddressOperand("rbp", -base.getOffset() * 8);
-            str.append(Translator.getInstruction("mov", "rcx", newBase.toString()));
+            out.instruction("mov", "rcx", newBase);
             return new PhysicalAddressOperand("rcx", offset.getValue());
         }
     }
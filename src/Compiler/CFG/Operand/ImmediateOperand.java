@@ -1,5 +1,6 @@
 package Compiler.CFG.Operand;
 
+import Compiler.Trans.AssemblyWriter;
 import Compiler.Trans.PhysicalOperand.PhysicalImmediateOperand;
 import Compiler.Trans.PhysicalOperand.PhysicalOperand;
 
@@ -25,7 +26,7 @@ public class ImmediateOperand extends Operand {
     }
 
     @Override
-    public PhysicalOperand getPhysicalOperand(StringBuilder str) {
+    public PhysicalOperand getPhysicalOperand(AssemblyWriter out) {
         return new PhysicalImmediateOperand(value);
     }
 }
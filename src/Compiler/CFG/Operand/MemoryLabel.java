@@ -1,6 +1,7 @@
 package Compiler.CFG.Operand;
 
 import Compiler.CFG.ProgramIR;
+import Compiler.Trans.AssemblyWriter;
 import Compiler.Trans.PhysicalOperand.PhysicalMemoryLabel;
 import Compiler.Trans.PhysicalOperand.PhysicalOperand;
 
@@ -27,7 +28,7 @@ public class MemoryLabel extends Operand {
     }
 
     @Override
-    public PhysicalOperand getPhysicalOperand(StringBuilder str) {
+    public PhysicalOperand getPhysicalOperand(AssemblyWriter out) {
         return new PhysicalMemoryLabel(label);
     }
 }
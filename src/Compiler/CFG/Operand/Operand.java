@@ -1,8 +1,9 @@
 package Compiler.CFG.Operand;
 
+import Compiler.Trans.AssemblyWriter;
 import Compiler.Trans.PhysicalOperand.PhysicalOperand;
 
 public abstract class Operand {
     public abstract void init();
-    public abstract PhysicalOperand getPhysicalOperand(StringBuilder str);
+    public abstract PhysicalOperand getPhysicalOperand(AssemblyWriter out);
 }
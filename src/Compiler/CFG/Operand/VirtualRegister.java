@@ -1,15 +1,26 @@
 package Compiler.CFG.Operand;
 
+import Compiler.CFG.FunctionIR;
+import Compiler.CFG.Instruction.Instruction;
 import Compiler.CFG.ProgramIR;
+import Compiler.Trans.AssemblyWriter;
 import Compiler.Trans.PhysicalOperand.PhysicalAddressOperand;
 import Compiler.Trans.PhysicalOperand.PhysicalOperand;
 import Compiler.Trans.PhysicalOperand.PhysicalRegister;
 import Compiler.Trans.Translator;
 
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
 public class VirtualRegister extends Operand {
     private String name;
     private String systemRegister;
     private boolean isGlobal;
+    private VirtualRegister origin;
+    private FunctionIR owner;
+    private int index;
+    private Set<Instruction> definitionSet, useSet;
 
     public String getName() {
         return name;
@@ -35,10 +46,62 @@ public class VirtualRegister extends Operand {
         isGlobal = global;
     }
 
+    public VirtualRegister getOrigin() {
+        return origin == null ? this : origin;
+    }
+
+    public void setOrigin(VirtualRegister origin) {
+        this.origin = origin;
+    }
+
+    public FunctionIR getOwner() {
+        return owner;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public void setOwner(FunctionIR owner, int index) {
+        this.owner = owner;
+        this.index = index;
+    }
+
+    /* the instructions in blocks that write the register, kept up to date by Instruction */
+    public Set<Instruction> getDefinitionSet() {
+        return definitionSet == null ? Collections.emptySet() : Collections.unmodifiableSet(definitionSet);
+    }
+
+    /* the instructions in blocks that read the register, kept up to date by Instruction */
+    public Set<Instruction> getUseSet() {
+        return useSet == null ? Collections.emptySet() : Collections.unmodifiableSet(useSet);
+    }
+
+    public void addDefinition(Instruction instruction) {
+        if (definitionSet == null) definitionSet = new LinkedHashSet<>();
+        definitionSet.add(instruction);
+    }
+
+    public void removeDefinition(Instruction instruction) {
+        if (definitionSet != null) definitionSet.remove(instruction);
+    }
+
+    public void addUse(Instruction instruction) {
+        if (useSet == null) useSet = new LinkedHashSet<>();
+        useSet.add(instruction);
+    }
+
+    public void removeUse(Instruction instruction) {
+        if (useSet != null) useSet.remove(instruction);
+    }
+
     public VirtualRegister(String name) {
         this.name = name;
         this.systemRegister = null;
         this.isGlobal = false;
+        this.origin = null;
+        this.owner = null;
+        this.index = -1;
     }
 
     @Override
@@ -55,8 +118,8 @@ public class VirtualRegister extends Operand {
         if (systemRegister != null) {
             return systemRegister;
         }
-        if (ProgramIR.getCurrentFunction() != null && ProgramIR.getCurrentFunction().getRegisterStringMap().containsKey(this)) {
-            return ProgramIR.getCurrentFunction().getRegisterStringMap().get(this);
+        if (ProgramIR.getCurrentFunction() != null) {
+            return ProgramIR.getCurrentFunction().getPhysicalRegister(this);
         }
         return null;
     }
@@ -65,15 +128,15 @@ public class VirtualRegister extends Operand {
         if (systemRegister != null) {
             return systemRegister;
         }
-        if (Translator.getCurrentFunctionIR() != null && Translator.getCurrentFunctionIR().getRegisterStringMap().containsKey(this)) {
-            return Translator.getCurrentFunctionIR().getRegisterStringMap().get(this);
+        if (Translator.getCurrentFunctionIR() != null) {
+            return Translator.getCurrentFunctionIR().getPhysicalRegister(this);
         }
         return null;
     }
 
     public int getOffset() {
-        if (Translator.getCurrentFunctionIR().getRegisterIntegerMap().containsKey(this)) {
-            return Translator.getCurrentFunctionIR().getRegisterIntegerMap().get(this);
+        if (Translator.getCurrentFunctionIR().hasStackSlot(this)) {
+            return Translator.getCurrentFunctionIR().getStackSlot(this);
         } else {
             throw new InternalError("can't find register in function IR map!");
         }
@@ -87,7 +150,7 @@ public class VirtualRegister extends Operand {
     }
 
     @Override
-    public PhysicalOperand getPhysicalOperand(StringBuilder str) {
+    public PhysicalOperand getPhysicalOperand(AssemblyWriter out) {
         if (getRegister() != null) {
             return new PhysicalRegister(getRegister());
         } else {
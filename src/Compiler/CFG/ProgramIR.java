@@ -9,6 +9,7 @@ import Compiler.AST.Type.VoidType;
 import Compiler.CFG.Operand.AddressOperand;
 import Compiler.CFG.Operand.ImmediateOperand;
 import Compiler.CFG.Operand.VirtualRegister;
+import Compiler.CompilationContext;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -20,57 +21,54 @@ public class ProgramIR {
         LE, LEEQ, GR, GREQ, EQ, NEQ
     }
 
-    private static List<String> constStringList;
-    private static Map<String, FunctionIR> functionMap;
-    private static FunctionIR currentFunction;
-
     public static List<String> getConstStringList() {
-        return constStringList;
+        return CompilationContext.current().getConstStringList();
     }
 
     public static void setConstStringList(List<String> constStringList) {
-        ProgramIR.constStringList = constStringList;
+        CompilationContext.current().setConstStringList(constStringList);
     }
 
     public static Map<String, FunctionIR> getFunctionMap() {
-        return functionMap;
+        return CompilationContext.current().getFunctionMap();
     }
 
     public static void setFunctionMap(Map<String, FunctionIR> functionMap) {
-        functionMap = functionMap;
+        CompilationContext.current().setFunctionMap(functionMap);
     }
 
     public static FunctionIR getCurrentFunction() {
-        return currentFunction;
+        return CompilationContext.current().getCurrentFunction();
     }
 
     public static void setCurrentFunction(FunctionIR currentFunction) {
-        ProgramIR.currentFunction = currentFunction;
+        CompilationContext.current().setCurrentFunction(currentFunction);
     }
 
     public static void addConstString(String string) {
-        constStringList.add(string);
+        getConstStringList().add(string);
     }
 
     public static void addFunction(String string, FunctionIR functionIR) {
-        functionMap.put(string, functionIR);
+        getFunctionMap().put(string, functionIR);
     }
 
     public static void init() {
-        functionMap = new HashMap<>();
-        constStringList = new ArrayList<>();
-        for (VariableDeclarationStatement variableDeclarationStatement : ProgramAST.globalVariableDeclarationStatementList) {
+        Map<String, FunctionIR> functionMap = new HashMap<>();
+        setFunctionMap(functionMap);
+        setConstStringList(new ArrayList<>());
+        for (VariableDeclarationStatement variableDeclarationStatement : ProgramAST.getGlobalVariableDeclarationStatementList()) {
             VirtualRegister t = new VirtualRegister(variableDeclarationStatement.getName());
             t.setSystemRegister("@" + variableDeclarationStatement.getName());
             t.setGlobal(true);
             variableDeclarationStatement.getSymbol().setOperand(new AddressOperand(t, new ImmediateOperand(0)));
         }
-        for (FunctionType functionType : ProgramAST.globalFunctionTable.getFunctionMap().values()) {
+        for (FunctionType functionType : ProgramAST.getGlobalFunctionTable().getFunctionMap().values()) {
             if (!functionType.isBuiltin()) {
                 addFunction(functionType.getIRName(), new FunctionIR(functionType));
             }
         }
-        for (ClassType classType : ProgramAST.classTable.getClassMap().values()) {
+        for (ClassType classType : ProgramAST.getClassTable().getClassMap().values()) {
             for (FunctionType functionType : classType.getMemberFunctionTable().getFunctionMap().values()) {
                 if (!functionType.isBuiltin()) {
                     addFunction(functionType.getIRName(), new FunctionIR(functionType));
@@ -81,7 +79,7 @@ public class ProgramIR {
             }
         }
         BlockStatement blockStatement = new BlockStatement();
-        for (VariableDeclarationStatement variableDeclarationStatement : ProgramAST.globalVariableDeclarationStatementList) {
+        for (VariableDeclarationStatement variableDeclarationStatement : ProgramAST.getGlobalVariableDeclarationStatementList()) {
             blockStatement.addStatement(variableDeclarationStatement);
         }
         FunctionType functionType = new FunctionType("__global_init", VoidType.getInstance(), new ArrayList<>());
@@ -91,7 +89,7 @@ public class ProgramIR {
 
     public static String toString(int indents) {
         StringBuilder str = new StringBuilder();
-        for (FunctionIR functionIR : functionMap.values()) {
+        for (FunctionIR functionIR : getFunctionMap().values()) {
             ProgramIR.setCurrentFunction(functionIR);
             str.append(functionIR.toString(indents));
         }
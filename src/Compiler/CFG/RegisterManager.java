@@ -1,6 +1,7 @@
 package Compiler.CFG;
 
 import Compiler.CFG.Operand.VirtualRegister;
+import Compiler.CompilationContext;
 
 import java.util.ArrayList;
 import java.util.HashSet;
@@ -8,7 +9,6 @@ import java.util.List;
 import java.util.Set;
 
 public class RegisterManager {
-    private static int cnt = 0;
     private int registerInMemory;
     private Set<String> usedRegister;
 
@@ -27,7 +27,14 @@ public class RegisterManager {
     }};
 
     public static VirtualRegister getTemporaryRegister() {
-        return new VirtualRegister("t" + String.valueOf(cnt++));
+        return new VirtualRegister("t" + String.valueOf(CompilationContext.current().nextRegisterId()));
+    }
+
+    public static VirtualRegister getRenamedRegister(VirtualRegister virtualRegister) {
+        VirtualRegister origin = virtualRegister.getOrigin();
+        VirtualRegister renamed = new VirtualRegister(origin.getName() + "_" + String.valueOf(CompilationContext.current().nextRegisterId()));
+        renamed.setOrigin(origin);
+        return renamed;
     }
 
     public int getRegisterInMemory() {
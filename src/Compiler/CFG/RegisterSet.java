@@ -0,0 +1,87 @@
+package Compiler.CFG;
+
+import Compiler.CFG.Operand.VirtualRegister;
+
+import java.util.*;
+
+/*
+    The use and kill sets of an instruction hold a handful of registers at most,
+    so they are kept in a plain array and searched linearly.
+ */
+public class RegisterSet extends AbstractSet<VirtualRegister> {
+    private VirtualRegister[] elements;
+    private int size;
+
+    public RegisterSet() {
+        this.elements = new VirtualRegister[4];
+        this.size = 0;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        for (int i = 0; i < size; i++) {
+            if (elements[i] == o) return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean add(VirtualRegister virtualRegister) {
+        if (contains(virtualRegister)) return false;
+        if (size == elements.length) {
+            elements = Arrays.copyOf(elements, size << 1);
+        }
+        elements[size++] = virtualRegister;
+        return true;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        for (int i = 0; i < size; i++) {
+            if (elements[i] == o) {
+                elements[i] = elements[--size];
+                elements[size] = null;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(elements, 0, size, null);
+        size = 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Iterator<VirtualRegister> iterator() {
+        return new Iterator<VirtualRegister>() {
+            private int cursor = 0;
+            private boolean removable = false;
+
+            @Override
+            public boolean hasNext() {
+                return cursor < size;
+            }
+
+            @Override
+            public VirtualRegister next() {
+                if (cursor >= size) throw new NoSuchElementException();
+                removable = true;
+                return elements[cursor++];
+            }
+
+            @Override
+            public void remove() {
+                if (!removable) throw new IllegalStateException();
+                removable = false;
+                RegisterSet.this.remove(elements[--cursor]);
+            }
+        };
+    }
+}
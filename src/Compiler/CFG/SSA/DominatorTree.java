@@ -0,0 +1,196 @@
+package Compiler.CFG.SSA;
+
+import Compiler.CFG.Block;
+import Compiler.CFG.FunctionIR;
+
+import java.util.*;
+
+/*
+    Dominator tree of the blocks reachable from the enter block, computed with
+    the iterative algorithm of Cooper, Harvey and Kennedy over reverse postorder.
+ */
+public class DominatorTree {
+    private Block enterBlock;
+    private List<Block> reversePostorder;
+    private Map<Block, Integer> orderMap;
+    private Map<Block, List<Block>> predecessorMap;
+    private Map<Block, List<Block>> successorMap;
+    private Block[] immediateDominator;
+    private Map<Block, List<Block>> childrenMap;
+    private Map<Block, Set<Block>> dominanceFrontierMap;
+    private int[] enterTime, leaveTime;
+
+    public DominatorTree(FunctionIR functionIR) {
+        this.enterBlock = functionIR.getBlockList().get(0);
+        calcOrder();
+        calcPredecessor();
+        calcDominator();
+        calcTree();
+        calcFrontier();
+    }
+
+    private void calcOrder() {
+        List<Block> postorder = new ArrayList<>();
+        successorMap = new HashMap<>();
+        Set<Block> visited = new HashSet<>();
+        Deque<Block> blockStack = new ArrayDeque<>();
+        Deque<Iterator<Block>> iteratorStack = new ArrayDeque<>();
+        visited.add(enterBlock);
+        successorMap.put(enterBlock, enterBlock.getSuccessorList());
+        blockStack.push(enterBlock);
+        iteratorStack.push(successorMap.get(enterBlock).iterator());
+        while (!blockStack.isEmpty()) {
+            Iterator<Block> iterator = iteratorStack.peek();
+            if (iterator.hasNext()) {
+                Block successor = iterator.next();
+                if (visited.add(successor)) {
+                    successorMap.put(successor, successor.getSuccessorList());
+                    blockStack.push(successor);
+                    iteratorStack.push(successorMap.get(successor).iterator());
+                }
+            } else {
+                postorder.add(blockStack.pop());
+                iteratorStack.pop();
+            }
+        }
+        reversePostorder = new ArrayList<>(postorder);
+        Collections.reverse(reversePostorder);
+        orderMap = new HashMap<>();
+        for (int i = 0; i < reversePostorder.size(); i++) {
+            orderMap.put(reversePostorder.get(i), i);
+        }
+    }
+
+    private void calcPredecessor() {
+        predecessorMap = new HashMap<>();
+        for (Block block : reversePostorder) {
+            predecessorMap.put(block, new ArrayList<>());
+        }
+        for (Block block : reversePostorder) {
+            for (Block successor : successorMap.get(block)) {
+                predecessorMap.get(successor).add(block);
+            }
+        }
+    }
+
+    private void calcDominator() {
+        int n = reversePostorder.size();
+        int[] idom = new int[n];
+        Arrays.fill(idom, -1);
+        idom[0] = 0;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = 1; i < n; i++) {
+                int newIdom = -1;
+                for (Block predecessor : predecessorMap.get(reversePostorder.get(i))) {
+                    int p = orderMap.get(predecessor);
+                    if (idom[p] == -1) continue;
+                    newIdom = newIdom == -1 ? p : intersect(idom, p, newIdom);
+                }
+                if (idom[i] != newIdom) {
+                    idom[i] = newIdom;
+                    changed = true;
+                }
+            }
+        }
+        immediateDominator = new Block[n];
+        for (int i = 1; i < n; i++) {
+            immediateDominator[i] = reversePostorder.get(idom[i]);
+        }
+    }
+
+    private int intersect(int[] idom, int x, int y) {
+        while (x != y) {
+            while (x > y) x = idom[x];
+            while (y > x) y = idom[y];
+        }
+        return x;
+    }
+
+    private void calcTree() {
+        childrenMap = new HashMap<>();
+        for (Block block : reversePostorder) {
+            childrenMap.put(block, new ArrayList<>());
+        }
+        for (int i = 1; i < reversePostorder.size(); i++) {
+            childrenMap.get(immediateDominator[i]).add(reversePostorder.get(i));
+        }
+        int n = reversePostorder.size();
+        enterTime = new int[n];
+        leaveTime = new int[n];
+        int clock = 0;
+        Deque<Block> blockStack = new ArrayDeque<>();
+        Deque<Iterator<Block>> iteratorStack = new ArrayDeque<>();
+        enterTime[0] = clock++;
+        blockStack.push(enterBlock);
+        iteratorStack.push(childrenMap.get(enterBlock).iterator());
+        while (!blockStack.isEmpty()) {
+            Iterator<Block> iterator = iteratorStack.peek();
+            if (iterator.hasNext()) {
+                Block child = iterator.next();
+                enterTime[orderMap.get(child)] = clock++;
+                blockStack.push(child);
+                iteratorStack.push(childrenMap.get(child).iterator());
+            } else {
+                leaveTime[orderMap.get(blockStack.pop())] = clock++;
+                iteratorStack.pop();
+            }
+        }
+    }
+
+    private void calcFrontier() {
+        dominanceFrontierMap = new HashMap<>();
+        for (Block block : reversePostorder) {
+            dominanceFrontierMap.put(block, new LinkedHashSet<>());
+        }
+        for (Block block : reversePostorder) {
+            List<Block> predecessorList = predecessorMap.get(block);
+            if (predecessorList.size() < 2) continue;
+            Block idom = getImmediateDominator(block);
+            for (Block runner : predecessorList) {
+                while (runner != idom) {
+                    dominanceFrontierMap.get(runner).add(block);
+                    runner = getImmediateDominator(runner);
+                }
+            }
+        }
+    }
+
+    public Block getEnterBlock() {
+        return enterBlock;
+    }
+
+    public List<Block> getReversePostorder() {
+        return reversePostorder;
+    }
+
+    public boolean isReachable(Block block) {
+        return orderMap.containsKey(block);
+    }
+
+    public List<Block> getPredecessorList(Block block) {
+        return predecessorMap.get(block);
+    }
+
+    public List<Block> getSuccessorList(Block block) {
+        return successorMap.get(block);
+    }
+
+    public Block getImmediateDominator(Block block) {
+        return immediateDominator[orderMap.get(block)];
+    }
+
+    public List<Block> getChildren(Block block) {
+        return childrenMap.get(block);
+    }
+
+    public Set<Block> getDominanceFrontier(Block block) {
+        return dominanceFrontierMap.get(block);
+    }
+
+    public boolean dominates(Block x, Block y) {
+        int u = orderMap.get(x), v = orderMap.get(y);
+        return enterTime[u] <= enterTime[v] && leaveTime[v] <= leaveTime[u];
+    }
+}
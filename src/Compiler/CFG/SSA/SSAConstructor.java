@@ -1,4 +1,219 @@
 package Compiler.CFG.SSA;
 
+import Compiler.CFG.Block;
+import Compiler.CFG.FunctionIR;
+import Compiler.CFG.Instruction.*;
+import Compiler.CFG.Operand.VirtualRegister;
+import Compiler.CFG.RegisterManager;
+
+import java.util.*;
+
+/*
+    Semi-pruned SSA construction (Cytron et al.): phi instructions are placed on the
+    iterated dominance frontier of the definitions of every register that is live
+    across blocks, then registers are renamed along the dominator tree.
+
+    Registers bound to a system register, global registers and registers without
+    any definition are left untouched. The original register stays the version that
+    reaches the enter block, so parameters keep their identity.
+
+    In-place instructions (x = x op y) are split into a copy to a fresh version and
+    the in-place update of that version, so every version is defined in one place:
+        x_2 = mov x_1
+        x_2 = x_2 op y
+ */
 public class SSAConstructor {
+    private FunctionIR functionIR;
+    private DominatorTree dominatorTree;
+    private Set<VirtualRegister> renamableSet;
+    private Map<VirtualRegister, Deque<VirtualRegister>> versionStackMap;
+
+    private SSAConstructor(FunctionIR functionIR) {
+        this.functionIR = functionIR;
+    }
+
+    public static DominatorTree construct(FunctionIR functionIR) {
+        return construct(functionIR, new DominatorTree(functionIR));
+    }
+
+    /* the tree only covers reachable blocks, so it stays valid once the others are removed */
+    public static DominatorTree construct(FunctionIR functionIR, DominatorTree dominatorTree) {
+        SSAConstructor constructor = new SSAConstructor(functionIR);
+        constructor.dominatorTree = dominatorTree;
+        constructor.removeUnreachableBlock();
+        constructor.placePhi();
+        constructor.rename();
+        constructor.removeDeadPhi();
+        return constructor.dominatorTree;
+    }
+
+    /* the instructions of a removed block leave the def-use chains with it */
+    private void removeUnreachableBlock() {
+        for (Block block : functionIR.getBlockList()) {
+            if (!dominatorTree.isReachable(block) && block.getLabelInstruction() != functionIR.getExitBlock()) block.clear();
+        }
+        functionIR.getBlockList().removeIf(
+                block -> !dominatorTree.isReachable(block) && block.getLabelInstruction() != functionIR.getExitBlock()
+        );
+    }
+
+    private boolean isRenamable(VirtualRegister virtualRegister) {
+        return virtualRegister.getSystemRegister() == null && !virtualRegister.isGlobal();
+    }
+
+    private void placePhi() {
+        renamableSet = new HashSet<>();
+        Set<VirtualRegister> globalNameSet = new HashSet<>();
+        Map<VirtualRegister, Set<Block>> definitionMap = new LinkedHashMap<>();
+        for (Block block : dominatorTree.getReversePostorder()) {
+            Set<VirtualRegister> killed = new HashSet<>();
+            for (Instruction instruction : block.getInstructionList()) {
+                for (VirtualRegister virtualRegister : instruction.getUseSet()) {
+                    if (!killed.contains(virtualRegister)) {
+                        globalNameSet.add(virtualRegister);
+                    }
+                }
+                for (VirtualRegister virtualRegister : instruction.getKillSet()) {
+                    if (!isRenamable(virtualRegister)) continue;
+                    killed.add(virtualRegister);
+                    renamableSet.add(virtualRegister);
+                    definitionMap.computeIfAbsent(virtualRegister, k -> new LinkedHashSet<>()).add(block);
+                }
+            }
+        }
+        for (Map.Entry<VirtualRegister, Set<Block>> entry : definitionMap.entrySet()) {
+            VirtualRegister virtualRegister = entry.getKey();
+            if (!globalNameSet.contains(virtualRegister)) continue;
+            Set<Block> placed = new HashSet<>();
+            Deque<Block> workList = new ArrayDeque<>(entry.getValue());
+            Set<Block> queued = new HashSet<>(entry.getValue());
+            while (!workList.isEmpty()) {
+                Block block = workList.poll();
+                for (Block frontier : dominatorTree.getDominanceFrontier(block)) {
+                    if (!placed.add(frontier)) continue;
+                    frontier.getInstructionList().add(0, new PhiInstruction(virtualRegister));
+                    if (queued.add(frontier)) {
+                        workList.add(frontier);
+                    }
+                }
+            }
+        }
+    }
+
+    private VirtualRegister getVersion(VirtualRegister virtualRegister) {
+        Deque<VirtualRegister> versionStack = versionStackMap.get(virtualRegister);
+        return versionStack == null || versionStack.isEmpty() ? virtualRegister : versionStack.peek();
+    }
+
+    private VirtualRegister pushVersion(VirtualRegister virtualRegister, List<VirtualRegister> pushedList) {
+        VirtualRegister version = RegisterManager.getRenamedRegister(virtualRegister);
+        versionStackMap.computeIfAbsent(virtualRegister, k -> new ArrayDeque<>()).push(version);
+        pushedList.add(virtualRegister);
+        return version;
+    }
+
+    private void rename() {
+        versionStackMap = new HashMap<>();
+        Map<PhiInstruction, VirtualRegister> phiOriginMap = new HashMap<>();
+        for (Block block : dominatorTree.getReversePostorder()) {
+            for (PhiInstruction phiInstruction : block.getPhiList()) {
+                phiOriginMap.put(phiInstruction, phiInstruction.getTarget());
+            }
+        }
+        Deque<Block> blockStack = new ArrayDeque<>();
+        Deque<List<VirtualRegister>> pushedStack = new ArrayDeque<>();
+        Deque<Iterator<Block>> iteratorStack = new ArrayDeque<>();
+        Block enterBlock = dominatorTree.getEnterBlock();
+        blockStack.push(enterBlock);
+        pushedStack.push(renameBlock(enterBlock, phiOriginMap));
+        iteratorStack.push(dominatorTree.getChildren(enterBlock).iterator());
+        while (!blockStack.isEmpty()) {
+            Iterator<Block> iterator = iteratorStack.peek();
+            if (iterator.hasNext()) {
+                Block child = iterator.next();
+                blockStack.push(child);
+                pushedStack.push(renameBlock(child, phiOriginMap));
+                iteratorStack.push(dominatorTree.getChildren(child).iterator());
+            } else {
+                blockStack.pop();
+                iteratorStack.pop();
+                for (VirtualRegister virtualRegister : pushedStack.pop()) {
+                    versionStackMap.get(virtualRegister).pop();
+                }
+            }
+        }
+    }
+
+    private List<VirtualRegister> renameBlock(Block block, Map<PhiInstruction, VirtualRegister> phiOriginMap) {
+        List<VirtualRegister> pushedList = new ArrayList<>();
+        List<Instruction> instructionList = block.getInstructionList();
+        for (int i = 0; i < instructionList.size(); i++) {
+            Instruction instruction = instructionList.get(i);
+            if (instruction instanceof PhiInstruction) {
+                VirtualRegister target = ((PhiInstruction) instruction).getTarget();
+                instruction.replaceDef(target, pushVersion(target, pushedList));
+                continue;
+            }
+            for (VirtualRegister virtualRegister : new ArrayList<>(instruction.getUseSet())) {
+                if (renamableSet.contains(virtualRegister)) {
+                    instruction.replaceUse(virtualRegister, getVersion(virtualRegister));
+                }
+            }
+            boolean inPlace = instruction instanceof BinaryInstruction || instruction instanceof UnaryInstruction;
+            for (VirtualRegister virtualRegister : new ArrayList<>(instruction.getKillSet())) {
+                if (!renamableSet.contains(virtualRegister)) continue;
+                VirtualRegister current = getVersion(virtualRegister);
+                VirtualRegister version = pushVersion(virtualRegister, pushedList);
+                if (inPlace) {
+                    instructionList.add(i++, new MoveInstruction(version, current));
+                }
+                instruction.replaceDef(virtualRegister, version);
+            }
+        }
+        for (Block successor : dominatorTree.getSuccessorList(block)) {
+            for (PhiInstruction phiInstruction : successor.getPhiList()) {
+                phiInstruction.setSource(block, getVersion(phiOriginMap.get(phiInstruction)));
+            }
+        }
+        return pushedList;
+    }
+
+    private void removeDeadPhi() {
+        Map<VirtualRegister, Integer> useCount = new HashMap<>();
+        Map<VirtualRegister, PhiInstruction> phiMap = new HashMap<>();
+        for (Block block : functionIR.getBlockList()) {
+            for (Instruction instruction : block.getInstructionList()) {
+                for (VirtualRegister virtualRegister : instruction.getUseSet()) {
+                    if (!instruction.getKillSet().contains(virtualRegister)) {
+                        useCount.merge(virtualRegister, 1, Integer::sum);
+                    }
+                }
+                if (instruction instanceof PhiInstruction) {
+                    phiMap.put(((PhiInstruction) instruction).getTarget(), (PhiInstruction) instruction);
+                }
+            }
+        }
+        Deque<PhiInstruction> workList = new ArrayDeque<>();
+        for (PhiInstruction phiInstruction : phiMap.values()) {
+            if (useCount.getOrDefault(phiInstruction.getTarget(), 0) == 0) {
+                workList.add(phiInstruction);
+            }
+        }
+        Set<PhiInstruction> deadSet = new HashSet<>();
+        while (!workList.isEmpty()) {
+            PhiInstruction phiInstruction = workList.poll();
+            if (!deadSet.add(phiInstruction)) continue;
+            for (VirtualRegister virtualRegister : phiInstruction.getUseSet()) {
+                if (virtualRegister == phiInstruction.getTarget()) continue;
+                int count = useCount.merge(virtualRegister, -1, Integer::sum);
+                PhiInstruction definition = phiMap.get(virtualRegister);
+                if (count == 0 && definition != null) {
+                    workList.add(definition);
+                }
+            }
+        }
+        for (Block block : functionIR.getBlockList()) {
+            block.getInstructionList().removeIf(deadSet::contains);
+        }
+    }
 }
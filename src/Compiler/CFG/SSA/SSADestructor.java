@@ -1,4 +1,195 @@
 package Compiler.CFG.SSA;
 
+import Compiler.CFG.Block;
+import Compiler.CFG.FunctionIR;
+import Compiler.CFG.Instruction.*;
+import Compiler.CFG.Operand.Operand;
+import Compiler.CFG.Operand.VirtualRegister;
+import Compiler.CFG.RegisterManager;
+import Compiler.Opt.LivenessAnalyst;
+import Compiler.Utility.Pair;
+
+import java.util.*;
+
+/*
+    Leaves SSA form: every phi instruction becomes a parallel copy at the end of
+    its predecessors (critical edges are split first), each parallel copy is
+    sequentialized with a temporary register for cycles, and then the versions of
+    the same original register are coalesced back whenever they don't interfere.
+ */
 public class SSADestructor {
+    private FunctionIR functionIR;
+
+    private SSADestructor(FunctionIR functionIR) {
+        this.functionIR = functionIR;
+    }
+
+    public static void destruct(FunctionIR functionIR) {
+        SSADestructor destructor = new SSADestructor(functionIR);
+        destructor.eliminatePhi();
+        destructor.coalesce();
+    }
+
+    private void eliminatePhi() {
+        Map<Block, List<Pair<VirtualRegister, Operand>>> copyMap = new LinkedHashMap<>();
+        for (Block block : new ArrayList<>(functionIR.getBlockList())) {
+            List<PhiInstruction> phiList = block.getPhiList();
+            if (phiList.isEmpty()) continue;
+            Map<Block, Block> splitMap = new HashMap<>();
+            for (PhiInstruction phiInstruction : phiList) {
+                for (Map.Entry<Block, Operand> entry : phiInstruction.getSourceMap().entrySet()) {
+                    Block predecessor = entry.getKey();
+                    if (hasConditionalJump(predecessor)) {
+                        predecessor = splitMap.computeIfAbsent(predecessor, key -> splitEdge(key, block));
+                    }
+                    copyMap.computeIfAbsent(predecessor, key -> new ArrayList<>())
+                            .add(new Pair<>(phiInstruction.getTarget(), entry.getValue()));
+                }
+            }
+            block.getInstructionList().removeAll(phiList);
+        }
+        for (Map.Entry<Block, List<Pair<VirtualRegister, Operand>>> entry : copyMap.entrySet()) {
+            List<Instruction> instructionList = entry.getKey().getInstructionList();
+            int position = instructionList.size();
+            while (position > 0 && instructionList.get(position - 1) instanceof JumpInstruction) {
+                --position;
+            }
+            instructionList.addAll(position, sequentialize(entry.getValue()));
+        }
+    }
+
+    private boolean hasConditionalJump(Block block) {
+        for (Instruction instruction : block.getInstructionList()) {
+            if (instruction instanceof CJumpInstruction) return true;
+        }
+        return false;
+    }
+
+    private Block splitEdge(Block predecessor, Block successor) {
+        Block block = functionIR.createBlock("split_edge");
+        block.addInstruction(new JumpInstruction(successor.getLabelInstruction()));
+        predecessor.retarget(successor, block);
+        functionIR.getBlockList().add(functionIR.getBlockList().indexOf(successor), block);
+        return block;
+    }
+
+    private List<Instruction> sequentialize(List<Pair<VirtualRegister, Operand>> copyList) {
+        List<Instruction> instructionList = new ArrayList<>();
+        List<Pair<VirtualRegister, Operand>> pendingList = new ArrayList<>();
+        for (Pair<VirtualRegister, Operand> copy : copyList) {
+            if (copy.first != copy.second) {
+                pendingList.add(new Pair<>(copy.first, copy.second));
+            }
+        }
+        while (!pendingList.isEmpty()) {
+            Pair<VirtualRegister, Operand> ready = null;
+            for (Pair<VirtualRegister, Operand> copy : pendingList) {
+                boolean blocked = false;
+                for (Pair<VirtualRegister, Operand> other : pendingList) {
+                    if (other != copy && other.second == copy.first) {
+                        blocked = true;
+                        break;
+                    }
+                }
+                if (!blocked) {
+                    ready = copy;
+                    break;
+                }
+            }
+            if (ready != null) {
+                instructionList.add(new MoveInstruction(ready.first, ready.second));
+                pendingList.remove(ready);
+                continue;
+            }
+            VirtualRegister blocked = pendingList.get(0).first;
+            VirtualRegister temporary = RegisterManager.getRenamedRegister(blocked);
+            instructionList.add(new MoveInstruction(temporary, blocked));
+            for (Pair<VirtualRegister, Operand> copy : pendingList) {
+                if (copy.second == blocked) {
+                    copy.second = temporary;
+                }
+            }
+        }
+        return instructionList;
+    }
+
+    private boolean isCoalescable(Operand operand) {
+        if (!(operand instanceof VirtualRegister)) return false;
+        VirtualRegister virtualRegister = (VirtualRegister) operand;
+        return virtualRegister.getSystemRegister() == null && !virtualRegister.isGlobal()
+                && !functionIR.hasStackSlot(virtualRegister);
+    }
+
+    private void coalesce() {
+        LivenessAnalyst.analysis(functionIR);
+        long[][] edge = LivenessAnalyst.getEdge();
+        Map<VirtualRegister, VirtualRegister> leaderMap = new HashMap<>();
+        Map<VirtualRegister, Set<VirtualRegister>> memberMap = new HashMap<>();
+        Map<VirtualRegister, long[]> conflictMap = new HashMap<>();
+        int words = (functionIR.getRegisterCount() + 63) >> 6;
+        for (Block block : functionIR.getBlockList()) {
+            for (Instruction instruction : block.getInstructionList()) {
+                if (!(instruction instanceof MoveInstruction)) continue;
+                Operand target = ((MoveInstruction) instruction).getTarget();
+                Operand source = ((MoveInstruction) instruction).getSource();
+                if (!isCoalescable(target) || !isCoalescable(source)) continue;
+                VirtualRegister x = find(leaderMap, memberMap, conflictMap, edge, words, (VirtualRegister) target);
+                VirtualRegister y = find(leaderMap, memberMap, conflictMap, edge, words, (VirtualRegister) source);
+                if (x == y || x.getOrigin() != y.getOrigin()) continue;
+                boolean interfere = false;
+                long[] conflict = conflictMap.get(x);
+                for (VirtualRegister member : memberMap.get(y)) {
+                    int index = functionIR.findRegisterIndex(member);
+                    if ((conflict[index >> 6] & (1L << index)) != 0) {
+                        interfere = true;
+                        break;
+                    }
+                }
+                if (interfere) continue;
+                if (y == y.getOrigin()) {
+                    VirtualRegister t = x;
+                    x = y;
+                    y = t;
+                }
+                for (VirtualRegister member : memberMap.get(y)) {
+                    leaderMap.put(member, x);
+                }
+                memberMap.get(x).addAll(memberMap.remove(y));
+                long[] merged = conflictMap.get(x), removed = conflictMap.remove(y);
+                for (int w = 0; w < words; w++) {
+                    merged[w] |= removed[w];
+                }
+            }
+        }
+        for (Block block : functionIR.getBlockList()) {
+            for (Instruction instruction : block.getInstructionList()) {
+                for (VirtualRegister virtualRegister : new ArrayList<>(instruction.getUseSet())) {
+                    VirtualRegister leader = leaderMap.get(virtualRegister);
+                    if (leader != null && leader != virtualRegister) {
+                        instruction.replaceUse(virtualRegister, leader);
+                    }
+                }
+                for (VirtualRegister virtualRegister : new ArrayList<>(instruction.getKillSet())) {
+                    VirtualRegister leader = leaderMap.get(virtualRegister);
+                    if (leader != null && leader != virtualRegister) {
+                        instruction.replaceDef(virtualRegister, leader);
+                    }
+                }
+            }
+            block.getInstructionList().removeIf(instruction -> instruction instanceof MoveInstruction
+                    && ((MoveInstruction) instruction).getTarget() == ((MoveInstruction) instruction).getSource());
+        }
+    }
+
+    private VirtualRegister find(Map<VirtualRegister, VirtualRegister> leaderMap, Map<VirtualRegister, Set<VirtualRegister>> memberMap,
+                                 Map<VirtualRegister, long[]> conflictMap, long[][] edge, int words,
+                                 VirtualRegister virtualRegister) {
+        if (!leaderMap.containsKey(virtualRegister)) {
+            int index = functionIR.getRegisterIndex(virtualRegister);
+            leaderMap.put(virtualRegister, virtualRegister);
+            memberMap.put(virtualRegister, new HashSet<>(Collections.singleton(virtualRegister)));
+            conflictMap.put(virtualRegister, index < edge.length && edge[index] != null ? edge[index].clone() : new long[words]);
+        }
+        return leaderMap.get(virtualRegister);
+    }
 }
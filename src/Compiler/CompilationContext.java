@@ -0,0 +1,240 @@
+package Compiler;
+
+import Compiler.AST.Statement.VariableDeclarationStatement;
+import Compiler.AST.StringAccumulator;
+import Compiler.AST.Symbol.SymbolTable;
+import Compiler.AST.Type.ClassTable;
+import Compiler.AST.Type.FunctionTable;
+import Compiler.CFG.FunctionIR;
+import Compiler.Opt.LivenessAnalyst;
+import Compiler.Utility.Error.InternalError;
+import org.antlr.v4.runtime.tree.ParseTreeProperty;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Function;
+
+/*
+    Everything one compilation writes while it runs: the tables of the front end, the
+    functions of the IR, the register counter, the liveness of the function being
+    optimized and the state of the translator. The static accessors of ProgramAST,
+    ProgramIR, RegisterManager, LivenessAnalyst and Translator read the context bound
+    to the current thread, so compilations on different threads never see each other.
+ */
+public class CompilationContext {
+    private static final ThreadLocal<CompilationContext> current = new ThreadLocal<>();
+    private static final boolean parallel = Boolean.parseBoolean(System.getProperty("compile.parallel", "true"));
+
+    private ClassTable classTable;
+    private SymbolTable symbolTable;
+    private FunctionTable globalFunctionTable;
+    private List<VariableDeclarationStatement> globalVariableDeclarationStatementList;
+    private StringAccumulator stringAccumulator;
+
+    private int row, column;
+    private ParseTreeProperty<Object> returnNode = new ParseTreeProperty<>();
+
+    private List<String> constStringList;
+    private Map<String, FunctionIR> functionMap;
+    private FunctionIR currentFunction;
+    private int registerCount;
+
+    private LivenessAnalyst livenessAnalyst;
+
+    private int offset;
+    private FunctionIR translatedFunction;
+
+    public static CompilationContext current() {
+        CompilationContext context = current.get();
+        if (context == null) {
+            throw new InternalError("No compilation is running on this thread");
+        }
+        return context;
+    }
+
+    /* binds the context to this thread, returning the one it replaces */
+    public static CompilationContext enter(CompilationContext context) {
+        CompilationContext previous = current.get();
+        current.set(context);
+        return previous;
+    }
+
+    public static void leave(CompilationContext previous) {
+        if (previous == null) {
+            current.remove();
+        } else {
+            current.set(previous);
+        }
+    }
+
+    /*
+        A context for one function of this program: the tables, functions and strings
+        are shared, while the liveness and the translator state are its own. Registers
+        made under it are numbered on from the count of this context, so their names
+        do not depend on which thread got to a function first.
+     */
+    private CompilationContext fork() {
+        CompilationContext context = new CompilationContext();
+        context.classTable = classTable;
+        context.symbolTable = symbolTable;
+        context.globalFunctionTable = globalFunctionTable;
+        context.globalVariableDeclarationStatementList = globalVariableDeclarationStatementList;
+        context.returnNode = returnNode;
+        context.constStringList = constStringList;
+        context.functionMap = functionMap;
+        context.registerCount = registerCount;
+        return context;
+    }
+
+    /*
+        Applies the action to every function of the program, each in a forked context,
+        as tasks of the common fork-join pool. The results come back in the order of the
+        function map whatever order the tasks finish in. The passes a function goes
+        through only touch the function itself, so the tasks need no locking.
+     */
+    public <T> List<T> forEachFunction(Function<FunctionIR, T> action) {
+        List<FunctionIR> functionList = new ArrayList<>(functionMap.values());
+        List<CompilationContext> contextList = new ArrayList<>();
+        List<ForkJoinTask<T>> taskList = new ArrayList<>();
+        for (FunctionIR functionIR : functionList) {
+            CompilationContext context = fork();
+            contextList.add(context);
+            taskList.add(ForkJoinTask.adapt(() -> {
+                CompilationContext previous = enter(context);
+                try {
+                    return action.apply(functionIR);
+                } finally {
+                    leave(previous);
+                }
+            }));
+        }
+        if (parallel && taskList.size() > 1) {
+            ForkJoinTask.invokeAll(taskList);
+        } else {
+            taskList.forEach(ForkJoinTask::invoke);
+        }
+        List<T> resultList = new ArrayList<>();
+        for (ForkJoinTask<T> task : taskList) {
+            resultList.add(task.join());
+        }
+        for (CompilationContext context : contextList) {
+            registerCount = Math.max(registerCount, context.registerCount);
+        }
+        return resultList;
+    }
+
+    public ClassTable getClassTable() {
+        return classTable;
+    }
+
+    public void setClassTable(ClassTable classTable) {
+        this.classTable = classTable;
+    }
+
+    public SymbolTable getSymbolTable() {
+        return symbolTable;
+    }
+
+    public void setSymbolTable(SymbolTable symbolTable) {
+        this.symbolTable = symbolTable;
+    }
+
+    public FunctionTable getGlobalFunctionTable() {
+        return globalFunctionTable;
+    }
+
+    public void setGlobalFunctionTable(FunctionTable globalFunctionTable) {
+        this.globalFunctionTable = globalFunctionTable;
+    }
+
+    public List<VariableDeclarationStatement> getGlobalVariableDeclarationStatementList() {
+        return globalVariableDeclarationStatementList;
+    }
+
+    public void setGlobalVariableDeclarationStatementList(List<VariableDeclarationStatement> globalVariableDeclarationStatementList) {
+        this.globalVariableDeclarationStatementList = globalVariableDeclarationStatementList;
+    }
+
+    public StringAccumulator getStringAccumulator() {
+        return stringAccumulator;
+    }
+
+    public void setStringAccumulator(StringAccumulator stringAccumulator) {
+        this.stringAccumulator = stringAccumulator;
+    }
+
+    public int getRow() {
+        return row;
+    }
+
+    public int getColumn() {
+        return column;
+    }
+
+    public void setPosition(int row, int column) {
+        this.row = row;
+        this.column = column;
+    }
+
+    public ParseTreeProperty<Object> getReturnNode() {
+        return returnNode;
+    }
+
+    /* the nodes are keyed by the parse tree, which would otherwise live as long as the context */
+    public void clearReturnNode() {
+        returnNode = new ParseTreeProperty<>();
+    }
+
+    public List<String> getConstStringList() {
+        return constStringList;
+    }
+
+    public void setConstStringList(List<String> constStringList) {
+        this.constStringList = constStringList;
+    }
+
+    public Map<String, FunctionIR> getFunctionMap() {
+        return functionMap;
+    }
+
+    public void setFunctionMap(Map<String, FunctionIR> functionMap) {
+        this.functionMap = functionMap;
+    }
+
+    public FunctionIR getCurrentFunction() {
+        return currentFunction;
+    }
+
+    public void setCurrentFunction(FunctionIR currentFunction) {
+        this.currentFunction = currentFunction;
+    }
+
+    public int nextRegisterId() {
+        return registerCount++;
+    }
+
+    public LivenessAnalyst getLivenessAnalyst() {
+        if (livenessAnalyst == null) {
+            livenessAnalyst = new LivenessAnalyst();
+        }
+        return livenessAnalyst;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public void setOffset(int offset) {
+        this.offset = offset;
+    }
+
+    public FunctionIR getTranslatedFunction() {
+        return translatedFunction;
+    }
+
+    public void setTranslatedFunction(FunctionIR translatedFunction) {
+        this.translatedFunction = translatedFunction;
+    }
+}
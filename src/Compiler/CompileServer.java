@@ -0,0 +1,51 @@
+package Compiler;
+
+import Compiler.Utility.Error.CompilationError;
+
+import java.io.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Keeps one JVM alive for many compilations. Every line of the input is a request
+    "<source> <target>": the program in the source file is compiled into the target
+    file. The requests run concurrently on a pool of server.threads threads (all the
+    processors by default), and each one is answered with a line as soon as it is
+    done, "ok <source>" or "error <source>: <message>", so the answers may come out
+    of order. The server stops after the input is closed and every request is done.
+ */
+public class CompileServer {
+    private static final int threadCount = Math.max(1, Integer.getInteger("server.threads",
+            Runtime.getRuntime().availableProcessors()));
+
+    public static void serve(InputStream in, PrintStream out) throws IOException, InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            String request = line.trim();
+            if (request.isEmpty()) continue;
+            executor.execute(() -> out.println(handle(request)));
+        }
+        executor.shutdown();
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        out.flush();
+    }
+
+    private static String handle(String request) {
+        String[] field = request.split("\\s+");
+        if (field.length != 2) {
+            return "error " + request + ": expected \"<source> <target>\"";
+        }
+        try (InputStream cin = new FileInputStream(field[0]);
+             Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(field[1])), 1 << 16)) {
+            Main.compile(cin, writer, false);
+            return "ok " + field[0];
+        } catch (CompilationError | IOException e) {
+            return "error " + field[0] + ": " + e.getMessage();
+        } catch (RuntimeException | Error e) {
+            return "error " + field[0] + ": " + e;
+        }
+    }
+}
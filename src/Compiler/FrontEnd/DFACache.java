@@ -0,0 +1,458 @@
+package Compiler.FrontEnd;
+
+import Compiler.FrontEnd.Parser.MxstarLexer;
+import Compiler.FrontEnd.Parser.MxstarParser;
+import org.antlr.v4.runtime.Recognizer;
+import org.antlr.v4.runtime.RuntimeMetaData;
+import org.antlr.v4.runtime.atn.*;
+import org.antlr.v4.runtime.dfa.DFA;
+import org.antlr.v4.runtime.dfa.DFAState;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/*
+    The DFA that ANTLR builds while it predicts is shared by every parser and lexer of
+    the JVM, but each run of the compiler starts with it empty and spends its first
+    thousands of tokens filling it. This keeps it in a file between runs: load fills
+    the DFA of the lexer and the parser before anything is parsed, save writes it
+    back after a compilation that grew it.
+
+    A DFA state is its ATN configurations, their prediction contexts and semantic
+    contexts, and its edges. States ANTLR only builds on the way to full-context
+    prediction, and anything else that can't be rebuilt exactly, are left out together
+    with the edges to them, and are simply predicted again when needed. The file starts
+    with the runtime version and a checksum of both serialized ATNs, and is ignored
+    when either changed, or when it is broken in any way. Nothing here ever fails a
+    compilation.
+
+        java -Ddfa.cache=<file> ... Compiler.Main
+ */
+public class DFACache {
+    private static final int magic = 0x4d584446;
+    private static final int format = 1;
+    private static final int nullContext = -1, emptyContext = -2;
+    private static final int noState = -1, errorState = -2;
+
+    private static int loadedCount = 0;
+
+    private final ATN atn;
+    private final DFA[] decisionToDFA;
+    private final boolean lexer;
+    private ATNState nonGreedyState;
+
+    private DFACache(Recognizer<?, ?> recognizer, DFA[] decisionToDFA) {
+        this.atn = recognizer.getATN();
+        this.decisionToDFA = decisionToDFA;
+        this.lexer = recognizer instanceof MxstarLexer;
+    }
+
+    private static List<DFACache> getCacheList() {
+        MxstarLexer mxstarLexer = new MxstarLexer(null);
+        MxstarParser mxstarParser = new MxstarParser(null);
+        return Arrays.asList(new DFACache(mxstarLexer, mxstarLexer.getInterpreter().decisionToDFA),
+                new DFACache(mxstarParser, mxstarParser.getInterpreter().decisionToDFA));
+    }
+
+    private static long getVersion() {
+        CRC32 crc32 = new CRC32();
+        crc32.update(RuntimeMetaData.VERSION.getBytes(StandardCharsets.UTF_8));
+        crc32.update(MxstarLexer._serializedATN.getBytes(StandardCharsets.UTF_8));
+        crc32.update(MxstarParser._serializedATN.getBytes(StandardCharsets.UTF_8));
+        return crc32.getValue();
+    }
+
+    /* the states a save would write, so states that are never kept don't make every run save again */
+    private static int countStates() {
+        int count = 0;
+        for (DFACache cache : getCacheList()) {
+            for (DFA dfa : cache.decisionToDFA) {
+                for (DFAState state : dfa.getStates()) {
+                    if (cache.canWrite(state)) ++count;
+                }
+            }
+        }
+        return count;
+    }
+
+    /* only into a DFA nothing was predicted with yet; everything is read before anything is put in */
+    public static synchronized void load(Path path) {
+        if (!Files.isReadable(path)) return;
+        try {
+            ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(path));
+            if (in.getInt() != magic || in.getInt() != format || in.getLong() != getVersion()) return;
+            List<DFACache> cacheList = getCacheList();
+            List<Runnable> installList = new ArrayList<>();
+            for (DFACache cache : cacheList) {
+                installList.add(cache.read(in));
+            }
+            installList.forEach(Runnable::run);
+            loadedCount = countStates();
+        } catch (IOException | RuntimeException e) {
+            // a broken cache is only a cold start
+        }
+    }
+
+    /* written next to the file and moved over it, so a compiler starting meanwhile sees the old one or the new one */
+    public static synchronized void save(Path path) {
+        if (countStates() <= loadedCount) return;
+        Path temporary = null;
+        try {
+            Path directory = path.toAbsolutePath().getParent();
+            temporary = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                out.writeInt(magic);
+                out.writeInt(format);
+                out.writeLong(getVersion());
+                for (DFACache cache : getCacheList()) {
+                    cache.write(out);
+                }
+            }
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            loadedCount = countStates();
+        } catch (IOException | RuntimeException e) {
+            try {
+                if (temporary != null) Files.deleteIfExists(temporary);
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private void write(DataOutputStream out) throws IOException {
+        out.writeInt(decisionToDFA.length);
+        for (DFA dfa : decisionToDFA) {
+            List<DFAState> stateList = new ArrayList<>();
+            for (DFAState state : dfa.getStates()) {
+                if (canWrite(state)) stateList.add(state);
+            }
+            Map<DFAState, Integer> stateMap = new IdentityHashMap<>();
+            stateList.forEach(state -> stateMap.put(state, stateMap.size()));
+
+            Map<PredictionContext, Integer> contextMap = new IdentityHashMap<>();
+            List<PredictionContext> contextList = new ArrayList<>();
+            for (DFAState state : stateList) {
+                for (ATNConfig config : state.configs) {
+                    collectContext(config.context, contextMap, contextList);
+                }
+            }
+            out.writeInt(contextList.size());
+            for (PredictionContext context : contextList) {
+                out.writeInt(context.size());
+                for (int i = 0; i < context.size(); i++) {
+                    out.writeInt(getContextId(context.getParent(i), contextMap));
+                    out.writeInt(context.getReturnState(i));
+                }
+            }
+
+            out.writeInt(stateList.size());
+            for (DFAState state : stateList) {
+                out.writeInt(state.configs.size());
+                for (ATNConfig config : state.configs) {
+                    out.writeInt(config.state.stateNumber);
+                    out.writeInt(config.alt);
+                    out.writeInt(getContextId(config.context, contextMap));
+                    out.writeInt(config.reachesIntoOuterContext);
+                    if (lexer) {
+                        out.writeBoolean(((LexerATNConfig) config).hasPassedThroughNonGreedyDecision());
+                        writeExecutor(out, ((LexerATNConfig) config).getLexerActionExecutor());
+                    } else {
+                        writeSemanticContext(out, config.semanticContext);
+                    }
+                }
+                out.writeInt(state.configs.uniqueAlt);
+                out.writeBoolean(state.isAcceptState);
+                out.writeInt(state.prediction);
+                if (lexer) writeExecutor(out, state.lexerActionExecutor);
+                out.writeInt(state.predicates == null ? -1 : state.predicates.length);
+                if (state.predicates != null) {
+                    for (DFAState.PredPrediction predicate : state.predicates) {
+                        writeSemanticContext(out, predicate.pred);
+                        out.writeInt(predicate.alt);
+                    }
+                }
+            }
+            for (DFAState state : stateList) {
+                int edgeCount = state.edges == null ? -1 : state.edges.length;
+                out.writeInt(edgeCount);
+                for (int i = 0; i < edgeCount; i++) {
+                    out.writeInt(getStateId(state.edges[i], stateMap));
+                }
+            }
+
+            if (dfa.isPrecedenceDfa()) {
+                DFAState[] startEdges = dfa.s0 == null || dfa.s0.edges == null ? new DFAState[0] : dfa.s0.edges;
+                out.writeInt(startEdges.length);
+                for (DFAState state : startEdges) {
+                    out.writeInt(getStateId(state, stateMap));
+                }
+            } else {
+                out.writeInt(getStateId(dfa.s0, stateMap));
+            }
+        }
+    }
+
+    private Runnable read(ByteBuffer in) throws IOException {
+        if (in.getInt() != decisionToDFA.length) throw new IOException("the number of decisions changed");
+        List<Runnable> installList = new ArrayList<>();
+        for (DFA dfa : decisionToDFA) {
+            int contextCount = in.getInt();
+            List<PredictionContext> contextList = new ArrayList<>();
+            for (int k = 0; k < contextCount; k++) {
+                int size = in.getInt();
+                PredictionContext[] parents = new PredictionContext[size];
+                int[] returnStates = new int[size];
+                for (int i = 0; i < size; i++) {
+                    parents[i] = getContext(in.getInt(), contextList);
+                    returnStates[i] = in.getInt();
+                }
+                contextList.add(size == 1 ? SingletonPredictionContext.create(parents[0], returnStates[0])
+                        : new ArrayPredictionContext(parents, returnStates));
+            }
+
+            int stateCount = in.getInt();
+            List<DFAState> stateList = new ArrayList<>();
+            for (int k = 0; k < stateCount; k++) {
+                int configCount = in.getInt();
+                ATNConfigSet configs = lexer ? new OrderedATNConfigSet() : new ATNConfigSet(false);
+                for (int i = 0; i < configCount; i++) {
+                    ATNState atnState = atn.states.get(in.getInt());
+                    int alt = in.getInt();
+                    PredictionContext context = getContext(in.getInt(), contextList);
+                    int reachesIntoOuterContext = in.getInt();
+                    ATNConfig config;
+                    if (lexer) {
+                        boolean passedThroughNonGreedyDecision = in.get() != 0;
+                        config = createLexerConfig(atnState, alt, context, readExecutor(in), passedThroughNonGreedyDecision);
+                    } else {
+                        config = new ATNConfig(atnState, alt, context, readSemanticContext(in));
+                    }
+                    config.reachesIntoOuterContext = reachesIntoOuterContext;
+                    configs.add(config);
+                }
+                configs.uniqueAlt = in.getInt();
+                configs.setReadonly(true);
+                DFAState state = new DFAState(configs);
+                state.isAcceptState = in.get() != 0;
+                state.prediction = in.getInt();
+                if (lexer) state.lexerActionExecutor = readExecutor(in);
+                int predicateCount = in.getInt();
+                if (predicateCount >= 0) {
+                    state.predicates = new DFAState.PredPrediction[predicateCount];
+                    for (int i = 0; i < predicateCount; i++) {
+                        state.predicates[i] = new DFAState.PredPrediction(readSemanticContext(in), in.getInt());
+                    }
+                }
+                stateList.add(state);
+            }
+            for (DFAState state : stateList) {
+                int edgeCount = in.getInt();
+                if (edgeCount < 0) continue;
+                state.edges = new DFAState[edgeCount];
+                for (int i = 0; i < edgeCount; i++) {
+                    state.edges[i] = getState(in.getInt(), stateList);
+                }
+            }
+
+            List<DFAState> startList = new ArrayList<>();
+            int startCount = dfa.isPrecedenceDfa() ? in.getInt() : 1;
+            for (int i = 0; i < startCount; i++) {
+                startList.add(getState(in.getInt(), stateList));
+            }
+            installList.add(() -> install(dfa, stateList, startList));
+        }
+        return () -> installList.forEach(Runnable::run);
+    }
+
+    private static void install(DFA dfa, List<DFAState> stateList, List<DFAState> startList) {
+        if (!dfa.states.isEmpty()) return;
+        for (DFAState state : stateList) {
+            state.stateNumber = dfa.states.size();
+            dfa.states.put(state, state);
+        }
+        if (dfa.isPrecedenceDfa()) {
+            for (int precedence = 0; precedence < startList.size(); precedence++) {
+                if (startList.get(precedence) != null) dfa.setPrecedenceStartState(precedence, startList.get(precedence));
+            }
+        } else {
+            dfa.s0 = startList.get(0);
+        }
+    }
+
+    /* full-context states, and configurations this file has no words for; the lexer only ever builds full-context sets */
+    private boolean canWrite(DFAState state) {
+        if (state.requiresFullContext || (!lexer && state.configs.fullCtx)) return false;
+        if (state.predicates != null) {
+            for (DFAState.PredPrediction predicate : state.predicates) {
+                if (!canWrite(predicate.pred)) return false;
+            }
+        }
+        if (state.lexerActionExecutor != null && !canWrite(state.lexerActionExecutor)) return false;
+        for (ATNConfig config : state.configs) {
+            if (lexer) {
+                if (config.semanticContext != SemanticContext.NONE) return false;
+                if (!canWrite(((LexerATNConfig) config).getLexerActionExecutor())) return false;
+            } else if (!canWrite(config.semanticContext)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean canWrite(LexerActionExecutor executor) {
+        if (executor == null) return true;
+        for (LexerAction action : executor.getLexerActions()) {
+            if (action instanceof LexerIndexedCustomAction) action = ((LexerIndexedCustomAction) action).getAction();
+            if (getActionIndex(action) < 0) return false;
+        }
+        return true;
+    }
+
+    private static boolean canWrite(SemanticContext semanticContext) {
+        if (semanticContext == SemanticContext.NONE) return true;
+        if (semanticContext instanceof SemanticContext.Predicate) return true;
+        if (semanticContext instanceof SemanticContext.PrecedencePredicate) return true;
+        SemanticContext[] operands = null;
+        if (semanticContext instanceof SemanticContext.AND) operands = ((SemanticContext.AND) semanticContext).opnds;
+        if (semanticContext instanceof SemanticContext.OR) operands = ((SemanticContext.OR) semanticContext).opnds;
+        if (operands == null) return false;
+        for (SemanticContext operand : operands) {
+            if (!canWrite(operand)) return false;
+        }
+        return true;
+    }
+
+    /* parents before children, so each one is read after the ones it points to */
+    private static void collectContext(PredictionContext context, Map<PredictionContext, Integer> contextMap,
+                                       List<PredictionContext> contextList) {
+        if (context == null || context == PredictionContext.EMPTY || contextMap.containsKey(context)) return;
+        for (int i = 0; i < context.size(); i++) {
+            collectContext(context.getParent(i), contextMap, contextList);
+        }
+        contextMap.put(context, contextList.size());
+        contextList.add(context);
+    }
+
+    private static int getContextId(PredictionContext context, Map<PredictionContext, Integer> contextMap) {
+        if (context == null) return nullContext;
+        if (context == PredictionContext.EMPTY) return emptyContext;
+        return contextMap.get(context);
+    }
+
+    private static PredictionContext getContext(int id, List<PredictionContext> contextList) {
+        if (id == nullContext) return null;
+        if (id == emptyContext) return PredictionContext.EMPTY;
+        return contextList.get(id);
+    }
+
+    private static int getStateId(DFAState state, Map<DFAState, Integer> stateMap) {
+        if (state == ATNSimulator.ERROR) return errorState;
+        return state == null ? noState : stateMap.getOrDefault(state, noState);
+    }
+
+    private static DFAState getState(int id, List<DFAState> stateList) {
+        if (id == errorState) return ATNSimulator.ERROR;
+        return id == noState ? null : stateList.get(id);
+    }
+
+    private static void writeSemanticContext(DataOutputStream out, SemanticContext semanticContext) throws IOException {
+        if (semanticContext == SemanticContext.NONE) {
+            out.writeByte(0);
+        } else if (semanticContext instanceof SemanticContext.Predicate) {
+            SemanticContext.Predicate predicate = (SemanticContext.Predicate) semanticContext;
+            out.writeByte(1);
+            out.writeInt(predicate.ruleIndex);
+            out.writeInt(predicate.predIndex);
+            out.writeBoolean(predicate.isCtxDependent);
+        } else if (semanticContext instanceof SemanticContext.PrecedencePredicate) {
+            out.writeByte(2);
+            out.writeInt(((SemanticContext.PrecedencePredicate) semanticContext).precedence);
+        } else {
+            boolean and = semanticContext instanceof SemanticContext.AND;
+            SemanticContext[] operands = and ? ((SemanticContext.AND) semanticContext).opnds : ((SemanticContext.OR) semanticContext).opnds;
+            out.writeByte(and ? 3 : 4);
+            out.writeInt(operands.length);
+            for (SemanticContext operand : operands) {
+                writeSemanticContext(out, operand);
+            }
+        }
+    }
+
+    /* the operators flatten and sort their operands as they are built, so folding gives back the same set */
+    private static SemanticContext readSemanticContext(ByteBuffer in) throws IOException {
+        int tag = in.get();
+        switch (tag) {
+            case 0: return SemanticContext.NONE;
+            case 1: return new SemanticContext.Predicate(in.getInt(), in.getInt(), in.get() != 0);
+            case 2: return new SemanticContext.PrecedencePredicate(in.getInt());
+            case 3:
+            case 4:
+                int count = in.getInt();
+                SemanticContext result = readSemanticContext(in);
+                for (int i = 1; i < Math.max(count, 2); i++) {
+                    SemanticContext operand = i < count ? readSemanticContext(in) : result;
+                    result = tag == 3 ? new SemanticContext.AND(result, operand) : new SemanticContext.OR(result, operand);
+                }
+                return result;
+            default: throw new IOException("unknown semantic context " + tag);
+        }
+    }
+
+    private int getActionIndex(LexerAction action) {
+        for (int i = 0; i < atn.lexerActions.length; i++) {
+            if (atn.lexerActions[i].equals(action)) return i;
+        }
+        return -1;
+    }
+
+    /* an action is the index of it among the actions of the ATN, and its offset when it has one */
+    private void writeExecutor(DataOutputStream out, LexerActionExecutor executor) throws IOException {
+        if (executor == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(executor.getLexerActions().length);
+        for (LexerAction action : executor.getLexerActions()) {
+            int offset = -1;
+            if (action instanceof LexerIndexedCustomAction) {
+                offset = ((LexerIndexedCustomAction) action).getOffset();
+                action = ((LexerIndexedCustomAction) action).getAction();
+            }
+            out.writeInt(getActionIndex(action));
+            out.writeInt(offset);
+        }
+    }
+
+    private LexerActionExecutor readExecutor(ByteBuffer in) throws IOException {
+        int count = in.getInt();
+        if (count < 0) return null;
+        LexerAction[] actions = new LexerAction[count];
+        for (int i = 0; i < count; i++) {
+            LexerAction action = atn.lexerActions[in.getInt()];
+            int offset = in.getInt();
+            actions[i] = offset < 0 ? action : new LexerIndexedCustomAction(offset, action);
+        }
+        return new LexerActionExecutor(actions);
+    }
+
+    /*
+        Whether a lexer configuration went through a non-greedy decision can only be
+        inherited from the configuration it was made from, so one that did is made from
+        a configuration standing on a non-greedy decision.
+     */
+    private ATNConfig createLexerConfig(ATNState atnState, int alt, PredictionContext context,
+                                        LexerActionExecutor executor, boolean passedThroughNonGreedyDecision) {
+        if (!passedThroughNonGreedyDecision) return new LexerATNConfig(atnState, alt, context, executor);
+        if (nonGreedyState == null) {
+            for (ATNState state : atn.states) {
+                if (state instanceof DecisionState && ((DecisionState) state).nonGreedy) nonGreedyState = state;
+            }
+            if (nonGreedyState == null) throw new IllegalStateException("no non-greedy decision in the lexer");
+        }
+        LexerATNConfig source = new LexerATNConfig(new LexerATNConfig(nonGreedyState, alt, context, executor), nonGreedyState);
+        return new LexerATNConfig(source, atnState);
+    }
+}
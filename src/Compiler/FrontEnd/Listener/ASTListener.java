@@ -19,9 +19,7 @@ import Compiler.AST.Statement.*;
 import Compiler.AST.Symbol.GlobalScope;
 import Compiler.AST.Symbol.Scope;
 import Compiler.AST.Symbol.Symbol;
-import Compiler.AST.Type.ClassType;
-import Compiler.AST.Type.FunctionType;
-import Compiler.AST.Type.Type;
+import Compiler.AST.Type.*;
 import Compiler.FrontEnd.Parser.MxstarParser;
 import org.antlr.v4.runtime.tree.ParseTree;
 
@@ -31,16 +29,16 @@ import java.util.List;
 public class ASTListener extends BaseListener{
     @Override
     public void enterProgram(MxstarParser.ProgramContext ctx) {
-        if (ProgramAST.symbolTable.getCurrentScope() != null) {
+        if (ProgramAST.getSymbolTable().getCurrentScope() != null) {
             System.out.println("surprise motherfucker");
         }
-        ProgramAST.symbolTable.enterScope(GlobalScope.getInstance());
-        ProgramAST.globalFunctionTable.getFunctionMap().forEach((name, function) -> ProgramAST.symbolTable.addSymbol(new Symbol(name, function)));
+        ProgramAST.getSymbolTable().enterScope(GlobalScope.getInstance());
+        ProgramAST.getGlobalFunctionTable().getFunctionMap().forEach((name, function) -> ProgramAST.getSymbolTable().addSymbol(new Symbol(name, function)));
     }
 
     @Override
     public void exitProgram(MxstarParser.ProgramContext ctx) {
-        ProgramAST.symbolTable.exitScope();
+        ProgramAST.getSymbolTable().exitScope();
     }
 
     @Override
@@ -48,22 +46,28 @@ public class ASTListener extends BaseListener{
         super.exitVariableDeclarationStatement(ctx);
     }
 
+    /* the globals and the members were declared by DeclarationScanner, the locals are declared here */
     @Override
     public void exitVariableDeclarationStatement(MxstarParser.VariableDeclarationStatementContext ctx) {
         VariableDeclarationStatement variableDeclarationStatement = (VariableDeclarationStatement) returnNode.get(ctx);
+        if (variableDeclarationStatement == null) {
+            variableDeclarationStatement = new VariableDeclarationStatement(ctx.IDENTIFIER().getText(), (Type) returnNode.get(ctx.type()));
+            returnNode.put(ctx, variableDeclarationStatement);
+        }
         if (ctx.expression() != null) {
             Expression expression = (Expression) returnNode.get(ctx.expression());
             variableDeclarationStatement.setExpression(expression);
         }
         if (variableDeclarationStatement.getClassScope() == null) {
-            ProgramAST.symbolTable.addSymbol(variableDeclarationStatement.getSymbol());
+            ProgramAST.getSymbolTable().addSymbol(variableDeclarationStatement.getSymbol());
+            ProgramAST.getStringAccumulator().declare(variableDeclarationStatement.getSymbol());
         }
     }
 
     @Override
     public void enterFunctionDeclaration(MxstarParser.FunctionDeclarationContext ctx) {
         FunctionType functionType = (FunctionType) returnNode.get(ctx);
-        ProgramAST.symbolTable.enterScope(functionType);
+        ProgramAST.getSymbolTable().enterScope(functionType);
     }
 
     @Override
@@ -71,33 +75,34 @@ public class ASTListener extends BaseListener{
         FunctionType functionType = (FunctionType) returnNode.get(ctx);
         BlockStatement blockStatement = (BlockStatement) returnNode.get(ctx.blockStatement());
         functionType.setBlockStatement(blockStatement);
-        ProgramAST.symbolTable.exitScope();
+        ProgramAST.getStringAccumulator().finish();
+        ProgramAST.getSymbolTable().exitScope();
     }
 
     @Override
     public void enterClassDeclaration(MxstarParser.ClassDeclarationContext ctx) {
         ClassType classType = (ClassType) returnNode.get(ctx);
-        ProgramAST.symbolTable.enterScope(classType);
-        classType.getMemberFunctionTable().getFunctionMap().forEach((name, function) -> ProgramAST.symbolTable.addSymbol(new Symbol(name, function)));
-        classType.getMemberVariableTable().getVariableMap().forEach((name, variable) -> ProgramAST.symbolTable.addSymbol(variable.getSymbol()));
+        ProgramAST.getSymbolTable().enterScope(classType);
+        classType.getMemberFunctionTable().getFunctionMap().forEach((name, function) -> ProgramAST.getSymbolTable().addSymbol(new Symbol(name, function)));
+        classType.getMemberVariableTable().getVariableMap().forEach((name, variable) -> ProgramAST.getSymbolTable().addSymbol(variable.getSymbol()));
     }
 
     @Override
     public void exitClassDeclaration(MxstarParser.ClassDeclarationContext ctx) {
-        ProgramAST.symbolTable.exitScope();
+        ProgramAST.getSymbolTable().exitScope();
     }
 
     @Override
     public void enterStatement(MxstarParser.StatementContext ctx) {
         if (ctx.getParent() instanceof MxstarParser.IfStatementContext) {
-            ProgramAST.symbolTable.enterScope(new BlockStatement());
+            ProgramAST.getSymbolTable().enterScope(new BlockStatement());
         }
     }
 
     @Override
     public void exitStatement(MxstarParser.StatementContext ctx) {
         if (ctx.getParent() instanceof MxstarParser.IfStatementContext) {
-            ProgramAST.symbolTable.exitScope();
+            ProgramAST.getSymbolTable().exitScope();
         }
         Statement statement = (Statement) returnNode.get(ctx.getChild(0));
         returnNode.put(ctx, statement);
@@ -106,11 +111,11 @@ public class ASTListener extends BaseListener{
     @Override
     public void enterBlockStatement(MxstarParser.BlockStatementContext ctx) {
         BlockStatement blockStatement = new BlockStatement();
-        Scope currentScope = ProgramAST.symbolTable.getCurrentScope();
-        ProgramAST.symbolTable.enterScope(blockStatement);
+        Scope currentScope = ProgramAST.getSymbolTable().getCurrentScope();
+        ProgramAST.getSymbolTable().enterScope(blockStatement);
         if (currentScope instanceof FunctionType) {
             FunctionType functionType = (FunctionType) currentScope;
-            functionType.getParameterList().forEach(symbol -> ProgramAST.symbolTable.addSymbol(symbol));
+            functionType.getParameterList().forEach(symbol -> ProgramAST.getSymbolTable().addSymbol(symbol));
         }
         returnNode.put(ctx, blockStatement);
     }
@@ -119,7 +124,7 @@ public class ASTListener extends BaseListener{
     public void exitBlockStatement(MxstarParser.BlockStatementContext ctx) {
         BlockStatement blockStatement = (BlockStatement) returnNode.get(ctx);
         ctx.statement().forEach(statementContext -> blockStatement.addStatement((Statement) returnNode.get(statementContext)));
-        ProgramAST.symbolTable.exitScope();
+        ProgramAST.getSymbolTable().exitScope();
     }
 
     @Override
@@ -132,6 +137,7 @@ public class ASTListener extends BaseListener{
         Expression expression = null;
         if (ctx.expression() != null) {
             expression = (Expression) returnNode.get(ctx.expression());
+            ProgramAST.getStringAccumulator().statement(expression);
         }
         returnNode.put(ctx, new ExpressionStatement(expression));
     }
@@ -156,7 +162,8 @@ public class ASTListener extends BaseListener{
     @Override
     public void enterWhileStatement(MxstarParser.WhileStatementContext ctx) {
         WhileStatement whileStatement = new WhileStatement();
-        ProgramAST.symbolTable.enterScope(whileStatement);
+        ProgramAST.getSymbolTable().enterScope(whileStatement);
+        ProgramAST.getStringAccumulator().enterLoop(whileStatement);
         returnNode.put(ctx, whileStatement);
     }
 
@@ -169,13 +176,15 @@ public class ASTListener extends BaseListener{
         }
         Statement statement = (Statement) returnNode.get(ctx.statement());
         whileStatement.setStatement(statement);
-        ProgramAST.symbolTable.exitScope();
+        ProgramAST.getStringAccumulator().exitLoop();
+        ProgramAST.getSymbolTable().exitScope();
     }
 
     @Override
     public void enterForStatement(MxstarParser.ForStatementContext ctx) {
         ForStatement forStatement = new ForStatement();
-        ProgramAST.symbolTable.enterScope(forStatement);
+        ProgramAST.getSymbolTable().enterScope(forStatement);
+        ProgramAST.getStringAccumulator().enterLoop(forStatement);
         returnNode.put(ctx, forStatement);
     }
 
@@ -191,18 +200,21 @@ public class ASTListener extends BaseListener{
                 Expression expression = (Expression) returnNode.get(x);
                 if (semicolon == 0) {
                     forStatement.setInit(expression);
+                    ProgramAST.getStringAccumulator().statement(expression);
                 }
                 if (semicolon == 1) {
                     forStatement.setCondition(expression);
                 }
                 if (semicolon == 2) {
                     forStatement.setIncrement(expression);
+                    ProgramAST.getStringAccumulator().statement(expression);
                 }
             }
         }
         Statement statement = (Statement) returnNode.get(ctx.statement());
         forStatement.setStatement(statement);
-        ProgramAST.symbolTable.exitScope();
+        ProgramAST.getStringAccumulator().exitLoop();
+        ProgramAST.getSymbolTable().exitScope();
     }
 
     @Override
@@ -661,4 +673,35 @@ public class ASTListener extends BaseListener{
         Expression expression = (Expression) returnNode.get(ctx.expression());
         returnNode.put(ctx, expression);
     }
+
+    @Override
+    public void exitArrayType(MxstarParser.ArrayTypeContext ctx) {
+        Type type = (Type) returnNode.get(ctx.type());
+        if (type instanceof ArrayType) {
+            returnNode.put(ctx, new ArrayType(((ArrayType) type).getBaseType(), ((ArrayType) type).getDimension() + 1));
+        } else {
+            returnNode.put(ctx, new ArrayType(type, 1));
+        }
+    }
+
+    @Override
+    public void exitIntType(MxstarParser.IntTypeContext ctx) {
+        returnNode.put(ctx, IntType.getInstance());
+    }
+
+    @Override
+    public void exitStringType(MxstarParser.StringTypeContext ctx) {
+        returnNode.put(ctx, StringType.getInstance());
+    }
+
+    @Override
+    public void exitBoolType(MxstarParser.BoolTypeContext ctx) {
+        returnNode.put(ctx, BoolType.getInstance());
+    }
+
+    @Override
+    public void exitClassType(MxstarParser.ClassTypeContext ctx) {
+        String className = ctx.IDENTIFIER().getText();
+        returnNode.put(ctx, ProgramAST.getClassTable().getClassType(className));
+    }
 }
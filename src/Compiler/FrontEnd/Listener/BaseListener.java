@@ -1,23 +1,21 @@
 package Compiler.FrontEnd.Listener;
 
+import Compiler.CompilationContext;
 import Compiler.FrontEnd.Parser.MxstarBaseListener;
 
 import org.antlr.v4.runtime.ParserRuleContext;
 import org.antlr.v4.runtime.tree.ParseTreeProperty;
 
 public class BaseListener extends MxstarBaseListener {
-    public static int row, column;
-    static ParseTreeProperty<Object> returnNode = new ParseTreeProperty<>();
+    final ParseTreeProperty<Object> returnNode = CompilationContext.current().getReturnNode();
 
     @Override
     public void enterEveryRule(ParserRuleContext ctx) {
-        row = ctx.getStart().getLine();
-        column = ctx.getStart().getCharPositionInLine();
+        CompilationContext.current().setPosition(ctx.getStart().getLine(), ctx.getStart().getCharPositionInLine());
     }
 
     @Override
     public void exitEveryRule(ParserRuleContext ctx) {
-        row = ctx.getStart().getLine();
-        column = ctx.getStart().getCharPositionInLine();
+        CompilationContext.current().setPosition(ctx.getStart().getLine(), ctx.getStart().getCharPositionInLine());
     }
 }
@@ -0,0 +1,151 @@
+package Compiler.FrontEnd.Listener;
+
+import Compiler.AST.ProgramAST;
+import Compiler.AST.Statement.VariableDeclarationStatement;
+import Compiler.AST.Symbol.Symbol;
+import Compiler.AST.Type.*;
+import Compiler.CompilationContext;
+import Compiler.FrontEnd.Parser.MxstarParser;
+import Compiler.Utility.Error.CompilationError;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.ParseTreeProperty;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+    Declares the classes, the global functions and variables and the members of the
+    classes before ASTListener walks the tree, so every name can be used before the
+    place it is declared. Only the declarations themselves are looked at, never the
+    bodies of the functions, whose types and variables ASTListener builds on its way.
+ */
+public class DeclarationScanner {
+    private final ParseTreeProperty<Object> returnNode = CompilationContext.current().getReturnNode();
+
+    public static void scan(MxstarParser.ProgramContext ctx) {
+        new DeclarationScanner().scanProgram(ctx);
+    }
+
+    private void scanProgram(MxstarParser.ProgramContext ctx) {
+        for (MxstarParser.ClassDeclarationContext classContext : ctx.classDeclaration()) {
+            setPosition(classContext.IDENTIFIER().getSymbol());
+            String className = classContext.IDENTIFIER().getText();
+            ProgramAST.getClassTable().addClass(className, new ClassType(className));
+            returnNode.put(classContext, ProgramAST.getClassTable().getClassType(className));
+        }
+        for (ParseTree x : ctx.children) {
+            if (x instanceof MxstarParser.VariableDeclarationStatementContext) {
+                scanVariable((MxstarParser.VariableDeclarationStatementContext) x);
+            } else if (x instanceof MxstarParser.FunctionDeclarationContext) {
+                scanFunction((MxstarParser.FunctionDeclarationContext) x);
+            } else if (x instanceof MxstarParser.ClassDeclarationContext) {
+                scanClass((MxstarParser.ClassDeclarationContext) x);
+            }
+        }
+
+        setPosition(ctx);
+        boolean findEntry = false;
+        for (MxstarParser.FunctionDeclarationContext x : ctx.functionDeclaration()) {
+            setPosition(x);
+            FunctionType functionType = (FunctionType) returnNode.get(x);
+            if (functionType.getOriginName().equals("main")) {
+                if (!(functionType.getReturnType() instanceof IntType)) {
+                    throw new CompilationError("The return type of main function is expected to be int type");
+                }
+                if (functionType.getParameterList().size() > 0) {
+                    throw new CompilationError("The main function is expected to have no parameters");
+                }
+                findEntry = true;
+            }
+            ProgramAST.getGlobalFunctionTable().addFunction(functionType);
+        }
+        if (!findEntry) {
+            throw new CompilationError("Can't find main function");
+        }
+        for (ParseTree x : ctx.variableDeclarationStatement()) {
+            VariableDeclarationStatement variableDeclarationStatement = (VariableDeclarationStatement) returnNode.get(x);
+            variableDeclarationStatement.getSymbol().setGlobal();
+            ProgramAST.getGlobalVariableDeclarationStatementList().add(variableDeclarationStatement);
+        }
+    }
+
+    private void scanVariable(MxstarParser.VariableDeclarationStatementContext ctx) {
+        setPosition(ctx);
+        String name = ctx.IDENTIFIER().getText();
+        returnNode.put(ctx, new VariableDeclarationStatement(name, getType(ctx.type())));
+    }
+
+    private void scanFunction(MxstarParser.FunctionDeclarationContext ctx) {
+        setPosition(ctx);
+        Type returnType = ctx.voidType() != null ? VoidType.getInstance() : getType(ctx.type(0));
+        String functionName = null;
+        int n = ctx.type().size();
+        int m = ctx.IDENTIFIER().size();
+        int typeStart = 1, identifierStart = 0;
+        if (returnType instanceof VoidType) {
+            typeStart = 0;
+        }
+        if (n - typeStart < m) {
+            functionName = ctx.IDENTIFIER(0).getText();
+            identifierStart = 1;
+        }
+        List<Symbol> parameterList = new ArrayList<>();
+        for (int i = 0; i < n - typeStart; i++) {
+            Type parameterType = getType(ctx.type(i + typeStart));
+            String parameterName = ctx.IDENTIFIER(i + identifierStart).getText();
+            parameterList.add(new Symbol(parameterName, parameterType));
+        }
+        returnNode.put(ctx, new FunctionType(functionName, returnType, parameterList));
+    }
+
+    private void scanClass(MxstarParser.ClassDeclarationContext ctx) {
+        ClassType classType = (ClassType) returnNode.get(ctx);
+        for (MxstarParser.FunctionDeclarationContext x : ctx.functionDeclaration()) {
+            scanFunction(x);
+            setPosition(x);
+            FunctionType functionType = (FunctionType) returnNode.get(x);
+            functionType.setClassScope(classType);
+            functionType.getParameterList().add(0, new Symbol("this", classType));
+            if (functionType.getOriginName() == null) {
+                classType.setConstructFunction(functionType);
+            } else {
+                classType.addMemberFunction(functionType);
+            }
+        }
+        for (MxstarParser.VariableDeclarationStatementContext x : ctx.variableDeclarationStatement()) {
+            scanVariable(x);
+            setPosition(x);
+            VariableDeclarationStatement variableDeclarationStatement = (VariableDeclarationStatement) returnNode.get(x);
+            variableDeclarationStatement.setClassScope(classType);
+            classType.addMemberVariable(variableDeclarationStatement);
+        }
+    }
+
+    /* the same types ASTListener builds for the types in the bodies */
+    private static Type getType(MxstarParser.TypeContext ctx) {
+        if (ctx instanceof MxstarParser.ArrayTypeContext) {
+            Type type = getType(((MxstarParser.ArrayTypeContext) ctx).type());
+            if (type instanceof ArrayType) {
+                return new ArrayType(((ArrayType) type).getBaseType(), ((ArrayType) type).getDimension() + 1);
+            }
+            return new ArrayType(type, 1);
+        }
+        if (ctx instanceof MxstarParser.IntTypeContext) return IntType.getInstance();
+        if (ctx instanceof MxstarParser.StringTypeContext) return StringType.getInstance();
+        if (ctx instanceof MxstarParser.BoolTypeContext) return BoolType.getInstance();
+        Token identifier = ((MxstarParser.ClassTypeContext) ctx).IDENTIFIER().getSymbol();
+        setPosition(identifier);
+        return ProgramAST.getClassTable().getClassType(identifier.getText());
+    }
+
+    /* the errors point at the declaration they are about, or at the name when it is the name that is wrong */
+    private static void setPosition(ParserRuleContext ctx) {
+        setPosition(ctx.getStart());
+    }
+
+    private static void setPosition(Token token) {
+        CompilationContext.current().setPosition(token.getLine(), token.getCharPositionInLine());
+    }
+}
@@ -1,5 +1,6 @@
 package Compiler.FrontEnd.Listener;
 
+import Compiler.CompilationContext;
 import Compiler.Utility.Error.CompilationError;
 import org.antlr.v4.runtime.BaseErrorListener;
 import org.antlr.v4.runtime.RecognitionException;
@@ -8,8 +9,7 @@ import org.antlr.v4.runtime.Recognizer;
 public class SyntaxErrorListener extends BaseErrorListener {
     @Override
     public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol, int row, int column, String messsage, RecognitionException e) {
-        BaseListener.row = row;
-        BaseListener.column = column;
+        CompilationContext.current().setPosition(row, column);
         throw new CompilationError(messsage);
     }
 }
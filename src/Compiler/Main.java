@@ -2,77 +2,118 @@ package Compiler;
 
 import Compiler.AST.ProgramAST;
 import Compiler.CFG.ProgramIR;
+import Compiler.FrontEnd.DFACache;
 import Compiler.FrontEnd.Listener.ASTListener;
-import Compiler.FrontEnd.Listener.ClassDeclarationListener;
-import Compiler.FrontEnd.Listener.DeclarationListener;
+import Compiler.FrontEnd.Listener.DeclarationScanner;
 import Compiler.FrontEnd.Listener.SyntaxErrorListener;
 import Compiler.FrontEnd.Parser.MxstarLexer;
 import Compiler.FrontEnd.Parser.MxstarParser;
 import Compiler.Opt.Optimize;
 import Compiler.Trans.Translator;
 import Compiler.Utility.Error.CompilationError;
-import org.antlr.v4.runtime.CharStreams;
-import org.antlr.v4.runtime.CommonTokenStream;
-import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.*;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
 import org.antlr.v4.runtime.tree.ParseTreeWalker;
 
 import java.io.*;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 public class Main {
+    /* where the DFA of the parser is kept between runs, see DFACache */
+    private static final String dfaCache = System.getProperty("dfa.cache");
+
     public static void main(String[] args) throws Exception {
-        InputStream cin = new FileInputStream("program.txt");
-        processAST(cin);
-        buildIR();
-        optimize();
-        translate();
+        Path dfaCachePath = dfaCache == null || dfaCache.isEmpty() ? null : Paths.get(dfaCache);
+        if (dfaCachePath != null) DFACache.load(dfaCachePath);
+        if (args.length > 0 && args[0].equals("--server")) {
+            CompileServer.serve(System.in, System.out);
+            if (dfaCachePath != null) DFACache.save(dfaCachePath);
+            return;
+        }
+        try (InputStream cin = new FileInputStream("program.txt");
+             Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream("program.asm")), 1 << 16)) {
+            compile(cin, writer, true);
+        } catch (CompilationError compilationError) {
+            System.out.println(compilationError.getMessage());
+            System.exit(1);
+        }
+        if (dfaCachePath != null) DFACache.save(dfaCachePath);
     }
 
-    private static void processAST(InputStream cin) throws Exception {
-        org.antlr.v4.runtime.CharStream charStream = CharStreams.fromStream(cin);
-        MxstarLexer mxstarLexer = new MxstarLexer(charStream);
-        CommonTokenStream tokenStream = new CommonTokenStream(mxstarLexer);
+    /*
+        Compiles one program in a fresh context bound to the calling thread, so any
+        number of threads may compile at the same time. The IR dumps go to raw.ir and
+        allocated.ir in the working directory when asked for.
+     */
+    public static void compile(InputStream cin, Writer writer, boolean dumpIR) throws IOException {
+        CompilationContext previous = CompilationContext.enter(new CompilationContext());
+        try {
+            processAST(cin);
+            buildIR(dumpIR);
+            optimize(dumpIR);
+            translate(writer);
+        } finally {
+            CompilationContext.leave(previous);
+        }
+    }
+
+    /* the parse tree is only reachable from here, so it goes as soon as the AST is built */
+    private static void processAST(InputStream cin) throws IOException {
+        MxstarParser.ProgramContext programContext = parse(CharStreams.fromStream(cin));
+        ProgramAST.initialize();
+        DeclarationScanner.scan(programContext);
+        new ParseTreeWalker().walk(new ASTListener(), programContext);
+        CompilationContext.current().clearReturnNode();
+    }
+
+    /*
+        Parses with SLL prediction first, which is much faster and right for nearly
+        every input, giving up on the first error. Only then is the input parsed again
+        with full LL, which reports the syntax errors SLL may have seen falsely.
+     */
+    public static MxstarParser.ProgramContext parse(CharStream charStream) {
+        CommonTokenStream tokenStream = new CommonTokenStream(new MxstarLexer(charStream));
         MxstarParser mxstarParser = new MxstarParser(tokenStream);
         mxstarParser.removeErrorListeners();
-        mxstarParser.addErrorListener(new SyntaxErrorListener());
+        mxstarParser.setErrorHandler(new BailErrorStrategy());
+        mxstarParser.getInterpreter().setPredictionMode(PredictionMode.SLL);
         try {
-            ParseTree parseTree = mxstarParser.program();
-            ProgramAST.initialize();
-            ParseTreeWalker parseTreeWalker = new ParseTreeWalker();
-            parseTreeWalker.walk(new ClassDeclarationListener(), parseTree);
-            parseTreeWalker.walk(new DeclarationListener(), parseTree);
-            parseTreeWalker.walk(new ASTListener(), parseTree);
-        } catch (CompilationError compilationError) {
-            System.out.println(compilationError.getMessage());
-            System.exit(1);
+            return mxstarParser.program();
+        } catch (ParseCancellationException e) {
+            tokenStream.seek(0);
+            mxstarParser.reset();
+            mxstarParser.addErrorListener(new SyntaxErrorListener());
+            mxstarParser.setErrorHandler(new DefaultErrorStrategy());
+            mxstarParser.getInterpreter().setPredictionMode(PredictionMode.LL);
+            return mxstarParser.program();
         }
     }
 
-    private static void buildIR() throws IOException {
+    private static void buildIR(boolean dumpIR) throws IOException {
         ProgramIR.init();
-        FileOutputStream fileOutputStream = new FileOutputStream(new File("raw.ir"));
-        String code = ProgramIR.toString(0);
-        byte[] bytes = code.getBytes();
-        fileOutputStream.write(bytes);
-        fileOutputStream.close();
+        if (dumpIR) {
+            dump("raw.ir");
+        }
     }
 
-    private static void optimize() throws IOException {
+    private static void optimize(boolean dumpIR) throws IOException {
         Optimize.optimize();
-        FileOutputStream fileOutputStream = new FileOutputStream(new File("allocated.ir"));
+        if (dumpIR) {
+            dump("allocated.ir");
+        }
+    }
+
+    private static void dump(String fileName) throws IOException {
+        FileOutputStream fileOutputStream = new FileOutputStream(new File(fileName));
         String code = ProgramIR.toString(0);
         byte[] bytes = code.getBytes();
         fileOutputStream.write(bytes);
         fileOutputStream.close();
     }
 
-    private static void translate() throws IOException {
-        String assembly = Translator.getAssembly();
-        //System.out.println(assembly);
-        //System.err.println(assembly);
-        File file = new File("program.asm");
-        FileOutputStream fileOutputStream = new FileOutputStream(file);
-        byte[] bytes = assembly.getBytes();
-        fileOutputStream.write(bytes);
-        fileOutputStream.close();
+    private static void translate(Writer writer) {
+        Translator.writeAssembly(writer);
     }
 }
@@ -1,7 +1,10 @@
 package Compiler.Opt;
 
+import Compiler.CFG.Block;
 import Compiler.CFG.FunctionIR;
 import Compiler.CFG.Instruction.BinaryInstruction;
+import Compiler.CFG.Instruction.Instruction;
+import Compiler.CFG.Instruction.InstructionList;
 import Compiler.CFG.Instruction.MoveInstruction;
 import Compiler.CFG.Operand.VirtualRegister;
 
@@ -15,59 +18,62 @@ public class BinaryInstructionRazor {
         add(BinaryInstruction.BinaryOp.OR); add(BinaryInstruction.BinaryOp.XOR);
     }};
 
-    public static void uselessBinaryInstructionRemove(FunctionIR functionIR) {
-        functionIR.getBlockList().forEach(
-            block -> {
-                for (int i = 1; i + 1 < block.getInstructionList().size(); i++) {
-                    if (block.getInstructionList().get(i) instanceof BinaryInstruction
-                            && block.getInstructionList().get(i - 1) instanceof MoveInstruction
-                            && block.getInstructionList().get(i + 1) instanceof MoveInstruction) {
-                        BinaryInstruction binaryInstruction = (BinaryInstruction) block.getInstructionList().get(i);
-                        MoveInstruction moveInstruction1 = (MoveInstruction) block.getInstructionList().get(i - 1);
-                        MoveInstruction moveInstruction2 = (MoveInstruction) block.getInstructionList().get(i + 1);
-                        if (!operatorList.contains(binaryInstruction.getBinaryOp())) continue;
-                        if (moveInstruction1.getTarget() instanceof VirtualRegister && moveInstruction1.getSource() instanceof VirtualRegister) {
-                            VirtualRegister t = (VirtualRegister) moveInstruction1.getTarget();
-                            VirtualRegister A = (VirtualRegister) moveInstruction1.getSource();
-                            if (t == binaryInstruction.getTarget() && A == moveInstruction2.getTarget() && !moveInstruction2.getLiveOut().contains(t) && t.getSystemRegister() == null) {
-                                binaryInstruction.setTarget(A);
-                                block.getInstructionList().remove(i + 1);
-                                block.getInstructionList().remove(i - 1);
-                            }
+    public static boolean uselessBinaryInstructionRemove(FunctionIR functionIR) {
+        boolean hasImproved = false;
+        for (Block block : functionIR.getBlockList()) {
+            InstructionList instructionList = block.getInstructionList();
+            for (Instruction instruction = instructionList.getFirst(); instruction != null; instruction = instruction.getNext()) {
+                if (instruction instanceof BinaryInstruction
+                        && instruction.getPrev() instanceof MoveInstruction
+                        && instruction.getNext() instanceof MoveInstruction) {
+                    BinaryInstruction binaryInstruction = (BinaryInstruction) instruction;
+                    MoveInstruction moveInstruction1 = (MoveInstruction) instruction.getPrev();
+                    MoveInstruction moveInstruction2 = (MoveInstruction) instruction.getNext();
+                    if (!operatorList.contains(binaryInstruction.getBinaryOp())) continue;
+                    if (moveInstruction1.getTarget() instanceof VirtualRegister && moveInstruction1.getSource() instanceof VirtualRegister) {
+                        VirtualRegister t = (VirtualRegister) moveInstruction1.getTarget();
+                        VirtualRegister A = (VirtualRegister) moveInstruction1.getSource();
+                        if (t == binaryInstruction.getTarget() && A == moveInstruction2.getTarget() && !moveInstruction2.getLiveOut().contains(t) && t.getSystemRegister() == null) {
+                            binaryInstruction.setTarget(A);
+                            instructionList.remove(moveInstruction2);
+                            instructionList.remove(moveInstruction1);
+                            hasImproved = true;
                         }
                     }
                 }
             }
-        );
+        }
+        return hasImproved;
     }
 
-    public static void uselessMoveInstructionRemove(FunctionIR functionIR) {
-        functionIR.getBlockList().forEach(
-            block -> {
-                for (int i = 0; i + 1 < block.getInstructionList().size(); i++) {
-                    if (block.getInstructionList().get(i) instanceof MoveInstruction
-                            && block.getInstructionList().get(i + 1) instanceof MoveInstruction) {
-                        MoveInstruction moveInstruction1 = (MoveInstruction) block.getInstructionList().get(i);
-                        MoveInstruction moveInstruction2 = (MoveInstruction) block.getInstructionList().get(i + 1);
-                        if (moveInstruction1.getTarget() == moveInstruction2.getSource() && moveInstruction1.getTarget() instanceof VirtualRegister
-                                 && !moveInstruction2.getLiveOut().contains(moveInstruction1.getTarget())) {
-                            moveInstruction1.setTarget(moveInstruction2.getTarget());
-                            block.getInstructionList().remove(i + 1);
-                            --i;
-                            continue;
-                        }
+    public static boolean uselessMoveInstructionRemove(FunctionIR functionIR) {
+        boolean hasImproved = false;
+        for (Block block : functionIR.getBlockList()) {
+            InstructionList instructionList = block.getInstructionList();
+            Instruction instruction = instructionList.getFirst();
+            while (instruction != null) {
+                Instruction next = instruction.getNext();
+                if (instruction instanceof MoveInstruction && next instanceof MoveInstruction) {
+                    MoveInstruction moveInstruction1 = (MoveInstruction) instruction;
+                    MoveInstruction moveInstruction2 = (MoveInstruction) next;
+                    if (moveInstruction1.getTarget() == moveInstruction2.getSource() && moveInstruction1.getTarget() instanceof VirtualRegister
+                             && !moveInstruction2.getLiveOut().contains(moveInstruction1.getTarget())) {
+                        moveInstruction1.setTarget(moveInstruction2.getTarget());
+                        instructionList.remove(moveInstruction2);
+                        hasImproved = true;
+                        continue;
                     }
-                    if (block.getInstructionList().get(i) instanceof MoveInstruction
-                            && block.getInstructionList().get(i + 1) instanceof MoveInstruction) {
-                        MoveInstruction moveInstruction1 = (MoveInstruction) block.getInstructionList().get(i);
-                        MoveInstruction moveInstruction2 = (MoveInstruction) block.getInstructionList().get(i + 1);
-                        if (moveInstruction1.getTarget() == moveInstruction2.getSource()
-                                && moveInstruction1.getSource() == moveInstruction2.getTarget()) {
-                            block.getInstructionList().remove(i--);
-                        }
+                    if (moveInstruction1.getTarget() == moveInstruction2.getSource()
+                            && moveInstruction1.getSource() == moveInstruction2.getTarget()) {
+                        /* t may still be read later on, only the store back is useless */
+                        instructionList.remove(moveInstruction2);
+                        hasImproved = true;
+                        continue;
                     }
                 }
+                instruction = next;
             }
-        );
+        }
+        return hasImproved;
     }
 }
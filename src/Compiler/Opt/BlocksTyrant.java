@@ -2,56 +2,138 @@ package Compiler.Opt;
 
 import Compiler.CFG.Block;
 import Compiler.CFG.FunctionIR;
-import Compiler.CFG.Instruction.CJumpInstruction;
 import Compiler.CFG.Instruction.Instruction;
+import Compiler.CFG.Instruction.InstructionList;
 import Compiler.CFG.Instruction.JumpInstruction;
-import Compiler.CFG.Instruction.LabelInstruction;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.*;
 
+/*
+    Tidies the blocks once the registers are allocated, walking the edges the jumps keep
+    rather than the whole function for every change:
+
+        a block that is empty or only jumps on is taken out, and the jumps into it go
+        where it would have gone, so chains of jumps collapse into one;
+        a block ending in a jump to a small block takes a copy of that block instead of
+        the jump, a step at a time for a few steps, growing traces into super blocks;
+        a block no jump reaches any more goes, and with it the edges out of it;
+        a jump to the block laid out next is dropped.
+
+    A block that grew in a step is the only one that can grow in the next, since its
+    target only ever gets larger, so the steps look at those alone.
+ */
 public class BlocksTyrant {
-    public static void emptyBlockRemove(FunctionIR functionIR) {
-        boolean hasImproved = true;
-        while (hasImproved) {
-            hasImproved = false;
-            Map<LabelInstruction, LabelInstruction> linkMap = new HashMap<>();
-            for (int i = 0; i < functionIR.getBlockList().size(); i++) {
-                Block block = functionIR.getBlockList().get(i);
-                if (block.getInstructionList().size() == 1 && block.getInstructionList().get(0) instanceof JumpInstruction) {
-                    LabelInstruction targetLabelInstruction = ((JumpInstruction) block.getInstructionList().get(0)).getTarget();
-                    linkMap.put(block.getLabelInstruction(), targetLabelInstruction);
-                    functionIR.getBlockList().remove(i--);
-                    hasImproved = true;
-                    continue;
-                }
-                if (block.getInstructionList().isEmpty() && block.getLabelInstruction() != functionIR.getExitBlock()) {
-                    LabelInstruction targetLabelInstruction = functionIR.getBlockList().get(i + 1).getLabelInstruction();
-                    linkMap.put(block.getLabelInstruction(), targetLabelInstruction);
-                    functionIR.getBlockList().remove(i--);
-                    hasImproved = true;
-                    continue;
-                }
-                for (Block oneBlock : functionIR.getBlockList()) {
-                    for (Instruction instruction : oneBlock.getInstructionList()) {
-                        if (instruction instanceof JumpInstruction) {
-                            JumpInstruction jumpInstruction = (JumpInstruction) instruction;
-                            jumpInstruction.setTarget(queryTarget(linkMap, jumpInstruction.getTarget()));
-                        }
-                        if (instruction instanceof CJumpInstruction) {
-                            CJumpInstruction cJumpInstruction = (CJumpInstruction) instruction;
-                            cJumpInstruction.setTarget(queryTarget(linkMap, cJumpInstruction.getTarget()));
-                        }
-                    }
+    private static final int superBlockRound = 10;
+    private static final int superBlockLimit = 100;
+
+    public static boolean simplify(FunctionIR functionIR) {
+        boolean changed = jumpChainRemove(functionIR);
+        changed |= buildSuperBlock(functionIR);
+        changed |= unreachableBlockRemove(functionIR);
+        changed |= uselessJumpRemove(functionIR);
+        return changed;
+    }
+
+    /* the entry and the blocks the one before falls into can only go if they lead to the next block anyway */
+    private static boolean jumpChainRemove(FunctionIR functionIR) {
+        List<Block> blockList = functionIR.getBlockList();
+        Set<Block> removedSet = new HashSet<>();
+        Block previous = null;
+        for (int i = 0; i + 1 < blockList.size(); i++) {
+            Block block = blockList.get(i), next = blockList.get(i + 1);
+            InstructionList instructionList = block.getInstructionList();
+            Block target = null;
+            if (instructionList.isEmpty() && block.getLabelInstruction() != functionIR.getExitBlock()) {
+                target = next;
+            } else if (instructionList.size() == 1 && instructionList.getFirst() instanceof JumpInstruction) {
+                target = ((JumpInstruction) instructionList.getFirst()).getTarget().getBlock();
+                if (target == block || (target != next && !endsWithJump(previous))) target = null;
+            }
+            if (target == null) {
+                previous = block;
+                continue;
+            }
+            for (Block predecessor : block.getPredecessorList()) {
+                predecessor.retarget(block, target);
+            }
+            block.clear();
+            removedSet.add(block);
+        }
+        return blockList.removeIf(removedSet::contains);
+    }
+
+    private static boolean buildSuperBlock(FunctionIR functionIR) {
+        boolean changed = false;
+        List<Block> growingList = new ArrayList<>(functionIR.getBlockList());
+        for (int round = 0; round < superBlockRound && !growingList.isEmpty(); round++) {
+            List<Block> grownList = new ArrayList<>();
+            for (Block block : growingList) {
+                if (absorbTarget(functionIR, block)) {
+                    grownList.add(block);
                 }
             }
+            changed |= !grownList.isEmpty();
+            growingList = grownList;
+        }
+        return changed;
+    }
+
+    /* the target keeps its own instructions, the block gets copies live across the same registers */
+    private static boolean absorbTarget(FunctionIR functionIR, Block block) {
+        InstructionList instructionList = block.getInstructionList();
+        if (!(instructionList.getLast() instanceof JumpInstruction)) return false;
+        JumpInstruction jumpInstruction = (JumpInstruction) instructionList.getLast();
+        Block target = jumpInstruction.getTarget().getBlock();
+        if (target == block || jumpInstruction.getTarget() == functionIR.getExitBlock()) return false;
+        if (target.getInstructionList().size() >= superBlockLimit || !endsWithJump(target)) return false;
+        instructionList.remove(jumpInstruction);
+        for (Instruction instruction : target.getInstructionList()) {
+            Instruction copy = instruction.copy();
+            copy.setLiveIn(instruction.getLiveIn());
+            copy.setLiveOut(instruction.getLiveOut());
+            instructionList.add(copy);
         }
+        return true;
     }
 
-    private static LabelInstruction queryTarget(Map<LabelInstruction, LabelInstruction> linkMap, LabelInstruction labelInstruction) {
-        while (linkMap.containsKey(labelInstruction)) {
-            labelInstruction = linkMap.get(labelInstruction);
+    /* a block nothing falls into is dead once no jump is left into it, which may leave its targets dead too */
+    private static boolean unreachableBlockRemove(FunctionIR functionIR) {
+        List<Block> blockList = functionIR.getBlockList();
+        Set<Block> fallenSet = new HashSet<>();
+        fallenSet.add(blockList.get(0));
+        for (int i = 0; i + 1 < blockList.size(); i++) {
+            if (!endsWithJump(blockList.get(i))) fallenSet.add(blockList.get(i + 1));
+        }
+        Set<Block> removedSet = new HashSet<>();
+        Queue<Block> workList = new ArrayDeque<>(blockList);
+        while (!workList.isEmpty()) {
+            Block block = workList.poll();
+            if (removedSet.contains(block) || fallenSet.contains(block)
+                    || block.getLabelInstruction() == functionIR.getExitBlock()
+                    || !block.getLabelInstruction().getJumpSet().isEmpty()) continue;
+            workList.addAll(block.getSuccessorList());
+            block.clear();
+            removedSet.add(block);
         }
-        return labelInstruction;
+        return blockList.removeIf(removedSet::contains);
+    }
+
+    private static boolean uselessJumpRemove(FunctionIR functionIR) {
+        boolean changed = false;
+        List<Block> blockList = functionIR.getBlockList();
+        for (int i = 0; i + 1 < blockList.size(); i++) {
+            InstructionList instructionList = blockList.get(i).getInstructionList();
+            Instruction instruction = instructionList.getLast();
+            if (instruction instanceof JumpInstruction
+                    && ((JumpInstruction) instruction).getTarget().getBlock() == blockList.get(i + 1)) {
+                instructionList.remove(instruction);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    private static boolean endsWithJump(Block block) {
+        return block != null && block.getInstructionList().getLast() instanceof JumpInstruction;
     }
 }
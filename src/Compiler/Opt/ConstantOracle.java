@@ -0,0 +1,363 @@
+package Compiler.Opt;
+
+import Compiler.CFG.Block;
+import Compiler.CFG.FunctionIR;
+import Compiler.CFG.Instruction.*;
+import Compiler.CFG.Operand.ImmediateOperand;
+import Compiler.CFG.Operand.Operand;
+import Compiler.CFG.Operand.VirtualRegister;
+import Compiler.CFG.ProgramIR;
+
+import java.util.*;
+
+/*
+    Sparse conditional constant propagation (Wegman and Zadeck) over a function
+    in SSA form. Only the edges that may be taken are followed, so constants flow
+    through moves, binary chains and phi instructions across blocks, branches whose
+    outcome is known are folded and the blocks that can never run are removed. A
+    register that changes value sends the blocks on its use chain back to the worklist.
+
+    Every register is defined in one block, so a block is evaluated as a whole in
+    program order; in-place binary and unary instructions read the value left by
+    the previous definition in the same block.
+ */
+public class ConstantOracle {
+    private static final Value TOP = new Value(false, 0);
+    private static final Value BOTTOM = new Value(false, 0);
+
+    private static class Value {
+        private boolean constant;
+        private int value;
+
+        private Value(boolean constant, int value) {
+            this.constant = constant;
+            this.value = value;
+        }
+
+        private static Value of(long value) {
+            if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) return BOTTOM;
+            return new Value(true, (int) value);
+        }
+
+        private boolean sameAs(Value other) {
+            if (constant || other.constant) return constant && other.constant && value == other.value;
+            return this == other;
+        }
+
+        private Value meet(Value other) {
+            if (this == TOP) return other;
+            if (other == TOP) return this;
+            return sameAs(other) ? this : BOTTOM;
+        }
+    }
+
+    private FunctionIR functionIR;
+    private Map<VirtualRegister, Block> definitionMap;
+    private Map<VirtualRegister, Value> valueMap;
+    private Map<Block, Set<Block>> executableEdgeMap;
+    private Deque<Block> workList;
+    private Set<Block> queued;
+    private Value leftValue, rightValue;
+
+    private ConstantOracle(FunctionIR functionIR) {
+        this.functionIR = functionIR;
+    }
+
+    public static void propagateConstant(FunctionIR functionIR) {
+        ConstantOracle oracle = new ConstantOracle(functionIR);
+        oracle.init();
+        oracle.propagate();
+        oracle.rewrite();
+    }
+
+    private boolean isTracked(VirtualRegister virtualRegister) {
+        return virtualRegister.getSystemRegister() == null && !virtualRegister.isGlobal()
+                && !functionIR.hasStackSlot(virtualRegister);
+    }
+
+    private void init() {
+        definitionMap = new HashMap<>();
+        valueMap = new HashMap<>();
+        executableEdgeMap = new HashMap<>();
+        workList = new ArrayDeque<>();
+        queued = new HashSet<>();
+        Set<VirtualRegister> overdefinedSet = new HashSet<>();
+        for (Block block : functionIR.getBlockList()) {
+            for (Instruction instruction : block.getInstructionList()) {
+                for (VirtualRegister virtualRegister : instruction.getKillSet()) {
+                    Block definition = definitionMap.putIfAbsent(virtualRegister, block);
+                    if (definition != null && definition != block) {
+                        overdefinedSet.add(virtualRegister);
+                    }
+                }
+            }
+        }
+        for (VirtualRegister virtualRegister : definitionMap.keySet()) {
+            if (!isTracked(virtualRegister) || overdefinedSet.contains(virtualRegister)) {
+                valueMap.put(virtualRegister, BOTTOM);
+            }
+        }
+    }
+
+    private Value getValue(VirtualRegister virtualRegister, Map<VirtualRegister, Value> localMap) {
+        Value value = localMap.get(virtualRegister);
+        if (value != null) return value;
+        if (!definitionMap.containsKey(virtualRegister)) return BOTTOM;
+        return valueMap.getOrDefault(virtualRegister, TOP);
+    }
+
+    private Value getValue(Operand operand, Map<VirtualRegister, Value> localMap) {
+        if (operand instanceof ImmediateOperand) {
+            return Value.of(((ImmediateOperand) operand).getValue());
+        }
+        if (operand instanceof VirtualRegister) {
+            return getValue((VirtualRegister) operand, localMap);
+        }
+        return BOTTOM;
+    }
+
+    private void enqueue(Block block) {
+        if (queued.add(block)) {
+            workList.add(block);
+        }
+    }
+
+    private boolean isExecutable(Block block) {
+        return executableEdgeMap.containsKey(block);
+    }
+
+    private void markEdge(Block from, Block to) {
+        boolean reached = isExecutable(to);
+        if (executableEdgeMap.computeIfAbsent(to, k -> new HashSet<>()).add(from) || !reached) {
+            enqueue(to);
+        }
+    }
+
+    private void propagate() {
+        Block enterBlock = functionIR.getBlockList().get(0);
+        executableEdgeMap.put(enterBlock, new HashSet<>());
+        enqueue(enterBlock);
+        while (!workList.isEmpty()) {
+            Block block = workList.poll();
+            queued.remove(block);
+            Map<VirtualRegister, Value> localMap = new HashMap<>();
+            evaluate(block, localMap);
+            for (Map.Entry<VirtualRegister, Value> entry : localMap.entrySet()) {
+                VirtualRegister virtualRegister = entry.getKey();
+                Value oldValue = valueMap.getOrDefault(virtualRegister, TOP);
+                Value newValue = oldValue.meet(entry.getValue());
+                if (newValue.sameAs(oldValue)) continue;
+                valueMap.put(virtualRegister, newValue);
+                for (Instruction use : virtualRegister.getUseSet()) {
+                    if (isExecutable(use.getBlock())) {
+                        enqueue(use.getBlock());
+                    }
+                }
+            }
+        }
+    }
+
+    /*
+        Walks the instructions of a block in order, records the value of every
+        register it defines into localMap and marks the outgoing edges that may
+        be taken.
+     */
+    private void evaluate(Block block, Map<VirtualRegister, Value> localMap) {
+        leftValue = rightValue = BOTTOM;
+        for (Instruction instruction : block.getInstructionList()) {
+            if (instruction instanceof CJumpInstruction) {
+                CJumpInstruction cJumpInstruction = (CJumpInstruction) instruction;
+                Boolean result = calcCondition(cJumpInstruction.getConditionOp());
+                if (result == null || result) {
+                    markEdge(block, cJumpInstruction.getTarget().getBlock());
+                }
+                if (result != null && result) return;
+            } else if (instruction instanceof JumpInstruction) {
+                markEdge(block, ((JumpInstruction) instruction).getTarget().getBlock());
+                return;
+            } else {
+                evaluate(block, instruction, localMap);
+            }
+        }
+    }
+
+    private void evaluate(Block block, Instruction instruction, Map<VirtualRegister, Value> localMap) {
+        if (instruction instanceof PhiInstruction) {
+            PhiInstruction phiInstruction = (PhiInstruction) instruction;
+            Value value = TOP;
+            for (Map.Entry<Block, Operand> entry : phiInstruction.getSourceMap().entrySet()) {
+                if (executableEdgeMap.get(block).contains(entry.getKey())) {
+                    value = value.meet(getValue(entry.getValue(), Collections.emptyMap()));
+                }
+            }
+            localMap.put(phiInstruction.getTarget(), value);
+        } else if (instruction instanceof MoveInstruction) {
+            MoveInstruction moveInstruction = (MoveInstruction) instruction;
+            if (moveInstruction.getTarget() instanceof VirtualRegister) {
+                localMap.put((VirtualRegister) moveInstruction.getTarget(), getValue(moveInstruction.getSource(), localMap));
+            }
+        } else if (instruction instanceof BinaryInstruction) {
+            BinaryInstruction binaryInstruction = (BinaryInstruction) instruction;
+            if (binaryInstruction.getTarget() instanceof VirtualRegister) {
+                VirtualRegister target = (VirtualRegister) binaryInstruction.getTarget();
+                localMap.put(target, calcBinary(binaryInstruction.getBinaryOp(),
+                        getValue(target, localMap), getValue(binaryInstruction.getSource(), localMap)));
+            }
+        } else if (instruction instanceof UnaryInstruction) {
+            UnaryInstruction unaryInstruction = (UnaryInstruction) instruction;
+            if (unaryInstruction.getTarget() instanceof VirtualRegister) {
+                VirtualRegister target = (VirtualRegister) unaryInstruction.getTarget();
+                localMap.put(target, calcUnary(unaryInstruction.getUnaryOp(), getValue(target, localMap)));
+            }
+        } else if (instruction instanceof CompareInstruction) {
+            leftValue = getValue(((CompareInstruction) instruction).getLeftOperand(), localMap);
+            rightValue = getValue(((CompareInstruction) instruction).getRightOperand(), localMap);
+        } else if (instruction instanceof CSetInstruction) {
+            CSetInstruction cSetInstruction = (CSetInstruction) instruction;
+            Boolean result = calcCondition(cSetInstruction.getConditionOp());
+            Value value = leftValue == TOP || rightValue == TOP ? TOP : BOTTOM;
+            if (result != null) {
+                value = Value.of(result ? 1 : 0);
+            }
+            localMap.put(cSetInstruction.getTarget(), value);
+        } else {
+            for (VirtualRegister virtualRegister : instruction.getKillSet()) {
+                localMap.put(virtualRegister, BOTTOM);
+            }
+        }
+    }
+
+    private Boolean calcCondition(ProgramIR.ConditionOp conditionOp) {
+        if (!leftValue.constant || !rightValue.constant) return null;
+        int left = leftValue.value, right = rightValue.value;
+        switch (conditionOp) {
+            case EQ: return left == right;
+            case NEQ: return left != right;
+            case LE: return left < right;
+            case LEEQ: return left <= right;
+            case GR: return left > right;
+            case GREQ: return left >= right;
+        }
+        return null;
+    }
+
+    /*
+        Folding follows the 64-bit arithmetic of the generated code: results that
+        don't fit into an immediate are left alone, and division is only folded for
+        non-negative operands since it is done on the low 32 bits.
+     */
+    private Value calcBinary(BinaryInstruction.BinaryOp binaryOp, Value targetValue, Value sourceValue) {
+        if (targetValue == BOTTOM || sourceValue == BOTTOM) return BOTTOM;
+        if (targetValue == TOP || sourceValue == TOP) return TOP;
+        long x = targetValue.value, y = sourceValue.value;
+        switch (binaryOp) {
+            case ADD: return Value.of(x + y);
+            case SUB: return Value.of(x - y);
+            case MUL: return Value.of(x * y);
+            case DIV: return x >= 0 && y > 0 ? Value.of(x / y) : BOTTOM;
+            case MOD: return x >= 0 && y > 0 ? Value.of(x % y) : BOTTOM;
+            case SHL: return Value.of(x << (y & 63));
+            case SHR: return Value.of(x >> (y & 63));
+            case AND: return Value.of(x & y);
+            case OR: return Value.of(x | y);
+            case XOR: return Value.of(x ^ y);
+        }
+        return BOTTOM;
+    }
+
+    private Value calcUnary(UnaryInstruction.UnaryOp unaryOp, Value targetValue) {
+        if (!targetValue.constant) return targetValue;
+        long x = targetValue.value;
+        switch (unaryOp) {
+            case INC: return Value.of(x + 1);
+            case DEC: return Value.of(x - 1);
+            case NEG: return Value.of(-x);
+            case REV: return Value.of(~x);
+        }
+        return BOTTOM;
+    }
+
+    private void rewrite() {
+        for (Block block : functionIR.getBlockList()) {
+            if (!isExecutable(block)) continue;
+            rewriteBlock(block);
+        }
+        LabelInstruction exitBlock = functionIR.getExitBlock();
+        for (Block block : functionIR.getBlockList()) {
+            if (!isExecutable(block) && block.getLabelInstruction() != exitBlock) block.clear();
+        }
+        functionIR.getBlockList().removeIf(block -> !isExecutable(block) && block.getLabelInstruction() != exitBlock);
+        Map<Block, Set<Block>> predecessorMap = new HashMap<>();
+        for (Block block : functionIR.getBlockList()) {
+            for (Block successor : block.getSuccessorList()) {
+                predecessorMap.computeIfAbsent(successor, k -> new HashSet<>()).add(block);
+            }
+        }
+        for (Block block : functionIR.getBlockList()) {
+            Set<Block> predecessorSet = predecessorMap.getOrDefault(block, Collections.emptySet());
+            for (PhiInstruction phiInstruction : block.getPhiList()) {
+                for (Block predecessor : new ArrayList<>(phiInstruction.getSourceMap().keySet())) {
+                    if (!predecessorSet.contains(predecessor)) {
+                        phiInstruction.removeSource(predecessor);
+                    }
+                }
+            }
+        }
+    }
+
+    private void rewriteBlock(Block block) {
+        List<Instruction> instructionList = block.getInstructionList();
+        Map<VirtualRegister, Value> localMap = new HashMap<>();
+        List<Instruction> constantPhiList = new ArrayList<>();
+        leftValue = rightValue = BOTTOM;
+        for (int i = 0; i < instructionList.size(); i++) {
+            Instruction instruction = instructionList.get(i);
+            if (instruction instanceof PhiInstruction) {
+                PhiInstruction phiInstruction = (PhiInstruction) instruction;
+                for (Map.Entry<Block, Operand> entry : new ArrayList<>(phiInstruction.getSourceMap().entrySet())) {
+                    Value value = getValue(entry.getValue(), Collections.emptyMap());
+                    if (entry.getValue() instanceof VirtualRegister && value.constant) {
+                        phiInstruction.setSource(entry.getKey(), new ImmediateOperand(value.value));
+                    }
+                }
+                Value value = getValue(phiInstruction.getTarget(), Collections.emptyMap());
+                if (value.constant) {
+                    constantPhiList.add(new MoveInstruction(phiInstruction.getTarget(), new ImmediateOperand(value.value)));
+                    instructionList.remove(i--);
+                }
+                continue;
+            }
+            if (instruction instanceof CJumpInstruction) {
+                Boolean result = calcCondition(((CJumpInstruction) instruction).getConditionOp());
+                if (result == null) continue;
+                if (i > 0 && instructionList.get(i - 1) instanceof CompareInstruction) {
+                    instructionList.remove(--i);
+                }
+                if (result) {
+                    instructionList.subList(i, instructionList.size()).clear();
+                    instructionList.add(new JumpInstruction(((CJumpInstruction) instruction).getTarget()));
+                    break;
+                }
+                instructionList.remove(i--);
+                continue;
+            }
+            for (VirtualRegister virtualRegister : new ArrayList<>(instruction.getUseSet())) {
+                Value value = getValue(virtualRegister, localMap);
+                if (value.constant) {
+                    instruction.replaceUse(virtualRegister, new ImmediateOperand(value.value));
+                }
+            }
+            evaluate(block, instruction, localMap);
+            if (instruction instanceof BinaryInstruction || instruction instanceof UnaryInstruction
+                    || instruction instanceof CSetInstruction) {
+                for (VirtualRegister virtualRegister : instruction.getKillSet()) {
+                    Value value = localMap.get(virtualRegister);
+                    if (value.constant) {
+                        instructionList.set(i, new MoveInstruction(virtualRegister, new ImmediateOperand(value.value)));
+                    }
+                }
+            }
+        }
+        instructionList.addAll(block.getPhiList().size(), constantPhiList);
+    }
+}
@@ -12,8 +12,9 @@ import java.util.List;
 
 public class FoolishConditionMonitor {
 
-    public static void stupidConditionRemove(FunctionIR functionIR)  {
-        if (functionIR.getBeMemorized()) return;
+    public static boolean stupidConditionRemove(FunctionIR functionIR)  {
+        if (functionIR.getBeMemorized()) return false;
+        boolean hasImproved = false;
         for (int k = 0; k + 2 < functionIR.getBlockList().size(); k++) {
             Block block1 = functionIR.getBlockList().get(k);
             Block block2 = functionIR.getBlockList().get(k + 1);
@@ -43,6 +44,8 @@ public class FoolishConditionMonitor {
                                 JumpInstruction jumpInstruction2 = (JumpInstruction) instructionList.get(4);
                                 if (jumpInstruction1.getTarget() == falseLabel && jumpInstruction2.getTarget() == falseLabel) {
                                     functionIR.getBlockList().remove(k + 1);
+                                    block2.clear();
+                                    hasImproved = true;
                                     block1.getInstructionList().clear();
                                     if (unaryInstruction.getUnaryOp() == UnaryInstruction.UnaryOp.INC) {
                                         block1.getInstructionList().add(new BinaryInstruction(BinaryInstruction.BinaryOp.ADD, unaryInstruction.getTarget(), compareInstruction.getLeftOperand()));
@@ -58,5 +61,6 @@ public class FoolishConditionMonitor {
                 }
             }
         }
+        return hasImproved;
     }
 }
@@ -0,0 +1,270 @@
+package Compiler.Opt;
+
+import Compiler.AST.Type.FunctionType;
+import Compiler.CFG.Block;
+import Compiler.CFG.FunctionIR;
+import Compiler.CFG.Instruction.*;
+import Compiler.CFG.Operand.Operand;
+import Compiler.CFG.Operand.VirtualRegister;
+import Compiler.CFG.ProgramIR;
+import Compiler.CFG.RegisterManager;
+
+import java.util.*;
+
+/*
+    Inlines over the call graph bottom-up: the strongly connected components come out
+    of Tarjan callees first, so a callee is already final when it gets copied into its
+    callers. Calls inside a component and calls to recursive functions are left alone.
+    A call site is taken when the callee is small enough for the loop depth of the site
+    (the limit doubles per level) and the caller has not outgrown its budget; sites
+    deeper in loops and with smaller callees go first. The callee blocks are cloned
+    with fresh registers and labels, its returns become moves into the result of the
+    call, and its exit block becomes the rest of the calling block.
+ */
+public class FrugalInliner {
+    private static final int sizeLimit = 40;
+    private static final int maxDepthBonus = 3;
+    private static final int tinySize = 8;
+    private static final int growthFloor = 200;
+    private static final int hugeCaller = 3000;
+
+    private final Map<FunctionIR, Integer> indexMap, lowMap, componentMap;
+    private final Deque<FunctionIR> stack;
+    private final Set<FunctionIR> recursiveSet;
+    private final List<List<FunctionIR>> componentList;
+
+    private static class CallSite {
+        FunctionCallInstruction instruction;
+        FunctionIR callee;
+        int depth, size;
+
+        CallSite(FunctionCallInstruction instruction, FunctionIR callee, int depth) {
+            this.instruction = instruction;
+            this.callee = callee;
+            this.depth = depth;
+            this.size = getSize(callee);
+        }
+    }
+
+    private FrugalInliner() {
+        indexMap = new HashMap<>();
+        lowMap = new HashMap<>();
+        componentMap = new HashMap<>();
+        stack = new ArrayDeque<>();
+        recursiveSet = new HashSet<>();
+        componentList = new ArrayList<>();
+    }
+
+    public static void inline() {
+        new FrugalInliner().inlineProgram();
+    }
+
+    private void inlineProgram() {
+        for (FunctionIR functionIR : ProgramIR.getFunctionMap().values()) {
+            if (!indexMap.containsKey(functionIR)) strongConnect(functionIR);
+        }
+        for (List<FunctionIR> component : componentList) {
+            for (FunctionIR functionIR : component) {
+                inline(functionIR);
+            }
+        }
+    }
+
+    private static List<FunctionIR> getCalleeList(FunctionIR functionIR) {
+        Set<FunctionIR> calleeSet = new LinkedHashSet<>();
+        for (Block block : functionIR.getBlockList()) {
+            for (Instruction instruction : block.getInstructionList()) {
+                if (instruction instanceof FunctionCallInstruction) {
+                    FunctionIR callee = ((FunctionCallInstruction) instruction).getFunctionType().getFunctionIR();
+                    if (callee != null) calleeSet.add(callee);
+                }
+            }
+        }
+        return new ArrayList<>(calleeSet);
+    }
+
+    private void strongConnect(FunctionIR functionIR) {
+        int index = indexMap.size();
+        indexMap.put(functionIR, index);
+        lowMap.put(functionIR, index);
+        stack.push(functionIR);
+        List<FunctionIR> calleeList = getCalleeList(functionIR);
+        for (FunctionIR callee : calleeList) {
+            if (!indexMap.containsKey(callee)) {
+                strongConnect(callee);
+                lowMap.put(functionIR, Math.min(lowMap.get(functionIR), lowMap.get(callee)));
+            } else if (!componentMap.containsKey(callee)) {
+                lowMap.put(functionIR, Math.min(lowMap.get(functionIR), indexMap.get(callee)));
+            }
+        }
+        if (lowMap.get(functionIR) != index) return;
+        List<FunctionIR> component = new ArrayList<>();
+        FunctionIR member;
+        do {
+            member = stack.pop();
+            componentMap.put(member, componentList.size());
+            component.add(member);
+        } while (member != functionIR);
+        if (component.size() > 1 || calleeList.contains(functionIR)) {
+            recursiveSet.addAll(component);
+        }
+        componentList.add(component);
+    }
+
+    private static int getSize(FunctionIR functionIR) {
+        int size = 0;
+        for (Block block : functionIR.getBlockList()) {
+            size += block.getInstructionList().size();
+        }
+        return size;
+    }
+
+    private boolean canInline(FunctionIR caller, FunctionIR callee) {
+        FunctionType functionType = callee.getFunctionType();
+        if (functionType.isBuiltin() || !functionType.isIntact()) return false;
+        if (componentMap.get(callee).equals(componentMap.get(caller)) || recursiveSet.contains(callee)) return false;
+        List<Block> blockList = callee.getBlockList();
+        Block exit = blockList.get(blockList.size() - 1);
+        if (exit.getLabelInstruction() != callee.getExitBlock() || !exit.getInstructionList().isEmpty()) return false;
+        List<Instruction> enterList = blockList.get(0).getInstructionList();
+        int registerCount = Math.min(6, callee.getParameterList().size());
+        if (enterList.size() < registerCount) return false;
+        for (int i = 0; i < registerCount; i++) {
+            if (!(enterList.get(i) instanceof MoveInstruction)
+                    || ((MoveInstruction) enterList.get(i)).getTarget() != callee.getParameterList().get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /* the first six arguments are the moves into the parameter registers right before the call */
+    private static boolean canBind(List<Instruction> instructionList, int position, FunctionIR callee) {
+        int registerCount = Math.min(6, callee.getParameterList().size());
+        if (position < registerCount) return false;
+        for (int i = 0; i < registerCount; i++) {
+            Instruction instruction = instructionList.get(position - registerCount + i);
+            if (!(instruction instanceof MoveInstruction)) return false;
+            Operand target = ((MoveInstruction) instruction).getTarget();
+            if (!(target instanceof VirtualRegister)
+                    || !RegisterManager.parameterRegister.get(i).equals(((VirtualRegister) target).getSystemRegister())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void inline(FunctionIR functionIR) {
+        if (!functionIR.getFunctionType().isIntact()) return;
+        LoopAnalyst loopAnalyst = new LoopAnalyst(functionIR);
+        List<CallSite> callSiteList = new ArrayList<>();
+        for (Block block : functionIR.getBlockList()) {
+            for (Instruction instruction : block.getInstructionList()) {
+                if (!(instruction instanceof FunctionCallInstruction)) continue;
+                FunctionIR callee = ((FunctionCallInstruction) instruction).getFunctionType().getFunctionIR();
+                if (callee == null || !canInline(functionIR, callee)) continue;
+                callSiteList.add(new CallSite((FunctionCallInstruction) instruction, callee, loopAnalyst.getLoopDepth(block)));
+            }
+        }
+        callSiteList.sort(Comparator.comparingInt((CallSite callSite) -> -callSite.depth)
+                .thenComparingInt(callSite -> callSite.size));
+        int size = getSize(functionIR);
+        int budget = Math.min(hugeCaller, size + Math.max(growthFloor, size));
+        for (CallSite callSite : callSiteList) {
+            if (callSite.size > sizeLimit << Math.min(callSite.depth, maxDepthBonus)) continue;
+            if (callSite.size > tinySize && size + callSite.size > budget) continue;
+            if (inlineCall(functionIR, callSite)) {
+                size += callSite.size;
+            }
+        }
+    }
+
+    private static boolean inlineCall(FunctionIR functionIR, CallSite callSite) {
+        List<Block> blockList = functionIR.getBlockList();
+        Block block = callSite.instruction.getBlock();
+        if (block == null) return false;
+        int blockIndex = blockList.indexOf(block);
+        List<Instruction> instructionList = block.getInstructionList();
+        int position = instructionList.indexOf(callSite.instruction);
+        FunctionIR callee = callSite.callee;
+        if (!canBind(instructionList, position, callee)) return false;
+
+        Map<VirtualRegister, VirtualRegister> registerMap = new HashMap<>();
+        List<VirtualRegister> parameterList = callee.getParameterList();
+        int registerCount = Math.min(6, parameterList.size());
+        for (int i = 0; i < registerCount; i++) {
+            MoveInstruction moveInstruction = (MoveInstruction) instructionList.get(position - registerCount + i);
+            moveInstruction.setTarget(copyRegister(registerMap, parameterList.get(i)));
+        }
+        for (int i = 6; i < parameterList.size(); i++) {
+            instructionList.add(position++, new MoveInstruction(copyRegister(registerMap, parameterList.get(i)),
+                    callSite.instruction.getOperandList().get(i - 6)));
+        }
+        instructionList.remove(position);
+        VirtualRegister returnValue = callSite.instruction.getReturnValue();
+        Operand target = returnValue;
+        if (returnValue != null && position < instructionList.size() && instructionList.get(position) instanceof MoveInstruction
+                && ((MoveInstruction) instructionList.get(position)).getSource() == returnValue) {
+            target = ((MoveInstruction) instructionList.remove(position)).getTarget();
+        }
+        List<Instruction> restList = new ArrayList<>(instructionList.subList(position, instructionList.size()));
+        instructionList.subList(position, instructionList.size()).clear();
+
+        List<Block> cloneList = new ArrayList<>();
+        Map<LabelInstruction, LabelInstruction> labelMap = new HashMap<>();
+        for (Block calleeBlock : callee.getBlockList()) {
+            Block clone = functionIR.createBlock(calleeBlock.getName());
+            labelMap.put(calleeBlock.getLabelInstruction(), clone.getLabelInstruction());
+            cloneList.add(clone);
+        }
+        instructionList.add(new JumpInstruction(cloneList.get(0).getLabelInstruction()));
+        for (int i = 0; i < cloneList.size(); i++) {
+            List<Instruction> calleeList = callee.getBlockList().get(i).getInstructionList();
+            Block clone = cloneList.get(i);
+            for (int j = i == 0 ? registerCount : 0; j < calleeList.size(); j++) {
+                Instruction instruction = copyInstruction(calleeList.get(j), registerMap, labelMap);
+                if (instruction instanceof ReturnInstruction) {
+                    if (target != null) {
+                        clone.addInstruction(new MoveInstruction(target, ((ReturnInstruction) instruction).getReturnValue()));
+                    }
+                    continue;
+                }
+                clone.addInstruction(instruction);
+            }
+        }
+        restList.forEach(cloneList.get(cloneList.size() - 1)::addInstruction);
+        blockList.addAll(blockIndex + 1, cloneList);
+        return true;
+    }
+
+    private static VirtualRegister copyRegister(Map<VirtualRegister, VirtualRegister> registerMap, VirtualRegister virtualRegister) {
+        if (virtualRegister.isGlobal()) return virtualRegister;
+        return registerMap.computeIfAbsent(virtualRegister, k -> {
+            VirtualRegister copy = new VirtualRegister(k.getName());
+            copy.setSystemRegister(k.getSystemRegister());
+            return copy;
+        });
+    }
+
+    private static Instruction copyInstruction(Instruction instruction, Map<VirtualRegister, VirtualRegister> registerMap,
+                                               Map<LabelInstruction, LabelInstruction> labelMap) {
+        Instruction copy = instruction.copy();
+        for (VirtualRegister virtualRegister : new ArrayList<>(copy.getUseSet())) {
+            VirtualRegister renamed = copyRegister(registerMap, virtualRegister);
+            if (renamed != virtualRegister) copy.replaceUse(virtualRegister, renamed);
+        }
+        for (VirtualRegister virtualRegister : new ArrayList<>(copy.getKillSet())) {
+            VirtualRegister renamed = copyRegister(registerMap, virtualRegister);
+            if (renamed != virtualRegister) copy.replaceDef(virtualRegister, renamed);
+        }
+        if (copy instanceof JumpInstruction) {
+            JumpInstruction jumpInstruction = (JumpInstruction) copy;
+            jumpInstruction.setTarget(labelMap.getOrDefault(jumpInstruction.getTarget(), jumpInstruction.getTarget()));
+        }
+        if (copy instanceof CJumpInstruction) {
+            CJumpInstruction cJumpInstruction = (CJumpInstruction) copy;
+            cJumpInstruction.setTarget(labelMap.getOrDefault(cJumpInstruction.getTarget(), cJumpInstruction.getTarget()));
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,497 @@
+package Compiler.Opt;
+
+import Compiler.CFG.Block;
+import Compiler.CFG.FunctionIR;
+import Compiler.CFG.Instruction.FunctionCallInstruction;
+import Compiler.CFG.Instruction.Instruction;
+import Compiler.CFG.Instruction.MallocInstruction;
+import Compiler.CFG.Operand.VirtualRegister;
+import Compiler.CFG.RegisterManager;
+
+import java.util.*;
+
+/*
+    Iterated register coalescing (George and Appel) over the interference graph and
+    move graph built by LivenessAnalyst.
+
+    Registers bound to a system register are merged into one precolored node per
+    physical register, so arguments and parameters can be coalesced with the
+    registers they are passed in. An actual spill needs no rewriting: the spilled
+    register (and everything coalesced into it) just gets one stack slot in the
+    function's slot table, and an instruction that cannot take a memory operand where
+    it lands, such as the target of a multiply, goes through rax when it is written
+    out. The spill candidate is the one with the lowest cost per degree, where the
+    cost counts every occurrence weighted by 10 to the power of its loop depth.
+ */
+public class GraphColoringAllocator {
+    private static final List<String> normalOrder = new ArrayList<String>() {{
+        add("rsi"); add("rbx"); add("rdi"); add("r12");
+        add("r8"); add("r13"); add("r9"); add("r14");
+        add("r10"); add("r15"); add("r11");
+    }};
+
+    private static final List<String> leafOrder = new ArrayList<String>() {{
+        add("rsi"); add("rdi"); add("r8"); add("r9"); add("r10");
+        add("r11"); add("rbx"); add("r12"); add("r13");
+        add("r14"); add("r15");
+    }};
+
+    private static final List<String> crossCallOrder = new ArrayList<String>() {{
+        add("rbx"); add("r12"); add("r13"); add("r14"); add("r15");
+        add("rsi"); add("rdi"); add("r8"); add("r9"); add("r10"); add("r11");
+    }};
+
+    private static final int K = normalOrder.size();
+
+    private static class Move {
+        private VirtualRegister target, source;
+
+        private Move(VirtualRegister target, VirtualRegister source) {
+            this.target = target;
+            this.source = source;
+        }
+    }
+
+    private FunctionIR functionIR;
+    private List<String> allocateOrder;
+    private Map<String, VirtualRegister> precoloredMap;
+    private Map<VirtualRegister, Integer> indexMap;
+    private List<VirtualRegister> nodeList;
+
+    private Set<VirtualRegister> precolored, initial;
+    private Set<VirtualRegister> simplifyWorklist, freezeWorklist, spillWorklist;
+    private Set<VirtualRegister> spilledNodes, coalescedNodes, coloredNodes;
+    private Deque<VirtualRegister> selectStack;
+    private Set<VirtualRegister> selectSet;
+    private Set<Move> coalescedMoves, constrainedMoves, frozenMoves, worklistMoves, activeMoves;
+
+    private Map<VirtualRegister, Set<VirtualRegister>> adjacentMap;
+    private Map<VirtualRegister, Integer> degreeMap;
+    private Map<VirtualRegister, Set<Move>> moveMap;
+    private Map<VirtualRegister, VirtualRegister> aliasMap;
+    private Map<VirtualRegister, String> colorMap;
+    private Map<VirtualRegister, Double> costMap;
+    private Set<VirtualRegister> crossCallSet;
+
+    private GraphColoringAllocator(FunctionIR functionIR) {
+        this.functionIR = functionIR;
+        this.allocateOrder = functionIR.isLeaf() ? leafOrder : normalOrder;
+        precoloredMap = new HashMap<>();
+        indexMap = new HashMap<>();
+        nodeList = new ArrayList<>();
+        precolored = new HashSet<>();
+        initial = new LinkedHashSet<>();
+        simplifyWorklist = new LinkedHashSet<>();
+        freezeWorklist = new LinkedHashSet<>();
+        spillWorklist = new LinkedHashSet<>();
+        spilledNodes = new LinkedHashSet<>();
+        coalescedNodes = new LinkedHashSet<>();
+        coloredNodes = new LinkedHashSet<>();
+        selectStack = new ArrayDeque<>();
+        selectSet = new HashSet<>();
+        coalescedMoves = new LinkedHashSet<>();
+        constrainedMoves = new LinkedHashSet<>();
+        frozenMoves = new LinkedHashSet<>();
+        worklistMoves = new LinkedHashSet<>();
+        activeMoves = new LinkedHashSet<>();
+        adjacentMap = new HashMap<>();
+        degreeMap = new HashMap<>();
+        moveMap = new HashMap<>();
+        aliasMap = new HashMap<>();
+        colorMap = new HashMap<>();
+        costMap = new HashMap<>();
+        crossCallSet = new HashSet<>();
+    }
+
+    public static void allocate(long[][] edge, long[][] flow, FunctionIR functionIR) {
+        allocate(edge, flow, functionIR, new LoopAnalyst(functionIR));
+    }
+
+    public static void allocate(long[][] edge, long[][] flow, FunctionIR functionIR, LoopAnalyst loopAnalyst) {
+        GraphColoringAllocator allocator = new GraphColoringAllocator(functionIR);
+        allocator.build(edge, flow, loopAnalyst);
+        allocator.makeWorklist();
+        while (!allocator.simplifyWorklist.isEmpty() || !allocator.worklistMoves.isEmpty()
+                || !allocator.freezeWorklist.isEmpty() || !allocator.spillWorklist.isEmpty()) {
+            if (!allocator.simplifyWorklist.isEmpty()) {
+                allocator.simplify();
+            } else if (!allocator.worklistMoves.isEmpty()) {
+                allocator.coalesce();
+            } else if (!allocator.freezeWorklist.isEmpty()) {
+                allocator.freeze();
+            } else {
+                allocator.selectSpill();
+            }
+        }
+        allocator.assignColors();
+        allocator.commit();
+    }
+
+    private VirtualRegister getNode(VirtualRegister virtualRegister) {
+        if (virtualRegister.getSystemRegister() != null) {
+            return precoloredMap.get(virtualRegister.getSystemRegister());
+        }
+        return indexMap.containsKey(virtualRegister) ? virtualRegister : null;
+    }
+
+    private void addNode(VirtualRegister virtualRegister) {
+        if (virtualRegister.isGlobal() || functionIR.hasStackSlot(virtualRegister)) return;
+        String systemRegister = virtualRegister.getSystemRegister();
+        if (systemRegister != null) {
+            if (!normalOrder.contains(systemRegister) || precoloredMap.containsKey(systemRegister)) return;
+            VirtualRegister node = new VirtualRegister(systemRegister);
+            node.setSystemRegister(systemRegister);
+            precoloredMap.put(systemRegister, node);
+            precolored.add(node);
+            colorMap.put(node, systemRegister);
+            virtualRegister = node;
+        } else if (indexMap.containsKey(virtualRegister)) {
+            return;
+        } else {
+            initial.add(virtualRegister);
+            degreeMap.put(virtualRegister, 0);
+            costMap.put(virtualRegister, 0.0);
+        }
+        indexMap.put(virtualRegister, nodeList.size());
+        nodeList.add(virtualRegister);
+        adjacentMap.put(virtualRegister, new LinkedHashSet<>());
+        moveMap.put(virtualRegister, new LinkedHashSet<>());
+    }
+
+    private List<VirtualRegister> sorted(Collection<VirtualRegister> collection) {
+        List<VirtualRegister> list = new ArrayList<>();
+        for (VirtualRegister virtualRegister : collection) {
+            VirtualRegister node = getNode(virtualRegister);
+            if (node != null) {
+                list.add(node);
+            }
+        }
+        list.sort(Comparator.comparingInt(indexMap::get));
+        return list;
+    }
+
+    private List<VirtualRegister> members(long[] bits) {
+        List<VirtualRegister> list = new ArrayList<>();
+        if (bits == null) return list;
+        for (int w = 0; w < bits.length; w++) {
+            for (long word = bits[w]; word != 0; word &= word - 1) {
+                list.add(functionIR.getRegister((w << 6) + Long.numberOfTrailingZeros(word)));
+            }
+        }
+        return list;
+    }
+
+    private void build(long[][] edge, long[][] flow, LoopAnalyst loopAnalyst) {
+        List<VirtualRegister> occurrenceList = new ArrayList<>();
+        for (Block block : functionIR.getBlockList()) {
+            double weight = Math.pow(10, Math.min(loopAnalyst.getLoopDepth(block), 6));
+            for (Instruction instruction : block.getInstructionList()) {
+                occurrenceList.clear();
+                occurrenceList.addAll(instruction.getUseSet());
+                occurrenceList.addAll(instruction.getKillSet());
+                occurrenceList.sort(Comparator.comparing(VirtualRegister::getName));
+                for (VirtualRegister virtualRegister : occurrenceList) {
+                    addNode(virtualRegister);
+                    if (costMap.containsKey(virtualRegister)) {
+                        costMap.merge(virtualRegister, weight, Double::sum);
+                    }
+                }
+                if (instruction instanceof FunctionCallInstruction || instruction instanceof MallocInstruction) {
+                    for (VirtualRegister virtualRegister : instruction.getLiveOut()) {
+                        if (!instruction.getKillSet().contains(virtualRegister)) {
+                            crossCallSet.add(virtualRegister);
+                        }
+                    }
+                }
+            }
+        }
+        for (VirtualRegister u : new ArrayList<>(nodeList)) {
+            if (precolored.contains(u)) continue;
+            for (VirtualRegister v : sorted(members(edge[functionIR.findRegisterIndex(u)]))) {
+                addEdge(u, v);
+            }
+        }
+        List<Move> moveList = new ArrayList<>();
+        for (int i = 0; i < flow.length; i++) {
+            if (flow[i] == null) continue;
+            VirtualRegister target = getNode(functionIR.getRegister(i));
+            if (target == null) continue;
+            for (VirtualRegister source : sorted(members(flow[i]))) {
+                if (source == target || precolored.contains(source) && precolored.contains(target)) continue;
+                moveList.add(new Move(target, source));
+            }
+        }
+        moveList.sort(Comparator.comparingInt((Move move) -> indexMap.get(move.target)).thenComparingInt(move -> indexMap.get(move.source)));
+        for (Move move : moveList) {
+            moveMap.get(move.target).add(move);
+            moveMap.get(move.source).add(move);
+            worklistMoves.add(move);
+        }
+    }
+
+    private void addEdge(VirtualRegister u, VirtualRegister v) {
+        if (u == v || adjacentMap.get(u).contains(v)) return;
+        if (precolored.contains(u) && precolored.contains(v)) return;
+        adjacentMap.get(u).add(v);
+        adjacentMap.get(v).add(u);
+        if (!precolored.contains(u)) degreeMap.merge(u, 1, Integer::sum);
+        if (!precolored.contains(v)) degreeMap.merge(v, 1, Integer::sum);
+    }
+
+    private int getDegree(VirtualRegister virtualRegister) {
+        return precolored.contains(virtualRegister) ? Integer.MAX_VALUE : degreeMap.get(virtualRegister);
+    }
+
+    private List<VirtualRegister> adjacent(VirtualRegister virtualRegister) {
+        List<VirtualRegister> list = new ArrayList<>();
+        for (VirtualRegister neighbor : adjacentMap.get(virtualRegister)) {
+            if (!selectSet.contains(neighbor) && !coalescedNodes.contains(neighbor)) {
+                list.add(neighbor);
+            }
+        }
+        return list;
+    }
+
+    private List<Move> nodeMoves(VirtualRegister virtualRegister) {
+        List<Move> list = new ArrayList<>();
+        for (Move move : moveMap.get(virtualRegister)) {
+            if (activeMoves.contains(move) || worklistMoves.contains(move)) {
+                list.add(move);
+            }
+        }
+        return list;
+    }
+
+    private boolean moveRelated(VirtualRegister virtualRegister) {
+        return !nodeMoves(virtualRegister).isEmpty();
+    }
+
+    private void makeWorklist() {
+        for (VirtualRegister virtualRegister : initial) {
+            if (getDegree(virtualRegister) >= K) {
+                spillWorklist.add(virtualRegister);
+            } else if (moveRelated(virtualRegister)) {
+                freezeWorklist.add(virtualRegister);
+            } else {
+                simplifyWorklist.add(virtualRegister);
+            }
+        }
+    }
+
+    private void simplify() {
+        VirtualRegister virtualRegister = simplifyWorklist.iterator().next();
+        simplifyWorklist.remove(virtualRegister);
+        selectStack.push(virtualRegister);
+        selectSet.add(virtualRegister);
+        for (VirtualRegister neighbor : adjacent(virtualRegister)) {
+            decrementDegree(neighbor);
+        }
+    }
+
+    private void decrementDegree(VirtualRegister virtualRegister) {
+        if (precolored.contains(virtualRegister)) return;
+        int degree = degreeMap.get(virtualRegister);
+        degreeMap.put(virtualRegister, degree - 1);
+        if (degree == K) {
+            enableMoves(virtualRegister);
+            adjacent(virtualRegister).forEach(this::enableMoves);
+            spillWorklist.remove(virtualRegister);
+            if (moveRelated(virtualRegister)) {
+                freezeWorklist.add(virtualRegister);
+            } else {
+                simplifyWorklist.add(virtualRegister);
+            }
+        }
+    }
+
+    private void enableMoves(VirtualRegister virtualRegister) {
+        for (Move move : nodeMoves(virtualRegister)) {
+            if (activeMoves.remove(move)) {
+                worklistMoves.add(move);
+            }
+        }
+    }
+
+    private void addWorklist(VirtualRegister virtualRegister) {
+        if (!precolored.contains(virtualRegister) && !moveRelated(virtualRegister) && getDegree(virtualRegister) < K) {
+            freezeWorklist.remove(virtualRegister);
+            simplifyWorklist.add(virtualRegister);
+        }
+    }
+
+    private boolean george(VirtualRegister t, VirtualRegister r) {
+        return getDegree(t) < K || precolored.contains(t) || adjacentMap.get(t).contains(r);
+    }
+
+    private boolean canCoalesceWithPrecolored(VirtualRegister u, VirtualRegister v) {
+        for (VirtualRegister t : adjacent(v)) {
+            if (!george(t, u)) return false;
+        }
+        return true;
+    }
+
+    private boolean briggs(VirtualRegister u, VirtualRegister v) {
+        Set<VirtualRegister> nodeSet = new HashSet<>(adjacent(u));
+        nodeSet.addAll(adjacent(v));
+        int k = 0;
+        for (VirtualRegister virtualRegister : nodeSet) {
+            if (getDegree(virtualRegister) >= K) ++k;
+        }
+        return k < K;
+    }
+
+    private VirtualRegister getAlias(VirtualRegister virtualRegister) {
+        while (coalescedNodes.contains(virtualRegister)) {
+            virtualRegister = aliasMap.get(virtualRegister);
+        }
+        return virtualRegister;
+    }
+
+    private void coalesce() {
+        Move move = worklistMoves.iterator().next();
+        worklistMoves.remove(move);
+        VirtualRegister x = getAlias(move.target), y = getAlias(move.source);
+        VirtualRegister u = x, v = y;
+        if (precolored.contains(y)) {
+            u = y;
+            v = x;
+        }
+        if (u == v) {
+            coalescedMoves.add(move);
+            addWorklist(u);
+        } else if (precolored.contains(v) || adjacentMap.get(u).contains(v)) {
+            constrainedMoves.add(move);
+            addWorklist(u);
+            addWorklist(v);
+        } else if (precolored.contains(u) ? canCoalesceWithPrecolored(u, v) : briggs(u, v)) {
+            coalescedMoves.add(move);
+            combine(u, v);
+            addWorklist(u);
+        } else {
+            activeMoves.add(move);
+        }
+    }
+
+    private void combine(VirtualRegister u, VirtualRegister v) {
+        if (!freezeWorklist.remove(v)) {
+            spillWorklist.remove(v);
+        }
+        coalescedNodes.add(v);
+        aliasMap.put(v, u);
+        moveMap.get(u).addAll(moveMap.get(v));
+        enableMoves(v);
+        if (costMap.containsKey(u)) {
+            costMap.merge(u, costMap.get(v), Double::sum);
+        }
+        if (crossCallSet.contains(v)) {
+            crossCallSet.add(u);
+        }
+        for (VirtualRegister t : adjacent(v)) {
+            addEdge(t, u);
+            decrementDegree(t);
+        }
+        if (getDegree(u) >= K && freezeWorklist.remove(u)) {
+            spillWorklist.add(u);
+        }
+    }
+
+    private void freeze() {
+        VirtualRegister virtualRegister = freezeWorklist.iterator().next();
+        freezeWorklist.remove(virtualRegister);
+        simplifyWorklist.add(virtualRegister);
+        freezeMoves(virtualRegister);
+    }
+
+    private void freezeMoves(VirtualRegister u) {
+        for (Move move : nodeMoves(u)) {
+            VirtualRegister x = move.target, y = move.source;
+            VirtualRegister v = getAlias(y) == getAlias(u) ? getAlias(x) : getAlias(y);
+            activeMoves.remove(move);
+            frozenMoves.add(move);
+            if (!precolored.contains(v) && !moveRelated(v) && getDegree(v) < K) {
+                freezeWorklist.remove(v);
+                simplifyWorklist.add(v);
+            }
+        }
+    }
+
+    private void selectSpill() {
+        VirtualRegister candidate = null;
+        double best = 0;
+        for (VirtualRegister virtualRegister : spillWorklist) {
+            double priority = costMap.get(virtualRegister) / getDegree(virtualRegister);
+            if (candidate == null || priority < best) {
+                candidate = virtualRegister;
+                best = priority;
+            }
+        }
+        spillWorklist.remove(candidate);
+        simplifyWorklist.add(candidate);
+        freezeMoves(candidate);
+    }
+
+    private void assignColors() {
+        while (!selectStack.isEmpty()) {
+            VirtualRegister virtualRegister = selectStack.pop();
+            selectSet.remove(virtualRegister);
+            Set<String> usedColor = new HashSet<>();
+            for (VirtualRegister neighbor : adjacentMap.get(virtualRegister)) {
+                VirtualRegister alias = getAlias(neighbor);
+                if (coloredNodes.contains(alias) || precolored.contains(alias)) {
+                    usedColor.add(colorMap.get(alias));
+                }
+            }
+            String color = null;
+            for (String systemRegister : crossCallSet.contains(virtualRegister) ? crossCallOrder : allocateOrder) {
+                if (!usedColor.contains(systemRegister)) {
+                    color = systemRegister;
+                    break;
+                }
+            }
+            if (color == null) {
+                spilledNodes.add(virtualRegister);
+            } else {
+                coloredNodes.add(virtualRegister);
+                colorMap.put(virtualRegister, color);
+            }
+        }
+        for (VirtualRegister virtualRegister : coalescedNodes) {
+            VirtualRegister alias = getAlias(virtualRegister);
+            if (colorMap.containsKey(alias)) {
+                colorMap.put(virtualRegister, colorMap.get(alias));
+            }
+        }
+    }
+
+    private void commit() {
+        Map<VirtualRegister, Integer> slotMap = new HashMap<>();
+        functionIR.clearPhysicalRegister();
+        RegisterManager registerManager = functionIR.getRegisterManager();
+        for (VirtualRegister virtualRegister : nodeList) {
+            if (precolored.contains(virtualRegister)) continue;
+            String color = colorMap.get(virtualRegister);
+            if (color != null) {
+                functionIR.setPhysicalRegister(virtualRegister, color);
+                continue;
+            }
+            VirtualRegister alias = getAlias(virtualRegister);
+            if (!slotMap.containsKey(alias)) {
+                registerManager.addRegisterInMemory();
+                slotMap.put(alias, registerManager.getRegisterInMemory());
+            }
+            functionIR.setStackSlot(virtualRegister, slotMap.get(alias));
+        }
+        for (Block block : functionIR.getBlockList()) {
+            for (Instruction instruction : block.getInstructionList()) {
+                instruction.getUseSet().forEach(this::commitPrecolored);
+                instruction.getKillSet().forEach(this::commitPrecolored);
+            }
+        }
+    }
+
+    private void commitPrecolored(VirtualRegister virtualRegister) {
+        if (!virtualRegister.isGlobal() && FunctionIR.physicalRegisterList.contains(virtualRegister.getSystemRegister())) {
+            functionIR.setPhysicalRegister(virtualRegister, virtualRegister.getSystemRegister());
+        }
+    }
+}
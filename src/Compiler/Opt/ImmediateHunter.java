@@ -8,55 +8,61 @@ import Compiler.CFG.Instruction.UnaryInstruction;
 import Compiler.CFG.Operand.ImmediateOperand;
 import Compiler.CFG.Operand.Operand;
 
+import java.util.ListIterator;
+
 public class ImmediateHunter {
 
-    public static void huntImmediate(FunctionIR functionIR) {
+    public static boolean huntImmediate(FunctionIR functionIR) {
+        boolean hasImproved = false;
         for (Block block : functionIR.getBlockList()) {
-            for (int i = 0; i < block.getInstructionList().size(); i++) {
-                Instruction instruction = block.getInstructionList().get(i);
+            for (ListIterator<Instruction> iterator = block.getInstructionList().listIterator(); iterator.hasNext(); ) {
+                Instruction instruction = iterator.next();
                 if (instruction instanceof BinaryInstruction) {
                     Operand target = ((BinaryInstruction) instruction).getTarget();
                     Operand source = ((BinaryInstruction) instruction).getSource();
                     BinaryInstruction.BinaryOp binaryOp = ((BinaryInstruction) instruction).getBinaryOp();
                     if (binaryOp == BinaryInstruction.BinaryOp.ADD || binaryOp == BinaryInstruction.BinaryOp.SUB) {
                         if (source instanceof ImmediateOperand && ((ImmediateOperand) source).getValue() == 0) {
-                            block.getInstructionList().remove(i--);
+                            iterator.remove();
+                            hasImproved = true;
                             continue;
                         }
                         if (source instanceof ImmediateOperand && ((ImmediateOperand) source).getValue() == 1) {
-                            block.getInstructionList().remove(i);
                             if (binaryOp == BinaryInstruction.BinaryOp.ADD) {
-                                block.getInstructionList().add(i, new UnaryInstruction(UnaryInstruction.UnaryOp.INC, target));
+                                iterator.set(new UnaryInstruction(UnaryInstruction.UnaryOp.INC, target));
                             }
                             if (binaryOp == BinaryInstruction.BinaryOp.SUB) {
-                                block.getInstructionList().add(i, new UnaryInstruction(UnaryInstruction.UnaryOp.DEC, target));
+                                iterator.set(new UnaryInstruction(UnaryInstruction.UnaryOp.DEC, target));
                             }
+                            hasImproved = true;
                         }
                     }
                     if (binaryOp == BinaryInstruction.BinaryOp.MUL) {
                         if (source instanceof ImmediateOperand && ((ImmediateOperand) source).getValue() == 1) {
-                            block.getInstructionList().remove(i--);
+                            iterator.remove();
+                            hasImproved = true;
                             continue;
                         }
                         if (source instanceof ImmediateOperand && ((ImmediateOperand) source).getValue() == 0) {
-                            block.getInstructionList().remove(i);
-                            block.getInstructionList().add(i, new BinaryInstruction(BinaryInstruction.BinaryOp.XOR, target, target));
+                            iterator.set(new BinaryInstruction(BinaryInstruction.BinaryOp.XOR, target, target));
+                            hasImproved = true;
                             continue;
                         }
                         if (source instanceof ImmediateOperand && ((ImmediateOperand) source).getValue() == -1) {
-                            block.getInstructionList().remove(i);
-                            block.getInstructionList().add(i, new UnaryInstruction(UnaryInstruction.UnaryOp.NEG, target));
+                            iterator.set(new UnaryInstruction(UnaryInstruction.UnaryOp.NEG, target));
+                            hasImproved = true;
                             continue;
                         }
                     }
                     if (binaryOp == BinaryInstruction.BinaryOp.MOD) {
                         if (source instanceof ImmediateOperand && ((ImmediateOperand) source).getValue() == 1) {
-                            block.getInstructionList().remove(i);
-                            block.getInstructionList().add(i, new BinaryInstruction(BinaryInstruction.BinaryOp.XOR, target, target));
+                            iterator.set(new BinaryInstruction(BinaryInstruction.BinaryOp.XOR, target, target));
+                            hasImproved = true;
                         }
                     }
                 }
             }
         }
+        return hasImproved;
     }
 }
@@ -0,0 +1,333 @@
+package Compiler.Opt;
+
+import Compiler.CFG.Block;
+import Compiler.CFG.FunctionIR;
+import Compiler.CFG.Instruction.*;
+import Compiler.CFG.Operand.AddressOperand;
+import Compiler.CFG.Operand.ImmediateOperand;
+import Compiler.CFG.Operand.Operand;
+import Compiler.CFG.Operand.VirtualRegister;
+import Compiler.CFG.ProgramIR;
+import Compiler.CFG.RegisterManager;
+import Compiler.CFG.SSA.DominatorTree;
+
+import java.util.*;
+
+/*
+    Loop-invariant code motion on SSA form, innermost loops first.
+
+    A candidate is one definition of a version: a move, optionally followed by the
+    in-place update SSAConstructor split off it (x_2 = mov x_1; x_2 = x_2 op y).
+    It is invariant when all its operands are immediates, versions defined outside
+    the loop or versions already hoisted. Register arithmetic can't trap (division
+    only by a non-zero immediate), so it is moved to a preheader unconditionally.
+
+    A load is only hoisted when the loop writes no memory and calls nothing, when
+    its block runs on every iteration, and when the body is known to run at least
+    once. For the last point the preheader repeats the test of the header with the
+    values coming from outside (the loop is entered guarded, as after rotation); this
+    needs a header made of a single compare and a single exit block reached only
+    from the header, whose uses of the header phis are renamed to new phis.
+ */
+public class InvariantSmuggler {
+    private FunctionIR functionIR;
+    private Map<VirtualRegister, Integer> definitionCount;
+
+    private LoopAnalyst loopAnalyst;
+    private DominatorTree dominatorTree;
+    private Block header;
+    private Set<Block> body;
+    private Set<VirtualRegister> definedSet, invariantSet;
+    private boolean memoryClean, guardable;
+
+    private InvariantSmuggler(FunctionIR functionIR) {
+        this.functionIR = functionIR;
+    }
+
+    public static boolean hoistInvariant(FunctionIR functionIR) {
+        return hoistInvariant(functionIR, new LoopAnalyst(functionIR));
+    }
+
+    /* the loops are only analysed again after a hoist has added blocks */
+    public static boolean hoistInvariant(FunctionIR functionIR, LoopAnalyst loopAnalyst) {
+        InvariantSmuggler smuggler = new InvariantSmuggler(functionIR);
+        Set<Block> visitedSet = new HashSet<>();
+        boolean hasImproved = false;
+        while (true) {
+            Block header = null;
+            for (Block block : loopAnalyst.getHeaderSet()) {
+                if (visitedSet.contains(block)) continue;
+                if (header == null || loopAnalyst.getLoopBody(block).size() < loopAnalyst.getLoopBody(header).size()) {
+                    header = block;
+                }
+            }
+            if (header == null) break;
+            visitedSet.add(header);
+            if (smuggler.hoist(loopAnalyst, header)) {
+                loopAnalyst = new LoopAnalyst(functionIR);
+                hasImproved = true;
+            }
+        }
+        return hasImproved;
+    }
+
+    private boolean hoist(LoopAnalyst loopAnalyst, Block header) {
+        this.loopAnalyst = loopAnalyst;
+        this.dominatorTree = loopAnalyst.getDominatorTree();
+        this.header = header;
+        this.body = loopAnalyst.getLoopBody(header);
+        List<Block> outsideList = new ArrayList<>();
+        for (Block predecessor : dominatorTree.getPredecessorList(header)) {
+            if (!body.contains(predecessor)) {
+                outsideList.add(predecessor);
+            }
+        }
+        if (outsideList.isEmpty()) return false;
+        init();
+        List<Instruction> hoistedList = new ArrayList<>();
+        boolean hasLoad = collect(hoistedList);
+        if (hoistedList.isEmpty()) return false;
+        Block hoistBlock = functionIR.createBlock("loop_preheader");
+        Block enterBlock = hasLoad ? functionIR.createBlock("loop_guard") : hoistBlock;
+        List<Block> blockList = functionIR.getBlockList();
+        blockList.add(blockList.indexOf(header), enterBlock);
+        if (enterBlock != hoistBlock) {
+            blockList.add(blockList.indexOf(header), hoistBlock);
+        }
+        Map<VirtualRegister, Operand> entryMap = redirect(outsideList, enterBlock, hoistBlock);
+        if (enterBlock != hoistBlock) {
+            guard(enterBlock, hoistBlock, entryMap);
+        }
+        for (Instruction instruction : hoistedList) {
+            hoistBlock.addInstruction(instruction);
+        }
+        hoistBlock.addInstruction(new JumpInstruction(header.getLabelInstruction()));
+        return true;
+    }
+
+    private void init() {
+        definitionCount = new HashMap<>();
+        for (Block block : functionIR.getBlockList()) {
+            for (Instruction instruction : block.getInstructionList()) {
+                for (VirtualRegister virtualRegister : instruction.getKillSet()) {
+                    definitionCount.merge(virtualRegister, 1, Integer::sum);
+                }
+            }
+        }
+        definedSet = new HashSet<>();
+        invariantSet = new HashSet<>();
+        memoryClean = true;
+        for (Block block : body) {
+            for (Instruction instruction : block.getInstructionList()) {
+                definedSet.addAll(instruction.getKillSet());
+                if (writesMemory(instruction)) {
+                    memoryClean = false;
+                }
+            }
+        }
+        guardable = canGuard();
+    }
+
+    private boolean writesMemory(Instruction instruction) {
+        if (instruction instanceof FunctionCallInstruction) return true;
+        if (instruction instanceof MoveInstruction && ((MoveInstruction) instruction).getTarget() instanceof AddressOperand) return true;
+        if (instruction instanceof BinaryInstruction && ((BinaryInstruction) instruction).getTarget() instanceof AddressOperand) return true;
+        if (instruction instanceof UnaryInstruction && ((UnaryInstruction) instruction).getTarget() instanceof AddressOperand) return true;
+        for (VirtualRegister virtualRegister : instruction.getKillSet()) {
+            if (virtualRegister.isGlobal()) return true;
+        }
+        return false;
+    }
+
+    private boolean canGuard() {
+        List<Instruction> instructionList = header.getInstructionList();
+        int n = instructionList.size(), phiCount = header.getPhiList().size();
+        if (n - phiCount != 3 || !(instructionList.get(n - 3) instanceof CompareInstruction)
+                || !(instructionList.get(n - 2) instanceof CJumpInstruction)) {
+            return false;
+        }
+        Set<Block> exitSet = loopAnalyst.getExitSet(header);
+        Set<Block> exitingSet = loopAnalyst.getExitingSet(header);
+        if (exitSet.size() != 1 || exitingSet.size() != 1 || !exitingSet.contains(header)) return false;
+        for (Operand operand : new Operand[]{((CompareInstruction) instructionList.get(n - 3)).getLeftOperand(),
+                ((CompareInstruction) instructionList.get(n - 3)).getRightOperand()}) {
+            if (operand instanceof AddressOperand && definedSet.contains(((AddressOperand) operand).getBase())) return false;
+        }
+        Block exit = exitSet.iterator().next();
+        return dominatorTree.getPredecessorList(exit).size() == 1 && exit.getPhiList().isEmpty();
+    }
+
+    private boolean isInvariant(Operand operand) {
+        if (operand instanceof ImmediateOperand) return true;
+        if (!(operand instanceof VirtualRegister)) return false;
+        VirtualRegister virtualRegister = (VirtualRegister) operand;
+        if (virtualRegister.getSystemRegister() != null || virtualRegister.isGlobal()) return false;
+        return !definedSet.contains(virtualRegister) || invariantSet.contains(virtualRegister);
+    }
+
+    private boolean canLoad(Block block, AddressOperand address) {
+        if (!memoryClean || !guardable || !isInvariant(address.getBase())) return false;
+        for (Block latch : loopAnalyst.getLatchList(header)) {
+            if (!dominatorTree.dominates(block, latch)) return false;
+        }
+        return true;
+    }
+
+    /* returns the length of the invariant definition starting at i, 0 if there is none */
+    private int getGroup(Block block, List<Instruction> instructionList, int i, boolean[] load) {
+        if (!(instructionList.get(i) instanceof MoveInstruction)) return 0;
+        MoveInstruction move = (MoveInstruction) instructionList.get(i);
+        if (!(move.getTarget() instanceof VirtualRegister)) return 0;
+        VirtualRegister target = (VirtualRegister) move.getTarget();
+        if (target.getSystemRegister() != null || target.isGlobal()) return 0;
+        load[0] = false;
+        Operand source = move.getSource();
+        if (source instanceof AddressOperand) {
+            if (!canLoad(block, (AddressOperand) source)) return 0;
+            load[0] = true;
+        } else if (!isInvariant(source)) {
+            return 0;
+        }
+        int length = 1;
+        if (i + 1 < instructionList.size()) {
+            Instruction next = instructionList.get(i + 1);
+            if (next instanceof BinaryInstruction && ((BinaryInstruction) next).getTarget() == target) {
+                BinaryInstruction binary = (BinaryInstruction) next;
+                Operand operand = binary.getSource();
+                boolean division = binary.getBinaryOp() == BinaryInstruction.BinaryOp.DIV || binary.getBinaryOp() == BinaryInstruction.BinaryOp.MOD;
+                if (division && !(operand instanceof ImmediateOperand && ((ImmediateOperand) operand).getValue() != 0)) return 0;
+                if (operand instanceof AddressOperand) {
+                    if (!canLoad(block, (AddressOperand) operand)) return 0;
+                    load[0] = true;
+                } else if (operand != target && !isInvariant(operand)) {
+                    return 0;
+                }
+                length = 2;
+            } else if (next instanceof UnaryInstruction && ((UnaryInstruction) next).getTarget() == target) {
+                length = 2;
+            }
+        }
+        if (definitionCount.getOrDefault(target, 0) != length) return 0;
+        return length;
+    }
+
+    private boolean collect(List<Instruction> hoistedList) {
+        boolean hasLoad = false, changed = true;
+        boolean[] load = new boolean[1];
+        while (changed) {
+            changed = false;
+            for (Block block : dominatorTree.getReversePostorder()) {
+                if (!body.contains(block)) continue;
+                List<Instruction> instructionList = block.getInstructionList();
+                for (int i = 0; i < instructionList.size(); i++) {
+                    int length = getGroup(block, instructionList, i, load);
+                    if (length == 0) continue;
+                    for (int k = 0; k < length; k++) {
+                        hoistedList.add(instructionList.remove(i));
+                    }
+                    invariantSet.add((VirtualRegister) ((MoveInstruction) hoistedList.get(hoistedList.size() - length)).getTarget());
+                    hasLoad |= load[0];
+                    changed = true;
+                    --i;
+                }
+            }
+        }
+        return hasLoad;
+    }
+
+    /*
+        Sends every edge entering the loop to enterBlock and makes hoistBlock the only
+        outside predecessor of the header. Returns the value each header phi has on
+        entry, merged by a new phi in enterBlock when there are several entries.
+     */
+    private Map<VirtualRegister, Operand> redirect(List<Block> outsideList, Block enterBlock, Block hoistBlock) {
+        Map<VirtualRegister, Operand> entryMap = new HashMap<>();
+        for (PhiInstruction phiInstruction : header.getPhiList()) {
+            Operand entry;
+            if (outsideList.size() == 1) {
+                entry = phiInstruction.getSourceMap().get(outsideList.get(0));
+            } else {
+                VirtualRegister merged = RegisterManager.getRenamedRegister(phiInstruction.getTarget());
+                PhiInstruction mergedPhi = new PhiInstruction(merged);
+                for (Block predecessor : outsideList) {
+                    mergedPhi.setSource(predecessor, phiInstruction.getSourceMap().get(predecessor));
+                }
+                enterBlock.addInstruction(mergedPhi);
+                entry = merged;
+            }
+            for (Block predecessor : outsideList) {
+                phiInstruction.removeSource(predecessor);
+            }
+            phiInstruction.setSource(hoistBlock, entry);
+            entryMap.put(phiInstruction.getTarget(), entry);
+        }
+        for (Block predecessor : outsideList) {
+            predecessor.retarget(header, enterBlock);
+        }
+        return entryMap;
+    }
+
+    private void guard(Block enterBlock, Block hoistBlock, Map<VirtualRegister, Operand> entryMap) {
+        List<Instruction> instructionList = header.getInstructionList();
+        int n = instructionList.size();
+        CompareInstruction compare = (CompareInstruction) instructionList.get(n - 3);
+        CJumpInstruction cJump = (CJumpInstruction) instructionList.get(n - 2);
+        JumpInstruction jump = (JumpInstruction) instructionList.get(n - 1);
+        Block exit = loopAnalyst.getExitSet(header).iterator().next();
+        Block taken = cJump.getTarget().getBlock() == exit ? exit : hoistBlock;
+        Block fallen = jump.getTarget().getBlock() == exit ? exit : hoistBlock;
+
+        Operand left = entryMap.getOrDefault(compare.getLeftOperand(), compare.getLeftOperand());
+        Operand right = entryMap.getOrDefault(compare.getRightOperand(), compare.getRightOperand());
+        boolean reachExit = true;
+        if (left instanceof ImmediateOperand && right instanceof ImmediateOperand) {
+            boolean result = evaluate(cJump.getConditionOp(), ((ImmediateOperand) left).getValue(), ((ImmediateOperand) right).getValue());
+            enterBlock.addInstruction(new JumpInstruction((result ? taken : fallen).getLabelInstruction()));
+            reachExit = (result ? taken : fallen) == exit;
+        } else {
+            enterBlock.addInstruction(new CompareInstruction(left, right));
+            enterBlock.addInstruction(new CJumpInstruction(cJump.getConditionOp(), taken.getLabelInstruction()));
+            enterBlock.addInstruction(new JumpInstruction(fallen.getLabelInstruction()));
+        }
+        if (!reachExit) return;
+
+        /* the exit now has two predecessors: the values of the header phis seen there need phis of their own */
+        Map<VirtualRegister, VirtualRegister> renameMap = new LinkedHashMap<>();
+        for (PhiInstruction phiInstruction : header.getPhiList()) {
+            renameMap.put(phiInstruction.getTarget(), RegisterManager.getRenamedRegister(phiInstruction.getTarget()));
+        }
+        boolean used = false;
+        for (Block block : functionIR.getBlockList()) {
+            if (body.contains(block) || block == enterBlock || block == hoistBlock) continue;
+            for (Instruction instruction : block.getInstructionList()) {
+                for (VirtualRegister virtualRegister : new ArrayList<>(instruction.getUseSet())) {
+                    VirtualRegister renamed = renameMap.get(virtualRegister);
+                    if (renamed != null) {
+                        instruction.replaceUse(virtualRegister, renamed);
+                        used = true;
+                    }
+                }
+            }
+        }
+        if (!used) return;
+        List<Instruction> phiList = new ArrayList<>();
+        for (Map.Entry<VirtualRegister, VirtualRegister> entry : renameMap.entrySet()) {
+            PhiInstruction phiInstruction = new PhiInstruction(entry.getValue());
+            phiInstruction.setSource(header, entry.getKey());
+            phiInstruction.setSource(enterBlock, entryMap.get(entry.getKey()));
+            phiList.add(phiInstruction);
+        }
+        exit.getInstructionList().addAll(0, phiList);
+    }
+
+    private boolean evaluate(ProgramIR.ConditionOp conditionOp, int left, int right) {
+        switch (conditionOp) {
+            case LE: return left < right;
+            case LEEQ: return left <= right;
+            case GR: return left > right;
+            case GREQ: return left >= right;
+            case EQ: return left == right;
+            default: return left != right;
+        }
+    }
+}
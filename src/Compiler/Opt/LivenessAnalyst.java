@@ -1,6 +1,7 @@
 package Compiler.Opt;
 
 import Compiler.CFG.Block;
+import Compiler.CFG.BlockLiveness;
 import Compiler.CFG.FunctionIR;
 import Compiler.CFG.Instruction.CJumpInstruction;
 import Compiler.CFG.Instruction.Instruction;
@@ -8,183 +9,289 @@ import Compiler.CFG.Instruction.JumpInstruction;
 import Compiler.CFG.Instruction.MoveInstruction;
 import Compiler.CFG.Operand.Operand;
 import Compiler.CFG.Operand.VirtualRegister;
+import Compiler.CompilationContext;
 
 import java.util.*;
 
+/*
+    Every set is a long[] bit vector over the register indices of the function, and
+    so are the rows of the interference and move graphs. Blocks are solved with a
+    worklist seeded in postorder (reverse postorder of the reversed graph), and only
+    the blocks whose live-in changes push their predecessors again. Per-instruction
+    live sets are left to BlockLiveness, which builds them on demand. The analyst
+    belongs to the compilation context, the static methods reach the current one.
+ */
 public class LivenessAnalyst {
-    private static Map<VirtualRegister, Set<VirtualRegister>> edge;
-    private static Map<VirtualRegister, Set<VirtualRegister>> flow;
-    private static Map<VirtualRegister, Integer> count;
-    private static FunctionIR currentFunctionIR;
+    private long[][] edge;
+    private long[][] flow;
+    private int[] count;
+    private FunctionIR currentFunctionIR;
 
-    public static Map<VirtualRegister, Set<VirtualRegister>> getEdge() {
-        return edge;
+    private long[] memory;
+    private List<Block> blockList;
+    private Map<Block, Integer> blockIdMap;
+    private int[][] successor, predecessor;
+    private long[][] use, kill, liveIn, liveOut;
+    private int words;
+
+    private static LivenessAnalyst get() {
+        return CompilationContext.current().getLivenessAnalyst();
+    }
+
+    /* interference rows by register index, null for registers with no row */
+    public static long[][] getEdge() {
+        return get().edge;
     }
 
-    public static Map<VirtualRegister, Set<VirtualRegister>> getFlow() {
-        return flow;
+    /* move rows by register index: bit j of row i means some "mov i, j" */
+    public static long[][] getFlow() {
+        return get().flow;
     }
 
-    public static Map<VirtualRegister, Integer> getCount() {
-        return count;
+    public static int[] getCount() {
+        return get().count;
+    }
+
+    public static boolean interfere(int x, int y) {
+        long[][] edge = get().edge;
+        return x < edge.length && edge[x] != null && test(edge[x], y);
     }
 
     public static void analysis(FunctionIR functionIR) {
+        get().analyze(functionIR);
+    }
+
+    private void analyze(FunctionIR functionIR) {
         currentFunctionIR = functionIR;
-        edge = new HashMap<>();
-        flow = new HashMap<>();
-        count = new HashMap<>();
         init();
         calcBlock();
         calcInstr();
     }
 
-    private static void init() {
-        for (Block block : currentFunctionIR.getBlockList()) {
-            Set<VirtualRegister> assigned = new HashSet<>();
+    private int getId(VirtualRegister virtualRegister) {
+        return currentFunctionIR.getRegisterIndex(virtualRegister);
+    }
+
+    private void init() {
+        blockList = currentFunctionIR.getBlockList();
+        blockIdMap = new HashMap<>();
+        int n = blockList.size();
+        for (int i = 0; i < n; i++) {
+            blockIdMap.put(blockList.get(i), i);
+        }
+        for (Block block : blockList) {
             for (Instruction instruction : block.getInstructionList()) {
-                merge(count, instruction.getUseSet());
-                merge(count, instruction.getKillSet());
-                instruction.getUseSet().forEach(
-                        virtualRegister -> {
-                            if (!assigned.contains(virtualRegister)) {
-                                block.getUseSet().add(virtualRegister);
-                            }
-                        }
-                );
-                merge(assigned, instruction.getKillSet());
-                merge(block.getKillSet(), instruction.getKillSet());
+                instruction.getUseSet().forEach(this::getId);
+                instruction.getKillSet().forEach(this::getId);
+            }
+        }
+        int registerCount = currentFunctionIR.getRegisterCount();
+        words = (registerCount + 63) >> 6;
+        memory = new long[words];
+        for (int i = 0; i < registerCount; i++) {
+            if (currentFunctionIR.hasStackSlot(currentFunctionIR.getRegister(i))) set(memory, i);
+        }
+        edge = new long[registerCount][];
+        flow = new long[registerCount][];
+        count = new int[registerCount];
+        use = new long[n][words];
+        kill = new long[n][words];
+        liveIn = new long[n][words];
+        liveOut = new long[n][words];
+        successor = new int[n][];
+        List<List<Integer>> predecessorList = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            predecessorList.add(new ArrayList<>());
+        }
+        for (int i = 0; i < n; i++) {
+            Block block = blockList.get(i);
+            List<Integer> successorList = new ArrayList<>();
+            for (Instruction instruction : block.getInstructionList()) {
+                for (VirtualRegister virtualRegister : instruction.getUseSet()) {
+                    int id = getId(virtualRegister);
+                    if (id < 0) continue;
+                    if (!test(kill[i], id)) set(use[i], id);
+                    if (!test(memory, id)) ++count[id];
+                }
+                for (VirtualRegister virtualRegister : instruction.getKillSet()) {
+                    int id = getId(virtualRegister);
+                    if (id < 0) continue;
+                    set(kill[i], id);
+                    if (!test(memory, id)) ++count[id];
+                }
+                Block target = null;
                 if (instruction instanceof JumpInstruction) {
-                    Block target = ((JumpInstruction) instruction).getTarget().getBlock();
-                    addControlFlow(block, target);
+                    target = ((JumpInstruction) instruction).getTarget().getBlock();
                 }
                 if (instruction instanceof CJumpInstruction) {
-                    Block target = ((CJumpInstruction) instruction).getTarget().getBlock();
-                    addControlFlow(block, target);
+                    target = ((CJumpInstruction) instruction).getTarget().getBlock();
+                }
+                Integer targetId = target == null ? null : blockIdMap.get(target);
+                if (targetId != null && !successorList.contains(targetId)) {
+                    successorList.add(targetId);
+                    predecessorList.get(targetId).add(i);
                 }
             }
+            successor[i] = successorList.stream().mapToInt(Integer::intValue).toArray();
+            System.arraycopy(use[i], 0, liveIn[i], 0, words);
+        }
+        predecessor = new int[n][];
+        for (int i = 0; i < n; i++) {
+            predecessor[i] = predecessorList.get(i).stream().mapToInt(Integer::intValue).toArray();
         }
-        currentFunctionIR.getBlockList().forEach(Block::calcLiveIn);
     }
-
-    private static void addControlFlow(Block source, Block target) {
-        source.addBlockOut(target);
-        target.addBlockIn(source);
+    private int[] getPostorder() {
+        int n = blockList.size();
+        int[] order = new int[n];
+        int size = 0;
+        boolean[] visited = new boolean[n];
+        int[] blockStack = new int[n], edgeStack = new int[n];
+        for (int root = 0; root < n; root++) {
+            if (visited[root]) continue;
+            int top = 0;
+            visited[root] = true;
+            blockStack[0] = root;
+            edgeStack[0] = 0;
+            while (top >= 0) {
+                int block = blockStack[top];
+                if (edgeStack[top] < successor[block].length) {
+                    int next = successor[block][edgeStack[top]++];
+                    if (!visited[next]) {
+                        visited[next] = true;
+                        blockStack[++top] = next;
+                        edgeStack[top] = 0;
+                    }
+                } else {
+                    order[size++] = block;
+                    --top;
+                }
+            }
+        }
+        return order;
     }
 
-    private static void calcBlock() {
-        boolean hasIncrement = true;
-        while (hasIncrement) {
-            hasIncrement = false;
-            for (Block block : currentFunctionIR.getBlockList()) {
-                for (Block nxt : block.getBlockOutSet()) {
-                    hasIncrement |= merge(block.getLiveOut(), nxt.getLiveIn());
+    private void calcBlock() {
+        int n = blockList.size();
+        boolean[] queued = new boolean[n];
+        Deque<Integer> workList = new ArrayDeque<>();
+        for (int block : getPostorder()) {
+            queued[block] = true;
+            workList.add(block);
+        }
+        long[] in = new long[words];
+        while (!workList.isEmpty()) {
+            int block = workList.poll();
+            queued[block] = false;
+            long[] out = liveOut[block];
+            for (int next : successor[block]) {
+                long[] nextIn = liveIn[next];
+                for (int w = 0; w < words; w++) {
+                    out[w] |= nextIn[w];
+                }
+            }
+            boolean changed = false;
+            for (int w = 0; w < words; w++) {
+                in[w] = use[block][w] | (out[w] & ~kill[block][w]);
+                if (in[w] != liveIn[block][w]) {
+                    changed = true;
+                    liveIn[block][w] = in[w];
+                }
+            }
+            if (!changed) continue;
+            for (int previous : predecessor[block]) {
+                if (!queued[previous]) {
+                    queued[previous] = true;
+                    workList.add(previous);
                 }
-                block.calcLiveIn();
             }
         }
     }
 
-    private static void calcInstr() {
-        for (Block block : currentFunctionIR.getBlockList()) {
-            int n = block.getInstructionList().size();
+    private void calcInstr() {
+        long[] live = new long[words];
+        for (int b = 0; b < blockList.size(); b++) {
+            Block block = blockList.get(b);
+            List<Instruction> instructionList = new ArrayList<>(block.getInstructionList());
+            BlockLiveness liveness = new BlockLiveness(currentFunctionIR, instructionList, use[b], kill[b], liveIn[b], liveOut[b]);
+            block.setLiveness(liveness);
+            System.arraycopy(liveOut[b], 0, live, 0, words);
+            int n = instructionList.size();
             for (int i = n - 1; i >= 0; i--) {
-                Instruction instruction = block.getInstructionList().get(i);
-                if (instruction instanceof JumpInstruction) {
-                    if (i != n - 1) {
-                        throw new InternalError("jump instruction must be the last one of the block");
-                    }
-                    instruction.setLiveOut(new HashSet<>(((JumpInstruction) instruction).getTarget().getBlock().getLiveIn()));
+                Instruction instruction = instructionList.get(i);
+                instruction.setLiveness(liveness);
+                if (instruction instanceof JumpInstruction && i != n - 1) {
+                    throw new InternalError("jump instruction must be the last one of the block");
                 }
-                if (instruction instanceof CJumpInstruction) {
-                    if (i != n - 2) {
-                        throw new InternalError("compare jump instruction must be the last but one");
-                    }
-                    instruction.setLiveOut(new HashSet<>(((CJumpInstruction) instruction).getTarget().getBlock().getLiveIn()));
-                    merge(instruction.getLiveOut(), block.getInstructionList().get(i + 1).getLiveIn());
-                }
-                if (!(instruction instanceof JumpInstruction) && !(instruction instanceof CJumpInstruction)) {
-                    if (i < n - 1) {
-                        instruction.setLiveOut(new HashSet<>(block.getInstructionList().get(i + 1).getLiveIn()));
-                    }
+                if (instruction instanceof CJumpInstruction && i != n - 2) {
+                    throw new InternalError("compare jump instruction must be the last but one");
                 }
-                instruction.calcLiveIn();
+                int except = -1;
                 if (instruction instanceof MoveInstruction) {
                     Operand source = ((MoveInstruction) instruction).getSource();
                     Operand target = ((MoveInstruction) instruction).getTarget();
-                    for (VirtualRegister killed : instruction.getKillSet()) {
-                        for (VirtualRegister lived : instruction.getLiveOut()) {
-                            if (source instanceof VirtualRegister && !instruction.getUseSet().contains(lived)) {
-                                addConflictEdge(killed, lived);
-                            }
-                            if (!(source instanceof VirtualRegister)) {
-                                addConflictEdge(killed, lived);
-                            }
-                        }
+                    if (source instanceof VirtualRegister) {
+                        except = getId((VirtualRegister) source);
                     }
                     if (source instanceof VirtualRegister && target instanceof VirtualRegister) {
-                        addMoveEdge((VirtualRegister) target, (VirtualRegister) source);
+                        addMoveEdge(getId((VirtualRegister) target), except);
                     }
                 }
-                if (!(instruction instanceof  MoveInstruction)) {
-                    for (VirtualRegister killed : instruction.getKillSet()) {
-                        for (VirtualRegister lived : instruction.getLiveOut()) {
-                            addConflictEdge(killed, lived);
-                        }
-                    }
+                for (VirtualRegister killed : instruction.getKillSet()) {
+                    addConflictEdge(getId(killed), live, except);
+                }
+                for (VirtualRegister virtualRegister : instruction.getKillSet()) {
+                    int id = getId(virtualRegister);
+                    if (id >= 0) clear(live, id);
+                }
+                for (VirtualRegister virtualRegister : instruction.getUseSet()) {
+                    int id = getId(virtualRegister);
+                    if (id >= 0) set(live, id);
+                }
+            }
+        }
+        for (int x = 0; x < edge.length; x++) {
+            if (edge[x] == null) continue;
+            for (int w = 0; w < words; w++) {
+                for (long word = edge[x][w]; word != 0; word &= word - 1) {
+                    set(row(edge, (w << 6) + Long.numberOfTrailingZeros(word)), x);
                 }
             }
         }
     }
 
-    private static void addConflictEdge(VirtualRegister x, VirtualRegister y) {
-        if (inMemory(x) || inMemory(y) || x == y) {
-            return;
-        }
-        addEdge(x, y);
-        addEdge(y, x);
+    private static boolean test(long[] bits, int id) {
+        return (bits[id >> 6] & (1L << id)) != 0;
     }
 
-    private static void addEdge(VirtualRegister x, VirtualRegister y) {
-        if (!edge.containsKey(x)) {
-            edge.put(x, new HashSet<>());
-        }
-        edge.get(x).add(y);
+    private static void set(long[] bits, int id) {
+        bits[id >> 6] |= 1L << id;
     }
 
-    private static void addMoveEdge(VirtualRegister target, VirtualRegister source) {
-        if (inMemory(target) || inMemory(source) || target == source) {
-            return;
-        }
-        flow.get(target).add(source);
+    private static void clear(long[] bits, int id) {
+        bits[id >> 6] &= ~(1L << id);
     }
 
-    private static boolean inMemory(VirtualRegister virtualRegister) {
-        return currentFunctionIR.getRegisterIntegerMap().containsKey(virtualRegister) || virtualRegister.isGlobal();
+    private long[] row(long[][] graph, int id) {
+        if (graph[id] == null) graph[id] = new long[words];
+        return graph[id];
     }
 
-    private static void merge(Map<VirtualRegister, Integer> count, Set<VirtualRegister> occur) {
-        for (VirtualRegister virtualRegister : occur) {
-            if (!inMemory(virtualRegister)) {
-                if (!count.containsKey(virtualRegister)) {
-                    count.put(virtualRegister, 0);
-                    edge.put(virtualRegister, new HashSet<>());
-                    flow.put(virtualRegister, new HashSet<>());
-                }
-                int num = count.get(virtualRegister);
-                count.put(virtualRegister, ++num);
-            }
+    /* the killed register conflicts with everything live after it, except the source of a move */
+    private void addConflictEdge(int killed, long[] live, int except) {
+        if (killed < 0 || test(memory, killed)) return;
+        long[] bits = row(edge, killed);
+        for (int w = 0; w < words; w++) {
+            long mask = ~memory[w];
+            if (killed >> 6 == w) mask &= ~(1L << killed);
+            if (except >= 0 && except >> 6 == w) mask &= ~(1L << except);
+            bits[w] |= live[w] & mask;
         }
     }
 
-    private static boolean merge(Set<VirtualRegister> sum, Set<VirtualRegister> delta) {
-        boolean hasIncrement = false;
-        for (VirtualRegister virtualRegister : delta) {
-            if (!sum.contains(virtualRegister)) {
-                sum.add(virtualRegister);
-                hasIncrement = true;
-            }
+    private void addMoveEdge(int target, int source) {
+        if (target < 0 || source < 0 || test(memory, target) || test(memory, source) || target == source) {
+            return;
         }
-        return hasIncrement;
+        set(row(flow, target), source);
     }
 }
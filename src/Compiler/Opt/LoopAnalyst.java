@@ -0,0 +1,108 @@
+package Compiler.Opt;
+
+import Compiler.CFG.Block;
+import Compiler.CFG.FunctionIR;
+import Compiler.CFG.SSA.DominatorTree;
+
+import java.util.*;
+
+/*
+    Natural loops of a function: every edge whose target dominates its source is a
+    back edge, and the loop of a header is made of the blocks that reach one of its
+    back edges without passing through the header. Loops sharing a header are merged.
+ */
+public class LoopAnalyst {
+    private DominatorTree dominatorTree;
+    private Map<Block, Set<Block>> loopMap;
+    private Map<Block, Integer> depthMap;
+
+    public LoopAnalyst(FunctionIR functionIR) {
+        this(new DominatorTree(functionIR));
+    }
+
+    public LoopAnalyst(DominatorTree dominatorTree) {
+        this.dominatorTree = dominatorTree;
+        this.loopMap = new LinkedHashMap<>();
+        this.depthMap = new HashMap<>();
+        calcLoop();
+    }
+
+    private void calcLoop() {
+        for (Block block : dominatorTree.getReversePostorder()) {
+            for (Block successor : dominatorTree.getSuccessorList(block)) {
+                if (!dominatorTree.dominates(successor, block)) continue;
+                Set<Block> body = loopMap.computeIfAbsent(successor, k -> new LinkedHashSet<>(Collections.singleton(k)));
+                Deque<Block> workList = new ArrayDeque<>();
+                if (body.add(block)) {
+                    workList.add(block);
+                }
+                while (!workList.isEmpty()) {
+                    for (Block predecessor : dominatorTree.getPredecessorList(workList.poll())) {
+                        if (body.add(predecessor)) {
+                            workList.add(predecessor);
+                        }
+                    }
+                }
+            }
+        }
+        for (Set<Block> body : loopMap.values()) {
+            for (Block block : body) {
+                depthMap.merge(block, 1, Integer::sum);
+            }
+        }
+    }
+
+    public DominatorTree getDominatorTree() {
+        return dominatorTree;
+    }
+
+    public Set<Block> getHeaderSet() {
+        return loopMap.keySet();
+    }
+
+    public Set<Block> getLoopBody(Block header) {
+        return loopMap.get(header);
+    }
+
+    public List<Block> getLatchList(Block header) {
+        List<Block> latchList = new ArrayList<>();
+        for (Block predecessor : dominatorTree.getPredecessorList(header)) {
+            if (loopMap.get(header).contains(predecessor)) {
+                latchList.add(predecessor);
+            }
+        }
+        return latchList;
+    }
+
+    /* blocks outside the loop that are entered from inside it */
+    public Set<Block> getExitSet(Block header) {
+        Set<Block> body = loopMap.get(header);
+        Set<Block> exitSet = new LinkedHashSet<>();
+        for (Block block : body) {
+            for (Block successor : dominatorTree.getSuccessorList(block)) {
+                if (!body.contains(successor)) {
+                    exitSet.add(successor);
+                }
+            }
+        }
+        return exitSet;
+    }
+
+    /* blocks of the loop that have an edge leaving it */
+    public Set<Block> getExitingSet(Block header) {
+        Set<Block> body = loopMap.get(header);
+        Set<Block> exitingSet = new LinkedHashSet<>();
+        for (Block block : body) {
+            for (Block successor : dominatorTree.getSuccessorList(block)) {
+                if (!body.contains(successor)) {
+                    exitingSet.add(block);
+                }
+            }
+        }
+        return exitingSet;
+    }
+
+    public int getLoopDepth(Block block) {
+        return depthMap.getOrDefault(block, 0);
+    }
+}
@@ -9,31 +9,33 @@ import Compiler.CFG.Instruction.UnaryInstruction;
 import Compiler.CFG.Operand.Operand;
 import Compiler.CFG.Operand.VirtualRegister;
 
+import java.util.*;
+
 
 public class NaiveDeadCodeRazor {
     public static boolean deadCodeEliminate(FunctionIR functionIR) {
         boolean hasImproved = false;
         for (Block block : functionIR.getBlockList()) {
-            for (int i = 0; i < block.getInstructionList().size(); i++) {
-                Instruction instruction = block.getInstructionList().get(i);
+            for (Iterator<Instruction> iterator = block.getInstructionList().iterator(); iterator.hasNext(); ) {
+                Instruction instruction = iterator.next();
                 if (instruction instanceof MoveInstruction) {
                     Operand target = ((MoveInstruction) instruction).getTarget();
                     if (target instanceof VirtualRegister && !instruction.getLiveOut().contains(target) && ((VirtualRegister) target).getSystemRegister() == null) {
-                        block.getInstructionList().remove(i--);
+                        iterator.remove();
                         hasImproved = true;
                     }
                 }
                 if (instruction instanceof BinaryInstruction) {
                     Operand target = ((BinaryInstruction) instruction).getTarget();
                     if (target instanceof VirtualRegister && !instruction.getLiveOut().contains(target) && ((VirtualRegister) target).getSystemRegister() == null) {
-                        block.getInstructionList().remove(i--);
+                        iterator.remove();
                         hasImproved = true;
                     }
                 }
                 if (instruction instanceof UnaryInstruction) {
                     Operand target = ((UnaryInstruction) instruction).getTarget();
                     if (target instanceof VirtualRegister && !instruction.getLiveOut().contains(target) && ((VirtualRegister) target).getSystemRegister() == null) {
-                        block.getInstructionList().remove(i--);
+                        iterator.remove();
                         hasImproved = true;
                     }
                 }
@@ -41,4 +43,48 @@ public class NaiveDeadCodeRazor {
         }
         return hasImproved;
     }
+
+    /*
+        A register read only by its own in-place updates is dead, and so are all of its
+        definitions when each is a move, binary or unary instruction. Removing them can
+        leave the registers they read dead in turn, so those go back on the worklist.
+        It follows the def-use chains and needs no liveness, so the rounds of
+        deadCodeEliminate after it only see what is dead on some paths.
+     */
+    public static boolean unusedCodeEliminate(FunctionIR functionIR) {
+        Deque<VirtualRegister> workList = new ArrayDeque<>();
+        Set<VirtualRegister> queued = new HashSet<>();
+        for (Block block : functionIR.getBlockList()) {
+            for (Instruction instruction : block.getInstructionList()) {
+                for (VirtualRegister virtualRegister : instruction.getKillSet()) {
+                    if (queued.add(virtualRegister)) workList.add(virtualRegister);
+                }
+            }
+        }
+        boolean hasImproved = false;
+        while (!workList.isEmpty()) {
+            VirtualRegister virtualRegister = workList.poll();
+            queued.remove(virtualRegister);
+            if (!isUnused(virtualRegister)) continue;
+            for (Instruction definition : new ArrayList<>(virtualRegister.getDefinitionSet())) {
+                definition.getBlock().getInstructionList().remove(definition);
+                for (VirtualRegister source : definition.getUseSet()) {
+                    if (source != virtualRegister && queued.add(source)) workList.add(source);
+                }
+            }
+            hasImproved = true;
+        }
+        return hasImproved;
+    }
+
+    private static boolean isUnused(VirtualRegister virtualRegister) {
+        if (virtualRegister.isGlobal() || virtualRegister.getSystemRegister() != null) return false;
+        Set<Instruction> definitionSet = virtualRegister.getDefinitionSet();
+        if (definitionSet.isEmpty()) return false;
+        for (Instruction definition : definitionSet) {
+            if (!(definition instanceof MoveInstruction || definition instanceof BinaryInstruction
+                    || definition instanceof UnaryInstruction)) return false;
+        }
+        return definitionSet.containsAll(virtualRegister.getUseSet());
+    }
 }
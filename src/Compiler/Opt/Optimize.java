@@ -1,38 +1,106 @@
 package Compiler.Opt;
 
 import Compiler.CFG.FunctionIR;
-import Compiler.CFG.ProgramIR;
+import Compiler.CFG.SSA.SSAConstructor;
+import Compiler.CFG.SSA.SSADestructor;
+import Compiler.CompilationContext;
+import Compiler.Opt.PassManager.Pass;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static Compiler.Opt.PassManager.Analysis.*;
+
+/*
+    The pipelines by optimize.level: 0 only allocates registers and tidies the blocks
+    after, 1 adds inlining and the cleanups that need no SSA form, and 2, the default,
+    runs everything.
+ */
 public class Optimize {
+    private static final int level = Math.max(0, Math.min(2, Integer.getInteger("optimize.level", 2)));
+    private static final List<Pass> pipeline = Collections.unmodifiableList(getPipeline(level));
 
     public static void optimize() {
-        for (FunctionIR functionIR : ProgramIR.getFunctionMap().values()) {
-            NaiveInliner.inline(functionIR);
-            LivenessAnalyst.analysis(functionIR);
-            DeadLoopRazor.deadForStatementBlocksRemove(functionIR);
-            LoopConditionManager.loopConditionImprove(functionIR);
-            LivenessAnalyst.analysis(functionIR);
-            OutputConverter.convertOutput(functionIR);
-            LivenessAnalyst.analysis(functionIR);
-            int round = 0;
-            while (NaiveDeadCodeRazor.deadCodeEliminate(functionIR)) {
-                LivenessAnalyst.analysis(functionIR);
-                ++round;
-                if (round == 100) break;
-            }
-            ImmediateHunter.huntImmediate(functionIR);
-            FoolishConditionMonitor.stupidConditionRemove(functionIR);
-            LivenessAnalyst.analysis(functionIR);
-            BinaryInstructionRazor.uselessMoveInstructionRemove(functionIR);
-            LivenessAnalyst.analysis(functionIR);
-            BinaryInstructionRazor.uselessBinaryInstructionRemove(functionIR);
-            LivenessAnalyst.analysis(functionIR);
-            NaiveRegisterAllocator.naiveAllocate(LivenessAnalyst.getEdge(), LivenessAnalyst.getCount(), functionIR);
-            RedundantBlockDictator.redundantBlockRemove(functionIR);
-            StupidMoveKiller.uselessMoveRemove(functionIR);
-            BlocksTyrant.emptyBlockRemove(functionIR);
-            SuperBlockBuilder.buildSuperBlock(functionIR);
-            SuperBlockBuilder.uselessJumpRemove(functionIR);
+        if (level >= 1) FrugalInliner.inline();
+        if (level >= 2) ResultHoarder.memorize();
+        CompilationContext.current().forEachFunction(Optimize::optimize);
+    }
+
+    /* everything after the inlining stays inside one function, so the functions run side by side */
+    private static FunctionIR optimize(FunctionIR functionIR) {
+        new PassManager(functionIR).run(pipeline);
+        return functionIR;
+    }
+
+    public static int getLevel() {
+        return level;
+    }
+
+    public static List<Pass> getPipeline(int level) {
+        List<Pass> passList = new ArrayList<>();
+        if (level >= 2) {
+            passList.add(new Pass("DeadLoopRazor",
+                    (functionIR, passManager) -> DeadLoopRazor.deadLoopRemove(functionIR, passManager.getLoopAnalyst()))
+                    .require(LIVENESS, LOOPS));
+            passList.add(new Pass("LoopConditionManager",
+                    (functionIR, passManager) -> LoopConditionManager.loopConditionImprove(functionIR))
+                    .preserve(CFG, DOMINATORS, LOOPS));
+            passList.add(new Pass("OutputConverter",
+                    (functionIR, passManager) -> OutputConverter.convertOutput(functionIR))
+                    .preserve(CFG, DOMINATORS, LOOPS));
+            passList.add(new Pass("SSAConstructor", (functionIR, passManager) -> {
+                SSAConstructor.construct(functionIR, passManager.getDominatorTree());
+                return true;
+            }).require(DOMINATORS).preserve(CFG, DOMINATORS, LOOPS));
+            passList.add(new Pass("ConstantOracle", (functionIR, passManager) -> {
+                ConstantOracle.propagateConstant(functionIR);
+                return true;
+            }));
+            passList.add(new Pass("ValueNumberingSniper", (functionIR, passManager) -> {
+                ValueNumberingSniper.eliminateRedundancy(functionIR, passManager.getDominatorTree());
+                return true;
+            }).require(DOMINATORS).preserve(CFG, DOMINATORS, LOOPS));
+            passList.add(new Pass("InvariantSmuggler",
+                    (functionIR, passManager) -> InvariantSmuggler.hoistInvariant(functionIR, passManager.getLoopAnalyst()))
+                    .require(LOOPS));
+            passList.add(new Pass("SSADestructor", (functionIR, passManager) -> {
+                SSADestructor.destruct(functionIR);
+                return true;
+            }));
+        }
+        if (level >= 1) {
+            passList.add(new Pass("NaiveDeadCodeRazor.unused",
+                    (functionIR, passManager) -> NaiveDeadCodeRazor.unusedCodeEliminate(functionIR))
+                    .preserve(CFG, DOMINATORS, LOOPS));
+            passList.add(new Pass("NaiveDeadCodeRazor",
+                    (functionIR, passManager) -> NaiveDeadCodeRazor.deadCodeEliminate(functionIR))
+                    .require(LIVENESS).preserve(CFG, DOMINATORS, LOOPS).repeat(100));
+            passList.add(new Pass("ImmediateHunter",
+                    (functionIR, passManager) -> ImmediateHunter.huntImmediate(functionIR))
+                    .preserve(CFG, DOMINATORS, LOOPS));
         }
+        if (level >= 2) {
+            passList.add(new Pass("FoolishConditionMonitor",
+                    (functionIR, passManager) -> FoolishConditionMonitor.stupidConditionRemove(functionIR)));
+        }
+        if (level >= 1) {
+            passList.add(new Pass("BinaryInstructionRazor.move",
+                    (functionIR, passManager) -> BinaryInstructionRazor.uselessMoveInstructionRemove(functionIR))
+                    .require(LIVENESS).preserve(CFG, DOMINATORS, LOOPS));
+            passList.add(new Pass("BinaryInstructionRazor.binary",
+                    (functionIR, passManager) -> BinaryInstructionRazor.uselessBinaryInstructionRemove(functionIR))
+                    .require(LIVENESS).preserve(CFG, DOMINATORS, LOOPS));
+        }
+        passList.add(new Pass("GraphColoringAllocator", (functionIR, passManager) -> {
+            GraphColoringAllocator.allocate(LivenessAnalyst.getEdge(), LivenessAnalyst.getFlow(), functionIR, passManager.getLoopAnalyst());
+            return true;
+        }).require(LIVENESS, LOOPS));
+        passList.add(new Pass("StupidMoveKiller", (functionIR, passManager) -> {
+            StupidMoveKiller.uselessMoveRemove(functionIR);
+            return true;
+        }));
+        passList.add(new Pass("BlocksTyrant", (functionIR, passManager) -> BlocksTyrant.simplify(functionIR)));
+        return passList;
     }
 }
@@ -15,7 +15,8 @@ public class OutputConverter {
         return virtualRegister.getSystemRegister().equals(systemRegister);
     }
 
-    public static void convertOutput(FunctionIR functionIR) {
+    public static boolean convertOutput(FunctionIR functionIR) {
+        boolean hasImproved = false;
         for (Block block : functionIR.getBlockList()) {
             for (int i = 0; i + 3 < block.getInstructionList().size(); i++) {
                 if (block.getInstructionList().get(i) instanceof FunctionCallInstruction &&
@@ -35,17 +36,20 @@ public class OutputConverter {
                             for (int k = 0; k < 3; k++) {
                                 block.getInstructionList().remove(i + 1);
                             }
-                            functionCallInstruction1.convertFunctionType(ProgramAST.globalFunctionTable.getFunctionMap().get("print_Int"));
+                            functionCallInstruction1.convertFunctionType(ProgramAST.getGlobalFunctionTable().getFunctionMap().get("print_Int"));
+                            hasImproved = true;
                         }
                         if (functionCallInstruction2.getFunctionType().getOriginName().equals("println")) {
                             for (int k = 0; k < 3; k++) {
                                 block.getInstructionList().remove(i + 1);
                             }
-                            functionCallInstruction1.convertFunctionType(ProgramAST.globalFunctionTable.getFunctionMap().get("println_Int"));
+                            functionCallInstruction1.convertFunctionType(ProgramAST.getGlobalFunctionTable().getFunctionMap().get("println_Int"));
+                            hasImproved = true;
                         }
                     }
                 }
             }
         }
+        return hasImproved;
     }
 }
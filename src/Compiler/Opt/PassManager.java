@@ -0,0 +1,133 @@
+package Compiler.Opt;
+
+import Compiler.CFG.FunctionIR;
+import Compiler.CFG.SSA.DominatorTree;
+
+import java.util.*;
+
+/*
+    Runs passes over one function and keeps the analyses they share. A pass names the
+    analyses it requires, which are computed before it runs unless the cached one is
+    still valid, and the analyses it preserves. Only when a pass reports a change is
+    the rest dropped, together with what was built on it: the dominator tree is built
+    on the edges and the loops on the dominator tree. A pass that can't tell whether
+    it changed anything always reports a change.
+
+    The edges are the lists the dominator tree collects, so CFG and DOMINATORS share
+    one object. Liveness is kept by the analyst of the compilation context and on the
+    instructions; the cache only remembers that it is current for this function.
+ */
+public class PassManager {
+    public enum Analysis {
+        LIVENESS, CFG, DOMINATORS, LOOPS
+    }
+
+    public interface Action {
+        boolean run(FunctionIR functionIR, PassManager passManager);
+    }
+
+    public static class Pass {
+        private final String name;
+        private final Action action;
+        private final Set<Analysis> requireSet = EnumSet.noneOf(Analysis.class);
+        private final Set<Analysis> preserveSet = EnumSet.noneOf(Analysis.class);
+        private int roundLimit = 1;
+
+        public Pass(String name, Action action) {
+            this.name = name;
+            this.action = action;
+        }
+
+        public Pass require(Analysis... analyses) {
+            requireSet.addAll(Arrays.asList(analyses));
+            return this;
+        }
+
+        public Pass preserve(Analysis... analyses) {
+            preserveSet.addAll(Arrays.asList(analyses));
+            return this;
+        }
+
+        /* runs again while it keeps changing the function, at most limit times */
+        public Pass repeat(int limit) {
+            roundLimit = limit;
+            return this;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    private final FunctionIR functionIR;
+    private final Set<Analysis> validSet = EnumSet.noneOf(Analysis.class);
+    private DominatorTree dominatorTree;
+    private LoopAnalyst loopAnalyst;
+
+    public PassManager(FunctionIR functionIR) {
+        this.functionIR = functionIR;
+    }
+
+    public void run(List<Pass> passList) {
+        for (Pass pass : passList) {
+            for (int round = 0; round < pass.roundLimit; round++) {
+                if (!run(pass)) break;
+            }
+        }
+    }
+
+    public boolean run(Pass pass) {
+        for (Analysis analysis : pass.requireSet) {
+            require(analysis);
+        }
+        boolean changed = pass.action.run(functionIR, this);
+        if (changed) {
+            invalidate(pass.preserveSet);
+        }
+        return changed;
+    }
+
+    public void require(Analysis analysis) {
+        switch (analysis) {
+            case LIVENESS: requireLiveness(); break;
+            case CFG:
+            case DOMINATORS: getDominatorTree(); break;
+            case LOOPS: getLoopAnalyst(); break;
+        }
+    }
+
+    public void requireLiveness() {
+        if (validSet.add(Analysis.LIVENESS)) {
+            LivenessAnalyst.analysis(functionIR);
+        }
+    }
+
+    public DominatorTree getDominatorTree() {
+        if (!validSet.contains(Analysis.DOMINATORS)) {
+            dominatorTree = new DominatorTree(functionIR);
+            validSet.add(Analysis.CFG);
+            validSet.add(Analysis.DOMINATORS);
+        }
+        return dominatorTree;
+    }
+
+    public LoopAnalyst getLoopAnalyst() {
+        if (!validSet.contains(Analysis.LOOPS)) {
+            loopAnalyst = new LoopAnalyst(getDominatorTree());
+            validSet.add(Analysis.LOOPS);
+        }
+        return loopAnalyst;
+    }
+
+    public boolean isValid(Analysis analysis) {
+        return validSet.contains(analysis);
+    }
+
+    private void invalidate(Set<Analysis> preserveSet) {
+        validSet.retainAll(preserveSet);
+        if (!validSet.contains(Analysis.CFG)) validSet.remove(Analysis.DOMINATORS);
+        if (!validSet.contains(Analysis.DOMINATORS)) validSet.remove(Analysis.LOOPS);
+        if (!validSet.contains(Analysis.DOMINATORS)) dominatorTree = null;
+        if (!validSet.contains(Analysis.LOOPS)) loopAnalyst = null;
+    }
+}
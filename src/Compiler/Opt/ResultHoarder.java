@@ -0,0 +1,216 @@
+package Compiler.Opt;
+
+import Compiler.AST.Symbol.Symbol;
+import Compiler.AST.Type.FunctionType;
+import Compiler.AST.Type.IntType;
+import Compiler.CFG.Block;
+import Compiler.CFG.FunctionIR;
+import Compiler.CFG.Instruction.*;
+import Compiler.CFG.Operand.AddressOperand;
+import Compiler.CFG.Operand.ImmediateOperand;
+import Compiler.CFG.Operand.Operand;
+import Compiler.CFG.Operand.VirtualRegister;
+import Compiler.CFG.ProgramIR;
+import Compiler.CFG.RegisterManager;
+
+import java.util.*;
+
+/*
+    Memorizes pure functions over int parameters that call themselves more than once.
+    A function is pure when none of its instructions touches memory, globals or the
+    builtins, reading as well as writing, and everything it calls is pure as well. The
+    results go to a direct-mapped table in .bss: an entry holds the arguments, the
+    result and a filled flag, and the arguments are hashed into the table on entry. A
+    hit returns the stored result, a miss runs the body, whose returns overwrite the
+    entry. The number of entries comes from the memorize.tableSize property, rounded
+    down to a power of two.
+ */
+public class ResultHoarder {
+    private static final int maxKeyCount = 4;
+    private static final int hashFactor = 1000003;
+    private static final int tableSize = Integer.highestOneBit(Math.max(1, Integer.getInteger("memorize.tableSize", 1 << 12)));
+
+    public static void memorize() {
+        Set<FunctionIR> pureSet = new LinkedHashSet<>();
+        for (FunctionIR functionIR : ProgramIR.getFunctionMap().values()) {
+            if (isCandidate(functionIR)) pureSet.add(functionIR);
+        }
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (FunctionIR functionIR : new ArrayList<>(pureSet)) {
+                for (FunctionIR callee : getCalleeList(functionIR)) {
+                    if (!pureSet.contains(callee)) {
+                        pureSet.remove(functionIR);
+                        changed = true;
+                        break;
+                    }
+                }
+            }
+        }
+        for (FunctionIR functionIR : pureSet) {
+            if (Collections.frequency(getCalleeList(functionIR), functionIR) > 1) {
+                convertToMemorized(functionIR);
+            }
+        }
+    }
+
+    private static boolean isCandidate(FunctionIR functionIR) {
+        FunctionType functionType = functionIR.getFunctionType();
+        List<Symbol> parameterList = functionType.getParameterList();
+        if (parameterList.isEmpty() || parameterList.size() > maxKeyCount) return false;
+        if (functionIR.getParameterList().size() != parameterList.size()) return false;
+        for (Symbol symbol : parameterList) {
+            if (symbol.getType() != IntType.getInstance()) return false;
+        }
+        if (functionType.getReturnType() != IntType.getInstance()) return false;
+        for (Block block : functionIR.getBlockList()) {
+            for (Instruction instruction : block.getInstructionList()) {
+                if (instruction.hasGlobalImpact() || touchesMemory(instruction)) return false;
+            }
+        }
+        return true;
+    }
+
+    /* a read of a global or through an address gives another result once the memory changes */
+    private static boolean touchesMemory(Instruction instruction) {
+        for (VirtualRegister virtualRegister : instruction.getUseSet()) {
+            if (virtualRegister.isGlobal()) return true;
+        }
+        for (VirtualRegister virtualRegister : instruction.getKillSet()) {
+            if (virtualRegister.isGlobal()) return true;
+        }
+        for (Operand operand : getOperandList(instruction)) {
+            if (operand instanceof AddressOperand) return true;
+        }
+        return false;
+    }
+
+    private static List<Operand> getOperandList(Instruction instruction) {
+        if (instruction instanceof MoveInstruction) {
+            return Arrays.asList(((MoveInstruction) instruction).getTarget(), ((MoveInstruction) instruction).getSource());
+        }
+        if (instruction instanceof BinaryInstruction) {
+            return Arrays.asList(((BinaryInstruction) instruction).getTarget(), ((BinaryInstruction) instruction).getSource());
+        }
+        if (instruction instanceof UnaryInstruction) {
+            return Collections.singletonList(((UnaryInstruction) instruction).getTarget());
+        }
+        if (instruction instanceof CompareInstruction) {
+            return Arrays.asList(((CompareInstruction) instruction).getLeftOperand(), ((CompareInstruction) instruction).getRightOperand());
+        }
+        if (instruction instanceof ReturnInstruction && ((ReturnInstruction) instruction).getReturnValue() != null) {
+            return Collections.singletonList(((ReturnInstruction) instruction).getReturnValue());
+        }
+        if (instruction instanceof MallocInstruction) {
+            return Collections.singletonList(((MallocInstruction) instruction).getMallocSize());
+        }
+        if (instruction instanceof FunctionCallInstruction) {
+            return ((FunctionCallInstruction) instruction).getOperandList();
+        }
+        if (instruction instanceof PhiInstruction) {
+            return new ArrayList<>(((PhiInstruction) instruction).getSourceMap().values());
+        }
+        return Collections.emptyList();
+    }
+
+    /* one entry per call site */
+    private static List<FunctionIR> getCalleeList(FunctionIR functionIR) {
+        List<FunctionIR> calleeList = new ArrayList<>();
+        for (Block block : functionIR.getBlockList()) {
+            for (Instruction instruction : block.getInstructionList()) {
+                if (instruction instanceof FunctionCallInstruction) {
+                    calleeList.add(((FunctionCallInstruction) instruction).getFunctionType().getFunctionIR());
+                }
+            }
+        }
+        return calleeList;
+    }
+
+    private static void convertToMemorized(FunctionIR functionIR) {
+        FunctionType functionType = functionIR.getFunctionType();
+        List<VirtualRegister> parameterList = functionIR.getParameterList();
+        int keyCount = parameterList.size();
+        int entrySize = keyCount + 2;
+        VirtualRegister table = RegisterManager.getTemporaryRegister();
+        table.setSystemRegister("@" + functionType.getIRName() + "_memo");
+        table.setGlobal(true);
+        functionIR.setMemorized(table, tableSize * entrySize);
+        functionType.setIntact(false);
+
+        List<VirtualRegister> keyList = new ArrayList<>();
+        for (VirtualRegister parameter : parameterList) {
+            keyList.add(RegisterManager.getTemporaryRegister());
+        }
+        VirtualRegister position = RegisterManager.getTemporaryRegister();
+        for (Block block : functionIR.getBlockList()) {
+            List<Instruction> instructionList = block.getInstructionList();
+            for (int i = 0; i < instructionList.size(); i++) {
+                if (!(instructionList.get(i) instanceof ReturnInstruction)) continue;
+                ReturnInstruction returnInstruction = (ReturnInstruction) instructionList.get(i);
+                VirtualRegister result = RegisterManager.getTemporaryRegister();
+                instructionList.add(i++, new MoveInstruction(result, returnInstruction.getReturnValue()));
+                for (int k = 0; k < keyCount; k++) {
+                    instructionList.add(i++, new MoveInstruction(getEntry(position, k), keyList.get(k)));
+                }
+                instructionList.add(i++, new MoveInstruction(getEntry(position, keyCount), result));
+                instructionList.add(i++, new MoveInstruction(getEntry(position, keyCount + 1), new ImmediateOperand(1)));
+                returnInstruction.setReturnValue(result);
+            }
+        }
+
+        Block enter = functionIR.getBlockList().get(0);
+        List<Instruction> restList = new ArrayList<>(enter.getInstructionList());
+        enter.clear();
+        for (int k = 0; k < keyCount; k++) {
+            Instruction instruction = restList.remove(0);
+            if (!(instruction instanceof MoveInstruction) || ((MoveInstruction) instruction).getTarget() != parameterList.get(k)) {
+                throw new InternalError("The instruction is expected to be the move of a parameter");
+            }
+            enter.addInstruction(instruction);
+        }
+        VirtualRegister hash = RegisterManager.getTemporaryRegister();
+        for (int k = 0; k < keyCount; k++) {
+            enter.addInstruction(new MoveInstruction(keyList.get(k), parameterList.get(k)));
+            if (k == 0) {
+                enter.addInstruction(new MoveInstruction(hash, keyList.get(k)));
+            } else {
+                enter.addInstruction(new BinaryInstruction(BinaryInstruction.BinaryOp.MUL, hash, new ImmediateOperand(hashFactor)));
+                enter.addInstruction(new BinaryInstruction(BinaryInstruction.BinaryOp.ADD, hash, keyList.get(k)));
+            }
+        }
+        enter.addInstruction(new BinaryInstruction(BinaryInstruction.BinaryOp.AND, hash, new ImmediateOperand(tableSize - 1)));
+        enter.addInstruction(new BinaryInstruction(BinaryInstruction.BinaryOp.MUL, hash, new ImmediateOperand(entrySize << 3)));
+        enter.addInstruction(new MoveInstruction(position, table));
+        enter.addInstruction(new BinaryInstruction(BinaryInstruction.BinaryOp.ADD, position, hash));
+
+        List<Block> checkList = new ArrayList<>();
+        for (int k = 0; k < keyCount; k++) {
+            checkList.add(functionIR.createBlock(functionType.getOriginName() + "_check"));
+        }
+        Block hit = functionIR.createBlock(functionType.getOriginName() + "_hit");
+        Block start = functionIR.createBlock(functionType.getOriginName() + "_start");
+        enter.addInstruction(new CompareInstruction(getEntry(position, keyCount + 1), new ImmediateOperand(0)));
+        enter.addInstruction(new CJumpInstruction(ProgramIR.ConditionOp.EQ, start.getLabelInstruction()));
+        enter.addInstruction(new JumpInstruction(checkList.get(0).getLabelInstruction()));
+        for (int k = 0; k < keyCount; k++) {
+            Block check = checkList.get(k);
+            Block next = k + 1 < keyCount ? checkList.get(k + 1) : hit;
+            check.addInstruction(new CompareInstruction(getEntry(position, k), keyList.get(k)));
+            check.addInstruction(new CJumpInstruction(ProgramIR.ConditionOp.NEQ, start.getLabelInstruction()));
+            check.addInstruction(new JumpInstruction(next.getLabelInstruction()));
+        }
+        hit.addInstruction(new ReturnInstruction(getEntry(position, keyCount)));
+        hit.addInstruction(new JumpInstruction(functionIR.getExitBlock()));
+        restList.forEach(start::addInstruction);
+
+        List<Block> blockList = functionIR.getBlockList();
+        blockList.addAll(1, checkList);
+        blockList.add(1 + keyCount, hit);
+        blockList.add(2 + keyCount, start);
+    }
+
+    private static AddressOperand getEntry(VirtualRegister position, int index) {
+        return new AddressOperand(position, new ImmediateOperand(index << 3));
+    }
+}
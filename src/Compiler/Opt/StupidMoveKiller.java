@@ -16,9 +16,8 @@ public class StupidMoveKiller {
                     Operand target = ((MoveInstruction) instruction).getTarget();
                     Operand source = ((MoveInstruction) instruction).getSource();
                     if (target instanceof VirtualRegister && source instanceof VirtualRegister
-                            && functionIR.getRegisterStringMap().containsKey(target)
-                            && functionIR.getRegisterStringMap().containsKey(source)
-                            && functionIR.getRegisterStringMap().get(target).equals(functionIR.getRegisterStringMap().get(source))) {
+                            && functionIR.hasPhysicalRegister((VirtualRegister) target)
+                            && functionIR.getPhysicalRegister((VirtualRegister) target).equals(functionIR.getPhysicalRegister((VirtualRegister) source))) {
                         block.getInstructionList().remove(i--);
                     }
                 }
@@ -0,0 +1,360 @@
+package Compiler.Opt;
+
+import Compiler.CFG.Block;
+import Compiler.CFG.FunctionIR;
+import Compiler.CFG.Instruction.*;
+import Compiler.CFG.Operand.*;
+import Compiler.CFG.SSA.DominatorTree;
+
+import java.util.*;
+
+/*
+    Dominator-based global value numbering on SSA form.
+
+    Every version gets a value number. Copies take the number of their source, and a
+    definition (a move, optionally with the in-place update split off it, or a set
+    after a compare) is numbered by its operator and operand numbers. The table of
+    expressions is scoped by the dominator tree, so a definition whose expression is
+    already held by a register of a dominating definition is deleted and its uses
+    are renamed to that register.
+
+    Loads are numbered by base, offset and a memory generation. Any store, call or
+    write to a global starts a new generation; a block continues the generation of
+    its immediate dominator only when that is its single predecessor. A store of a
+    register makes the stored value available to loads of the same address.
+ */
+public class ValueNumberingSniper {
+    private FunctionIR functionIR;
+    private DominatorTree dominatorTree;
+    private Map<VirtualRegister, Integer> definitionCount;
+    private Map<VirtualRegister, Integer> numberMap;
+    private Map<Integer, VirtualRegister> ownerMap;
+    private Map<Integer, Integer> constantMap;
+    private Set<Integer> constantSet;
+    private Map<String, Integer> expressionMap;
+    private Map<Integer, VirtualRegister> leaderMap;
+    private Map<VirtualRegister, VirtualRegister> replaceMap;
+    private Map<Block, Integer> generationMap;
+    private int numberCount, generationCount, generation;
+    private Deque<Runnable> undoLog;
+
+    private ValueNumberingSniper(FunctionIR functionIR, DominatorTree dominatorTree) {
+        this.functionIR = functionIR;
+        this.dominatorTree = dominatorTree;
+        this.numberMap = new HashMap<>();
+        this.ownerMap = new HashMap<>();
+        this.constantMap = new HashMap<>();
+        this.constantSet = new HashSet<>();
+        this.expressionMap = new HashMap<>();
+        this.leaderMap = new HashMap<>();
+        this.replaceMap = new HashMap<>();
+        this.generationMap = new HashMap<>();
+        this.numberCount = 0;
+        this.generationCount = 0;
+        this.undoLog = new ArrayDeque<>();
+    }
+
+    public static void eliminateRedundancy(FunctionIR functionIR) {
+        eliminateRedundancy(functionIR, new DominatorTree(functionIR));
+    }
+
+    public static void eliminateRedundancy(FunctionIR functionIR, DominatorTree dominatorTree) {
+        ValueNumberingSniper sniper = new ValueNumberingSniper(functionIR, dominatorTree);
+        sniper.countDefinition();
+        sniper.visit();
+        sniper.rewrite();
+    }
+
+    /* an in-place update right after the move to the same register counts as one definition with it */
+    private void countDefinition() {
+        definitionCount = new HashMap<>();
+        for (Block block : functionIR.getBlockList()) {
+            Instruction previous = null;
+            for (Instruction instruction : block.getInstructionList()) {
+                Operand target = null;
+                if (instruction instanceof BinaryInstruction) target = ((BinaryInstruction) instruction).getTarget();
+                if (instruction instanceof UnaryInstruction) target = ((UnaryInstruction) instruction).getTarget();
+                boolean update = target != null && previous instanceof MoveInstruction && ((MoveInstruction) previous).getTarget() == target;
+                if (!update) {
+                    for (VirtualRegister virtualRegister : instruction.getKillSet()) {
+                        definitionCount.merge(virtualRegister, 1, Integer::sum);
+                    }
+                }
+                previous = instruction;
+            }
+        }
+    }
+
+    private boolean isPlain(VirtualRegister virtualRegister) {
+        return virtualRegister.getSystemRegister() == null && !virtualRegister.isGlobal();
+    }
+
+    /* registers defined more than once are not values: every read gets a new number */
+    private int getNumber(VirtualRegister virtualRegister) {
+        if (!virtualRegister.isGlobal() && definitionCount.getOrDefault(virtualRegister, 0) > 1) {
+            return numberCount++;
+        }
+        Integer number = numberMap.get(virtualRegister);
+        if (number == null) {
+            number = numberCount++;
+            numberMap.put(virtualRegister, number);
+            if (isPlain(virtualRegister)) {
+                ownerMap.put(number, virtualRegister);
+            }
+        }
+        return number;
+    }
+
+    private int getNumber(Operand operand) {
+        if (operand instanceof VirtualRegister) {
+            return getNumber((VirtualRegister) operand);
+        }
+        if (operand instanceof ImmediateOperand) {
+            return constantMap.computeIfAbsent(((ImmediateOperand) operand).getValue(), k -> {
+                constantSet.add(numberCount);
+                return numberCount++;
+            });
+        }
+        String key;
+        if (operand instanceof AddressOperand) {
+            key = getLoadKey((AddressOperand) operand);
+        } else {
+            key = "label " + operand.toString();
+        }
+        Integer number = expressionMap.get(key);
+        if (number == null) {
+            number = numberCount++;
+            define(key, number);
+        }
+        return number;
+    }
+
+    private String getLoadKey(AddressOperand address) {
+        return "load " + getNumber(address.getBase()) + " " + address.getOffset().getValue() + " " + generation;
+    }
+
+    /* scoped insertions are logged so they can be undone when the dominator subtree is left */
+    private void define(String key, int number) {
+        Integer old = expressionMap.put(key, number);
+        undoLog.push(() -> {
+            if (old == null) expressionMap.remove(key);
+            else expressionMap.put(key, old);
+        });
+    }
+
+    private void lead(int number, VirtualRegister virtualRegister) {
+        VirtualRegister old = leaderMap.put(number, virtualRegister);
+        undoLog.push(() -> {
+            if (old == null) leaderMap.remove(number);
+            else leaderMap.put(number, old);
+        });
+    }
+
+    private VirtualRegister getLeader(int number) {
+        VirtualRegister leader = leaderMap.get(number);
+        return leader != null ? leader : ownerMap.get(number);
+    }
+
+    private boolean isCommutative(BinaryInstruction.BinaryOp binaryOp) {
+        return binaryOp == BinaryInstruction.BinaryOp.ADD || binaryOp == BinaryInstruction.BinaryOp.MUL
+                || binaryOp == BinaryInstruction.BinaryOp.AND || binaryOp == BinaryInstruction.BinaryOp.OR
+                || binaryOp == BinaryInstruction.BinaryOp.XOR;
+    }
+
+    private boolean writesMemory(Instruction instruction) {
+        if (instruction instanceof FunctionCallInstruction) return true;
+        if (instruction instanceof MoveInstruction && ((MoveInstruction) instruction).getTarget() instanceof AddressOperand) return true;
+        if (instruction instanceof BinaryInstruction && ((BinaryInstruction) instruction).getTarget() instanceof AddressOperand) return true;
+        if (instruction instanceof UnaryInstruction && ((UnaryInstruction) instruction).getTarget() instanceof AddressOperand) return true;
+        for (VirtualRegister virtualRegister : instruction.getKillSet()) {
+            if (virtualRegister.isGlobal()) return true;
+        }
+        return false;
+    }
+
+    /*
+        Walks the dominator tree with a stack of its own rather than by recursion, which a
+        long chain of blocks would overflow. Each entry remembers how long the undo log was
+        before its block, and the log is rolled back to that when the block is popped.
+     */
+    private void visit() {
+        Deque<Integer> markStack = new ArrayDeque<>();
+        Deque<Iterator<Block>> iteratorStack = new ArrayDeque<>();
+        Block enterBlock = dominatorTree.getEnterBlock();
+        markStack.push(undoLog.size());
+        numberBlock(enterBlock);
+        iteratorStack.push(dominatorTree.getChildren(enterBlock).iterator());
+        while (!iteratorStack.isEmpty()) {
+            Iterator<Block> iterator = iteratorStack.peek();
+            if (iterator.hasNext()) {
+                Block child = iterator.next();
+                markStack.push(undoLog.size());
+                numberBlock(child);
+                iteratorStack.push(dominatorTree.getChildren(child).iterator());
+            } else {
+                iteratorStack.pop();
+                int mark = markStack.pop();
+                while (undoLog.size() > mark) {
+                    undoLog.pop().run();
+                }
+            }
+        }
+    }
+
+    private void numberBlock(Block block) {
+        Block immediateDominator = dominatorTree.getImmediateDominator(block);
+        List<Block> predecessorList = dominatorTree.getPredecessorList(block);
+        if (immediateDominator != null && predecessorList.size() == 1 && predecessorList.get(0) == immediateDominator) {
+            generation = generationMap.get(immediateDominator);
+        } else {
+            generation = generationCount++;
+        }
+        List<Instruction> instructionList = block.getInstructionList();
+        Set<Instruction> deadSet = new HashSet<>();
+        for (int i = 0; i < instructionList.size(); i++) {
+            Instruction instruction = instructionList.get(i);
+            if (instruction instanceof PhiInstruction) continue;
+            int length = number(instructionList, i, deadSet);
+            if (length > 0) {
+                i += length - 1;
+                continue;
+            }
+            if (writesMemory(instruction)) {
+                generation = generationCount++;
+                if (instruction instanceof MoveInstruction && ((MoveInstruction) instruction).getTarget() instanceof AddressOperand) {
+                    Operand source = ((MoveInstruction) instruction).getSource();
+                    if (source instanceof VirtualRegister && isPlain((VirtualRegister) source)) {
+                        define(getLoadKey((AddressOperand) ((MoveInstruction) instruction).getTarget()), getNumber(source));
+                    }
+                }
+            }
+        }
+        instructionList.removeIf(deadSet::contains);
+        generationMap.put(block, generation);
+    }
+
+    /*
+        Numbers the definition starting at i and returns its length, 0 when i does not
+        start a definition. Redundant definitions are put into deadSet.
+     */
+    private int number(List<Instruction> instructionList, int i, Set<Instruction> deadSet) {
+        Instruction instruction = instructionList.get(i);
+        if (instruction instanceof CSetInstruction) {
+            VirtualRegister target = ((CSetInstruction) instruction).getTarget();
+            if (i == 0 || !(instructionList.get(i - 1) instanceof CompareInstruction)) return 0;
+            if (!isPlain(target) || definitionCount.getOrDefault(target, 0) != 1) return 0;
+            CompareInstruction compare = (CompareInstruction) instructionList.get(i - 1);
+            String key = "set " + ((CSetInstruction) instruction).getConditionOp() + " "
+                    + getNumber(compare.getLeftOperand()) + " " + getNumber(compare.getRightOperand());
+            if (!settle(key, target)) return 1;
+            deadSet.add(instruction);
+            /* the compare only fed this set: it goes too, unless a jump still reads its flags */
+            if (i + 1 == instructionList.size() || !(instructionList.get(i + 1) instanceof CJumpInstruction
+                    || instructionList.get(i + 1) instanceof CSetInstruction)) {
+                deadSet.add(compare);
+            }
+            return 1;
+        }
+        if (!(instruction instanceof MoveInstruction)) return 0;
+        MoveInstruction move = (MoveInstruction) instruction;
+        if (!(move.getTarget() instanceof VirtualRegister)) return 0;
+        VirtualRegister target = (VirtualRegister) move.getTarget();
+        if (!isPlain(target)) return 0;
+        Instruction next = i + 1 < instructionList.size() ? instructionList.get(i + 1) : null;
+        int length = 1;
+        String key = null;
+        if (next instanceof BinaryInstruction && ((BinaryInstruction) next).getTarget() == target) {
+            BinaryInstruction.BinaryOp binaryOp = ((BinaryInstruction) next).getBinaryOp();
+            Operand operand = ((BinaryInstruction) next).getSource();
+            length = 2;
+            int left = getNumber(move.getSource()), right = operand == target ? left : getNumber(operand);
+            if (isCommutative(binaryOp) && left > right) {
+                int t = left;
+                left = right;
+                right = t;
+            }
+            key = binaryOp + " " + left + " " + right;
+        } else if (next instanceof UnaryInstruction && ((UnaryInstruction) next).getTarget() == target) {
+            length = 2;
+            key = ((UnaryInstruction) next).getUnaryOp() + " " + getNumber(move.getSource());
+        }
+        if (definitionCount.getOrDefault(target, 0) != 1) return 0;
+        Operand source = move.getSource();
+        if (length == 1) {
+            if (source instanceof VirtualRegister) {
+                if (!isPlain((VirtualRegister) source)) {
+                    getNumber(target);
+                    return 1;
+                }
+                int number = getNumber(source);
+                VirtualRegister leader = getLeader(number);
+                if (leader == null) {
+                    getNumber(target);
+                    return 1;
+                }
+                numberMap.put(target, number);
+                replaceMap.put(target, leader);
+                deadSet.add(move);
+                return 1;
+            }
+            if (source instanceof ImmediateOperand) {
+                numberMap.put(target, getNumber(source));
+                return 1;
+            }
+            if (source instanceof AddressOperand) {
+                key = getLoadKey((AddressOperand) source);
+            } else {
+                key = "label " + source.toString();
+            }
+        }
+        if (key == null) {
+            getNumber(target);
+            return length;
+        }
+        if (settle(key, target)) {
+            deadSet.add(move);
+            if (length == 2) deadSet.add(next);
+        }
+        return length;
+    }
+
+    /* gives target the number of key; true when a dominating register already holds it */
+    private boolean settle(String key, VirtualRegister target) {
+        Integer number = expressionMap.get(key);
+        if (number == null) {
+            number = numberCount++;
+            define(key, number);
+        }
+        numberMap.put(target, number);
+        VirtualRegister leader = getLeader(number);
+        if (leader != null && leader != target) {
+            replaceMap.put(target, leader);
+            return true;
+        }
+        if (!constantSet.contains(number)) {
+            lead(number, target);
+        }
+        return false;
+    }
+
+    private VirtualRegister resolve(VirtualRegister virtualRegister) {
+        VirtualRegister leader = virtualRegister;
+        while (replaceMap.containsKey(leader)) {
+            leader = replaceMap.get(leader);
+        }
+        return leader;
+    }
+
+    private void rewrite() {
+        if (replaceMap.isEmpty()) return;
+        for (Block block : functionIR.getBlockList()) {
+            for (Instruction instruction : block.getInstructionList()) {
+                for (VirtualRegister virtualRegister : new ArrayList<>(instruction.getUseSet())) {
+                    if (replaceMap.containsKey(virtualRegister)) {
+                        instruction.replaceUse(virtualRegister, resolve(virtualRegister));
+                    }
+                }
+            }
+        }
+    }
+}
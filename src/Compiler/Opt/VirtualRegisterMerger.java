@@ -6,23 +6,21 @@ import Compiler.CFG.Instruction.Instruction;
 import Compiler.CFG.Operand.VirtualRegister;
 
 import java.util.HashSet;
-import java.util.Map;
 import java.util.Set;
 
 public class VirtualRegisterMerger {
-    public static boolean mergeRegister(FunctionIR functionIR, Map<VirtualRegister,
-            Set<VirtualRegister>> conflict, Map<VirtualRegister, Set<VirtualRegister>> flow) {
+    public static boolean mergeRegister(FunctionIR functionIR, long[][] conflict, long[][] flow) {
         boolean hasImproved = false;
         Set<VirtualRegister> homelessVirtualRegisterSet = new HashSet<>();
         for (Block block : functionIR.getBlockList()) {
             for (Instruction instruction : block.getInstructionList()) {
                 for (VirtualRegister virtualRegister : instruction.getKillSet()) {
-                    if (virtualRegister.getSystemRegister() == null && !functionIR.getRegisterStringMap().containsKey(virtualRegister)) {
+                    if (virtualRegister.getSystemRegister() == null && !functionIR.hasPhysicalRegister(virtualRegister)) {
                         homelessVirtualRegisterSet.add(virtualRegister);
                     }
                 }
                 for (VirtualRegister virtualRegister : instruction.getUseSet()) {
-                    if (virtualRegister.getSystemRegister() == null && !functionIR.getRegisterStringMap().containsKey(virtualRegister)) {
+                    if (virtualRegister.getSystemRegister() == null && !functionIR.hasPhysicalRegister(virtualRegister)) {
                         homelessVirtualRegisterSet.add(virtualRegister);
                     }
                 }
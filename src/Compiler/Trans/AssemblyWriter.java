@@ -0,0 +1,186 @@
+package Compiler.Trans;
+
+import Compiler.Trans.PhysicalOperand.PhysicalOperand;
+import Compiler.Trans.PhysicalOperand.PhysicalRegister;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+/*
+    Streams the assembly straight into a writer. Instructions keep the layout of the
+    old String.format("%8s %20s, %20s") lines: every field is right-aligned by writing
+    the padding first, which only needs the length of the operand, so neither the
+    operands nor the lines are ever materialized as strings.
+ */
+public class AssemblyWriter {
+    private static final int mnemonicWidth = 8;
+    private static final int operandWidth = 20;
+    private static final char[] spaces = "                    ".toCharArray();
+
+    private Writer writer;
+    private char[] digits;
+
+    public AssemblyWriter(Writer writer) {
+        this.writer = writer;
+        this.digits = new char[20];
+    }
+
+    public AssemblyWriter append(String string) {
+        try {
+            writer.write(string);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return this;
+    }
+
+    public AssemblyWriter append(char c) {
+        try {
+            writer.write(c);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return this;
+    }
+
+    public AssemblyWriter append(long value) {
+        int n = digits.length;
+        long rest = value < 0 ? value : -value;
+        do {
+            digits[--n] = (char) ('0' - rest % 10);
+            rest /= 10;
+        } while (rest != 0);
+        if (value < 0) digits[--n] = '-';
+        try {
+            writer.write(digits, n, digits.length - n);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return this;
+    }
+
+    /* the value right-aligned in a field of the given width */
+    public AssemblyWriter append(long value, int width) {
+        pad(width, length(value));
+        return append(value);
+    }
+
+    public static int length(long value) {
+        int length = value < 0 ? 2 : 1;
+        for (long rest = value / 10; rest != 0; rest /= 10) {
+            ++length;
+        }
+        return length;
+    }
+
+    private void pad(int width, int length) {
+        try {
+            if (length < width) writer.write(spaces, 0, width - length);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void field(String operand) {
+        pad(operandWidth, operand.length());
+        append(operand);
+    }
+
+    private void field(PhysicalOperand operand) {
+        pad(operandWidth, operand.length());
+        operand.write(this);
+    }
+
+    private void mnemonic(String mnemonic) {
+        pad(mnemonicWidth, mnemonic.length());
+        append(mnemonic);
+    }
+
+    public void label(String label) {
+        append(label).append(":\n");
+    }
+
+    public void instruction(String mnemonic) {
+        mnemonic(mnemonic);
+        append('\n');
+    }
+
+    public void instruction(String mnemonic, String operand) {
+        track(mnemonic);
+        mnemonic(mnemonic);
+        append(' ');
+        field(operand);
+        append('\n');
+    }
+
+    public void instruction(String mnemonic, PhysicalOperand operand) {
+        track(mnemonic);
+        mnemonic(mnemonic);
+        append(' ');
+        field(operand);
+        append('\n');
+    }
+
+    public void instruction(String mnemonic, String operand1, String operand2) {
+        if (mnemonic.equals("mov") && operand1.equals(operand2)) return;
+        mnemonic(mnemonic);
+        append(' ');
+        field(operand1);
+        append(", ");
+        field(operand2);
+        append('\n');
+    }
+
+    public void instruction(String mnemonic, PhysicalOperand operand1, PhysicalOperand operand2) {
+        if (mnemonic.equals("mov") && operand1.equals(operand2)) return;
+        mnemonic(mnemonic);
+        append(' ');
+        field(operand1);
+        append(", ");
+        field(operand2);
+        append('\n');
+    }
+
+    public void instruction(String mnemonic, String operand1, PhysicalOperand operand2) {
+        if (mnemonic.equals("mov") && isRegister(operand2, operand1)) return;
+        mnemonic(mnemonic);
+        append(' ');
+        field(operand1);
+        append(", ");
+        field(operand2);
+        append('\n');
+    }
+
+    public void instruction(String mnemonic, PhysicalOperand operand1, String operand2) {
+        if (mnemonic.equals("mov") && isRegister(operand1, operand2)) return;
+        mnemonic(mnemonic);
+        append(' ');
+        field(operand1);
+        append(", ");
+        field(operand2);
+        append('\n');
+    }
+
+    private static boolean isRegister(PhysicalOperand operand, String name) {
+        return operand instanceof PhysicalRegister && ((PhysicalRegister) operand).getName().equals(name);
+    }
+
+    /* pushes and pops move the stack, which decides the alignment of the calls */
+    private static void track(String mnemonic) {
+        if (mnemonic.equals("push")) {
+            Translator.addOffset(1);
+        }
+        if (mnemonic.equals("pop")) {
+            Translator.subOffset(1);
+        }
+    }
+
+    public void flush() {
+        try {
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
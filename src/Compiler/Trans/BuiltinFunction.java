@@ -5,321 +5,780 @@ import Compiler.CFG.ProgramIR;
 import java.util.HashSet;
 import java.util.Set;
 
+/*
+    The runtime routines behind the builtin functions. With -Dbuiltin.count=true every
+    routine counts its calls in __builtin_count, and main registers __builtin_report
+    with atexit, which writes one "builtin <name> <calls>" line per routine to stderr.
+
+    The output goes into __output_buffer and out with write when the buffer is full
+    and at exit, where main registered __output_flush. The input is read ahead into
+    __input_buffer, and getInt and getString scan it a byte at a time, so neither side
+    goes through stdio.
+ */
 public class BuiltinFunction {
+    static final boolean countCalls = Boolean.getBoolean("builtin.count");
+    private static final int bufferSize = 1 << 16;
 
-    public static String getAssembly() {
-        StringBuilder str = new StringBuilder();
-        str.append(getDefinedDataSection());
-        str.append(getReservedDataSection());
-        str.append("SECTION .text\n");
-        str.append(__print_int());
-        str.append(__println_int());
-        str.append(__print());
-        str.append(__println());
-        str.append(__scanf_int());
-        str.append(__scanf_string());
-        str.append(__toString());
-        str.append(__array_size());
-        str.append(__string_length());
-        str.append(__string_parseInt());
-        str.append(__string_ord());
-        str.append(__string_connection());
-        str.append(__string_substring());
+    public static void writeAssembly(AssemblyWriter out) {
+        writeDefinedDataSection(out);
+        writeReservedDataSection(out);
+        out.append("SECTION .text\n");
+        __output_write(out);
+        __output_flush(out);
+        __output_bytes(out);
+        __output_char(out);
+        __int_format(out);
+        __output_int(out);
+        __input_fill(out);
+        __input_byte(out);
+        __print_int(out);
+        __println_int(out);
+        __print(out);
+        __println(out);
+        __scanf_int(out);
+        __scanf_string(out);
+        __toString(out);
+        __array_size(out);
+        __string_length(out);
+        __string_parseInt(out);
+        __string_ord(out);
+        __string_connection(out);
+        __string_concat(out);
+        __string_append(out);
+        __string_buffer(out);
+        __string_substring(out);
+        __string_compare(out);
         for (ProgramIR.ConditionOp conditionOp : ProgramIR.ConditionOp.values()) {
-            str.append(__string_compare(conditionOp));
+            __string_compare(out, conditionOp);
+        }
+        if (countCalls) {
+            __builtin_report(out);
         }
-        return str.toString();
     }
 
-    private static int offset;
-
     private static final Set<String> libCallSet = new HashSet<String>() {{
-        add("printf"); add("sprintf"); add("malloc"); add("scanf"); add("sscanf");
-        add("puts"); add("memcpy"); add("strcmp"); add("strcpy"); add("strlen");
+        add("malloc"); add("memcpy"); add("atexit"); add("dprintf"); add("read"); add("write");
     }};
 
-    private static String getInstruction(String instr) {
-        return String.format("%8s\n", instr);
+    private static void writeLibCall(AssemblyWriter out, String func) {
+        if (!libCallSet.contains(func)) {
+            throw new InternalError("you are kidding c lib");
+        }
+        Translator.writeLibCall(out, func);
     }
 
-    private static String getInstruction(String instr, String operand) {
-        if (instr.equals("push")) {
-            ++offset;
+    private static void writeDefinedDataSection(AssemblyWriter out) {
+        out.append("SECTION .data\n");
+        StringBuilder digitPairs = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            digitPairs.append(i / 10).append(i % 10);
         }
-        if (instr.equals("pop")) {
-            --offset;
+        out.label("__digit_pairs");
+        out.instruction("db", "\"" + digitPairs + "\"");
+        if (countCalls) {
+            for (int i = 0; i < Translator.builtInFunctionName.size(); i++) {
+                out.label("__builtin_count_format_" + i);
+                out.instruction("db", "\"builtin " + Translator.builtInFunctionName.get(i) + " %ld\", 10, 0");
+            }
         }
-        return String.format("%8s %20s\n", instr, operand);
     }
 
-    private static String getInstruction(String instr, String operand1, String operand2) {
-        return String.format("%8s %20s, %20s\n", instr, operand1, operand2);
+    private static void writeReservedDataSection(AssemblyWriter out) {
+        out.append("SECTION .bss\n");
+        out.label("__output_buffer");
+        out.instruction("resb", String.valueOf(bufferSize));
+        out.label("__output_length");
+        out.instruction("resq", "1");
+        out.label("__input_buffer");
+        out.instruction("resb", String.valueOf(bufferSize));
+        out.label("__input_position");
+        out.instruction("resq", "1");
+        out.label("__input_limit");
+        out.instruction("resq", "1");
+        if (countCalls) {
+            out.label("__builtin_count");
+            out.instruction("resq", String.valueOf(Translator.builtInFunctionName.size()));
+        }
     }
 
-    private static String getLibCall(String func) {
-        if (!libCallSet.contains(func)) {
-            throw new InternalError("you are kidding c lib");
-        }
-        StringBuilder str = new StringBuilder();
-        if (offset % 2 == 1) {
-            str.append(Translator.getInstruction("sub", "rsp", "8"));
-            str.append(Translator.getInstruction("call", func));
-            str.append(Translator.getInstruction("add", "rsp", "8"));
-        } else {
-            str.append(Translator.getInstruction("call", func));
+    private static void writeEntry(AssemblyWriter out, String name) {
+        out.label(name);
+        if (countCalls) {
+            out.instruction("inc", "qword [__builtin_count + " + (Translator.builtInFunctionName.indexOf(name) << 3) + "]");
         }
-        return str.toString();
-    }
-
-    private static String getAssemblyCondition(ProgramIR.ConditionOp conditionOp) {
-        switch (conditionOp) {
-            case EQ: return "e";
-            case NEQ: return "ne";
-            case GR: return "g";
-            case LE: return "l";
-            case GREQ: return "ge";
-            case LEEQ: return "le";
-            default: throw new InternalError("what kind of conditionOp do you expected?");
+    }
+
+    /* at the start of main, right after __global_init */
+    public static void writeSetup(AssemblyWriter out) {
+        out.instruction("mov", "rdi", "__output_flush");
+        writeLibCall(out, "atexit");
+        if (!countCalls) return;
+        out.instruction("mov", "rdi", "__builtin_report");
+        writeLibCall(out, "atexit");
+    }
+
+    /* the routines of the runtime itself, which keep the stack the way writeLibCall expects */
+    private static void writeRuntimeCall(AssemblyWriter out, String func) {
+        Translator.writeLibCall(out, func);
+    }
+
+    private static void __builtin_report(AssemblyWriter out) {
+        out.label("__builtin_report");
+        Translator.setOffset(1);
+        for (int i = 0; i < Translator.builtInFunctionName.size(); i++) {
+            out.instruction("mov", "rdi", "2");
+            out.instruction("mov", "rsi", "__builtin_count_format_" + i);
+            out.instruction("mov", "rdx", "qword [__builtin_count + " + (i << 3) + "]");
+            out.instruction("mov", "rax", "0");
+            writeLibCall(out, "dprintf");
         }
+        out.instruction("ret");
+    }
+
+
+    /* rdi the bytes, rsi how many, written until they are all out or write fails */
+    private static void __output_write(AssemblyWriter out) {
+        out.label("__output_write");
+        Translator.setOffset(1);
+        out.instruction("push", "r15");
+        out.instruction("push", "r14");
+        out.instruction("mov", "r15", "rdi");
+        out.instruction("mov", "r14", "rsi");
+        out.label("__output_write_loop");
+        out.instruction("cmp", "r14", "0");
+        out.instruction("jle", "__output_write_done");
+        out.instruction("mov", "rdi", "1");
+        out.instruction("mov", "rsi", "r15");
+        out.instruction("mov", "rdx", "r14");
+        writeLibCall(out, "write");
+        out.instruction("cmp", "rax", "0");
+        out.instruction("jle", "__output_write_done");
+        out.instruction("add", "r15", "rax");
+        out.instruction("sub", "r14", "rax");
+        out.instruction("jmp", "__output_write_loop");
+        out.label("__output_write_done");
+        out.instruction("pop", "r14");
+        out.instruction("pop", "r15");
+        out.instruction("ret");
+    }
+
+    private static void __output_flush(AssemblyWriter out) {
+        out.label("__output_flush");
+        Translator.setOffset(1);
+        out.instruction("mov", "rdi", "__output_buffer");
+        out.instruction("mov", "rsi", "qword [__output_length]");
+        out.instruction("mov", "qword [__output_length]", "0");
+        writeRuntimeCall(out, "__output_write");
+        out.instruction("ret");
+    }
+
+    /* rdi the bytes, rsi how many; what doesn't fit in an empty buffer is written straight out */
+    private static void __output_bytes(AssemblyWriter out) {
+        out.label("__output_bytes");
+        Translator.setOffset(1);
+        out.instruction("mov", "rax", "qword [__output_length]");
+        out.instruction("mov", "rdx", String.valueOf(bufferSize));
+        out.instruction("sub", "rdx", "rax");
+        out.instruction("cmp", "rsi", "rdx");
+        out.instruction("jg", "__output_bytes_full");
+        out.label("__output_bytes_copy");
+        out.instruction("lea", "rdx", "[__output_buffer + rax]");
+        out.instruction("add", "rax", "rsi");
+        out.instruction("mov", "qword [__output_length]", "rax");
+        out.instruction("mov", "rcx", "rsi");
+        out.instruction("mov", "rsi", "rdi");
+        out.instruction("mov", "rdi", "rdx");
+        out.instruction("rep", "movsb");
+        out.instruction("ret");
+        out.label("__output_bytes_full");
+        out.instruction("push", "r15");
+        out.instruction("push", "r14");
+        out.instruction("mov", "r15", "rdi");
+        out.instruction("mov", "r14", "rsi");
+        writeRuntimeCall(out, "__output_flush");
+        out.instruction("mov", "rdi", "r15");
+        out.instruction("mov", "rsi", "r14");
+        out.instruction("pop", "r14");
+        out.instruction("pop", "r15");
+        out.instruction("mov", "rax", "0");
+        out.instruction("cmp", "rsi", String.valueOf(bufferSize));
+        out.instruction("jl", "__output_bytes_copy");
+        out.instruction("jmp", "__output_write");
+    }
+
+    /* the byte in dil */
+    private static void __output_char(AssemblyWriter out) {
+        out.label("__output_char");
+        Translator.setOffset(1);
+        out.instruction("mov", "rax", "qword [__output_length]");
+        out.instruction("cmp", "rax", String.valueOf(bufferSize));
+        out.instruction("jl", "__output_char_store");
+        out.instruction("push", "rdi");
+        writeRuntimeCall(out, "__output_flush");
+        out.instruction("pop", "rdi");
+        out.instruction("mov", "rax", "0");
+        out.label("__output_char_store");
+        out.instruction("mov", "byte [__output_buffer + rax]", "dil");
+        out.instruction("add", "rax", "1");
+        out.instruction("mov", "qword [__output_length]", "rax");
+        out.instruction("ret");
+    }
+
+    /*
+        rdi the value, rsi where its decimal goes, rax the length, at most 20; only rax,
+        rcx, rdx, rsi, r8, r9 and r10 change. The digits are counted first and written
+        from the back two at a time out of __digit_pairs, dividing by 100 with a multiply.
+     */
+    private static void __int_format(AssemblyWriter out) {
+        out.label("__int_format");
+        Translator.setOffset(1);
+        out.instruction("mov", "rax", "rdi");
+        out.instruction("mov", "r8", "0");
+        out.instruction("cmp", "rax", "0");
+        out.instruction("jge", "__int_format_count");
+        out.instruction("mov", "byte [rsi]", "45");
+        out.instruction("add", "rsi", "1");
+        out.instruction("mov", "r8", "1");
+        out.instruction("neg", "rax");
+        out.label("__int_format_count");
+        out.instruction("mov", "r9", "1");
+        out.instruction("mov", "rcx", "10");
+        out.label("__int_format_count_loop");
+        out.instruction("cmp", "rax", "rcx");
+        out.instruction("jb", "__int_format_counted");
+        out.instruction("add", "r9", "1");
+        out.instruction("imul", "rcx", "10");
+        out.instruction("cmp", "r9", "19");
+        out.instruction("jl", "__int_format_count_loop");
+        out.label("__int_format_counted");
+        out.instruction("lea", "r10", "[rsi + r9]");
+        out.label("__int_format_pair");
+        out.instruction("cmp", "rax", "100");
+        out.instruction("jb", "__int_format_last");
+        out.instruction("mov", "rcx", "rax");
+        out.instruction("shr", "rax", "2");
+        out.instruction("mov", "rdx", "0x28f5c28f5c28f5c3");
+        out.instruction("mul", "rdx");
+        out.instruction("shr", "rdx", "2");
+        out.instruction("mov", "rax", "rdx");
+        out.instruction("imul", "rdx", "100");
+        out.instruction("sub", "rcx", "rdx");
+        out.instruction("movzx", "edx", "word [__digit_pairs + rcx * 2]");
+        out.instruction("sub", "r10", "2");
+        out.instruction("mov", "word [r10]", "dx");
+        out.instruction("jmp", "__int_format_pair");
+        out.label("__int_format_last");
+        out.instruction("cmp", "rax", "10");
+        out.instruction("jb", "__int_format_digit");
+        out.instruction("movzx", "edx", "word [__digit_pairs + rax * 2]");
+        out.instruction("mov", "word [rsi]", "dx");
+        out.instruction("jmp", "__int_format_done");
+        out.label("__int_format_digit");
+        out.instruction("add", "al", "48");
+        out.instruction("mov", "byte [rsi]", "al");
+        out.label("__int_format_done");
+        out.instruction("lea", "rax", "[r9 + r8]");
+        out.instruction("ret");
+    }
+
+    /* straight into the buffer, flushed first unless the longest number still fits */
+    private static void __output_int(AssemblyWriter out) {
+        out.label("__output_int");
+        Translator.setOffset(1);
+        out.instruction("mov", "rax", "qword [__output_length]");
+        out.instruction("cmp", "rax", String.valueOf(bufferSize - 20));
+        out.instruction("jle", "__output_int_format");
+        out.instruction("push", "rdi");
+        writeRuntimeCall(out, "__output_flush");
+        out.instruction("pop", "rdi");
+        out.instruction("mov", "rax", "0");
+        out.label("__output_int_format");
+        out.instruction("lea", "rsi", "[__output_buffer + rax]");
+        writeRuntimeCall(out, "__int_format");
+        out.instruction("add", "qword [__output_length]", "rax");
+        out.instruction("ret");
+    }
+
+    /* rax the number of bytes read, nothing at the end of the input */
+    private static void __input_fill(AssemblyWriter out) {
+        out.label("__input_fill");
+        Translator.setOffset(1);
+        out.instruction("mov", "rdi", "0");
+        out.instruction("mov", "rsi", "__input_buffer");
+        out.instruction("mov", "rdx", String.valueOf(bufferSize));
+        writeLibCall(out, "read");
+        out.instruction("cmp", "rax", "0");
+        out.instruction("jge", "__input_fill_done");
+        out.instruction("mov", "rax", "0");
+        out.label("__input_fill_done");
+        out.instruction("mov", "qword [__input_position]", "0");
+        out.instruction("mov", "qword [__input_limit]", "rax");
+        out.instruction("ret");
+    }
+
+    /* rax the next byte, -1 at the end of the input; the byte just read can be put back by moving __input_position back */
+    private static void __input_byte(AssemblyWriter out) {
+        out.label("__input_byte");
+        Translator.setOffset(1);
+        out.instruction("mov", "rax", "qword [__input_position]");
+        out.instruction("cmp", "rax", "qword [__input_limit]");
+        out.instruction("jl", "__input_byte_load");
+        writeRuntimeCall(out, "__input_fill");
+        out.instruction("cmp", "rax", "0");
+        out.instruction("jg", "__input_byte_refilled");
+        out.instruction("mov", "rax", "-1");
+        out.instruction("ret");
+        out.label("__input_byte_refilled");
+        out.instruction("mov", "rax", "0");
+        out.label("__input_byte_load");
+        out.instruction("movzx", "rcx", "byte [__input_buffer + rax]");
+        out.instruction("add", "rax", "1");
+        out.instruction("mov", "qword [__input_position]", "rax");
+        out.instruction("mov", "rax", "rcx");
+        out.instruction("ret");
+    }
+
+    private static void __print(AssemblyWriter out) {
+        writeEntry(out, "print");
+        Translator.setOffset(1);
+        out.instruction("mov", "rsi", "qword [rdi - 8]");
+        out.instruction("jmp", "__output_bytes");
+    }
+
+    private static void __print_int(AssemblyWriter out) {
+        writeEntry(out, "print_Int");
+        Translator.setOffset(1);
+        out.instruction("jmp", "__output_int");
     }
 
-    private static String getDefinedDataSection() {
-        StringBuilder str = new StringBuilder();
-        str.append("SECTION .data\n");
-        str.append("__println_int_format:\n");
-        str.append(getInstruction("db", "\"%ld\", 10, 0"));
-        str.append("__print_int_format:\n");
-        str.append(getInstruction("db", "\"%ld\", 0"));
-        str.append("__print_format:\n");
-        str.append(getInstruction("db", "\"%s\", 0"));
-        str.append("__scanf_int_format:\n");
-        str.append(getInstruction("db", "\"%ld\", 0"));
-        str.append("__scanf_string_format:\n");
-        str.append(getInstruction("db", "\"%s\", 0"));
-        str.append("__toString_format:\n");
-        str.append(getInstruction("db", "\"%ld\", 0"));
-        str.append("__parseInt_format:\n");
-        str.append(getInstruction("db", "\"%ld\", 0"));
-        return str.toString();
-    }
-
-    private static String getReservedDataSection() {
-        StringBuilder str = new StringBuilder();
-        str.append("SECTION .bss\n");
-        str.append("__scanf_int_buf:\n");
-        str.append(getInstruction("resq", "1"));
-        str.append("__sscanf_int_buf:\n");
-        str.append(getInstruction("resq", "1"));
-        return str.toString();
-    }
-
-
-    private static String __print() {
-        StringBuilder str = new StringBuilder();
-        str.append("print:\n");
-        offset = 1;
-        str.append(getInstruction("mov", "rsi", "rdi"));
-        str.append(getInstruction("mov", "rdi", "__print_format"));
-        str.append(getLibCall("printf"));
-        str.append(getInstruction("ret"));
-        return str.toString();
-    }
-
-    private static String __print_int() {
-        StringBuilder str = new StringBuilder();
-        str.append("print_Int:\n");
-        offset = 1;
-        str.append(getInstruction("mov", "rsi", "rdi"));
-        str.append(getInstruction("mov", "rdi", "__print_int_format"));
-        str.append(getLibCall("printf"));
-        str.append(getInstruction("ret"));
-        return str.toString();
-    }
-
-    private static String __println_int() {
-        StringBuilder str = new StringBuilder();
-        str.append("println_Int:\n");
-        offset = 1;
-        str.append(getInstruction("mov", "rsi", "rdi"));
-        str.append(getInstruction("mov", "rdi", "__println_int_format"));
-        str.append(getLibCall("printf"));
-        str.append(getInstruction("ret"));
-        return str.toString();
-    }
-
-    private static String __println() {
-        StringBuilder str = new StringBuilder();
-        str.append("println:\n");
-        str.append(getLibCall("puts"));
-        str.append(getInstruction("ret"));
-        return str.toString();
-    }
-
-    private static String __scanf_int() {
-        StringBuilder str = new StringBuilder();
-        str.append("getInt:\n");
-        offset = 1;
-        str.append(getInstruction("mov", "rdi", "__scanf_int_format"));
-        str.append(getInstruction("mov", "rsi", "__scanf_int_buf"));
-        str.append(getLibCall("scanf"));
-        str.append(getInstruction("mov", "rax", "qword [__scanf_int_buf]"));
-        str.append(getInstruction("ret"));
-        return str.toString();
-    }
-
-    private static String __scanf_string() {
-        StringBuilder str = new StringBuilder();
-        str.append("getString:\n");
-        offset = 1;
-        str.append(getInstruction("push", "r15"));
-        str.append(getInstruction("mov", "rdi", "300"));
-        str.append(getLibCall("malloc"));
-        str.append(getInstruction("mov", "r15", "rax"));
-        str.append(getInstruction("add", "r15", "8"));
-        str.append(getInstruction("mov", "rdi", "__scanf_string_format"));
-        str.append(getInstruction("mov", "rsi", "r15"));
-        str.append(getLibCall("scanf"));
-        str.append(getInstruction("mov", "rdi", "r15"));
-        str.append(getLibCall("strlen"));
-        str.append(getInstruction("mov", "qword [r15 - 8]", "rax"));
-        str.append(getInstruction("mov", "rax", "r15"));
-        str.append(getInstruction("pop", "r15"));
-        str.append(getInstruction("ret"));
-        return str.toString();
-    }
-
-    private static String __toString() {
-        StringBuilder str = new StringBuilder();
-        str.append("toString:\n");
-        offset = 1;
-        str.append(getInstruction("push", "r15"));
-        str.append(getInstruction("push", "rdi"));
-        str.append(getInstruction("mov", "rdi", "20"));
-        str.append(getLibCall("malloc"));
-        str.append(getInstruction("mov", "r15", "rax"));
-        str.append(getInstruction("add", "r15", "8"));
-        str.append(getInstruction("mov", "rdi", "r15"));
-        str.append(getInstruction("mov", "rsi", "__toString_format"));
-        str.append(getInstruction("pop", "rdx"));
-        str.append(getLibCall("sprintf"));
-        str.append(getInstruction("mov", "rdi", "r15"));
-        str.append(getLibCall("strlen"));
-        str.append(getInstruction("mov", "qword [r15 - 8]", "rax"));
-        str.append(getInstruction("mov", "rax", "r15"));
-        str.append(getInstruction("pop", "r15"));
-        str.append(getInstruction("ret"));
-        return str.toString();
-    }
-
-    private static String __array_size() {
-        StringBuilder str = new StringBuilder();
-        str.append("__array_size:\n");
-        str.append(getInstruction("mov", "rax", "qword [rdi - 8]"));
-        str.append(getInstruction("ret"));
-        return str.toString();
-    }
-
-    private static String __string_length() {
-        StringBuilder str = new StringBuilder();
-        str.append("__string_length:\n");
-        str.append(getInstruction("mov", "rax", "qword [rdi - 8]"));
-        str.append(getInstruction("ret"));
-        return str.toString();
-    }
-
-    private static String __string_parseInt() {
-        StringBuilder str = new StringBuilder();
-        str.append("__string_parseInt:\n");
-        offset = 1;
-        str.append(getInstruction("mov", "rsi", "__scanf_int_format"));
-        str.append(getInstruction("mov", "rdx", "__sscanf_int_buf"));
-        str.append(getLibCall("sscanf"));
-        str.append(getInstruction("mov", "rax", "qword [__sscanf_int_buf]"));
-        str.append(getInstruction("ret"));
-        return str.toString();
-    }
-
-    private static String __string_substring() {
-        StringBuilder str = new StringBuilder();
-        str.append("__string_substring:\n");
-        offset = 1;
-        str.append(getInstruction("push", "r15"));
-        str.append(getInstruction("push", "r14"));
-        str.append(getInstruction("mov", "r15", "rdi"));
-        str.append(getInstruction("add", "r15", "rsi"));
-        str.append(getInstruction("mov", "r14", "rdx"));
-        str.append(getInstruction("sub", "r14", "rsi"));
-        str.append(getInstruction("add", "r14", "1"));
-        str.append(getInstruction("mov", "rdi", "r14"));
-        str.append(getInstruction("add", "rdi", "9"));
-        str.append(getLibCall("malloc"));
-        str.append(getInstruction("add", "rax", "8"));
-        str.append(getInstruction("mov", "rdi", "rax"));
-        str.append(getInstruction("mov", "rsi", "r15"));
-        str.append(getInstruction("mov", "rdx", "r14"));
-        str.append(getLibCall("memcpy"));
-        str.append(getInstruction("mov", "qword [rax - 8]", "r14"));
-        str.append(getInstruction("mov", "r15", "rax"));
-        str.append(getInstruction("add", "r15", "r14"));
-        str.append(getInstruction("mov", "r15", "0"));
-        str.append(getInstruction("pop", "r14"));
-        str.append(getInstruction("pop", "r15"));
-        str.append(getInstruction("ret"));
-        return str.toString();
-    }
-
-    private static String __string_ord() {
-        StringBuilder str = new StringBuilder();
-        str.append("__string_ord:\n");
-        offset = 1;
-        str.append(getInstruction("add", "rdi", "rsi"));
-        str.append(getInstruction("movsx", "rax", "byte [rdi]"));
-        str.append(getInstruction("ret"));
-        return str.toString();
-    }
-
-    private static String __string_connection() {
-		StringBuilder str = new StringBuilder();
-		str.append("__string_connection:\n");
-		offset = 1;
-		str.append(getInstruction("push", "r15"));//length -> result
-		str.append(getInstruction("push", "r14"));//left
-		str.append(getInstruction("push", "r13"));//right
-		str.append(getInstruction("mov", "r15", "qword [rdi - 8]"));
-		str.append(getInstruction("add", "r15", "qword [rsi - 8]"));
-		str.append(getInstruction("add", "r15", "9"));
-		str.append(getInstruction("mov", "r14", "rdi"));
-		str.append(getInstruction("mov", "r13", "rsi"));
-		str.append(getInstruction("mov", "rdi", "r15"));
-		str.append(getLibCall("malloc"));
-		str.append(getInstruction("sub", "r15", "9"));
-		str.append(getInstruction("mov", "qword [rax]", "r15"));
-		str.append(getInstruction("mov", "r15", "rax"));
-		str.append(getInstruction("add", "r15", "8"));
-		str.append(getInstruction("mov", "rdi", "r15"));
-		str.append(getInstruction("mov", "rsi", "r14"));
-		str.append(getLibCall("strcpy"));
-		str.append(getInstruction("add", "r15", "qword [r14 - 8]"));
-		str.append(getInstruction("mov", "r14", "rax"));
-		str.append(getInstruction("mov", "rdi", "r15"));
-		str.append(getInstruction("mov", "rsi", "r13"));
-		str.append(getLibCall("strcpy"));
-		str.append(getInstruction("mov", "rax", "r14"));
-		str.append(getInstruction("pop", "r13"));
-		str.append(getInstruction("pop", "r14"));
-		str.append(getInstruction("pop", "r15"));
-		str.append(getInstruction("ret"));
-		return str.toString();
-    }
-
-    private static String __string_compare(ProgramIR.ConditionOp conditionOp) {
-        StringBuilder str = new StringBuilder();
-        str.append("__string_" + conditionOp + ":\n");
-        offset = 1;
-        str.append(getInstruction("cmp", "eax", "0"));
-        str.append(getInstruction("mov", "rax", "0"));
-        str.append(getInstruction("set" + getAssemblyCondition(conditionOp), "al"));
-        str.append(getInstruction("ret"));
-        return str.toString();
+    private static void __println_int(AssemblyWriter out) {
+        writeEntry(out, "println_Int");
+        Translator.setOffset(1);
+        writeRuntimeCall(out, "__output_int");
+        out.instruction("mov", "rdi", "10");
+        out.instruction("jmp", "__output_char");
+    }
+
+    private static void __println(AssemblyWriter out) {
+        writeEntry(out, "println");
+        Translator.setOffset(1);
+        out.instruction("mov", "rsi", "qword [rdi - 8]");
+        writeRuntimeCall(out, "__output_bytes");
+        out.instruction("mov", "rdi", "10");
+        out.instruction("jmp", "__output_char");
+    }
+
+    /* like %ld: blanks skipped, a sign, the digits, and the byte after them left for the next read */
+    private static void __scanf_int(AssemblyWriter out) {
+        writeEntry(out, "getInt");
+        Translator.setOffset(1);
+        out.instruction("push", "r15");
+        out.instruction("push", "r14");
+        out.label("__scanf_int_skip");
+        writeRuntimeCall(out, "__input_byte");
+        out.instruction("cmp", "rax", "0");
+        out.instruction("jl", "__scanf_int_end");
+        out.instruction("cmp", "rax", "32");
+        out.instruction("jle", "__scanf_int_skip");
+        out.instruction("mov", "r14", "rax");
+        out.instruction("cmp", "rax", "45");
+        out.instruction("je", "__scanf_int_sign");
+        out.instruction("cmp", "rax", "43");
+        out.instruction("jne", "__scanf_int_digits");
+        out.label("__scanf_int_sign");
+        writeRuntimeCall(out, "__input_byte");
+        out.label("__scanf_int_digits");
+        out.instruction("mov", "r15", "0");
+        out.label("__scanf_int_loop");
+        out.instruction("sub", "rax", "48");
+        out.instruction("cmp", "rax", "9");
+        out.instruction("ja", "__scanf_int_stop");
+        out.instruction("imul", "r15", "10");
+        out.instruction("add", "r15", "rax");
+        writeRuntimeCall(out, "__input_byte");
+        out.instruction("jmp", "__scanf_int_loop");
+        out.label("__scanf_int_stop");
+        out.instruction("cmp", "rax", "-49");
+        out.instruction("je", "__scanf_int_sign_apply");
+        out.instruction("sub", "qword [__input_position]", "1");
+        out.label("__scanf_int_sign_apply");
+        out.instruction("mov", "rax", "r15");
+        out.instruction("cmp", "r14", "45");
+        out.instruction("jne", "__scanf_int_return");
+        out.instruction("neg", "rax");
+        out.instruction("jmp", "__scanf_int_return");
+        out.label("__scanf_int_end");
+        out.instruction("mov", "rax", "0");
+        out.label("__scanf_int_return");
+        out.instruction("pop", "r14");
+        out.instruction("pop", "r15");
+        out.instruction("ret");
+    }
+
+    /* like %s, a word of any length: the string doubles into a new block whenever it is full */
+    private static void __scanf_string(AssemblyWriter out) {
+        writeEntry(out, "getString");
+        Translator.setOffset(1);
+        out.instruction("push", "r15");//string
+        out.instruction("push", "r14");//length
+        out.instruction("push", "r13");//capacity
+        out.instruction("push", "r12");//byte
+        out.instruction("mov", "r13", "256");
+        out.instruction("mov", "rdi", "265");
+        writeLibCall(out, "malloc");
+        out.instruction("lea", "r15", "[rax + 8]");
+        out.instruction("mov", "r14", "0");
+        out.label("__scanf_string_skip");
+        writeRuntimeCall(out, "__input_byte");
+        out.instruction("cmp", "rax", "0");
+        out.instruction("jl", "__scanf_string_done");
+        out.instruction("cmp", "rax", "32");
+        out.instruction("jle", "__scanf_string_skip");
+        out.label("__scanf_string_store");
+        out.instruction("mov", "r12", "rax");
+        out.instruction("cmp", "r14", "r13");
+        out.instruction("jl", "__scanf_string_put");
+        out.instruction("lea", "rdi", "[r13 + r13 + 9]");
+        writeLibCall(out, "malloc");
+        out.instruction("lea", "rdi", "[rax + 8]");
+        out.instruction("mov", "rsi", "r15");
+        out.instruction("mov", "rcx", "r14");
+        out.instruction("mov", "r15", "rdi");
+        out.instruction("rep", "movsb");
+        out.instruction("add", "r13", "r13");
+        out.label("__scanf_string_put");
+        out.instruction("mov", "byte [r15 + r14]", "r12b");
+        out.instruction("add", "r14", "1");
+        writeRuntimeCall(out, "__input_byte");
+        out.instruction("cmp", "rax", "32");
+        out.instruction("jg", "__scanf_string_store");
+        out.instruction("cmp", "rax", "0");
+        out.instruction("jl", "__scanf_string_done");
+        out.instruction("sub", "qword [__input_position]", "1");
+        out.label("__scanf_string_done");
+        out.instruction("mov", "byte [r15 + r14]", "0");
+        out.instruction("mov", "qword [r15 - 8]", "r14");
+        out.instruction("mov", "rax", "r15");
+        out.instruction("pop", "r12");
+        out.instruction("pop", "r13");
+        out.instruction("pop", "r14");
+        out.instruction("pop", "r15");
+        out.instruction("ret");
+    }
+
+    /* the digits go straight into the new string, whose 32 bytes hold the longest number */
+    private static void __toString(AssemblyWriter out) {
+        writeEntry(out, "toString");
+        Translator.setOffset(1);
+        out.instruction("push", "rdi");
+        out.instruction("mov", "rdi", "32");
+        writeLibCall(out, "malloc");
+        out.instruction("pop", "rdi");
+        out.instruction("lea", "r11", "[rax + 8]");
+        out.instruction("mov", "rsi", "r11");
+        writeRuntimeCall(out, "__int_format");
+        out.instruction("mov", "qword [r11 - 8]", "rax");
+        out.instruction("mov", "byte [r11 + rax]", "0");
+        out.instruction("mov", "rax", "r11");
+        out.instruction("ret");
+    }
+
+    private static void __array_size(AssemblyWriter out) {
+        writeEntry(out, "__array_size");
+        out.instruction("mov", "rax", "qword [rdi - 8]");
+        out.instruction("ret");
+    }
+
+    private static void __string_length(AssemblyWriter out) {
+        writeEntry(out, "__string_length");
+        out.instruction("mov", "rax", "qword [rdi - 8]");
+        out.instruction("ret");
+    }
+
+    /*
+        The longest number at the front after the blanks, with a sign, and 0 when there is
+        none; the terminating 0 ends the digits, so the loop needs no bound of its own.
+     */
+    private static void __string_parseInt(AssemblyWriter out) {
+        writeEntry(out, "__string_parseInt");
+        Translator.setOffset(1);
+        out.label("__string_parseInt_skip");
+        out.instruction("movzx", "edx", "byte [rdi]");
+        out.instruction("add", "rdi", "1");
+        out.instruction("cmp", "edx", "0");
+        out.instruction("je", "__string_parseInt_sign");
+        out.instruction("cmp", "edx", "32");
+        out.instruction("jle", "__string_parseInt_skip");
+        out.label("__string_parseInt_sign");
+        out.instruction("mov", "r8", "rdx");
+        out.instruction("cmp", "edx", "45");
+        out.instruction("je", "__string_parseInt_digits");
+        out.instruction("cmp", "edx", "43");
+        out.instruction("je", "__string_parseInt_digits");
+        out.instruction("sub", "rdi", "1");
+        out.label("__string_parseInt_digits");
+        out.instruction("mov", "rax", "0");
+        out.label("__string_parseInt_loop");
+        out.instruction("movzx", "edx", "byte [rdi]");
+        out.instruction("sub", "edx", "48");
+        out.instruction("cmp", "edx", "9");
+        out.instruction("ja", "__string_parseInt_done");
+        out.instruction("lea", "rax", "[rax + rax * 4]");
+        out.instruction("lea", "rax", "[rdx + rax * 2]");
+        out.instruction("add", "rdi", "1");
+        out.instruction("jmp", "__string_parseInt_loop");
+        out.label("__string_parseInt_done");
+        out.instruction("mov", "rdx", "rax");
+        out.instruction("neg", "rdx");
+        out.instruction("cmp", "r8", "45");
+        out.instruction("cmove", "rax", "rdx");
+        out.instruction("ret");
+    }
+
+    private static void __string_substring(AssemblyWriter out) {
+        writeEntry(out, "__string_substring");
+        Translator.setOffset(1);
+        out.instruction("push", "r15");
+        out.instruction("push", "r14");
+        out.instruction("mov", "r15", "rdi");
+        out.instruction("add", "r15", "rsi");
+        out.instruction("mov", "r14", "rdx");
+        out.instruction("sub", "r14", "rsi");
+        out.instruction("add", "r14", "1");
+        out.instruction("mov", "rdi", "r14");
+        out.instruction("add", "rdi", "9");
+        writeLibCall(out, "malloc");
+        out.instruction("add", "rax", "8");
+        out.instruction("mov", "rdi", "rax");
+        out.instruction("mov", "rsi", "r15");
+        out.instruction("mov", "rdx", "r14");
+        writeLibCall(out, "memcpy");
+        out.instruction("mov", "qword [rax - 8]", "r14");
+        out.instruction("mov", "r15", "rax");
+        out.instruction("add", "r15", "r14");
+        out.instruction("mov", "byte [r15]", "0");
+        out.instruction("pop", "r14");
+        out.instruction("pop", "r15");
+        out.instruction("ret");
+    }
+
+    private static void __string_ord(AssemblyWriter out) {
+        writeEntry(out, "__string_ord");
+        Translator.setOffset(1);
+        out.instruction("add", "rdi", "rsi");
+        out.instruction("movsx", "rax", "byte [rdi]");
+        out.instruction("ret");
+    }
+
+    /* both strings are copied by the lengths they carry, the right one with its terminating 0 */
+    private static void __string_connection(AssemblyWriter out) {
+        writeEntry(out, "__string_connection");
+        Translator.setOffset(1);
+        out.instruction("push", "r15");//result
+        out.instruction("push", "r14");//left
+        out.instruction("push", "r13");//right
+        out.instruction("mov", "r14", "rdi");
+        out.instruction("mov", "r13", "rsi");
+        out.instruction("mov", "rdi", "qword [r14 - 8]");
+        out.instruction("add", "rdi", "qword [r13 - 8]");
+        out.instruction("add", "rdi", "9");
+        writeLibCall(out, "malloc");
+        out.instruction("lea", "r15", "[rax + 8]");
+        out.instruction("mov", "rdx", "qword [r14 - 8]");
+        out.instruction("add", "rdx", "qword [r13 - 8]");
+        out.instruction("mov", "qword [rax]", "rdx");
+        out.instruction("mov", "rdi", "r15");
+        out.instruction("mov", "rsi", "r14");
+        out.instruction("mov", "rdx", "qword [r14 - 8]");
+        writeLibCall(out, "memcpy");
+        out.instruction("mov", "rdi", "r15");
+        out.instruction("add", "rdi", "qword [r14 - 8]");
+        out.instruction("mov", "rsi", "r13");
+        out.instruction("mov", "rdx", "qword [r13 - 8]");
+        out.instruction("add", "rdx", "1");
+        writeLibCall(out, "memcpy");
+        out.instruction("mov", "rax", "r15");
+        out.instruction("pop", "r13");
+        out.instruction("pop", "r14");
+        out.instruction("pop", "r15");
+        out.instruction("ret");
+    }
+
+    /*
+        rdi the number of strings, the strings after it. The ones passed in registers are
+        pushed under the return address, right below the ones the caller pushed, so all of
+        them lie in a row from [rsp + 8]; ret 40 takes them off again. The lengths are
+        summed, the result allocated once and every string copied into it once.
+     */
+    private static void __string_concat(AssemblyWriter out) {
+        writeStringListEntry(out, "__string_concat");
+        out.instruction("lea", "rdi", "[r12 + 9]");
+        writeLibCall(out, "malloc");
+        out.instruction("lea", "r13", "[rax + 8]");
+        writeStringListCopy(out, "__string_concat");
+    }
+
+    /*
+        The same, but the first string is a buffer of StringAccumulator, with its capacity
+        at [rdi - 16]. While the others fit into it they are copied behind it and the buffer
+        itself comes back; otherwise all of them go to a new buffer of twice the length.
+     */
+    private static void __string_append(AssemblyWriter out) {
+        writeStringListEntry(out, "__string_append");
+        out.instruction("mov", "rsi", "qword [r15]");
+        out.instruction("cmp", "r12", "qword [rsi - 16]");
+        out.instruction("jg", "__string_append_grow");
+        out.instruction("mov", "r13", "rsi");
+        out.instruction("add", "r13", "qword [rsi - 8]");
+        out.instruction("add", "r15", "8");
+        out.instruction("sub", "r14", "1");
+        out.instruction("jmp", "__string_append_copy");
+        out.label("__string_append_grow");
+        out.instruction("lea", "rdi", "[r12 + r12 + 17]");
+        writeLibCall(out, "malloc");
+        out.instruction("lea", "rcx", "[r12 + r12]");
+        out.instruction("mov", "qword [rax]", "rcx");
+        out.instruction("lea", "r13", "[rax + 16]");
+        writeStringListCopy(out, "__string_append");
+    }
+
+    /* leaves the total length in r12 and the first string in r15, their number in r14 */
+    private static void writeStringListEntry(AssemblyWriter out, String name) {
+        writeEntry(out, name);
+        out.instruction("pop", "r11");
+        out.instruction("push", "r9");
+        out.instruction("push", "r8");
+        out.instruction("push", "rcx");
+        out.instruction("push", "rdx");
+        out.instruction("push", "rsi");
+        out.instruction("push", "r11");
+        Translator.setOffset(6);
+        out.instruction("push", "r15");//next string
+        out.instruction("push", "r14");//strings left
+        out.instruction("push", "r13");//end of the result
+        out.instruction("push", "r12");//length of the result
+        out.instruction("lea", "r15", "[rsp + 40]");
+        out.instruction("mov", "r14", "rdi");
+        out.instruction("mov", "r12", "0");
+        out.instruction("mov", "rcx", "0");
+        out.label(name + "_length");
+        out.instruction("mov", "rax", "qword [r15 + rcx * 8]");
+        out.instruction("add", "r12", "qword [rax - 8]");
+        out.instruction("add", "rcx", "1");
+        out.instruction("cmp", "rcx", "r14");
+        out.instruction("jl", name + "_length");
+    }
+
+    /* copies the r14 strings from r15 on to r13, which ends r12 bytes behind the result */
+    private static void writeStringListCopy(AssemblyWriter out, String name) {
+        out.label(name + "_copy");
+        out.instruction("mov", "rsi", "qword [r15]");
+        out.instruction("mov", "rdx", "qword [rsi - 8]");
+        out.instruction("mov", "rdi", "r13");
+        out.instruction("add", "r13", "rdx");
+        writeLibCall(out, "memcpy");
+        out.instruction("add", "r15", "8");
+        out.instruction("sub", "r14", "1");
+        out.instruction("jg", name + "_copy");
+        out.instruction("mov", "byte [r13]", "0");
+        out.instruction("mov", "rax", "r13");
+        out.instruction("sub", "rax", "r12");
+        out.instruction("mov", "qword [rax - 8]", "r12");
+        out.instruction("pop", "r12");
+        out.instruction("pop", "r13");
+        out.instruction("pop", "r14");
+        out.instruction("pop", "r15");
+        out.instruction("ret", "40");
+    }
+
+    /* a copy of the string with room for as much again, see __string_append; null stays null */
+    private static void __string_buffer(AssemblyWriter out) {
+        writeEntry(out, "__string_buffer");
+        Translator.setOffset(1);
+        out.instruction("push", "r12");
+        out.instruction("mov", "rax", "rdi");
+        out.instruction("test", "rdi", "rdi");
+        out.instruction("je", "__string_buffer_done");
+        out.instruction("mov", "r12", "rdi");
+        out.instruction("mov", "rdi", "qword [r12 - 8]");
+        out.instruction("lea", "rdi", "[rdi + rdi + 33]");
+        writeLibCall(out, "malloc");
+        out.instruction("mov", "rdx", "qword [r12 - 8]");
+        out.instruction("lea", "rcx", "[rdx + rdx + 16]");
+        out.instruction("mov", "qword [rax]", "rcx");
+        out.instruction("mov", "qword [rax + 8]", "rdx");
+        out.instruction("lea", "rdi", "[rax + 16]");
+        out.instruction("mov", "rsi", "r12");
+        out.instruction("add", "rdx", "1");
+        writeLibCall(out, "memcpy");
+        out.label("__string_buffer_done");
+        out.instruction("pop", "r12");
+        out.instruction("ret");
+    }
+
+    /*
+        rdi and rsi the strings, rax below, equal to or above 0 as the first orders before,
+        with or after the second. The common prefix goes eight bytes at a time; the first
+        words that differ are ordered by their bytes swapped, which puts the first byte on
+        top, and the bytes after the last whole word one at a time. Past the common prefix
+        the shorter string comes first.
+     */
+    private static void __string_compare(AssemblyWriter out) {
+        out.label("__string_compare");
+        Translator.setOffset(1);
+        out.instruction("mov", "rcx", "qword [rdi - 8]");
+        out.instruction("mov", "r8", "qword [rsi - 8]");
+        out.instruction("mov", "r9", "rcx");
+        out.instruction("cmp", "r9", "r8");
+        out.instruction("cmova", "r9", "r8");
+        out.instruction("mov", "r10", "0");
+        out.label("__string_compare_word");
+        out.instruction("lea", "rax", "[r10 + 8]");
+        out.instruction("cmp", "rax", "r9");
+        out.instruction("ja", "__string_compare_byte");
+        out.instruction("mov", "rax", "qword [rdi + r10]");
+        out.instruction("mov", "rdx", "qword [rsi + r10]");
+        out.instruction("add", "r10", "8");
+        out.instruction("cmp", "rax", "rdx");
+        out.instruction("je", "__string_compare_word");
+        out.instruction("bswap", "rax");
+        out.instruction("bswap", "rdx");
+        out.instruction("cmp", "rax", "rdx");
+        out.instruction("sbb", "rax", "rax");
+        out.instruction("or", "rax", "1");
+        out.instruction("ret");
+        out.label("__string_compare_byte");
+        out.instruction("cmp", "r10", "r9");
+        out.instruction("jae", "__string_compare_length");
+        out.instruction("movzx", "eax", "byte [rdi + r10]");
+        out.instruction("movzx", "edx", "byte [rsi + r10]");
+        out.instruction("add", "r10", "1");
+        out.instruction("sub", "rax", "rdx");
+        out.instruction("je", "__string_compare_byte");
+        out.instruction("ret");
+        out.label("__string_compare_length");
+        out.instruction("mov", "rax", "rcx");
+        out.instruction("sub", "rax", "r8");
+        out.instruction("ret");
+    }
+
+    /* strings of different lengths are never equal, whatever their bytes */
+    private static void __string_compare(AssemblyWriter out, ProgramIR.ConditionOp conditionOp) {
+        writeEntry(out, "__string_" + conditionOp);
+        Translator.setOffset(1);
+        if (conditionOp == ProgramIR.ConditionOp.EQ || conditionOp == ProgramIR.ConditionOp.NEQ) {
+            out.instruction("mov", "rax", "qword [rdi - 8]");
+            out.instruction("cmp", "rax", "qword [rsi - 8]");
+            out.instruction("mov", "rax", conditionOp == ProgramIR.ConditionOp.EQ ? "0" : "1");
+            out.instruction("jne", "__string_" + conditionOp + "_done");
+        }
+        writeRuntimeCall(out, "__string_compare");
+        out.instruction("cmp", "rax", "0");
+        out.instruction("mov", "rax", "0");
+        out.instruction(Translator.getSetInstruction(conditionOp), "al");
+        if (conditionOp == ProgramIR.ConditionOp.EQ || conditionOp == ProgramIR.ConditionOp.NEQ) {
+            out.label("__string_" + conditionOp + "_done");
+        }
+        out.instruction("ret");
     }
 }
@@ -1,5 +1,7 @@
 package Compiler.Trans.PhysicalOperand;
 
+import Compiler.Trans.AssemblyWriter;
+
 public class PhysicalAddressOperand extends PhysicalOperand{
     private String base;
     private int offset;
@@ -25,4 +27,26 @@ public class PhysicalAddressOperand extends PhysicalOperand{
             return String.format("qword [%s - %d]", base, -offset);
         }
     }
+
+    /* "qword [" base " + " offset "]" */
+    @Override
+    public int length() {
+        return 11 + base.length() + AssemblyWriter.length(Math.abs((long) offset));
+    }
+
+    @Override
+    public void write(AssemblyWriter out) {
+        out.append("qword [").append(base).append(offset >= 0 ? " + " : " - ").append(Math.abs((long) offset)).append(']');
+    }
+
+    @Override
+    public boolean equals(Object object) {
+        return object instanceof PhysicalAddressOperand && ((PhysicalAddressOperand) object).base.equals(base)
+                && ((PhysicalAddressOperand) object).offset == offset;
+    }
+
+    @Override
+    public int hashCode() {
+        return base.hashCode() * 31 + offset;
+    }
 }
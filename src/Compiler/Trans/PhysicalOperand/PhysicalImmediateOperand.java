@@ -1,5 +1,7 @@
 package Compiler.Trans.PhysicalOperand;
 
+import Compiler.Trans.AssemblyWriter;
+
 public class PhysicalImmediateOperand extends PhysicalOperand {
     private int value;
 
@@ -15,4 +17,14 @@ public class PhysicalImmediateOperand extends PhysicalOperand {
     public String toString() {
         return String.valueOf(value);
     }
+
+    @Override
+    public int length() {
+        return AssemblyWriter.length(value);
+    }
+
+    @Override
+    public void write(AssemblyWriter out) {
+        out.append(value);
+    }
 }
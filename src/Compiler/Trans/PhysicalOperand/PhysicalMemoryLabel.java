@@ -1,5 +1,7 @@
 package Compiler.Trans.PhysicalOperand;
 
+import Compiler.Trans.AssemblyWriter;
+
 public class PhysicalMemoryLabel extends PhysicalOperand {
     private String label;
 
@@ -15,4 +17,14 @@ public class PhysicalMemoryLabel extends PhysicalOperand {
     public String toString() {
         return label;
     }
+
+    @Override
+    public int length() {
+        return label.length();
+    }
+
+    @Override
+    public void write(AssemblyWriter out) {
+        out.append(label);
+    }
 }
@@ -1,5 +1,12 @@
 package Compiler.Trans.PhysicalOperand;
 
+import Compiler.Trans.AssemblyWriter;
+
 public abstract class PhysicalOperand {
     public abstract String toString();
+
+    /* the number of characters write produces */
+    public abstract int length();
+
+    public abstract void write(AssemblyWriter out);
 }
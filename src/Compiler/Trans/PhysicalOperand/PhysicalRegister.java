@@ -1,5 +1,7 @@
 package Compiler.Trans.PhysicalOperand;
 
+import Compiler.Trans.AssemblyWriter;
+
 public class PhysicalRegister extends PhysicalOperand {
     private String name;
 
@@ -15,4 +17,24 @@ public class PhysicalRegister extends PhysicalOperand {
     public String toString() {
         return name;
     }
+
+    @Override
+    public int length() {
+        return name.length();
+    }
+
+    @Override
+    public void write(AssemblyWriter out) {
+        out.append(name);
+    }
+
+    @Override
+    public boolean equals(Object object) {
+        return object instanceof PhysicalRegister && ((PhysicalRegister) object).name.equals(name);
+    }
+
+    @Override
+    public int hashCode() {
+        return name.hashCode();
+    }
 }
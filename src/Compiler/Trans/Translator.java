@@ -3,139 +3,121 @@ package Compiler.Trans;
 import Compiler.AST.ProgramAST;
 import Compiler.CFG.FunctionIR;
 import Compiler.CFG.ProgramIR;
+import Compiler.CompilationContext;
 
+import java.io.StringWriter;
+import java.io.Writer;
 import java.util.Arrays;
 import java.util.List;
 
 public class Translator {
-    private static int offset;
-
-    private static FunctionIR currentFunctionIR;
-
     private static final String[] builtInFunction = {"print_Int", "println_Int", "print", "println", "getInt", "getString", "toString", "__array_size", "__string_substring",
-            "__string_length", "__string_parseInt", "__string_ord", "__string_connection", "__string_LE", "__string_LEEQ", "__string_GR", "__string_GREQ", "__string_EQ", "__string_NEQ"};
+            "__string_length", "__string_parseInt", "__string_ord", "__string_connection", "__string_concat", "__string_append", "__string_buffer", "__string_LE", "__string_LEEQ", "__string_GR", "__string_GREQ", "__string_EQ", "__string_NEQ"};
 
-    private static final List<String> builtInFunctionName = Arrays.asList(builtInFunction);
+    static final List<String> builtInFunctionName = Arrays.asList(builtInFunction);
 
     public static int getOffset() {
-        return offset;
+        return CompilationContext.current().getOffset();
     }
 
     public static void setOffset(int offset) {
-        Translator.offset = offset;
+        CompilationContext.current().setOffset(offset);
     }
 
     public static void addOffset(int delta) {
-        Translator.offset += delta;
+        setOffset(getOffset() + delta);
     }
 
     public static void subOffset(int delta) {
-        Translator.offset -= delta;
+        setOffset(getOffset() - delta);
     }
 
     public static FunctionIR getCurrentFunctionIR() {
-        return currentFunctionIR;
+        return CompilationContext.current().getTranslatedFunction();
     }
 
     private static void setCurrentFunctionIR(FunctionIR currentFunctionIR) {
-        Translator.currentFunctionIR = currentFunctionIR;
+        CompilationContext.current().setTranslatedFunction(currentFunctionIR);
     }
 
-    public static String getInstruction(String instr) {
-        return String.format("%8s\n", instr);
-    }
-
-    public static String getInstruction(String instr, String operand) {
-        if (instr.equals("push")) {
-            ++offset;
-        }
-        if (instr.equals("pop")) {
-            --offset;
-        }
-        return String.format("%8s %20s\n", instr, operand);
-    }
-
-    public static String getInstruction(String instr, String operand1, String operand2) {
-        if (instr.equals("mov") && operand1.equals(operand2)) {
-            return "";
+    public static void writeLibCall(AssemblyWriter out, String func) {
+        if (getOffset() % 2 == 1) {
+            out.instruction("sub", "rsp", "8");
+            out.instruction("call", func);
+            out.instruction("add", "rsp", "8");
+        } else {
+            out.instruction("call", func);
         }
-        return String.format("%8s %20s, %20s\n", instr, operand1, operand2);
     }
 
-    public static String getLibCall(String func) {
-        StringBuilder str = new StringBuilder();
-        if (offset % 2 == 1) {
-            str.append(Translator.getInstruction("sub", "rsp", "8"));
-            str.append(Translator.getInstruction("call", func));
-            str.append(Translator.getInstruction("add", "rsp", "8"));
-        } else {
-            str.append(Translator.getInstruction("call", func));
+    public static String getJumpInstruction(ProgramIR.ConditionOp conditionOp) {
+        switch (conditionOp) {
+            case EQ: return "je";
+            case NEQ: return "jne";
+            case GR: return "jg";
+            case LE: return "jl";
+            case GREQ: return "jge";
+            case LEEQ: return "jle";
+            default: throw new InternalError("what kind of conditionOp do you expected?");
         }
-        return str.toString();
     }
 
-    public static String getAssemblyCondition(ProgramIR.ConditionOp conditionOp) {
+    public static String getSetInstruction(ProgramIR.ConditionOp conditionOp) {
         switch (conditionOp) {
-            case EQ: return "e";
-            case NEQ: return "ne";
-            case GR: return "g";
-            case LE: return "l";
-            case GREQ: return "ge";
-            case LEEQ: return "le";
+            case EQ: return "sete";
+            case NEQ: return "setne";
+            case GR: return "setg";
+            case LE: return "setl";
+            case GREQ: return "setge";
+            case LEEQ: return "setle";
             default: throw new InternalError("what kind of conditionOp do you expected?");
         }
     }
 
-    public static String getCallerSaved(List<String> callerList) {
-        StringBuilder str = new StringBuilder();
+    public static void writeCallerSaved(AssemblyWriter out, List<String> callerList) {
         for (int i = 0; i < callerList.size(); i++) {
-            str.append(getInstruction("push", callerList.get(i)));
+            out.instruction("push", callerList.get(i));
         }
-        return str.toString();
     }
 
-    public static String getCallerRestored(List<String> callerList) {
-        StringBuilder str = new StringBuilder();
+    public static void writeCallerRestored(AssemblyWriter out, List<String> callerList) {
         for (int i = callerList.size() - 1; i >= 0; i--) {
-            str.append(getInstruction("pop", callerList.get(i)));
+            out.instruction("pop", callerList.get(i));
         }
-        return str.toString();
     }
 
-    public static String getCalleeSaved(List<String> calleeList) {
-        StringBuilder str = new StringBuilder();
+    public static void writeCalleeSaved(AssemblyWriter out, List<String> calleeList) {
         for (int i = 0; i < calleeList.size(); i++) {
-            str.append(getInstruction("push", calleeList.get(i)));
+            out.instruction("push", calleeList.get(i));
         }
-        return str.toString();
     }
 
-    public static String getCalleeRestored(List<String> calleeList) {
-        StringBuilder str = new StringBuilder();
+    public static void writeCalleeRestored(AssemblyWriter out, List<String> calleeList) {
         for (int i = calleeList.size() - 1; i >= 0; i--) {
-            str.append(getInstruction("pop", calleeList.get(i)));
+            out.instruction("pop", calleeList.get(i));
         }
-        return str.toString();
     }
 
-    public static String getAssembly() {
-        StringBuilder str = new StringBuilder();
-        str.append(getGlobalFunction());
-        str.append("extern printf, malloc, strcpy, scanf, strlen, sscanf, sprintf, memcpy, strcmp, puts\n");
-        str.append(getTextSection());
-        str.append(getDefinedDataSection());
-        str.append(getReservedDataSection());
-        str.append(BuiltinFunction.getAssembly());
-        return str.toString();
+    public static void writeAssembly(Writer writer) {
+        AssemblyWriter out = new AssemblyWriter(writer);
+        writeGlobalFunction(out);
+        out.append("extern malloc, memcpy, read, write, atexit");
+        if (BuiltinFunction.countCalls) {
+            out.append(", dprintf");
+        }
+        out.append('\n');
+        writeTextSection(out);
+        writeDefinedDataSection(out);
+        writeReservedDataSection(out);
+        BuiltinFunction.writeAssembly(out);
+        out.flush();
     }
 
-    private static String getGlobalFunction() {
-        StringBuilder str = new StringBuilder();
+    private static void writeGlobalFunction(AssemblyWriter out) {
         ProgramIR.getFunctionMap().values().forEach(
-                functionIR -> str.append("global " + functionIR.getFunctionType().getIRName() + "\n")
+                functionIR -> out.append("global ").append(functionIR.getFunctionType().getIRName()).append('\n')
         );
-        builtInFunctionName.forEach(name -> str.append("global " + name + "\n"));
-        return str.toString();
+        builtInFunctionName.forEach(name -> out.append("global ").append(name).append('\n'));
     }
 
     private static int getLength(String string) {
@@ -150,62 +132,58 @@ public class Translator {
         return ret;
     }
 
-    private static String getDefinedDataSection() {
-        StringBuilder str = new StringBuilder();
-        str.append("SECTION .data\n");
+    private static void writeDefinedDataSection(AssemblyWriter out) {
+        out.append("SECTION .data\n");
         for (int i = 0; i < ProgramIR.getConstStringList().size(); i++) {
             String s = ProgramIR.getConstStringList().get(i);
-            str.append(getInstruction("dq", String.valueOf((getLength(s)))));
-            str.append("__const_string_").append(String.valueOf(i)).append(":\n").append("\tdb");
+            out.instruction("dq", String.valueOf(getLength(s)));
+            out.append("__const_string_").append(i).append(":\n").append("\tdb");
             int n = s.length();
             for (int j = 0; j < n; j++) {
                 if (s.charAt(j) == '\\') {
                     ++j;
                     if (s.charAt(j) == 'n') {
-                        str.append("  10,");
+                        out.append("  10,");
                     }
                     if (s.charAt(j) == '\"') {
-                        str.append("  34,");
+                        out.append("  34,");
                     }
                     if (s.charAt(j) == '\\') {
-                        str.append("  92,");
+                        out.append("  92,");
                     }
                 } else {
-                    str.append(String.format(" %3s,", (int) s.charAt(j)));
+                    out.append(' ').append(s.charAt(j), 3).append(',');
                 }
             }
-            str.append("   0\n");
-        }
-        for (FunctionIR functionIR: ProgramIR.getFunctionMap().values()) {
-            str.append(functionIR.getDefinedDataSection());
+            out.append("   0\n");
         }
-        return str.toString();
     }
 
-    private static String getReservedDataSection() {
-        StringBuilder str = new StringBuilder();
-        str.append("SECTION .bss\n");
-        ProgramAST.globalVariableDeclarationStatementList.forEach(
+    private static void writeReservedDataSection(AssemblyWriter out) {
+        out.append("SECTION .bss\n");
+        ProgramAST.getGlobalVariableDeclarationStatementList().forEach(
                 variableDeclarationStatement -> {
-                    str.append("@" + variableDeclarationStatement.getName() + ":\n");
-                    str.append(getInstruction("resq", "1"));
+                    out.label("@" + variableDeclarationStatement.getName());
+                    out.instruction("resq", "1");
                 }
 
         );
-        return str.toString();
+        for (FunctionIR functionIR : ProgramIR.getFunctionMap().values()) {
+            functionIR.writeReservedDataSection(out);
+        }
     }
 
-    private static String getTextSection() {
-        StringBuilder str = new StringBuilder();
-        str.append("SECTION .text\n");
-        ProgramIR.getFunctionMap().values().forEach(
+    /* the functions are translated side by side into fragments, written out in the order of the map */
+    private static void writeTextSection(AssemblyWriter out) {
+        out.append("SECTION .text\n");
+        List<String> fragmentList = CompilationContext.current().forEachFunction(
                 functionIR -> {
+                    StringWriter fragment = new StringWriter();
                     setCurrentFunctionIR(functionIR);
-                    str.append(functionIR.getAssembly());
+                    functionIR.writeAssembly(new AssemblyWriter(fragment));
+                    return fragment.toString();
                 }
         );
-        return str.toString();
+        fragmentList.forEach(out::append);
     }
-
-
 }
@@ -1,10 +1,10 @@
 package Compiler.Utility.Error;
 
-import Compiler.FrontEnd.Listener.BaseListener;
+import Compiler.CompilationContext;
 
 public class CompilationError extends Error {
     public CompilationError(String errorMessage) {
-        super("Compilation error: " + "Line " + BaseListener.row + ": "
-                + "Column " + BaseListener.column + ": " + errorMessage + "!");
+        super("Compilation error: " + "Line " + CompilationContext.current().getRow() + ": "
+                + "Column " + CompilationContext.current().getColumn() + ": " + errorMessage + "!");
     }
 }